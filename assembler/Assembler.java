@@ -4,9 +4,24 @@
  */
 package assembler;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 import assembler.core.Instruction;
+import assembler.core.LiteralPool;
+import assembler.exceptions.InvalidCodeException;
+import assembler.io.RecordWriter;
+import assembler.io.TableSet;
+import assembler.interfaces.Optimizer;
+import assembler.optimizer.Block;
+import assembler.optimizer.Peephole;
+import assembler.optimizer.Scheduler;
 import assembler.types.Code;
 
 /**
@@ -22,6 +37,21 @@ public class Assembler
 	 static private Scanner input;
 
 	 /**
+	  * {@value #NOP} Thumb NOP (MOV r8, r8)
+	  */
+	 static final int NOP = 0x46c0;
+
+	 /**
+	  * Usage: Assembler [-t] [-O[rules]] [-s] [source [output [base]]]. Without
+	  * arguments a single command is read from standard input. With a source
+	  * file every line is assembled and written to an Intel HEX (.hex) or
+	  * S-record (.srec) output file at the base address (default 0), or listed
+	  * as hex words. With -t the source is assembled to Thumb halfwords. With
+	  * -O the source is passed through the peephole optimizer, with every rule
+	  * or a comma separated list of rules (-Ofold_shift,remove_nop). With -s
+	  * straight-line blocks are reordered to hide load and multiply latencies.
+	  * The changes made are reported on standard error.
+	  * 
 	  * @param args
 	  */
 	 public static void main( String[] args )
@@ -30,6 +60,66 @@ public class Assembler
 			Code inputValue;
 			Instruction instruction;
 
+			Boolean thumb = args.length > 0 && args[0].equals( "-t" );
+			if (thumb) {
+				 args = Arrays.copyOfRange( args, 1, args.length );
+			}
+			List<Optimizer> passes = new ArrayList<Optimizer>();
+			if (args.length > 0 && args[0].startsWith( "-O" )) {
+				 try {
+						passes.add( new Peephole(
+									Peephole.parseRules( args[0].substring( 2 ) ) ) );
+				 } catch (InvalidCodeException e) {
+						System.out.println( e.getMessage() );
+						return;
+				 }
+				 args = Arrays.copyOfRange( args, 1, args.length );
+			}
+			if (args.length > 0 && args[0].equals( "-s" )) {
+				 passes.add( new Scheduler() );
+				 args = Arrays.copyOfRange( args, 1, args.length );
+			}
+
+			if (args.length > 0) {
+				 try (BufferedReader source = Files
+							 .newBufferedReader( Paths.get( args[0] ) )) {
+						int[] words;
+						if (thumb) {
+							 short[] halfwords = assembleThumb( source );
+							 if (args.length == 1) {
+									for (short halfword : halfwords) {
+										 System.out.println( String.format( "%04X", halfword ) );
+									}
+									return;
+							 }
+							 words = pack( halfwords );
+						} else {
+							 words = assemble( source, passes );
+							 for (Optimizer pass : passes) {
+									for (String change : pass.getReport()) {
+										 System.err.println( change );
+									}
+									System.err.println( pass.getSummary() );
+							 }
+						}
+						if (args.length > 1) {
+							 int base = args.length > 2 ? Long.decode( args[2] ).intValue()
+										 : 0;
+							 try (RecordWriter writer = RecordWriter
+										 .open( Paths.get( args[1] ), base )) {
+									writer.write( words, 0, words.length );
+							 }
+						} else {
+							 for (int word : words) {
+									System.out.println( String.format( "%08X", word ) );
+							 }
+						}
+				 } catch (Exception e) {
+						e.printStackTrace( System.out );
+				 }
+				 return;
+			}
+
 			// Create a Scanner to obtain user input
 			input = new Scanner( System.in ).useDelimiter( System.lineSeparator() );
 
@@ -45,4 +135,237 @@ public class Assembler
 			}
 	 }
 
+	 /**
+	  * Assembles source lines into instruction words. Blank lines and comments
+	  * (starting with ';', '@' or '//') are skipped. LDR rd, =value loads
+	  * constants that do not fit MOV/MVN from a {@link LiteralPool}, which is
+	  * written at .ltorg, when its reach would be exceeded and at the end.
+	  * Every line is assembled with the tables current when the call starts.
+	  * 
+	  * @param BufferedReader source
+	  * @return int[] words
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public static int[] assemble( BufferedReader source )
+				 throws IOException, InvalidCodeException
+	 {
+			return assemble( source, null );
+	 }
+
+	 /**
+	  * Assembles source lines into instruction words as
+	  * {@link #assemble(BufferedReader)}, passing the instructions between
+	  * literal loads and .ltorg directives through optimization passes in
+	  * turn. Since instructions may be removed or moved, PC relative offsets
+	  * written in the source are only kept valid if nothing before their target
+	  * is optimized away.
+	  * 
+	  * @param BufferedReader source
+	  * @param List<Optimizer> passes (null to assemble as written)
+	  * @return int[] words
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public static int[] assemble( BufferedReader source,
+				 List<Optimizer> passes )
+				 throws IOException, InvalidCodeException
+	 {
+			TableSet tables = TableSet.current();
+			Output output = new Output();
+			Block block = new Block();
+			int lineNo = 0;
+			String line;
+			while (( line = source.readLine() ) != null) {
+				 lineNo++;
+				 line = line.replaceAll( "(;|@|//).*$", "" ).trim().toUpperCase();
+				 if (line.isEmpty()) {
+						continue;
+				 }
+				 try {
+						Code code = new Code( line );
+						if (line.equals( ".LTORG" )) {
+							 output.put( block, passes );
+							 output.ltorg();
+						} else if (LiteralPool.isLiteralLoad( code )) {
+							 output.put( block, passes );
+							 output.literal( code );
+						} else {
+							 Instruction instruction = new Instruction( code, tables );
+							 if (passes == null || passes.isEmpty()) {
+									output.put( instruction.getBits().getDecimal().intValue() );
+							 } else {
+									block.add( instruction );
+							 }
+						}
+				 } catch (InvalidCodeException e) {
+						throw new InvalidCodeException(
+									String.format( "Line %d: %s", lineNo, e.getMessage() ), e );
+				 }
+			}
+			output.put( block, passes );
+			output.ltorg();
+			return output.toArray();
+	 }
+
+	 /**
+	  * Instruction words being assembled, with the literal pool they load
+	  * from.
+	  */
+	 private static class Output
+	 {
+
+			/**
+			 * {@value #words} Words written
+			 */
+			private int[] words = new int[256];
+
+			/**
+			 * {@value #count} Number of words written
+			 */
+			private int count;
+
+			/**
+			 * {@link LiteralPool} Pending literals
+			 */
+			private final LiteralPool pool = new LiteralPool();
+
+			/**
+			 * Writes a word, placing the literal pool (behind a branch) first if
+			 * its reach would be exceeded.
+			 * 
+			 * @param int word
+			 */
+			void put( int word )
+			{
+				 if (pool.isFull( count )) {
+						words = reserve( words, count + pool.size() + 1 );
+						count = pool.flush( words, count, true );
+				 }
+				 words = reserve( words, count + 1 );
+				 words[count++] = word;
+			}
+
+			/**
+			 * Optimizes and writes a block, then empties it.
+			 * 
+			 * @param Block           block
+			 * @param List<Optimizer> passes
+			 */
+			void put( Block block, List<Optimizer> passes )
+			{
+				 if (passes == null || block.size() == 0) {
+						return;
+				 }
+				 for (Optimizer pass : passes) {
+						pass.optimize( block, count, Block.ALL );
+				 }
+				 for (int i = 0; i < block.size(); i++) {
+						put( block.word( i ) );
+				 }
+				 block.clear();
+			}
+
+			/**
+			 * Writes a literal load.
+			 * 
+			 * @param Code code LDR rd, =value
+			 * @throws InvalidCodeException
+			 */
+			void literal( Code code ) throws InvalidCodeException
+			{
+				 put( 0 );
+				 words[count - 1] = pool.load( code, count - 1 );
+			}
+
+			/**
+			 * Writes the pending literals.
+			 */
+			void ltorg()
+			{
+				 words = reserve( words, count + pool.size() );
+				 count = pool.flush( words, count, false );
+			}
+
+			/**
+			 * @return int[] words written
+			 */
+			int[] toArray()
+			{
+				 return Arrays.copyOf( words, count );
+			}
+
+	 }
+
+	 /**
+	  * Returns an array holding at least length words, doubling its size if
+	  * needed.
+	  * 
+	  * @param int[] words
+	  * @param int   length
+	  * @return int[] words
+	  */
+	 private static int[] reserve( int[] words, int length )
+	 {
+			if (length <= words.length) {
+				 return words;
+			}
+			return Arrays.copyOf( words, Math.max( length, words.length * 2 ) );
+	 }
+
+	 /**
+	  * Assembles source lines into Thumb halfwords, using the same syntax and
+	  * comment rules as {@link #assemble(BufferedReader)}.
+	  * 
+	  * @param BufferedReader source
+	  * @return short[] halfwords
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public static short[] assembleThumb( BufferedReader source )
+				 throws IOException, InvalidCodeException
+	 {
+			TableSet tables = TableSet.current();
+			short[] halfwords = new short[256];
+			int count = 0;
+			int lineNo = 0;
+			String line;
+			while (( line = source.readLine() ) != null) {
+				 lineNo++;
+				 line = line.replaceAll( "(;|@|//).*$", "" ).trim().toUpperCase();
+				 if (line.isEmpty()) {
+						continue;
+				 }
+				 try {
+						Instruction instruction = new Instruction( new Code( line ),
+									tables );
+						if (count == halfwords.length) {
+							 halfwords = Arrays.copyOf( halfwords, count * 2 );
+						}
+						halfwords[count++] = (short) instruction.toThumb();
+				 } catch (InvalidCodeException e) {
+						throw new InvalidCodeException(
+									String.format( "Line %d: %s", lineNo, e.getMessage() ), e );
+				 }
+			}
+			return Arrays.copyOf( halfwords, count );
+	 }
+
+	 /**
+	  * Packs Thumb halfwords into little-endian words, padding an odd count
+	  * with a NOP (MOV r8, r8).
+	  * 
+	  * @param short[] halfwords
+	  * @return int[] words
+	  */
+	 public static int[] pack( short[] halfwords )
+	 {
+			int[] words = new int[( halfwords.length + 1 ) >> 1];
+			for (int i = 0; i < words.length; i++) {
+				 int high = 2 * i + 1 < halfwords.length ? halfwords[2 * i + 1] : NOP;
+				 words[i] = ( halfwords[2 * i] & 0xffff ) | ( high << 16 );
+			}
+			return words;
+	 }
+
 }
@@ -4,10 +4,32 @@
  */
 package assembler;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ShortBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Scanner;
 
-import assembler.core.Instruction;
+import assembler.analysis.ControlFlowGraph;
+import assembler.analysis.ImageDiff;
+import assembler.analysis.PatternSearch;
+import assembler.exceptions.InvalidCodeException;
+import assembler.io.DumpReader;
+import assembler.io.ListingCache;
+import assembler.io.RecordReader;
+import assembler.io.Renderer;
+import assembler.io.TableSet;
+import assembler.io.ThumbRenderer;
+import assembler.optimizer.CycleEstimator;
+import assembler.thumb.ThumbDecoder;
 import assembler.types.Bits;
+import assembler.types.Image;
 
 /**
  * Disassembly Main Class
@@ -22,14 +44,78 @@ public class Disassembler
 	 static private Scanner input;
 
 	 /**
+	  * {@value #DOT_BLOCKS} Basic blocks written by -g
+	  */
+	 static final int DOT_BLOCKS = 256;
+
+	 /**
+	  * Lists a single word read from standard input, or an image:
+	  * 
+	  * <pre>
+	  * Disassembler [-t|-c|-g|-f pattern|-k dir|-d previous] [-b] [-a]
+	  *              [-o base] [file|-]
+	  * 
+	  *   -t           list the image as Thumb code
+	  *   -c           annotate the listing with estimated ARM11 cycle counts
+	  *   -g           write the control flow graph of the first
+	  *                {@value #DOT_BLOCKS} basic blocks in DOT format
+	  *   -f pattern   list only the instructions matching a
+	  *                {@link PatternSearch} template, such as "ldr ?, [sp, #?]"
+	  *   -k dir       keep the rendered listing in a {@link ListingCache}
+	  *                directory, rendering only chunks changed since a run
+	  *   -d previous  list the instructions changed, deleted and inserted
+	  *                since another image, read the same way, as an
+	  *                {@link ImageDiff}
+	  *   -b           read text dump byte groups in memory order (xxd,
+	  *                objdump -s)
+	  *   -a           take the first column of every text dump line as an
+	  *                address
+	  *   -o base      load a raw binary (.bin) image at base
+	  *   file|-       Intel HEX, S-record, raw binary or text dump file, or
+	  *                standard input for '-'
+	  * </pre>
+	  * 
 	  * @param args
 	  */
 	 public static void main( String[] args )
 	 {
 			String userInput;
-			Instruction instruction;
+			Renderer renderer = new Renderer();
+			StringBuilder output = new StringBuilder( "The instruction command is: " );
 			Bits inputValue = null;
 
+			if (args.length > 0) {
+				 // Bulk disassembly of an Intel HEX or S-record image or a text dump
+				 BufferedWriter out = new BufferedWriter(
+							 new OutputStreamWriter( System.out ), 1 << 16 );
+				 try {
+						Image image = open( args, false );
+						if (Arrays.asList( args ).contains( "-t" )) {
+							 disassembleThumb( image, out );
+						} else if (Arrays.asList( args ).contains( "-c" )) {
+							 new CycleEstimator( image ).annotate( out );
+						} else if (Arrays.asList( args ).contains( "-g" )) {
+							 ControlFlowGraph cfg = new ControlFlowGraph( image );
+							 cfg.toDot( 0, Math.min( cfg.getBlockCount(), DOT_BLOCKS ), out );
+						} else if (Arrays.asList( args ).contains( "-f" )) {
+							 find( image, new PatternSearch(
+										 args[Arrays.asList( args ).indexOf( "-f" ) + 1] ), out );
+						} else if (Arrays.asList( args ).contains( "-k" )) {
+							 new ListingCache( Paths.get(
+										 args[Arrays.asList( args ).indexOf( "-k" ) + 1] ) ).list( image,
+													 out );
+						} else if (Arrays.asList( args ).contains( "-d" )) {
+							 new ImageDiff( open( args, true ), image ).diff( out );
+						} else {
+							 disassemble( image, out );
+						}
+						out.flush();
+				 } catch (Exception e) {
+						e.printStackTrace( System.out );
+				 }
+				 return;
+			}
+
 			// Create a Scanner to obtain user input
 			input = new Scanner( System.in ).useDelimiter( System.lineSeparator() );
 
@@ -52,12 +138,169 @@ public class Disassembler
 						System.out.println( "Unknown format. Exiting." );
 						System.exit( 1 );
 				 }
-				 instruction = new Instruction( inputValue );
-				 System.out.println( String.format( "The instruction command is: %S.",
-							 instruction.toString() ) );
+				 renderer.render( inputValue.getDecimal().intValue(), output )
+							 .append( '.' );
+				 System.out.println( output.toString().toUpperCase() );
 			} catch (Exception e) {
 				 e.printStackTrace( System.out );
 			}
 	 }
 
+	 /**
+	  * Loads the image selected by the command line arguments.
+	  * 
+	  * @param String[] args
+	  * @param boolean  before true for the image to compare against (-d)
+	  * @return Image
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 private static Image open( String[] args, boolean before )
+				 throws IOException, InvalidCodeException
+	 {
+			Boolean bytes = false;
+			Boolean addressed = false;
+			int base = 0;
+			String name = "-";
+			String previous = "-";
+			for (int i = 0; i < args.length; i++) {
+				 if (args[i].equals( "-b" )) {
+						bytes = true;
+				 } else if (args[i].equals( "-a" )) {
+						addressed = true;
+				 } else if (args[i].matches( "-[fkd]" ) && i + 1 < args.length) {
+						if (args[i].equals( "-d" )) {
+							 previous = args[i + 1];
+						}
+						i++; // pattern, cache directory or image to compare against
+				 } else if (args[i].equals( "-o" ) && i + 1 < args.length) {
+						base = Integer.parseUnsignedInt( args[++i].replaceFirst(
+									"^0[xX]", "" ), 16 );
+				 } else if (!args[i].matches( "-[tcg]" )) {
+						name = args[i];
+				 }
+			}
+			if (before) {
+				 name = previous;
+			}
+			if (name.equals( "-" )) {
+				 try (RecordReader reader = new DumpReader(
+							 Channels.newChannel( System.in ), bytes, addressed )) {
+						return reader.read();
+				 }
+			}
+			Path path = Paths.get( name );
+			if (name.toLowerCase().endsWith( ".bin" )) {
+				 // Raw images are mapped rather than read
+				 try (FileChannel channel = FileChannel.open( path,
+							 StandardOpenOption.READ )) {
+						return new Image( base, channel
+									.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() ) );
+				 }
+			}
+			try (RecordReader reader = RecordReader.open( path, bytes,
+						addressed )) {
+				 return reader.read();
+			}
+	 }
+
+	 /**
+	  * Writes a listing of an image, one "address: word text" line per word.
+	  * Words that do not decode are listed as undefined.
+	  * 
+	  * @param Image      image
+	  * @param Appendable out
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public static void disassemble( Image image, Appendable out )
+				 throws IOException, InvalidCodeException
+	 {
+			TableSet tables = TableSet.current();
+			Renderer renderer = new Renderer( tables );
+			for (int i = 0; i < image.size(); i++) {
+				 int word = image.get( i );
+				 renderer.appendHex( image.getAddress( i ), 8, out );
+				 out.append( ":\t" );
+				 renderer.appendHex( word, 8, out );
+				 out.append( '\t' );
+				 if (Renderer.isValid( tables, word )) {
+						renderer.render( word, image.getAddress( i ), out );
+				 } else {
+						out.append( "<undefined>" );
+				 }
+				 out.append( '\n' );
+			}
+	 }
+
+	 /**
+	  * Writes a listing of the instructions of an image that match a pattern,
+	  * with a blank line after every match of a sequence.
+	  * 
+	  * @param Image         image
+	  * @param PatternSearch pattern
+	  * @param Appendable    out
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public static void find( Image image, PatternSearch pattern,
+				 Appendable out ) throws IOException, InvalidCodeException
+	 {
+			Renderer renderer = new Renderer();
+			for (int match : pattern.find( image )) {
+				 for (int i = match; i < match + pattern.getLength(); i++) {
+						int word = image.get( i );
+						renderer.appendHex( image.getAddress( i ), 8, out );
+						out.append( ":\t" );
+						renderer.appendHex( word, 8, out );
+						out.append( '\t' );
+						renderer.render( word, image.getAddress( i ), out );
+						out.append( '\n' );
+				 }
+				 if (pattern.getLength() > 1) {
+						out.append( '\n' );
+				 }
+			}
+	 }
+
+	 /**
+	  * Writes a Thumb listing of an image, one "address: halfword(s) text"
+	  * line per instruction. BL/BLX pairs are listed on one line, halfwords
+	  * that do not decode are listed as undefined.
+	  * 
+	  * @param Image      image
+	  * @param Appendable out
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public static void disassembleThumb( Image image, Appendable out )
+				 throws IOException, InvalidCodeException
+	 {
+			ThumbRenderer renderer = new ThumbRenderer();
+			ShortBuffer code = image.getHalfwords();
+			int i = 0;
+			while (i < code.limit()) {
+				 int hw = code.get( i ) & 0xffff;
+				 int next = i + 1 < code.limit() ? code.get( i + 1 ) & 0xffff : 0;
+				 int address = image.getBase() + ( i << 1 );
+				 int length = ThumbDecoder.length( hw, next );
+				 renderer.appendHex( address, 8, out );
+				 out.append( ":\t" );
+				 renderer.appendHex( hw, 4, out );
+				 if (length == 2) {
+						out.append( ' ' );
+						renderer.appendHex( next, 4, out );
+				 }
+				 out.append( '\t' );
+				 if (ThumbDecoder.isValid( hw )
+							 && ( length == 2 || ThumbDecoder.format( hw ) != ThumbDecoder.BL_PREFIX )) {
+						renderer.render( hw, next, address, out );
+				 } else {
+						out.append( "<undefined>" );
+				 }
+				 out.append( '\n' );
+				 i += length;
+			}
+	 }
+
 }
@@ -0,0 +1,412 @@
+/**
+ *
+ */
+package assembler.analysis;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import assembler.exceptions.InvalidCodeException;
+import assembler.io.Renderer;
+import assembler.io.TableSet;
+import assembler.optimizer.Block;
+import assembler.types.Image;
+
+/**
+ * Control flow graph of an image of ARM instruction words.
+ *
+ * The image is split into basic blocks at the image start, at B/BL targets,
+ * after branches and other PC writes, and wherever the condition code
+ * changes, so that every block executes as a whole or, if
+ * {@link #isConditional(int) conditional}, not at all, in which case control
+ * falls through to the next block. Blocks and edges are held in primitive
+ * arrays: the first word of each block in order, and the successors of each
+ * block as a range of an edge array (compressed sparse rows), which keeps
+ * images of millions of instructions to a few bytes per word.
+ *
+ * Edges are {@link #FALLTHROUGH} to the next block, {@link #BRANCH} to a B
+ * target and {@link #CALL} to a BL target (the return falls through).
+ * Targets of other PC writes (BX, BLX, MOV pc, LDR pc, LDM with pc) are not
+ * known statically and have no edge.
+ */
+public class ControlFlowGraph
+{
+
+	 /**
+	  * {@value #FALLTHROUGH} Edge to the next block
+	  */
+	 public static final byte FALLTHROUGH = 0;
+
+	 /**
+	  * {@value #BRANCH} Edge to a B target
+	  */
+	 public static final byte BRANCH = 1;
+
+	 /**
+	  * {@value #CALL} Edge to a BL target
+	  */
+	 public static final byte CALL = 2;
+
+
+	 /**
+	  * {@value #KINDS} Edge kind names
+	  */
+	 private static final String[] KINDS = { "fallthrough", "branch", "call" };
+
+	 /**
+	  * {@value #DOT_STYLES} DOT attributes of each edge kind
+	  */
+	 private static final String[] DOT_STYLES = { "", " [label=\"B\"]",
+				 " [label=\"BL\", style=dashed]" };
+
+	 /**
+	  * {@link Image} Code
+	  */
+	 private final Image image;
+
+	 /**
+	  * {@value #starts} First word of every block, in order
+	  */
+	 private int[] starts;
+
+	 /**
+	  * {@value #edgeStarts} First edge of every block, and the edge count
+	  */
+	 private int[] edgeStarts;
+
+	 /**
+	  * {@value #targets} Target block of every edge
+	  */
+	 private int[] targets;
+
+	 /**
+	  * {@value #kinds} Kind of every edge
+	  */
+	 private byte[] kinds;
+
+	 /**
+	  * {@value #entries} Entry blocks: the first block and every BL target
+	  */
+	 private int[] entries;
+
+	 /**
+	  * @return Image code
+	  */
+	 public Image getImage()
+	 {
+			return image;
+	 }
+
+	 /**
+	  * @return int number of blocks
+	  */
+	 public int getBlockCount()
+	 {
+			return starts.length;
+	 }
+
+	 /**
+	  * @param int block
+	  * @return int first word of a block
+	  */
+	 public int getStart( int block )
+	 {
+			return starts[block];
+	 }
+
+	 /**
+	  * @param int block
+	  * @return int word after the last of a block
+	  */
+	 public int getEnd( int block )
+	 {
+			return block + 1 < starts.length ? starts[block + 1] : image.size();
+	 }
+
+	 /**
+	  * @param int block
+	  * @return boolean true if the block only executes when its condition
+	  *         passes
+	  */
+	 public boolean isConditional( int block )
+	 {
+			return !Block.isAlways( image.get( starts[block] ) );
+	 }
+
+	 /**
+	  * @param int block
+	  * @return int first edge of a block
+	  */
+	 public int getEdgeStart( int block )
+	 {
+			return edgeStarts[block];
+	 }
+
+	 /**
+	  * @param int block
+	  * @return int edge after the last of a block
+	  */
+	 public int getEdgeEnd( int block )
+	 {
+			return edgeStarts[block + 1];
+	 }
+
+	 /**
+	  * @return int number of edges
+	  */
+	 public int getEdgeCount()
+	 {
+			return edgeStarts[starts.length];
+	 }
+
+	 /**
+	  * @param int edge
+	  * @return int target block of an edge
+	  */
+	 public int getTarget( int edge )
+	 {
+			return targets[edge];
+	 }
+
+	 /**
+	  * @param int edge
+	  * @return byte kind of an edge
+	  */
+	 public byte getKind( int edge )
+	 {
+			return kinds[edge];
+	 }
+
+	 /**
+	  * @return int[] entry blocks (the first block and every BL target), in
+	  *         order
+	  */
+	 public int[] getEntries()
+	 {
+			return entries.clone();
+	 }
+
+	 /**
+	  * Returns the block holding a word.
+	  * 
+	  * @param int index word
+	  * @return int block
+	  */
+	 public int blockOf( int index )
+	 {
+			int block = Arrays.binarySearch( starts, index );
+			return block >= 0 ? block : -block - 2;
+	 }
+
+	 /**
+	  * Returns the word index of an address, or -1 if it is not in the image.
+	  */
+	 private int indexOf( int address )
+	 {
+			long offset = ( address & 0xffffffffL ) - ( image.getBase() & 0xffffffffL );
+			if (offset < 0 || ( offset & 3 ) != 0 || ( offset >> 2 ) >= image.size()) {
+				 return -1;
+			}
+			return (int) ( offset >> 2 );
+	 }
+
+	 /**
+	  * Returns true if an instruction word ends a block: a branch or another
+	  * write to the PC.
+	  */
+	 private static boolean isExit( int word )
+	 {
+			return Block.isBranch( word ) || Block.isExchange( word )
+						|| ( Block.kindOf( word ) != Block.OTHER
+									&& ( Block.defsOf( word ) & Block.PC ) != 0 );
+	 }
+
+	 /**
+	  * Returns true if an instruction word is a call (BL, BLX), to which
+	  * control returns at the next word.
+	  */
+	 private static boolean isCall( int word )
+	 {
+			return Block.isBranch( word ) ? ( word & 0x1000000 ) != 0
+						: Block.isExchange( word ) && ( word & 0x20 ) != 0;
+	 }
+
+	 /**
+	  * Finds the blocks and their edges.
+	  */
+	 private void build()
+	 {
+			int n = image.size();
+			long[] leaders = new long[( n >> 6 ) + 1];
+			long[] calls = new long[( n >> 6 ) + 1];
+			leaders[0] = 1;
+			calls[0] = 1;
+			int previous = 0;
+			for (int i = 0; i < n; i++) {
+				 int word = image.get( i );
+				 if (i > 0 && ( word >>> 28 ) != ( previous >>> 28 )) {
+						leaders[i >> 6] |= 1L << i;
+				 }
+				 if (Block.isBranch( word )) {
+						int target = indexOf( Block.target( word, image.getAddress( i ) ) );
+						if (target >= 0) {
+							 leaders[target >> 6] |= 1L << target;
+							 if (( word & 0x1000000 ) != 0) {
+									calls[target >> 6] |= 1L << target;
+							 }
+						}
+				 }
+				 if (isExit( word ) && i + 1 < n) {
+						leaders[( i + 1 ) >> 6] |= 1L << ( i + 1 );
+				 }
+				 previous = word;
+			}
+
+			int count = 0;
+			int callCount = 0;
+			for (int k = 0; k < leaders.length; k++) {
+				 count += Long.bitCount( leaders[k] );
+				 callCount += Long.bitCount( calls[k] );
+			}
+			this.starts = new int[n == 0 ? 0 : count];
+			this.entries = new int[n == 0 ? 0 : callCount];
+			int block = 0;
+			int entry = 0;
+			for (int k = 0; k < leaders.length && n > 0; k++) {
+				 for (long bits = leaders[k]; bits != 0; bits &= bits - 1) {
+						int i = ( k << 6 ) + Long.numberOfTrailingZeros( bits );
+						if (( calls[k] & ( 1L << i ) ) != 0) {
+							 entries[entry++] = block;
+						}
+						starts[block++] = i;
+				 }
+			}
+
+			this.edgeStarts = new int[starts.length + 1];
+			this.targets = new int[Math.max( 16, starts.length * 2 )];
+			this.kinds = new byte[targets.length];
+			int edges = 0;
+			for (int b = 0; b < starts.length; b++) {
+				 edgeStarts[b] = edges;
+				 int last = getEnd( b ) - 1;
+				 int word = image.get( last );
+				 boolean falls = !isExit( word ) || !Block.isAlways( word )
+							 || isCall( word );
+				 if (Block.isBranch( word )) {
+						int target = indexOf( Block.target( word, image.getAddress( last ) ) );
+						if (target >= 0) {
+							 edges = add( b, edges, blockOf( target ),
+										 ( word & 0x1000000 ) != 0 ? CALL : BRANCH );
+						}
+				 }
+				 if (falls && b + 1 < starts.length) {
+						edges = add( b, edges, b + 1, FALLTHROUGH );
+				 }
+			}
+			edgeStarts[starts.length] = edges;
+			this.targets = Arrays.copyOf( targets, edges );
+			this.kinds = Arrays.copyOf( kinds, edges );
+	 }
+
+	 /**
+	  * Adds an edge unless the block already has one to the same target.
+	  * 
+	  * @return int number of edges
+	  */
+	 private int add( int block, int edges, int target, byte kind )
+	 {
+			for (int e = edgeStarts[block]; e < edges; e++) {
+				 if (targets[e] == target) {
+						return edges;
+				 }
+			}
+			if (edges == targets.length) {
+				 targets = Arrays.copyOf( targets, edges * 2 );
+				 kinds = Arrays.copyOf( kinds, edges * 2 );
+			}
+			targets[edges] = target;
+			kinds[edges] = kind;
+			return edges + 1;
+	 }
+
+	 /**
+	  * Writes a region of the graph in Graphviz DOT format, one node per block
+	  * listing its instructions. Edges leaving the region end at a node
+	  * labelled with the target address.
+	  * 
+	  * @param int        first first block
+	  * @param int        last block after the last
+	  * @param Appendable out
+	  * @throws IOException
+	  */
+	 public void toDot( int first, int last, Appendable out ) throws IOException
+	 {
+			TableSet tables = TableSet.current();
+			Renderer renderer = new Renderer( tables );
+			StringBuilder text = new StringBuilder( 32 );
+			out.append( "digraph cfg {\n" );
+			out.append( "  node [shape=box, fontname=monospace];\n" );
+			for (int b = first; b < last; b++) {
+				 out.append( "  b" ).append( Integer.toString( b ) )
+							 .append( " [label=\"" );
+				 for (int i = starts[b]; i < getEnd( b ); i++) {
+						int word = image.get( i );
+						text.setLength( 0 );
+						renderer.appendHex( image.getAddress( i ), 8, out );
+						out.append( "  " );
+						if (Renderer.isValid( tables, word )) {
+							 try {
+									renderer.render( word, image.getAddress( i ), text );
+							 } catch (InvalidCodeException e) {
+									text.setLength( 0 );
+							 }
+						}
+						out.append( text.length() == 0 ? "<undefined>" : text )
+									.append( "\\l" );
+				 }
+				 out.append( "\"];\n" );
+			}
+			BitSet outside = new BitSet();
+			for (int b = first; b < last; b++) {
+				 for (int e = edgeStarts[b]; e < edgeStarts[b + 1]; e++) {
+						int target = targets[e];
+						if (( target < first || target >= last ) && !outside.get( target )) {
+							 outside.set( target );
+							 out.append( "  b" ).append( Integer.toString( target ) )
+										 .append( " [shape=plaintext, label=\"" );
+							 renderer.appendHex( image.getAddress( starts[target] ), 8, out );
+							 out.append( "\"];\n" );
+						}
+						out.append( "  b" ).append( Integer.toString( b ) ).append( " -> b" )
+									.append( Integer.toString( target ) )
+									.append( DOT_STYLES[kinds[e]] ).append( ";\n" );
+				 }
+			}
+			out.append( "}\n" );
+	 }
+
+	 /**
+	  * Returns the name of an edge kind.
+	  * 
+	  * @param byte kind
+	  * @return String
+	  */
+	 public static String kindName( byte kind )
+	 {
+			return KINDS[kind];
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param Image image code
+	  */
+	 public ControlFlowGraph( Image image )
+	 {
+			super();
+			this.image = image;
+			this.build();
+	 }
+
+}
@@ -0,0 +1,655 @@
+/**
+ *
+ */
+package assembler.analysis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+import assembler.io.Renderer;
+import assembler.io.TableSet;
+import assembler.types.Image;
+import assembler.util.Binary;
+
+/**
+ * Decoded image of ARM instruction words, held as columns off the heap.
+ *
+ * Every field of every instruction is kept in a column indexed by word: the
+ * word itself, its kind, condition and op code, the rd, rn, rm and rs
+ * registers ({@link #NONE} where the instruction has no such operand), the
+ * shift type and amount of a register operand and the value of an immediate
+ * operand, together with the def/use register masks of {@link DefUseIndex}.
+ * This takes {@value #BYTES} bytes per instruction, against kilobytes for a
+ * parsed {@link assembler.core.Instruction}, and whole image analyses scan
+ * the columns they need in order.
+ *
+ * The columns live in direct buffers, or in a memory mapped temporary file,
+ * in segments of {@value #SEGMENT} instructions, so the heap only holds the
+ * segment views whatever the size of the image. The image is decoded in one
+ * parallel pass over chunks of {@value #CHUNK} words, each classified by a
+ * {@link WordClassifier} and decoded a family at a time, and is not changed
+ * afterwards; reads use absolute indices, so one decoded image can be shared
+ * by any number of threads without copying or locking.
+ *
+ * Words are classified as {@link Renderer} reads them, with the tables
+ * current when decoding starts, and
+ * {@link Renderer#render(DecodedImage, int, Appendable)} renders from the
+ * columns.
+ */
+public class DecodedImage
+{
+
+	 /**
+	  * {@value #CHUNK} Words decoded by one task
+	  */
+	 public static final int CHUNK = 1 << 16;
+
+	 /**
+	  * {@value #BYTES} Bytes held per instruction
+	  */
+	 public static final int BYTES = 21;
+
+	 /**
+	  * {@value #SEGMENT} Instructions per off-heap segment
+	  */
+	 public static final int SEGMENT = 1 << 20;
+
+	 /**
+	  * {@value #SHIFT} log2 of {@link #SEGMENT}
+	  */
+	 private static final int SHIFT = 20;
+
+	 /**
+	  * {@value #DATA} Data processing
+	  */
+	 public static final byte DATA = 0;
+
+	 /**
+	  * {@value #MULTIPLY} MUL
+	  */
+	 public static final byte MULTIPLY = 1;
+
+	 /**
+	  * {@value #TRANSFER} Single register load/store
+	  */
+	 public static final byte TRANSFER = 2;
+
+	 /**
+	  * {@value #HALFWORD} Halfword and signed byte load/store
+	  */
+	 public static final byte HALFWORD = 3;
+
+	 /**
+	  * {@value #BLOCK} LDM/STM
+	  */
+	 public static final byte BLOCK = 4;
+
+	 /**
+	  * {@value #BRANCH} B/BL
+	  */
+	 public static final byte BRANCH = 5;
+
+	 /**
+	  * {@value #UNDEFINED} BX/BLX and anything the renderer does not decode
+	  */
+	 public static final byte UNDEFINED = 6;
+
+	 /**
+	  * {@value #NONE} No register
+	  */
+	 public static final byte NONE = -1;
+
+	 /**
+	  * {@value #LSL} Logical shift left
+	  */
+	 public static final byte LSL = 0;
+
+	 /**
+	  * {@value #LSR} Logical shift right
+	  */
+	 public static final byte LSR = 1;
+
+	 /**
+	  * {@value #ASR} Arithmetic shift right
+	  */
+	 public static final byte ASR = 2;
+
+	 /**
+	  * {@value #ROR} Rotate right
+	  */
+	 public static final byte ROR = 3;
+
+	 /**
+	  * {@value #RRX} Rotate right by one through carry
+	  */
+	 public static final byte RRX = 4;
+
+	 /**
+	  * {@value #NO_RD} Data processing op codes without a destination (TST,
+	  * TEQ, CMP, CMN) [op_code]
+	  */
+	 private static final boolean[] NO_RD = { false, false, false, false,
+				 false, false, false, false, true, true, true, true, false, false,
+				 false, false };
+
+	 /**
+	  * {@link Image} Source image
+	  */
+	 private final Image image;
+
+	 /**
+	  * {@value #size} Number of instructions
+	  */
+	 private final int size;
+
+	 /**
+	  * {@value #words} Instruction words, per segment
+	  */
+	 private final IntBuffer[] words;
+
+	 /**
+	  * {@value #immediates} Immediate operand: rotated constant, signed offset,
+	  * register list, or branch offset in bytes
+	  */
+	 private final IntBuffer[] immediates;
+
+	 /**
+	  * {@value #defs} Registers defined, as {@link DefUseIndex#defsOf(int)}
+	  */
+	 private final ShortBuffer[] defs;
+
+	 /**
+	  * {@value #uses} Registers used, as {@link DefUseIndex#usesOf(int)}
+	  */
+	 private final ShortBuffer[] uses;
+
+	 /**
+	  * {@value #kinds} Kind of every instruction
+	  */
+	 private final ByteBuffer[] kinds;
+
+	 /**
+	  * {@value #conditions} Condition code of every instruction
+	  */
+	 private final ByteBuffer[] conditions;
+
+	 /**
+	  * {@value #opcodes} Op code field (bits 24-21) of every instruction
+	  */
+	 private final ByteBuffer[] opcodes;
+
+	 /**
+	  * {@value #rd} Destination (or transferred) register
+	  */
+	 private final ByteBuffer[] rd;
+
+	 /**
+	  * {@value #rn} First operand (or base) register
+	  */
+	 private final ByteBuffer[] rn;
+
+	 /**
+	  * {@value #rm} Register operand (or offset)
+	  */
+	 private final ByteBuffer[] rm;
+
+	 /**
+	  * {@value #rs} Shift or multiplier register
+	  */
+	 private final ByteBuffer[] rs;
+
+	 /**
+	  * {@value #shiftTypes} Shift type of the register operand
+	  */
+	 private final ByteBuffer[] shiftTypes;
+
+	 /**
+	  * {@value #shiftAmounts} Immediate shift amount of the register operand
+	  * (1-32, 0 if none or shifted by a register)
+	  */
+	 private final ByteBuffer[] shiftAmounts;
+
+	 /**
+	  * @return Image source image
+	  */
+	 public Image getImage()
+	 {
+			return image;
+	 }
+
+	 /**
+	  * @return int number of instructions
+	  */
+	 public int size()
+	 {
+			return size;
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int instruction word
+	  */
+	 public int getWord( int index )
+	 {
+			return words[index >>> SHIFT].get( index & ( SEGMENT - 1 ) );
+	 }
+
+	 /**
+	  * @param int index
+	  * @return byte kind
+	  */
+	 public byte getKind( int index )
+	 {
+			return kinds[index >>> SHIFT].get( index & ( SEGMENT - 1 ) );
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int condition code
+	  */
+	 public int getCondition( int index )
+	 {
+			return conditions[index >>> SHIFT].get( index & ( SEGMENT - 1 ) );
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int op code field
+	  */
+	 public int getOpcode( int index )
+	 {
+			return opcodes[index >>> SHIFT].get( index & ( SEGMENT - 1 ) );
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int destination register, or {@link #NONE}
+	  */
+	 public int getRd( int index )
+	 {
+			return rd[index >>> SHIFT].get( index & ( SEGMENT - 1 ) );
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int first operand register, or {@link #NONE}
+	  */
+	 public int getRn( int index )
+	 {
+			return rn[index >>> SHIFT].get( index & ( SEGMENT - 1 ) );
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int register operand, or {@link #NONE}
+	  */
+	 public int getRm( int index )
+	 {
+			return rm[index >>> SHIFT].get( index & ( SEGMENT - 1 ) );
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int shift register, or {@link #NONE}
+	  */
+	 public int getRs( int index )
+	 {
+			return rs[index >>> SHIFT].get( index & ( SEGMENT - 1 ) );
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int shift type, or {@link #NONE}
+	  */
+	 public int getShiftType( int index )
+	 {
+			return shiftTypes[index >>> SHIFT].get( index & ( SEGMENT - 1 ) );
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int immediate shift amount
+	  */
+	 public int getShiftAmount( int index )
+	 {
+			return shiftAmounts[index >>> SHIFT].get( index & ( SEGMENT - 1 ) );
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int immediate operand
+	  */
+	 public int getImmediate( int index )
+	 {
+			return immediates[index >>> SHIFT].get( index & ( SEGMENT - 1 ) );
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int registers defined
+	  */
+	 public int getDefs( int index )
+	 {
+			return defs[index >>> SHIFT].get( index & ( SEGMENT - 1 ) ) & 0xffff;
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int registers used
+	  */
+	 public int getUses( int index )
+	 {
+			return uses[index >>> SHIFT].get( index & ( SEGMENT - 1 ) ) & 0xffff;
+	 }
+
+	 /**
+	  * Returns the number of instructions of a kind.
+	  * 
+	  * @param byte kind
+	  * @return int
+	  */
+	 public int count( byte kind )
+	 {
+			int count = 0;
+			for (ByteBuffer segment : kinds) {
+				 for (int i = 0; i < segment.capacity(); i++) {
+						if (segment.get( i ) == kind) {
+							 count++;
+						}
+				 }
+			}
+			return count;
+	 }
+
+	 /**
+	  * Decodes the words of a chunk, classified first so that every family is
+	  * decoded as one batch.
+	  * 
+	  * @param TableSet tables
+	  * @param int      from first index
+	  * @param int      to index after the last
+	  */
+	 private void decode( TableSet tables, int from, int to )
+	 {
+			WordClassifier classes = new WordClassifier( tables, image, from, to );
+			for (int p = classes.start( WordClassifier.DATA_IMMEDIATE ); p < classes
+						.end( WordClassifier.DATA_IMMEDIATE ); p++) {
+				 int index = classes.get( p );
+				 int word = image.get( index );
+				 int op2 = word & 0xfff;
+				 store( index, word, DATA, data( word, true ), data( word, false ),
+							 NONE, Binary.rightRotate( op2 & 0xff, ( op2 >>> 8 ) * 2 ) );
+			}
+			for (int p = classes.start( WordClassifier.DATA_REGISTER ); p < classes
+						.end( WordClassifier.DATA_REGISTER ); p++) {
+				 int index = classes.get( p );
+				 int word = image.get( index );
+				 store( index, word, DATA, data( word, true ), data( word, false ),
+							 (byte) ( word & 0xf ), 0 );
+				 shift( index, word & 0xfff );
+			}
+			for (int p = classes.start( WordClassifier.MULTIPLY ); p < classes
+						.end( WordClassifier.MULTIPLY ); p++) {
+				 int index = classes.get( p );
+				 int word = image.get( index );
+				 store( index, word, MULTIPLY, (byte) ( ( word >>> 16 ) & 0xf ), NONE,
+							 (byte) ( word & 0xf ), 0 );
+				 rs[index >>> SHIFT].put( index & ( SEGMENT - 1 ),
+							 (byte) ( ( word >>> 8 ) & 0xf ) );
+			}
+			for (int p = classes.start( WordClassifier.TRANSFER ); p < classes
+						.end( WordClassifier.TRANSFER ); p++) {
+				 int index = classes.get( p );
+				 int word = image.get( index );
+				 byte d = (byte) ( ( word >>> 12 ) & 0xf );
+				 byte n = (byte) ( ( word >>> 16 ) & 0xf );
+				 if (( word & 0x02000000 ) == 0) { // Immediate offset
+						int op2 = word & 0xfff;
+						store( index, word, TRANSFER, d, n, NONE,
+									( word & 0x00800000 ) != 0 ? op2 : -op2 );
+				 } else {
+						store( index, word, TRANSFER, d, n, (byte) ( word & 0xf ), 0 );
+						shift( index, word & 0xfff );
+				 }
+			}
+			for (int p = classes.start( WordClassifier.HALFWORD ); p < classes
+						.end( WordClassifier.HALFWORD ); p++) {
+				 int index = classes.get( p );
+				 int word = image.get( index );
+				 byte d = (byte) ( ( word >>> 12 ) & 0xf );
+				 byte n = (byte) ( ( word >>> 16 ) & 0xf );
+				 if (( word & 0x00400000 ) != 0) { // Immediate offset
+						int offset = ( ( word >>> 4 ) & 0xf0 ) | ( word & 0xf );
+						store( index, word, HALFWORD, d, n, NONE,
+									( word & 0x00800000 ) != 0 ? offset : -offset );
+				 } else {
+						store( index, word, HALFWORD, d, n, (byte) ( word & 0xf ), 0 );
+				 }
+			}
+			for (int p = classes.start( WordClassifier.BLOCK ); p < classes
+						.end( WordClassifier.BLOCK ); p++) {
+				 int index = classes.get( p );
+				 int word = image.get( index );
+				 store( index, word, BLOCK, NONE, (byte) ( ( word >>> 16 ) & 0xf ),
+							 NONE, word & 0xffff );
+			}
+			for (int p = classes.start( WordClassifier.BRANCH ); p < classes
+						.end( WordClassifier.BRANCH ); p++) {
+				 int index = classes.get( p );
+				 int word = image.get( index );
+				 store( index, word, BRANCH, NONE, NONE, NONE, ( word << 8 ) >> 6 );
+			}
+			for (int p = classes.start( WordClassifier.UNDEFINED ); p < classes
+						.end( WordClassifier.UNDEFINED ); p++) {
+				 int index = classes.get( p );
+				 store( index, image.get( index ), UNDEFINED, NONE, NONE, NONE, 0 );
+			}
+	 }
+
+	 /**
+	  * Returns the destination or first operand register of a data processing
+	  * word, or {@link #NONE} for op codes without one.
+	  * 
+	  * @param int     word
+	  * @param boolean destination true for the destination
+	  * @return byte
+	  */
+	 private static byte data( int word, boolean destination )
+	 {
+			int opCode = ( word >>> 21 ) & 0xf;
+			if (destination) {
+				 return NO_RD[opCode] ? NONE : (byte) ( ( word >>> 12 ) & 0xf );
+			}
+			return opCode == 13 || opCode == 15 ? NONE
+						: (byte) ( ( word >>> 16 ) & 0xf );
+	 }
+
+	 /**
+	  * Stores the columns of one word, without a shift.
+	  */
+	 private void store( int index, int word, byte kind, byte destination,
+				 byte first, byte register, int immediate )
+	 {
+			int s = index >>> SHIFT;
+			int i = index & ( SEGMENT - 1 );
+			words[s].put( i, word );
+			immediates[s].put( i, immediate );
+			defs[s].put( i, (short) DefUseIndex.defsOf( word ) );
+			uses[s].put( i, (short) DefUseIndex.usesOf( word ) );
+			kinds[s].put( i, kind );
+			conditions[s].put( i, (byte) ( word >>> 28 ) );
+			opcodes[s].put( i, (byte) ( ( word >>> 21 ) & 0xf ) );
+			rd[s].put( i, destination );
+			rn[s].put( i, first );
+			rm[s].put( i, register );
+			rs[s].put( i, NONE );
+			shiftTypes[s].put( i, NONE );
+			shiftAmounts[s].put( i, (byte) 0 );
+	 }
+
+	 /**
+	  * Decodes the shift of a register operand.
+	  */
+	 private void shift( int index, int op2 )
+	 {
+			int s = index >>> SHIFT;
+			int i = index & ( SEGMENT - 1 );
+			int type = ( op2 >>> 5 ) & 3;
+			if (( op2 & 0x10 ) != 0) {
+				 rs[s].put( i, (byte) ( op2 >>> 8 ) );
+				 shiftTypes[s].put( i, (byte) type );
+				 return;
+			}
+			int amount = op2 >>> 7;
+			if (amount == 0 && type == ROR) {
+				 shiftTypes[s].put( i, RRX );
+			} else {
+				 shiftTypes[s].put( i, (byte) type );
+				 shiftAmounts[s].put( i,
+							 (byte) ( amount == 0 && type != LSL ? 32 : amount ) );
+			}
+	 }
+
+	 /**
+	  * Returns a column of a segment: a view of part of its buffer.
+	  * 
+	  * @param ByteBuffer segment
+	  * @param int        offset first byte
+	  * @param int        length bytes
+	  * @return ByteBuffer
+	  */
+	 private static ByteBuffer column( ByteBuffer segment, int offset, int length )
+	 {
+			ByteBuffer column = segment.duplicate();
+			column.position( offset ).limit( offset + length );
+			return column.slice().order( ByteOrder.nativeOrder() );
+	 }
+
+	 /**
+	  * Returns direct buffers for the segments of a decoded image.
+	  * 
+	  * @param int size instructions
+	  * @return ByteBuffer[] segments
+	  */
+	 private static ByteBuffer[] direct( int size )
+	 {
+			ByteBuffer[] segments = new ByteBuffer[( size + SEGMENT - 1 ) >>> SHIFT];
+			for (int s = 0; s < segments.length; s++) {
+				 int capacity = Math.min( SEGMENT, size - ( s << SHIFT ) );
+				 segments[s] = ByteBuffer.allocateDirect( capacity * BYTES );
+			}
+			return segments;
+	 }
+
+	 /**
+	  * Returns buffers for the segments of a decoded image mapped from a
+	  * temporary file. The file is deleted once mapped (or, where mapped files
+	  * cannot be deleted, on exit).
+	  * 
+	  * @param int  size instructions
+	  * @param Path directory for the file (null for the default)
+	  * @return ByteBuffer[] segments
+	  * @throws IOException
+	  */
+	 private static ByteBuffer[] mapped( int size, Path directory )
+				 throws IOException
+	 {
+			ByteBuffer[] segments = new ByteBuffer[( size + SEGMENT - 1 ) >>> SHIFT];
+			Path path = directory == null ? Files.createTempFile( "decoded", ".tmp" )
+						: Files.createTempFile( directory, "decoded", ".tmp" );
+			try (FileChannel channel = FileChannel.open( path,
+						StandardOpenOption.READ, StandardOpenOption.WRITE )) {
+				 for (int s = 0; s < segments.length; s++) {
+						int capacity = Math.min( SEGMENT, size - ( s << SHIFT ) );
+						segments[s] = channel.map( FileChannel.MapMode.READ_WRITE,
+									(long) ( s << SHIFT ) * BYTES, (long) capacity * BYTES );
+				 }
+			}
+			try {
+				 Files.delete( path );
+			} catch (IOException e) {
+				 path.toFile().deleteOnExit();
+			}
+			return segments;
+	 }
+
+	 /**
+	  * Decodes every word of an image into segment buffers.
+	  * 
+	  * @param Image        image
+	  * @param ByteBuffer[] segments
+	  */
+	 private DecodedImage( Image image, ByteBuffer[] segments )
+	 {
+			super();
+			this.image = image;
+			this.size = image.size();
+			this.words = new IntBuffer[segments.length];
+			this.immediates = new IntBuffer[segments.length];
+			this.defs = new ShortBuffer[segments.length];
+			this.uses = new ShortBuffer[segments.length];
+			this.kinds = new ByteBuffer[segments.length];
+			this.conditions = new ByteBuffer[segments.length];
+			this.opcodes = new ByteBuffer[segments.length];
+			this.rd = new ByteBuffer[segments.length];
+			this.rn = new ByteBuffer[segments.length];
+			this.rm = new ByteBuffer[segments.length];
+			this.rs = new ByteBuffer[segments.length];
+			this.shiftTypes = new ByteBuffer[segments.length];
+			this.shiftAmounts = new ByteBuffer[segments.length];
+			for (int s = 0; s < segments.length; s++) {
+				 int c = segments[s].capacity() / BYTES;
+				 words[s] = column( segments[s], 0, 4 * c ).asIntBuffer();
+				 immediates[s] = column( segments[s], 4 * c, 4 * c ).asIntBuffer();
+				 defs[s] = column( segments[s], 8 * c, 2 * c ).asShortBuffer();
+				 uses[s] = column( segments[s], 10 * c, 2 * c ).asShortBuffer();
+				 kinds[s] = column( segments[s], 12 * c, c );
+				 conditions[s] = column( segments[s], 13 * c, c );
+				 opcodes[s] = column( segments[s], 14 * c, c );
+				 rd[s] = column( segments[s], 15 * c, c );
+				 rn[s] = column( segments[s], 16 * c, c );
+				 rm[s] = column( segments[s], 17 * c, c );
+				 rs[s] = column( segments[s], 18 * c, c );
+				 shiftTypes[s] = column( segments[s], 19 * c, c );
+				 shiftAmounts[s] = column( segments[s], 20 * c, c );
+			}
+			TableSet tables = TableSet.current();
+			IntStream.range( 0, ( size + CHUNK - 1 ) / CHUNK ).parallel()
+						.forEach( c -> decode( tables, c * CHUNK,
+									 Math.min( size, ( c + 1 ) * CHUNK ) ) );
+	 }
+
+	 /**
+	  * Standard constructor. Decodes every word of an image into direct
+	  * buffers, freed when the decoded image is collected.
+	  * 
+	  * @param Image image
+	  */
+	 public DecodedImage( Image image )
+	 {
+			this( image, direct( image.size() ) );
+	 }
+
+	 /**
+	  * Standard constructor. Decodes every word of an image into a memory
+	  * mapped temporary file, so that images larger than the direct memory
+	  * limit are paged by the operating system.
+	  * 
+	  * @param Image image
+	  * @param Path  directory for the temporary file (null for the default)
+	  * @throws IOException
+	  */
+	 public DecodedImage( Image image, Path directory ) throws IOException
+	 {
+			this( image, mapped( image.size(), directory ) );
+	 }
+
+}
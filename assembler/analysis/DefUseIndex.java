@@ -0,0 +1,360 @@
+/**
+ *
+ */
+package assembler.analysis;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import assembler.optimizer.Block;
+import assembler.types.Image;
+
+/**
+ * Register def/use cross reference of an image of ARM instruction words.
+ *
+ * The registers every instruction defines and uses are recorded as 16-bit
+ * masks, bit n for register n, and every register has sorted lists of the
+ * instructions defining and using it. Both are built in one parallel pass
+ * over chunks of {@value #CHUNK} words: each chunk computes its masks and
+ * counts its list entries, then fills its part of the lists at offsets
+ * given by the counts of the chunks before it. Queries are binary searches
+ * of the lists, so take O(log n) plus the size of the answer.
+ *
+ * Conditional instructions count as definitions of their destination. B and
+ * BL define the PC (and LR), BX and BLX use their target register; other
+ * instructions outside the data processing, multiply and load/store classes
+ * are recorded without registers.
+ */
+public class DefUseIndex
+{
+
+	 /**
+	  * {@value #CHUNK} Words indexed by one task
+	  */
+	 public static final int CHUNK = 1 << 16;
+
+	 /**
+	  * {@value #LR} Link register bit
+	  */
+	 private static final int LR = 1 << 14;
+
+	 /**
+	  * {@value #NONE} Empty answer
+	  */
+	 private static final int[] NONE = new int[0];
+
+	 /**
+	  * {@link Image} Code
+	  */
+	 private final Image image;
+
+	 /**
+	  * {@link DecodedImage} Decoded image holding the masks (null if they are
+	  * held here)
+	  */
+	 private final DecodedImage decoded;
+
+	 /**
+	  * {@value #defs} Registers defined by every instruction
+	  */
+	 private final short[] defs;
+
+	 /**
+	  * {@value #uses} Registers used by every instruction
+	  */
+	 private final short[] uses;
+
+	 /**
+	  * {@value #definitions} Instructions defining each register, in order
+	  */
+	 private final int[][] definitions = new int[16][];
+
+	 /**
+	  * {@value #readers} Instructions using each register, in order
+	  */
+	 private final int[][] readers = new int[16][];
+
+	 /**
+	  * @return Image code
+	  */
+	 public Image getImage()
+	 {
+			return image;
+	 }
+
+	 /**
+	  * @param int index instruction
+	  * @return int registers defined
+	  */
+	 public int getDefs( int index )
+	 {
+			return decoded != null ? decoded.getDefs( index ) : defs[index] & 0xffff;
+	 }
+
+	 /**
+	  * @param int index instruction
+	  * @return int registers used
+	  */
+	 public int getUses( int index )
+	 {
+			return decoded != null ? decoded.getUses( index ) : uses[index] & 0xffff;
+	 }
+
+	 /**
+	  * Returns the registers an instruction word defines.
+	  * 
+	  * @param int word
+	  * @return int mask
+	  */
+	 public static int defsOf( int word )
+	 {
+			if (Block.kindOf( word ) != Block.OTHER) {
+				 return Block.defsOf( word ) & 0xffff;
+			} else if (Block.isBranch( word )) {
+				 return Block.PC | ( ( word & 0x1000000 ) != 0 ? LR : 0 );
+			} else if (Block.isExchange( word )) {
+				 return Block.PC | ( ( word & 0x20 ) != 0 ? LR : 0 );
+			}
+			return 0;
+	 }
+
+	 /**
+	  * Returns the registers an instruction word uses.
+	  * 
+	  * @param int word
+	  * @return int mask
+	  */
+	 public static int usesOf( int word )
+	 {
+			if (Block.kindOf( word ) != Block.OTHER) {
+				 return Block.operandsOf( word ) & 0xffff;
+			} else if (Block.isExchange( word )) {
+				 return 1 << ( word & 0xf );
+			}
+			return 0;
+	 }
+
+	 /**
+	  * Returns the nearest instruction before an index that defines a
+	  * register.
+	  * 
+	  * @param int register
+	  * @param int index instruction
+	  * @return int instruction, or -1 if there is none
+	  */
+	 public int previousDefinition( int register, int index )
+	 {
+			int[] list = definitions[register];
+			int position = lowerBound( list, index ) - 1;
+			return position >= 0 ? list[position] : -1;
+	 }
+
+	 /**
+	  * Returns the nearest instruction after an index that defines a register.
+	  * 
+	  * @param int register
+	  * @param int index instruction
+	  * @return int instruction, or -1 if there is none
+	  */
+	 public int nextDefinition( int register, int index )
+	 {
+			int[] list = definitions[register];
+			int position = lowerBound( list, index + 1 );
+			return position < list.length ? list[position] : -1;
+	 }
+
+	 /**
+	  * Returns the instructions in a range that use a register.
+	  * 
+	  * @param int register
+	  * @param int from first instruction
+	  * @param int to instruction after the last
+	  * @return int[] instructions, in order
+	  */
+	 public int[] uses( int register, int from, int to )
+	 {
+			return range( readers[register], from, to );
+	 }
+
+	 /**
+	  * Returns the instructions in a range that define a register.
+	  * 
+	  * @param int register
+	  * @param int from first instruction
+	  * @param int to instruction after the last
+	  * @return int[] instructions, in order
+	  */
+	 public int[] definitions( int register, int from, int to )
+	 {
+			return range( definitions[register], from, to );
+	 }
+
+	 /**
+	  * Returns the instructions in a range that define or use any register of
+	  * a set, merging the lists of every register in the set.
+	  * 
+	  * @param int mask registers
+	  * @param int from first instruction
+	  * @param int to instruction after the last
+	  * @return int[] instructions, in order
+	  */
+	 public int[] touching( int mask, int from, int to )
+	 {
+			int[][] lists = new int[32][];
+			int[] heads = new int[32];
+			int[] ends = new int[32];
+			int count = 0;
+			int size = 0;
+			for (int r = 0; r < 16; r++) {
+				 if (( mask & ( 1 << r ) ) != 0) {
+						for (int[] list : new int[][] { definitions[r], readers[r] }) {
+							 lists[count] = list;
+							 heads[count] = lowerBound( list, from );
+							 ends[count] = lowerBound( list, to );
+							 size += ends[count] - heads[count];
+							 count++;
+						}
+				 }
+			}
+			int[] result = new int[size];
+			int length = 0;
+			while (true) {
+				 int next = Integer.MAX_VALUE;
+				 for (int k = 0; k < count; k++) {
+						if (heads[k] < ends[k]) {
+							 next = Math.min( next, lists[k][heads[k]] );
+						}
+				 }
+				 if (next == Integer.MAX_VALUE) {
+						break;
+				 }
+				 result[length++] = next;
+				 for (int k = 0; k < count; k++) {
+						if (heads[k] < ends[k] && lists[k][heads[k]] == next) {
+							 heads[k]++;
+						}
+				 }
+			}
+			return Arrays.copyOf( result, length );
+	 }
+
+	 /**
+	  * Returns the part of a sorted list in a range.
+	  */
+	 private static int[] range( int[] list, int from, int to )
+	 {
+			int first = lowerBound( list, from );
+			int last = lowerBound( list, to );
+			return last > first ? Arrays.copyOfRange( list, first, last ) : NONE;
+	 }
+
+	 /**
+	  * Returns the position of the first entry of a sorted list not below a
+	  * value.
+	  */
+	 private static int lowerBound( int[] list, int value )
+	 {
+			int low = 0;
+			int high = list.length;
+			while (low < high) {
+				 int middle = ( low + high ) >>> 1;
+				 if (list[middle] < value) {
+						low = middle + 1;
+				 } else {
+						high = middle;
+				 }
+			}
+			return low;
+	 }
+
+	 /**
+	  * Builds the lists, and the masks unless they are already decoded.
+	  * 
+	  * @param boolean decode compute the masks from the words
+	  */
+	 private void build( boolean decode )
+	 {
+			int n = image.size();
+			int chunks = ( n + CHUNK - 1 ) / CHUNK;
+			// Entries of each register list in each chunk: defs 0-15, uses 16-31
+			int[][] counts = new int[chunks][32];
+			IntStream.range( 0, chunks ).parallel().forEach( c -> {
+				 int[] count = counts[c];
+				 for (int i = c * CHUNK; i < Math.min( n, ( c + 1 ) * CHUNK ); i++) {
+						if (decode) {
+							 int word = image.get( i );
+							 defs[i] = (short) defsOf( word );
+							 uses[i] = (short) usesOf( word );
+						}
+						int d = getDefs( i );
+						int u = getUses( i );
+						for (; d != 0; d &= d - 1) {
+							 count[Integer.numberOfTrailingZeros( d )]++;
+						}
+						for (; u != 0; u &= u - 1) {
+							 count[16 + Integer.numberOfTrailingZeros( u )]++;
+						}
+				 }
+			} );
+
+			// Offsets of each chunk in each list
+			int[] totals = new int[32];
+			for (int c = 0; c < chunks; c++) {
+				 for (int r = 0; r < 32; r++) {
+						int count = counts[c][r];
+						counts[c][r] = totals[r];
+						totals[r] += count;
+				 }
+			}
+			for (int r = 0; r < 16; r++) {
+				 definitions[r] = new int[totals[r]];
+				 readers[r] = new int[totals[16 + r]];
+			}
+
+			IntStream.range( 0, chunks ).parallel().forEach( c -> {
+				 int[] offset = counts[c];
+				 for (int i = c * CHUNK; i < Math.min( n, ( c + 1 ) * CHUNK ); i++) {
+						for (int d = getDefs( i ); d != 0; d &= d - 1) {
+							 int r = Integer.numberOfTrailingZeros( d );
+							 definitions[r][offset[r]++] = i;
+						}
+						for (int u = getUses( i ); u != 0; u &= u - 1) {
+							 int r = Integer.numberOfTrailingZeros( u );
+							 readers[r][offset[16 + r]++] = i;
+						}
+				 }
+			} );
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param Image image code
+	  */
+	 public DefUseIndex( Image image )
+	 {
+			super();
+			this.image = image;
+			this.decoded = null;
+			this.defs = new short[image.size()];
+			this.uses = new short[image.size()];
+			this.build( true );
+	 }
+
+	 /**
+	  * Standard constructor. The masks of a decoded image are shared, not
+	  * computed again.
+	  * 
+	  * @param DecodedImage decoded
+	  */
+	 public DefUseIndex( DecodedImage decoded )
+	 {
+			super();
+			this.image = decoded.getImage();
+			this.decoded = decoded;
+			this.defs = null;
+			this.uses = null;
+			this.build( false );
+	 }
+
+}
@@ -0,0 +1,371 @@
+/**
+ *
+ */
+package assembler.analysis;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import assembler.exceptions.InvalidCodeException;
+import assembler.io.Renderer;
+import assembler.types.Image;
+
+/**
+ * Instruction level diff of two images of ARM instruction words.
+ *
+ * Every window of {@value #WINDOW} words of both images is hashed with a
+ * polynomial rolling hash, in parallel over chunks of {@value #CHUNK} words,
+ * and the (hash, index) pairs of each image are sorted into an index. The
+ * images are then walked together: equal words are skipped, and at the first
+ * difference the nearest window that appears in both images after it (by the
+ * number of words skipped in either image) is looked up in the indices and
+ * checked word by word. The words before it are reported as a changed run,
+ * with the words left over in one image as deleted or inserted, and the walk
+ * goes on from the match, so an insertion only costs the words inserted.
+ * Mostly identical images are thus diffed in linear time plus O(log n) per
+ * difference, and runs are written as they are found.
+ *
+ * Runs are written as "@@ -a,n +b,m @@ kind" headers, a and b being the
+ * addresses in each image, followed by the words of the first image as
+ * "-address: word text" and those of the second as "+address: word text"
+ * lines, rendered as {@link assembler.core.Instruction#toString()}.
+ */
+public class ImageDiff
+{
+
+	 /**
+	  * {@value #WINDOW} Words hashed together
+	  */
+	 public static final int WINDOW = 8;
+
+	 /**
+	  * {@value #CHUNK} Windows hashed by one task
+	  */
+	 public static final int CHUNK = 1 << 16;
+
+	 /**
+	  * {@value #CHANGED} Run of words replaced by as many others
+	  */
+	 public static final byte CHANGED = 0;
+
+	 /**
+	  * {@value #DELETED} Run of words only in the first image
+	  */
+	 public static final byte DELETED = 1;
+
+	 /**
+	  * {@value #INSERTED} Run of words only in the second image
+	  */
+	 public static final byte INSERTED = 2;
+
+	 /**
+	  * {@value #KINDS} Run kind names
+	  */
+	 private static final String[] KINDS = { "changed", "deleted", "inserted" };
+
+	 /**
+	  * {@value #MULTIPLIER} Hash multiplier
+	  */
+	 private static final int MULTIPLIER = 0x01000193;
+
+	 /**
+	  * {@link Image} First image
+	  */
+	 private final Image before;
+
+	 /**
+	  * {@link Image} Second image
+	  */
+	 private final Image after;
+
+	 /**
+	  * {@value #beforeIndex} Window (hash, index) pairs of the first image,
+	  * sorted
+	  */
+	 private final long[] beforeIndex;
+
+	 /**
+	  * {@value #afterIndex} Window (hash, index) pairs of the second image,
+	  * sorted
+	  */
+	 private final long[] afterIndex;
+
+	 /**
+	  * {@value #runs} Runs found by each kind
+	  */
+	 private final int[] runs = new int[3];
+
+	 /**
+	  * {@value #words} Words in runs of each kind (for changed runs, the words
+	  * of each image)
+	  */
+	 private final long[] words = new long[3];
+
+	 /**
+	  * @param byte kind
+	  * @return int runs of a kind found by the last diff
+	  */
+	 public int getRuns( byte kind )
+	 {
+			return runs[kind];
+	 }
+
+	 /**
+	  * @param byte kind
+	  * @return long words in runs of a kind found by the last diff
+	  */
+	 public long getWords( byte kind )
+	 {
+			return words[kind];
+	 }
+
+	 /**
+	  * @return String counts of the last diff
+	  */
+	 public String getSummary()
+	 {
+			return String.format( "changed %d/%d, deleted %d/%d, inserted %d/%d",
+						runs[CHANGED], words[CHANGED], runs[DELETED], words[DELETED],
+						runs[INSERTED], words[INSERTED] );
+	 }
+
+	 /**
+	  * Returns the name of a run kind.
+	  * 
+	  * @param byte kind
+	  * @return String
+	  */
+	 public static String kindName( byte kind )
+	 {
+			return KINDS[kind];
+	 }
+
+	 /**
+	  * Compares the images and writes every run of differing words.
+	  * 
+	  * @param Appendable out
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public void diff( Appendable out ) throws IOException, InvalidCodeException
+	 {
+			Arrays.fill( runs, 0 );
+			Arrays.fill( words, 0 );
+			Renderer renderer = new Renderer();
+			int n = before.size();
+			int m = after.size();
+			int i = 0;
+			int j = 0;
+			while (i < n || j < m) {
+				 while (i < n && j < m && before.get( i ) == after.get( j )) {
+						i++;
+						j++;
+				 }
+				 if (i == n && j == m) {
+						break;
+				 }
+				 // Nearest window of each image found again in the other
+				 int nextI = n;
+				 int nextJ = m;
+				 for (int k = 0; k < ( nextI - i ) + ( nextJ - j ); k++) {
+						boolean searched = false;
+						if (i + k + WINDOW <= n) {
+							 searched = true;
+							 int found = find( afterIndex, after, before, i + k, j );
+							 if (found >= 0 && k + found - j < ( nextI - i ) + ( nextJ - j )) {
+									nextI = i + k;
+									nextJ = found;
+							 }
+						}
+						if (j + k + WINDOW <= m) {
+							 searched = true;
+							 int found = find( beforeIndex, before, after, j + k, i );
+							 if (found >= 0 && found - i + k < ( nextI - i ) + ( nextJ - j )) {
+									nextI = found;
+									nextJ = j + k;
+							 }
+						}
+						if (!searched) {
+							 break;
+						}
+				 }
+				 int common = Math.min( nextI - i, nextJ - j );
+				 write( CHANGED, i, i + common, j, j + common, renderer, out );
+				 write( DELETED, i + common, nextI, j + common, j + common, renderer,
+							 out );
+				 write( INSERTED, i + common, i + common, j + common, nextJ, renderer,
+							 out );
+				 i = nextI;
+				 j = nextJ;
+			}
+	 }
+
+	 /**
+	  * Writes a run, if it is not empty.
+	  */
+	 private void write( byte kind, int fromI, int toI, int fromJ, int toJ,
+				 Renderer renderer, Appendable out )
+				 throws IOException, InvalidCodeException
+	 {
+			if (fromI == toI && fromJ == toJ) {
+				 return;
+			}
+			runs[kind]++;
+			words[kind] += Math.max( toI - fromI, toJ - fromJ );
+			out.append( "@@ -" );
+			renderer.appendHex( before.getAddress( fromI ), 8, out );
+			out.append( ',' );
+			renderer.appendInt( toI - fromI, out );
+			out.append( " +" );
+			renderer.appendHex( after.getAddress( fromJ ), 8, out );
+			out.append( ',' );
+			renderer.appendInt( toJ - fromJ, out );
+			out.append( " @@ " ).append( KINDS[kind] ).append( '\n' );
+			for (int i = fromI; i < toI; i++) {
+				 line( '-', before, i, renderer, out );
+			}
+			for (int j = fromJ; j < toJ; j++) {
+				 line( '+', after, j, renderer, out );
+			}
+	 }
+
+	 /**
+	  * Writes one word of an image.
+	  */
+	 private static void line( char sign, Image image, int index,
+				 Renderer renderer, Appendable out )
+				 throws IOException, InvalidCodeException
+	 {
+			int word = image.get( index );
+			out.append( sign );
+			renderer.appendHex( image.getAddress( index ), 8, out );
+			out.append( ":\t" );
+			renderer.appendHex( word, 8, out );
+			out.append( '\t' );
+			if (Renderer.isValid( word )) {
+				 renderer.render( word, image.getAddress( index ), out );
+			} else {
+				 out.append( "<undefined>" );
+			}
+			out.append( '\n' );
+	 }
+
+	 /**
+	  * Returns the first window of an indexed image at or after an index that
+	  * holds the same words as a window of another image, or -1.
+	  * 
+	  * @param long[] index sorted (hash, index) pairs of the indexed image
+	  * @param Image  indexed image
+	  * @param Image  other image
+	  * @param int    window first word of the window in the other image
+	  * @param int    from first index to return
+	  * @return int
+	  */
+	 private static int find( long[] index, Image indexed, Image other,
+				 int window, int from )
+	 {
+			long hash = hash( other, window ) & 0xffffffffL;
+			int position = lowerBound( index, hash << 32 | from );
+			for (; position < index.length && index[position] >>> 32 == hash; position++) {
+				 int candidate = (int) index[position];
+				 int k = 0;
+				 while (k < WINDOW
+							 && indexed.get( candidate + k ) == other.get( window + k )) {
+						k++;
+				 }
+				 if (k == WINDOW) {
+						return candidate;
+				 }
+			}
+			return -1;
+	 }
+
+	 /**
+	  * Returns the hash of the window of an image at an index.
+	  */
+	 private static int hash( Image image, int index )
+	 {
+			int hash = 0;
+			for (int k = 0; k < WINDOW; k++) {
+				 hash = hash * MULTIPLIER + mix( image.get( index + k ) );
+			}
+			return hash;
+	 }
+
+	 /**
+	  * Spreads the bits of a word, so that words differing in few bits hash
+	  * apart.
+	  */
+	 private static int mix( int word )
+	 {
+			word *= 0x9e3779b9;
+			return word ^ ( word >>> 16 );
+	 }
+
+	 /**
+	  * Returns the position of the first entry of a sorted array not below a
+	  * value.
+	  */
+	 private static int lowerBound( long[] array, long value )
+	 {
+			int low = 0;
+			int high = array.length;
+			while (low < high) {
+				 int middle = ( low + high ) >>> 1;
+				 if (array[middle] < value) {
+						low = middle + 1;
+				 } else {
+						high = middle;
+				 }
+			}
+			return low;
+	 }
+
+	 /**
+	  * Returns the sorted (hash, index) pairs of every window of an image. Each
+	  * chunk hashes its first window and rolls the hash along the rest.
+	  * 
+	  * @param Image image
+	  * @return long[]
+	  */
+	 private static long[] index( Image image )
+	 {
+			int n = Math.max( 0, image.size() - WINDOW + 1 );
+			long[] index = new long[n];
+			int power = 1;
+			for (int k = 1; k < WINDOW; k++) {
+				 power *= MULTIPLIER;
+			}
+			int top = power;
+			IntStream.range( 0, ( n + CHUNK - 1 ) / CHUNK ).parallel().forEach( c -> {
+				 int first = c * CHUNK;
+				 int hash = hash( image, first );
+				 for (int i = first; i < Math.min( n, first + CHUNK ); i++) {
+						if (i > first) {
+							 hash = ( hash - top * mix( image.get( i - 1 ) ) ) * MULTIPLIER
+										 + mix( image.get( i + WINDOW - 1 ) );
+						}
+						index[i] = ( hash & 0xffffffffL ) << 32 | i;
+				 }
+			} );
+			Arrays.parallelSort( index );
+			return index;
+	 }
+
+	 /**
+	  * Standard constructor. Indexes both images.
+	  * 
+	  * @param Image before first image
+	  * @param Image after second image
+	  */
+	 public ImageDiff( Image before, Image after )
+	 {
+			super();
+			this.before = before;
+			this.after = after;
+			this.beforeIndex = index( before );
+			this.afterIndex = index( after );
+	 }
+
+}
@@ -0,0 +1,359 @@
+/**
+ *
+ */
+package assembler.analysis;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import assembler.core.Instruction;
+import assembler.exceptions.InvalidCodeException;
+import assembler.types.Code;
+import assembler.types.Image;
+
+/**
+ * Search of an image for instructions matching a template, without
+ * decoding.
+ *
+ * A template is written in assembly syntax with '?' wildcards: after the
+ * mnemonic for any condition (ldr?), after '#' for any immediate
+ * (ldr ?, [sp, #?]) and elsewhere for any register or immediate operand.
+ * Several instructions separated by ';' match consecutive words. Each
+ * instruction is compiled with the assembler itself: it is encoded with
+ * every wildcard set to a series of probe values, and the bits that change
+ * are the wildcard's, the rest are fixed, giving (mask, value) pairs that
+ * a word matches if (word &amp; mask) == value. A wildcard that can be
+ * encoded in more than one form (a register or an immediate, an ADD of a
+ * negative immediate encoded as SUB) gives a pair for each form.
+ *
+ * Images are scanned as raw words in parallel over chunks of
+ * {@value #CHUNK} words.
+ */
+public class PatternSearch
+{
+
+	 /**
+	  * {@value #CHUNK} Words scanned by one task
+	  */
+	 public static final int CHUNK = 1 << 16;
+
+	 /**
+	  * {@value #COND} Condition field
+	  */
+	 private static final int COND = 0xf0000000;
+
+	 /**
+	  * {@value #CONDITIONS} Condition probes (EQ to LE and AL)
+	  */
+	 private static final String[] CONDITIONS = { "", "EQ", "NE", "CS", "CC",
+				 "MI", "PL", "VS", "VC", "HI", "LS", "GE", "LT", "GT", "LE" };
+
+	 /**
+	  * {@value #REGISTERS} Register probes, setting every bit of a register
+	  * field
+	  */
+	 private static final String[] REGISTERS = { "R0", "R1", "R2", "R4", "R8" };
+
+	 /**
+	  * {@value #POSITIVE} Non-negative immediate probes
+	  */
+	 private static final String[] POSITIVE = new String[32];
+
+	 /**
+	  * {@value #NEGATIVE} Negative immediate probes
+	  */
+	 private static final String[] NEGATIVE = new String[62];
+
+	 static {
+			POSITIVE[0] = "#0";
+			for (int k = 0; k < 31; k++) {
+				 POSITIVE[k + 1] = "#" + ( 1 << k );
+				 NEGATIVE[2 * k] = "#" + -( 1 << k );
+				 NEGATIVE[2 * k + 1] = "#" + ( -( 1 << k ) - 1 );
+			}
+	 }
+
+	 /**
+	  * {@value #NONE} No matches
+	  */
+	 private static final int[] NONE = new int[0];
+
+	 /**
+	  * {@value #template} Source template
+	  */
+	 private final String template;
+
+	 /**
+	  * {@value #masks} Alternative masks of every instruction of the sequence
+	  */
+	 private final int[][] masks;
+
+	 /**
+	  * {@value #values} Alternative values of every instruction of the
+	  * sequence
+	  */
+	 private final int[][] values;
+
+	 /**
+	  * @return String source template
+	  */
+	 public String getTemplate()
+	 {
+			return template;
+	 }
+
+	 /**
+	  * @return int instructions in the sequence
+	  */
+	 public int getLength()
+	 {
+			return masks.length;
+	 }
+
+	 /**
+	  * @param int position instruction of the sequence
+	  * @return int[] masks of the alternatives
+	  */
+	 public int[] getMasks( int position )
+	 {
+			return masks[position].clone();
+	 }
+
+	 /**
+	  * @param int position instruction of the sequence
+	  * @return int[] values of the alternatives
+	  */
+	 public int[] getValues( int position )
+	 {
+			return values[position].clone();
+	 }
+
+	 /**
+	  * Returns true if the sequence matches the words of an image from an
+	  * index.
+	  * 
+	  * @param Image image
+	  * @param int   index first word
+	  * @return boolean
+	  */
+	 public boolean matches( Image image, int index )
+	 {
+			if (index < 0 || index + masks.length > image.size()) {
+				 return false;
+			}
+			for (int j = 0; j < masks.length; j++) {
+				 int word = image.get( index + j );
+				 int[] mask = masks[j];
+				 int[] value = values[j];
+				 int k = 0;
+				 while (k < mask.length && ( word & mask[k] ) != value[k]) {
+						k++;
+				 }
+				 if (k == mask.length) {
+						return false;
+				 }
+			}
+			return true;
+	 }
+
+	 /**
+	  * Returns the word indices of an image where the sequence matches.
+	  * 
+	  * @param Image image
+	  * @return int[] first word of every match, in order
+	  */
+	 public int[] find( Image image )
+	 {
+			int n = image.size() - masks.length + 1;
+			if (n <= 0) {
+				 return NONE;
+			}
+			int chunks = ( n + CHUNK - 1 ) / CHUNK;
+			int[][] found = new int[chunks][];
+			IntStream.range( 0, chunks ).parallel().forEach( c -> {
+				 int[] hits = new int[16];
+				 int count = 0;
+				 for (int i = c * CHUNK; i < Math.min( n, ( c + 1 ) * CHUNK ); i++) {
+						if (matches( image, i )) {
+							 if (count == hits.length) {
+									hits = Arrays.copyOf( hits, count * 2 );
+							 }
+							 hits[count++] = i;
+						}
+				 }
+				 found[c] = Arrays.copyOf( hits, count );
+			} );
+			int total = 0;
+			for (int[] hits : found) {
+				 total += hits.length;
+			}
+			int[] result = new int[total];
+			int length = 0;
+			for (int[] hits : found) {
+				 System.arraycopy( hits, 0, result, length, hits.length );
+				 length += hits.length;
+			}
+			return result;
+	 }
+
+	 /**
+	  * Compiles one instruction of a template into (mask, value) pairs.
+	  * 
+	  * @param String line instruction with wildcards
+	  * @return List<int[]> pairs
+	  * @throws InvalidCodeException
+	  */
+	 private static List<int[]> compile( String line ) throws InvalidCodeException
+	 {
+			// Split the line around its wildcards and pick the forms of each
+			List<String> parts = new ArrayList<String>();
+			List<String[][]> forms = new ArrayList<String[][]>();
+			int mnemonic = line.indexOf( ' ' ) < 0 ? line.length() : line.indexOf( ' ' );
+			int start = 0;
+			for (int i = line.indexOf( '?' ); i >= 0; i = line.indexOf( '?', i + 1 )) {
+				 if (i < mnemonic) {
+						parts.add( line.substring( start, i ) );
+						forms.add( new String[][] { CONDITIONS } );
+				 } else if (i > 0 && line.charAt( i - 1 ) == '#') {
+						parts.add( line.substring( start, i - 1 ) );
+						forms.add( new String[][] { POSITIVE, NEGATIVE } );
+				 } else {
+						parts.add( line.substring( start, i ) );
+						forms.add( new String[][] { REGISTERS, POSITIVE, NEGATIVE } );
+				 }
+				 start = i + 1;
+			}
+			parts.add( line.substring( start ) );
+
+			// Encode every combination of forms, varying one wildcard at a time
+			List<int[]> pairs = new ArrayList<int[]>();
+			int wildcards = forms.size();
+			int[] choice = new int[wildcards];
+			String[] probes = new String[wildcards];
+			while (true) {
+				 for (int w = 0; w < wildcards; w++) {
+						probes[w] = forms.get( w )[choice[w]][0];
+				 }
+				 Integer base = encode( parts, probes );
+				 if (base != null) {
+						int varying = 0;
+						for (int w = 0; w < wildcards; w++) {
+							 for (String probe : forms.get( w )[choice[w]]) {
+									probes[w] = probe;
+									Integer word = encode( parts, probes );
+									if (word != null) {
+										 varying |= base ^ word;
+									}
+							 }
+							 probes[w] = forms.get( w )[choice[w]][0];
+						}
+						pairs.add( new int[] { ~varying, base & ~varying } );
+				 }
+				 int w = 0;
+				 while (w < wildcards && ++choice[w] == forms.get( w ).length) {
+						choice[w++] = 0;
+				 }
+				 if (w == wildcards) {
+						break;
+				 }
+			}
+			if (pairs.isEmpty()) {
+				 throw new InvalidCodeException(
+							 String.format( "Pattern '%s' does not assemble.", line ) );
+			}
+			return simplify( pairs );
+	 }
+
+	 /**
+	  * Returns the word a template line assembles to with its wildcards
+	  * replaced, or null if it does not assemble to one word.
+	  */
+	 private static Integer encode( List<String> parts, String[] probes )
+	 {
+			StringBuilder line = new StringBuilder( parts.get( 0 ) );
+			for (int w = 0; w < probes.length; w++) {
+				 line.append( probes[w] ).append( parts.get( w + 1 ) );
+			}
+			try {
+				 BigInteger word = new Instruction( new Code( line.toString() ) )
+							 .getBits().getDecimal();
+				 // Out of range fields can spill over the word
+				 return word.bitLength() <= 32 ? word.intValue() : null;
+			} catch (InvalidCodeException | RuntimeException e) {
+				 return null;
+			}
+	 }
+
+	 /**
+	  * Merges pairs that differ in one fixed bit, drops pairs matching a
+	  * subset of another, and splits pairs with any condition into pairs
+	  * excluding the unconditional space (condition 1111).
+	  */
+	 private static List<int[]> simplify( List<int[]> pairs )
+	 {
+			boolean merged = true;
+			while (merged) {
+				 merged = false;
+				 for (int a = 0; a < pairs.size() && !merged; a++) {
+						for (int b = 0; b < pairs.size() && !merged; b++) {
+							 int[] p = pairs.get( a );
+							 int[] q = pairs.get( b );
+							 int difference = p[1] ^ q[1];
+							 if (a == b) {
+									continue;
+							 } else if (( q[0] & p[0] ) == q[0] && ( p[1] & q[0] ) == q[1]) {
+									// p only matches words q matches
+									pairs.remove( a );
+									merged = true;
+							 } else if (p[0] == q[0] && Integer.bitCount( difference ) == 1) {
+									pairs.set( a, new int[] { p[0] & ~difference, p[1] & ~difference } );
+									pairs.remove( b );
+									merged = true;
+							 }
+						}
+				 }
+			}
+			List<int[]> result = new ArrayList<int[]>();
+			for (int[] pair : pairs) {
+				 if (( pair[0] & COND ) != 0) {
+						result.add( pair );
+						continue;
+				 }
+				 // 0xxx, 10xx, 110x, 1110
+				 for (int bits = 1; bits <= 4; bits++) {
+						int mask = COND << ( 4 - bits ) & COND;
+						int value = ( COND << ( 5 - bits ) ) & mask;
+						result.add( new int[] { pair[0] | mask, pair[1] | value } );
+				 }
+			}
+			return result;
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param String template instructions with wildcards, separated by ';'
+	  * @throws InvalidCodeException
+	  */
+	 public PatternSearch( String template ) throws InvalidCodeException
+	 {
+			super();
+			this.template = template;
+			String[] lines = template.trim().toUpperCase().split( "\\s*;\\s*" );
+			this.masks = new int[lines.length][];
+			this.values = new int[lines.length][];
+			for (int j = 0; j < lines.length; j++) {
+				 List<int[]> pairs = compile( lines[j].trim() );
+				 masks[j] = new int[pairs.size()];
+				 values[j] = new int[pairs.size()];
+				 for (int k = 0; k < pairs.size(); k++) {
+						masks[j][k] = pairs.get( k )[0];
+						values[j][k] = pairs.get( k )[1];
+				 }
+			}
+	 }
+
+}
@@ -0,0 +1,309 @@
+/**
+ *
+ */
+package assembler.analysis;
+
+import java.util.stream.IntStream;
+
+import assembler.io.Renderer;
+import assembler.io.TableSet;
+import assembler.types.Image;
+
+/**
+ * Bulk classifier of ARM instruction words into decoder families.
+ *
+ * A plain scalar classifier: every word of a range of an image is given its
+ * family in turn, looked up from the op type field and overridden by mask
+ * compares for multiplies and halfword transfers. Branches are taken as they
+ * are, BX/BLX are left undefined and every other word is checked with
+ * {@link Renderer#isValid(TableSet, int)}, against the tables current when
+ * classifying starts. The words are then bucketed by family with a counting
+ * sort into one index array, each family holding the ascending indices of
+ * its words, so a decoder can take the words one family at a time. This
+ * groups the words only; it does not make decoding faster than going word by
+ * word. Images are classified in parallel over chunks of {@value #CHUNK}
+ * words.
+ *
+ * Families follow the kinds of {@link DecodedImage}, with data processing
+ * split by the form of its second operand.
+ */
+public class WordClassifier
+{
+
+	 /**
+	  * {@value #CHUNK} Words classified by one task
+	  */
+	 public static final int CHUNK = 1 << 16;
+
+	 /**
+	  * {@value #DATA_IMMEDIATE} Data processing with an immediate operand
+	  */
+	 public static final byte DATA_IMMEDIATE = 0;
+
+	 /**
+	  * {@value #DATA_REGISTER} Data processing with a register operand
+	  */
+	 public static final byte DATA_REGISTER = 1;
+
+	 /**
+	  * {@value #MULTIPLY} MUL
+	  */
+	 public static final byte MULTIPLY = 2;
+
+	 /**
+	  * {@value #TRANSFER} Single register load/store
+	  */
+	 public static final byte TRANSFER = 3;
+
+	 /**
+	  * {@value #HALFWORD} Halfword and signed byte load/store
+	  */
+	 public static final byte HALFWORD = 4;
+
+	 /**
+	  * {@value #BLOCK} LDM/STM
+	  */
+	 public static final byte BLOCK = 5;
+
+	 /**
+	  * {@value #BRANCH} B/BL
+	  */
+	 public static final byte BRANCH = 6;
+
+	 /**
+	  * {@value #UNDEFINED} BX/BLX and anything the renderer does not decode
+	  */
+	 public static final byte UNDEFINED = 7;
+
+	 /**
+	  * {@value #FAMILIES} Number of families
+	  */
+	 public static final int FAMILIES = 8;
+
+	 /**
+	  * {@value #BY_TYPE} Family of every op type, before the mask compares
+	  */
+	 private static final byte[] BY_TYPE = { DATA_REGISTER, DATA_IMMEDIATE,
+				 TRANSFER, TRANSFER, BLOCK, BRANCH, UNDEFINED, UNDEFINED };
+
+	 /**
+	  * {@value #offsets} First position of every family in the index array,
+	  * and its length last
+	  */
+	 private final int[] offsets = new int[FAMILIES + 1];
+
+	 /**
+	  * {@value #indices} Image indices of the words, by family
+	  */
+	 private final int[] indices;
+
+	 /**
+	  * @param byte family
+	  * @return int first position of a family
+	  */
+	 public int start( byte family )
+	 {
+			return offsets[family];
+	 }
+
+	 /**
+	  * @param byte family
+	  * @return int position after the last of a family
+	  */
+	 public int end( byte family )
+	 {
+			return offsets[family + 1];
+	 }
+
+	 /**
+	  * @param byte family
+	  * @return int number of words of a family
+	  */
+	 public int count( byte family )
+	 {
+			return offsets[family + 1] - offsets[family];
+	 }
+
+	 /**
+	  * @param int position
+	  * @return int image index of the word at a position
+	  */
+	 public int get( int position )
+	 {
+			return indices[position];
+	 }
+
+	 /**
+	  * Returns the image indices of the words of a family, ascending.
+	  * 
+	  * @param byte family
+	  * @return int[]
+	  */
+	 public int[] indices( byte family )
+	 {
+			int[] batch = new int[count( family )];
+			System.arraycopy( indices, offsets[family], batch, 0, batch.length );
+			return batch;
+	 }
+
+	 /**
+	  * Returns the family of an instruction word with the current tables.
+	  * 
+	  * @param int word
+	  * @return byte
+	  */
+	 public static byte classify( int word )
+	 {
+			return classify( TableSet.current(), word );
+	 }
+
+	 /**
+	  * Returns the family of an instruction word with a set of tables.
+	  * 
+	  * @param TableSet tables
+	  * @param int      word
+	  * @return byte
+	  */
+	 public static byte classify( TableSet tables, int word )
+	 {
+			byte family = BY_TYPE[( word >>> 25 ) & 7];
+			// MUL: op type 0, op code 0 and bits 7-4 1001
+			family = ( word & 0x0fe000f0 ) == 0x00000090 ? MULTIPLY : family;
+			// Halfword: op type 0, bits 7 and 4 set and a non zero SH
+			family = ( word & 0x0e000090 ) == 0x00000090 && ( word & 0x60 ) != 0
+						? HALFWORD : family;
+			if (family == BRANCH && ( word >>> 28 ) != 0xf) {
+				 return BRANCH;
+			}
+			// BX/BLX: op type 0, rendered but not decoded as data processing
+			if (( word & 0x0fffffd0 ) == 0x012fff10) {
+				 return UNDEFINED;
+			}
+			return Renderer.isValid( tables, word ) ? family : UNDEFINED;
+	 }
+
+	 /**
+	  * Classifies a range of an image into an array of families.
+	  * 
+	  * @param TableSet tables
+	  * @param Image    image
+	  * @param int      from first index
+	  * @param int      to index after the last
+	  * @param byte[]   families family of every word, from 0
+	  */
+	 public static void classify( TableSet tables, Image image, int from,
+				 int to, byte[] families )
+	 {
+			for (int i = from; i < to; i++) {
+				 families[i - from] = classify( tables, image.get( i ) );
+			}
+	 }
+
+	 /**
+	  * Classifies a chunk and counts its words of every family.
+	  * 
+	  * @param TableSet tables
+	  * @param Image    image
+	  * @param int      from first index
+	  * @param int      to index after the last
+	  * @param byte[]   families family of every word of the chunk
+	  * @param int[]    counts words of every family
+	  */
+	 private static void count( TableSet tables, Image image, int from, int to,
+				 byte[] families, int[] counts )
+	 {
+			classify( tables, image, from, to, families );
+			for (int i = 0; i < to - from; i++) {
+				 counts[families[i]]++;
+			}
+	 }
+
+	 /**
+	  * Writes the indices of a chunk to the positions of its families.
+	  * 
+	  * @param byte[] families family of every word of the chunk
+	  * @param int    from first index of the chunk
+	  * @param int[]  positions next position of every family, advanced
+	  */
+	 private void scatter( byte[] families, int from, int[] positions )
+	 {
+			for (int i = 0; i < families.length; i++) {
+				 indices[positions[families[i]]++] = from + i;
+			}
+	 }
+
+	 /**
+	  * Standard constructor. Classifies every word of an image in parallel.
+	  * 
+	  * @param Image image
+	  */
+	 public WordClassifier( Image image )
+	 {
+			super();
+			int size = image.size();
+			int chunks = ( size + CHUNK - 1 ) / CHUNK;
+			byte[][] families = new byte[chunks][];
+			int[][] counts = new int[chunks][FAMILIES];
+			TableSet tables = TableSet.current();
+			this.indices = new int[size];
+			IntStream.range( 0, chunks ).parallel().forEach( c -> {
+				 int from = c * CHUNK;
+				 int to = Math.min( size, from + CHUNK );
+				 families[c] = new byte[to - from];
+				 count( tables, image, from, to, families[c], counts[c] );
+			} );
+			// Each chunk writes from where the chunks before it end, per family
+			int position = 0;
+			for (int f = 0; f < FAMILIES; f++) {
+				 offsets[f] = position;
+				 for (int c = 0; c < chunks; c++) {
+						int count = counts[c][f];
+						counts[c][f] = position;
+						position += count;
+				 }
+			}
+			offsets[FAMILIES] = position;
+			IntStream.range( 0, chunks ).parallel()
+						.forEach( c -> scatter( families[c], c * CHUNK, counts[c] ) );
+	 }
+
+	 /**
+	  * Range constructor. Classifies the words of a range of an image on the
+	  * calling thread.
+	  * 
+	  * @param Image image
+	  * @param int   from first index
+	  * @param int   to index after the last
+	  */
+	 public WordClassifier( Image image, int from, int to )
+	 {
+			this( TableSet.current(), image, from, to );
+	 }
+
+	 /**
+	  * Range constructor. Classifies the words of a range of an image on the
+	  * calling thread, with a set of tables.
+	  * 
+	  * @param TableSet tables
+	  * @param Image    image
+	  * @param int      from first index
+	  * @param int      to index after the last
+	  */
+	 public WordClassifier( TableSet tables, Image image, int from, int to )
+	 {
+			super();
+			byte[] families = new byte[to - from];
+			int[] counts = new int[FAMILIES];
+			this.indices = new int[to - from];
+			count( tables, image, from, to, families, counts );
+			int position = 0;
+			for (int f = 0; f < FAMILIES; f++) {
+				 offsets[f] = position;
+				 position += counts[f];
+				 counts[f] = offsets[f];
+			}
+			offsets[FAMILIES] = position;
+			scatter( families, from, counts );
+	 }
+
+}
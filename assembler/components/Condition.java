@@ -4,41 +4,74 @@
  */
 package assembler.components;
 
-import java.sql.*;
-
 import assembler.exceptions.InvalidCodeException;
 import assembler.interfaces.Decodable;
 import assembler.interfaces.Parsable;
-import assembler.interfaces.Queryable;
+import assembler.io.TableSet;
 import assembler.types.Bits;
 import assembler.types.Code;
+import assembler.util.Binary;
 
 /**
  * Class representing Cond Code in ARM Instruction.
  *
+ * Conditions are immutable. There is one canonical instance for every
+ * condition code and S bit, all built from the compiled tables on first use
+ * and served by the {@link #of(Bits, Bits)} factories.
  */
-public class Condition implements Decodable, Parsable, Queryable
+public class Condition implements Decodable, Parsable
 {
 
+	 /**
+	  * Canonical conditions, built when first used. Class initialization
+	  * publishes them safely to every thread.
+	  */
+	 private static final class Table
+	 {
+
+			/**
+			 * {@value #CONDITIONS} Canonical conditions by condition code and S bit
+			 */
+			static final Condition[][] CONDITIONS = new Condition[16][2];
+
+			static {
+				 TableSet tables = TableSet.compiled();
+				 try {
+						for (int code = 0; code < 16; code++) {
+							 String suffix = tables.getCondition( code );
+							 Bits bits = new Bits( Binary.toBinaryString( code, 4 ) );
+							 for (int s = 0; s < 2; s++) {
+									CONDITIONS[code][s] = new Condition( bits,
+												new Bits( String.valueOf( s ) ),
+												"".equals( suffix ) ? "AL" : suffix );
+							 }
+						}
+				 } catch (InvalidCodeException e) {
+						throw new ExceptionInInitializerError( e );
+				 }
+			}
+
+	 }
+
 	 /**
 	  * {@value #bits} Condition bits
 	  */
-	 private Bits bits;
+	 private final Bits bits;
 
 	 /**
 	  * {@value #code} Condition code
 	  */
-	 private Code code;
+	 private final Code code;
 
 	 /**
 	  * {@value #sBit} S Bit
 	  */
-	 private Bits sBit;
+	 private final Bits sBit;
 
 	 /**
 	  * {@value #suffix} Suffix
 	  */
-	 private String suffix;
+	 private final String suffix;
 
 	 /**
 	  * @return Bits bits
@@ -73,134 +106,140 @@ public class Condition implements Decodable, Parsable, Queryable
 	 }
 
 	 /**
+	  * Returns the canonical condition with the same code and another S bit.
+	  * 
 	  * @param Bits sBit
+	  * @return Condition
 	  */
-	 public void setSBit( Bits sBit )
+	 public Condition withSBit( Bits sBit )
 	 {
-			this.sBit = sBit;
+			if (bits == null) {
+				 return new Condition( code, sBit );
+			}
+			return of( bits, sBit );
 	 }
 
-	 @Override
-	 public String toString()
+	 /**
+	  * Returns the canonical condition of a condition code and S bit.
+	  * 
+	  * @param int code condition code
+	  * @param int s S bit
+	  * @return Condition
+	  */
+	 public static Condition of( int code, int s )
 	 {
-			return suffix.matches( "AL" ) ? "" : suffix;
+			return Table.CONDITIONS[code][s];
 	 }
 
-	 @Override
-	 public String toBinaryString()
+	 /**
+	  * Returns the canonical condition of condition code and S bit fields.
+	  * 
+	  * @param Bits bits condition code
+	  * @param Bits sBit
+	  * @return Condition
+	  */
+	 public static Condition of( Bits bits, Bits sBit )
 	 {
-			return bits.toBinaryString();
+			return of( bits.toInteger(), sBit.toInteger() );
 	 }
 
-	 @Override
-	 public Boolean decode() throws InvalidCodeException
-	 {
-			Connection conn = db.getConn();
-			try {
-				 String sql = "SELECT * FROM cond_code WHERE code = ?";
-				 PreparedStatement stmt = conn.prepareStatement( sql );
-				 stmt.setString( 1, bits.toBinaryString() );
-				 ResultSet rs = stmt.executeQuery();
-
-				 while (rs.next()) {
-						this.suffix = rs.getString( "suffix" );
-						this.code = new Code( rs.getString( "suffix" ) );
+	 /**
+	  * Returns the canonical condition of a suffix (AL if blank) and S flag
+	  * (set unless blank). Unknown suffixes give a condition without bits.
+	  * 
+	  * @param Code code suffix
+	  * @param Code sBit S flag
+	  * @return Condition
+	  * @throws InvalidCodeException
+	  */
+	 public static Condition of( Code code, Code sBit ) throws InvalidCodeException
+	 {
+			String suffix = code == null || code.isBlank() ? "AL" : code.toString();
+			int s = sBit == null || sBit.isBlank() ? 0 : 1;
+			for (Condition[] conditions : Table.CONDITIONS) {
+				 if (suffix.equals( conditions[s].getSuffix() )) {
+						return conditions[s];
 				 }
-				 rs.close();
-				 stmt.close();
-				 return true;
-			} catch (SQLException e) {
-				 throw new InvalidCodeException( e.getMessage() );
 			}
+			return new Condition( new Code( suffix ), new Bits( String.valueOf( s ) ) );
 	 }
 
-	 public Boolean parse() throws InvalidCodeException
+	 /**
+	  * Returns the canonical condition of a suffix (AL if blank), with the S bit
+	  * clear.
+	  * 
+	  * @param Code code suffix
+	  * @return Condition
+	  * @throws InvalidCodeException
+	  */
+	 public static Condition of( Code code ) throws InvalidCodeException
 	 {
-			Connection conn = db.getConn();
-			try {
-				 String sql = "SELECT * FROM cond_code WHERE suffix = ?";
-				 PreparedStatement stmt = conn.prepareStatement( sql );
-				 stmt.setString( 1, code.toString() );
-				 ResultSet rs = stmt.executeQuery();
+			return of( code, null );
+	 }
 
-				 while (rs.next()) {
-						this.suffix = rs.getString( "suffix" );
-						this.bits = new Bits( rs.getString( "code" ) );
-				 }
-				 rs.close();
-				 stmt.close();
-				 return true;
-			} catch (SQLException e) {
-				 throw new InvalidCodeException( e.getMessage() );
-			}
+	 @Override
+	 public String toString()
+	 {
+			return suffix.matches( "AL" ) ? "" : suffix;
+	 }
 
+	 @Override
+	 public String toBinaryString()
+	 {
+			return bits.toBinaryString();
 	 }
 
 	 /**
-	  * Simple constructor
+	  * Conditions are decoded when built.
 	  * 
-	  * @throws InvalidCodeException
+	  * @return Boolean true if the condition code is known
 	  */
-	 public Condition() throws InvalidCodeException
+	 @Override
+	 public Boolean decode()
 	 {
-			super();
-			this.code = new Code( "AL" );
-			this.sBit = new Bits( "0" );
-			parse();
+			return suffix != null;
 	 }
 
 	 /**
-	  * Standard constructor
+	  * Conditions are parsed when built.
 	  * 
-	  * @param Code code
-	  * @throws InvalidCodeException
+	  * @return Boolean true if the suffix is known
 	  */
-	 public Condition( Code code ) throws InvalidCodeException
+	 @Override
+	 public Boolean parse()
 	 {
-			super();
-			if (code == null || code.isBlank()) {
-				 code = new Code( "AL" );
-			}
-			this.code = code;
-			this.sBit = new Bits( "0" );
-			parse();
+			return bits != null;
 	 }
 
 	 /**
-	  * Overloaded constructor
-	  * 
-	  * @param Bits bits
-	  * @param Bits sBit
+	  * Canonical condition constructor
 	  * 
+	  * @param Bits   bits
+	  * @param Bits   sBit
+	  * @param String suffix (null for an unknown condition code)
 	  */
-	 public Condition( Bits bits, Bits sBit ) throws InvalidCodeException
+	 private Condition( Bits bits, Bits sBit, String suffix )
 	 {
 			super();
 			this.bits = bits;
 			this.sBit = sBit;
-			decode();
+			this.suffix = suffix;
+			this.code = suffix == null ? null : new Code( suffix );
 	 }
 
 	 /**
-	  * Overloaded constructor
+	  * Unknown suffix constructor
 	  * 
 	  * @param Code code
-	  * @param Code sBit
-	  * @throws InvalidCodeException
+	  * @param Bits sBit
 	  */
-	 public Condition( Code code, Code sBit ) throws InvalidCodeException
+	 private Condition( Code code, Bits sBit )
 	 {
 			super();
-			if (code == null || code.isBlank()) {
-				 code = new Code( "AL" );
-			}
+			this.bits = null;
+			this.sBit = sBit;
+			this.suffix = null;
 			this.code = code;
-			if (sBit == null) {
-				 this.sBit = new Bits( "0" );
-			} else {
-				 this.sBit = new Bits( sBit.isBlank() ? "0" : "1" );
-			}
-			parse();
 	 }
 
 }
@@ -6,6 +6,7 @@ package assembler.components;
 
 import java.util.Map;
 
+import assembler.components.op2types.BlockTransfer;
 import assembler.components.op2types.Immediate;
 import assembler.components.op2types.LoadStore;
 import assembler.components.op2types.MultCd;
@@ -14,6 +15,7 @@ import assembler.exceptions.InvalidCodeException;
 import assembler.interfaces.Decodable;
 import assembler.interfaces.Op2Type;
 import assembler.interfaces.Parsable;
+import assembler.io.TableSet;
 import assembler.types.Bits;
 import assembler.types.Code;
 
@@ -54,6 +56,11 @@ public class Operand2 implements Decodable, Parsable
 	  */
 	 private Condition condition;
 
+	 /**
+	  * {@link TableSet} Tables the operand is parsed with
+	  */
+	 private TableSet tables;
+
 	 /**
 	  * @return Code source code
 	  */
@@ -123,7 +130,7 @@ public class Operand2 implements Decodable, Parsable
 	  */
 	 public Boolean isLoadStore( Code command )
 	 {
-			return command.matches( "LDR|STR" );
+			return command.matches( "(LDR|STR)(SB|SH|B|H)?" );
 	 }
 
 	 /**
@@ -178,7 +185,10 @@ public class Operand2 implements Decodable, Parsable
 			int codeType = op.getCodeType();
 			Bits loadStore = op.getLoadStore();
 
-			if (isMultCd()) {
+			if (op.isBlockTransfer()) {
+				 this.format = "BlockTransfer";
+				 this.value = new BlockTransfer( op2Code, op );
+			} else if (isMultCd()) {
 				 this.format = "multcd";
 				 this.value = new MultCd( op2Code, op );
 			} else if (isLoadStore()) { // Load/Store instruction
@@ -200,6 +210,8 @@ public class Operand2 implements Decodable, Parsable
 			} else {
 				 return false;
 			}
+			// MUL and shifts name the operation after the operand
+			this.op = value.getOperation();
 
 			return true;
 	 }
@@ -207,6 +219,15 @@ public class Operand2 implements Decodable, Parsable
 	 @Override
 	 public Boolean parse() throws InvalidCodeException
 	 {
+			if (BlockTransfer.isBlockTransfer( code )) {
+				 this.format = "BlockTransfer";
+				 this.value = new BlockTransfer( code, tables );
+				 this.op = value.getOperation();
+				 this.op2Code = value.getOp2Code();
+				 this.condition = op.getCondition();
+				 return true;
+			}
+
 			Map<String, Code> parts = extract( code );
 
 			Code command = parts.get( "command" );
@@ -221,23 +242,23 @@ public class Operand2 implements Decodable, Parsable
 
 			if (isMultCd( command )) {
 				 this.format = "multcd";
-				 this.value = new MultCd( code, condition );
+				 this.value = new MultCd( code, condition, tables );
 			} else if (isLoadStore( command )) { // Load/Store instruction
 				 if (codeType == 0) { // Immediate Instruction
 						this.format = "Immediate";
-						this.value = new LoadStore( code, condition );
+						this.value = new LoadStore( code, condition, tables );
 				 } else if (codeType == 1) { // Register Instruction
 						this.format = "Register";
-						this.value = new LoadStore( code, condition );
+						this.value = new LoadStore( code, condition, tables );
 				 } else {
 						return false;
 				 }
 			} else if (codeType == 0) { // Immediate Instruction
 				 this.format = "Immediate";
-				 this.value = new Immediate( code, condition );
+				 this.value = new Immediate( code, condition, tables );
 			} else if (codeType == 1) { // Register Instruction
 				 this.format = "Register";
-				 this.value = new Register( code, condition );
+				 this.value = new Register( code, condition, tables );
 			} else {
 				 throw new InvalidCodeException();
 			}
@@ -272,7 +293,7 @@ public class Operand2 implements Decodable, Parsable
 	 }
 
 	 /**
-	  * Standard constructor
+	  * Standard constructor. Parses with the current tables.
 	  * 
 	  * @param Code      code
 	  * @param Condition condition
@@ -280,10 +301,25 @@ public class Operand2 implements Decodable, Parsable
 	  */
 	 public Operand2( Code code, Condition condition )
 				 throws InvalidCodeException
+	 {
+			this( code, condition, TableSet.current() );
+	 }
+
+	 /**
+	  * Pinned constructor. Parses with a set of tables.
+	  * 
+	  * @param Code      code
+	  * @param Condition condition
+	  * @param TableSet  tables
+	  * @throws InvalidCodeException
+	  */
+	 public Operand2( Code code, Condition condition, TableSet tables )
+				 throws InvalidCodeException
 	 {
 			super();
 			this.code = code;
 			this.condition = condition;
+			this.tables = tables;
 			this.parse();
 	 }
 
@@ -301,6 +337,7 @@ public class Operand2 implements Decodable, Parsable
 			super();
 			this.code = code;
 			this.op = op;
+			this.tables = op.getTables();
 			this.parse();
 	 }
 
@@ -316,7 +353,7 @@ public class Operand2 implements Decodable, Parsable
 	 {
 			super();
 			this.op2Code = op2Code;
-			this.op = new Operation( opType, opCode );
+			this.op = Operation.of( opType, opCode, null, null, null );
 			this.decode();
 	 }
 
@@ -4,69 +4,142 @@
  */
 package assembler.components;
 
-import java.sql.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import assembler.exceptions.InvalidCodeException;
 import assembler.interfaces.Decodable;
 import assembler.interfaces.Parsable;
-import assembler.interfaces.Queryable;
+import assembler.io.TableSet;
 import assembler.types.Bits;
 
 /**
  * Class representing Op Type & Code in ARM Instruction.
  *
+ * Operations are immutable. The
+ * {@link #of(Bits, Bits, Bits, Condition, Bits)} factories serve a canonical
+ * instance for every op type, op code, S bit, condition and transfer size,
+ * decoded with the {@link TableSet} of the call on first use, and
+ * {@link #withInstruction(String)} gives the variants named after the
+ * operand (LSL, MUL). Both tables are safe to use from several threads.
+ *
+ * A canonical operation remembers the set it was decoded with. When a call
+ * asks for it with another set, as after a reload, it is decoded again with
+ * that set and replaces the cached one.
  */
-public class Operation implements Decodable, Parsable, Queryable
+public class Operation implements Decodable, Parsable
 {
 
+	 /**
+	  * {@value #SIZES} Transfer sizes: none, then SH bits 00 to 11
+	  */
+	 private static final int SIZES = 5;
+
+	 /**
+	  * {@value #CONDITIONS} Conditions: codes 0000 to 1111 with the S bit clear
+	  * and set, then none
+	  */
+	 private static final int CONDITIONS = 33;
+
+	 /**
+	  * {@value #S_BITS} S bits: 0, 1, then none
+	  */
+	 private static final int S_BITS = 3;
+
+	 /**
+	  * {@value #OPERATIONS} Canonical operations by op type, op code, S bit,
+	  * condition and size
+	  */
+	 private static final AtomicReferenceArray<Operation> OPERATIONS = new AtomicReferenceArray<Operation>(
+				 8 * 16 * S_BITS * CONDITIONS * SIZES );
+
+	 /**
+	  * {@value #variants} Variants of this operation by instruction name
+	  */
+	 private final Map<String, Operation> variants = new ConcurrentHashMap<String, Operation>();
+
+	 /**
+	  * {@link TableSet} Tables the operation was decoded with
+	  */
+	 private final TableSet tables;
+
 	 /**
 	  * {@value #opType} Op Type
 	  */
-	 private Bits opType;
+	 private final Bits opType;
 
 	 /**
 	  * {@value #opCode} Op Code
 	  */
-	 private Bits opCode;
+	 private final Bits opCode;
 
 	 /**
-	  * {@value #opClass} Op Class: Data Processing, Load/Store
+	  * {@value #opClass} Op Class: Data Processing, Load/Store, Block Transfer
 	  */
-	 private String opClass;
+	 private final String opClass;
 
 	 /**
 	  * {@value #sBit} sBit (0 == Store; 1 == Load)
 	  */
-	 private Bits sBit;
+	 private final Bits sBit;
 
 	 /**
 	  * {@value #condition} Condition (EQ, NE, etc.)
 	  */
-	 private Condition condition;
+	 private final Condition condition;
 
 	 /**
 	  * {@value #codeType} Instruction Type: (Immediate = 0, Register = 1)
 	  */
-	 private int codeType;
+	 private final int codeType;
 
 	 /**
 	  * {@value #instruction} Instruction (MUL, AND, etc.)
 	  */
-	 private String instruction;
+	 private final String instruction;
+
+	 /**
+	  * {@value #mnemonic} Mnemonic of the encoder, without condition, S flag or
+	  * addressing mode (AND, LDM, etc.)
+	  */
+	 private final String mnemonic;
 
 	 /**
 	  * {@value #inType} Instruction Type: (I == 0, R == 1, I/R == 2)
 	  */
-	 private int inType;
+	 private final int inType;
 
 	 /**
 	  * {@value #action} Action: Rn and/or Op2
 	  */
-	 private String[] action;
+	 private final String[] action;
 
 	 /**
 	  * {@value #loadStoreOp} Load/Store Operation (SUB, PRI, etc.)
 	  */
-	 private String loadStoreOp;
+	 private final String loadStoreOp;
+
+	 /**
+	  * {@value #hasRd} Instruction writes Rd (false for TST, TEQ, CMP, CMN)
+	  */
+	 private final Boolean hasRd;
+
+	 /**
+	  * {@value #hasRn} Instruction reads Rn (false for MOV, MVN)
+	  */
+	 private final Boolean hasRn;
+
+	 /**
+	  * {@value #sImplied} S bit is implied and must be set (TST, TEQ, CMP, CMN)
+	  */
+	 private final Boolean sImplied;
+
+	 /**
+	  * {@value #size} Halfword/signed byte transfer type (SH bits, null for
+	  * other instructions)
+	  */
+	 private final Bits size;
 
 	 /**
 	  * @return Bits opType (00 = Data Processing, 01 = Load/Store)
@@ -99,7 +172,7 @@ public class Operation implements Decodable, Parsable, Queryable
 	  */
 	 public Bits getLoadStore()
 	 {
-			return opType.matches( "^01(.*)" ) ? sBit : null;
+			return opType.matches( "^01(.*)|^100" ) || size != null ? sBit : null;
 	 }
 
 	 /**
@@ -118,7 +191,7 @@ public class Operation implements Decodable, Parsable, Queryable
 	 public String getSFlag()
 	 {
 			return opType.matches( "^00(.*)" ) && opClass.matches( "DP" )
-						&& sBit.toBinaryString().equals( "1" ) ? "S" : "";
+						&& !sImplied && sBit.toBinaryString().equals( "1" ) ? "S" : "";
 	 }
 
 	 /**
@@ -145,6 +218,22 @@ public class Operation implements Decodable, Parsable, Queryable
 			return instruction;
 	 }
 
+	 /**
+	  * @return TableSet tables the operation was decoded with
+	  */
+	 public TableSet getTables()
+	 {
+			return tables;
+	 }
+
+	 /**
+	  * @return String mnemonic of the encoder (AND, LDM, etc.)
+	  */
+	 public String getMnemonic()
+	 {
+			return mnemonic;
+	 }
+
 	 /**
 	  * @return int inType (0 = Imm, 1 = Register, 2 = Both)
 	  */
@@ -158,7 +247,7 @@ public class Operation implements Decodable, Parsable, Queryable
 	  */
 	 public String[] getAction()
 	 {
-			return action;
+			return action == null ? null : action.clone();
 	 }
 
 	 /**
@@ -170,48 +259,67 @@ public class Operation implements Decodable, Parsable, Queryable
 	 }
 
 	 /**
-	  * @param Bits sBit
-	  * @throws InvalidCodeException
+	  * Returns true if the instruction writes Rd
+	  * 
+	  * @return Boolean hasRd
 	  */
-	 public void setSBit( Bits sBit ) throws InvalidCodeException
+	 public Boolean hasRd()
 	 {
-			this.sBit = sBit;
-			this.decode();
+			return hasRd;
 	 }
 
 	 /**
-	  * @param Condition condition
-	  * @throws InvalidCodeException
+	  * Returns true if the instruction reads Rn
+	  * 
+	  * @return Boolean hasRn
 	  */
-	 public void setCondition( Condition condition ) throws InvalidCodeException
+	 public Boolean hasRn()
 	 {
-			this.condition = condition;
-			this.decode();
+			return hasRn;
 	 }
 
 	 /**
-	  * @param String instruction
+	  * Returns true if the S bit is implied by the instruction
+	  * 
+	  * @return Boolean sImplied
 	  */
-	 public void setInstruction( String instruction )
+	 public Boolean isSImplied()
 	 {
-			this.instruction = instruction;
+			return sImplied;
 	 }
 
 	 /**
-	  * @param String name
+	  * Returns the operation under another instruction name, as the operand
+	  * names MOV r0, r1, LSL #2 as LSL and AND with a multiply operand as MUL.
+	  * 
+	  * @param String instruction
+	  * @return Operation
 	  */
-	 private void addAction( String name )
+	 public Operation withInstruction( String instruction )
 	 {
-			if (this.action == null) {
-				 this.action = new String[] { name };
-			} else {
-				 String[] tmp = this.action;
-				 this.action = new String[tmp.length + 1];
-				 for (int i = 0; i < tmp.length; i++) {
-						this.action[i] = tmp[i];
-				 }
-				 this.action[tmp.length] = name;
+			if (instruction.equals( this.instruction )) {
+				 return this;
 			}
+			return variants.computeIfAbsent( instruction,
+						name -> new Operation( this, name ) );
+	 }
+
+	 /**
+	  * @return Bits size (SH bits of LDRH, STRH, LDRSB, LDRSH)
+	  */
+	 public Bits getSize()
+	 {
+			return size;
+	 }
+
+	 /**
+	  * Returns true if the instruction is a block transfer (LDM/STM)
+	  * 
+	  * @return Boolean isBlockTransfer
+	  */
+	 public Boolean isBlockTransfer()
+	 {
+			return "BT".equals( opClass );
 	 }
 
 	 /**
@@ -256,53 +364,12 @@ public class Operation implements Decodable, Parsable, Queryable
 			return opType.toBinaryString();
 	 }
 
+	 /**
+	  * Operations are decoded when built.
+	  */
 	 @Override
-	 public Boolean decode() throws InvalidCodeException
-	 {
-			Connection conn = db.getConn();
-			try {
-				 String sql = "SELECT * FROM op_code "
-							 + "JOIN op_type ON op_type.op_type = op_code.op_type "
-							 + "WHERE op_code = ? AND op_code.op_type = ? "
-							 + "AND load_store = ?";
-				 PreparedStatement stmt = conn.prepareStatement( sql );
-				 Bits loadStore = getLoadStore();
-				 stmt.setString( 1, opCode.toBinaryString() );
-				 stmt.setString( 2, opType.toBinaryString() );
-				 stmt.setInt( 3, loadStore == null ? -1 : loadStore.toInteger() );
-				 ResultSet rs = stmt.executeQuery();
-
-				 if (!rs.isBeforeFirst()) {
-						rs.close();
-						stmt.close();
-						throw new InvalidCodeException();
-				 } else {
-						while (rs.next()) {
-							 int rn = rs.getInt( "rn" );
-							 int op2 = rs.getInt( "op2" );
-							 int codeType = rs.getInt( "data_type" );
-							 String instruction = rs.getString( "instr" );
-							 String condition = this.condition == null ? ""
-										 : this.condition.toString();
-							 this.opClass = rs.getString( "op_class" );
-							 this.inType = rs.getInt( "instr_type" );
-							 this.loadStoreOp = rs.getString( "load_store_instr" );
-							 this.codeType = codeType;
-							 this.instruction = instruction + getSFlag() + condition;
-							 if (rn == 1) {
-									this.addAction( "rn" );
-							 }
-							 if (op2 == 1) {
-									this.addAction( "op2" );
-							 }
-							 break;
-						}
-				 }
-				 rs.close();
-				 stmt.close();
-			} catch (SQLException e) {
-				 throw new InvalidCodeException( e.getMessage() );
-			}
+	 public Boolean decode()
+	 {
 			return true;
 	 }
 
@@ -313,55 +380,222 @@ public class Operation implements Decodable, Parsable, Queryable
 	 }
 
 	 /**
-	  * Simple constructor
+	  * Returns the canonical operation of its fields for a set of tables,
+	  * decoding it on first use and again whenever the set changes.
+	  * 
+	  * @param Bits      opType
+	  * @param Bits      opCode
+	  * @param Bits      sBit (null for none)
+	  * @param Condition condition (null for none)
+	  * @param Bits      size SH bits (null for other instructions)
+	  * @param TableSet  tables
+	  * @return Operation
+	  * @throws InvalidCodeException if the fields do not decode
+	  */
+	 public static Operation of( Bits opType, Bits opCode, Bits sBit,
+				 Condition condition, Bits size, TableSet tables )
+				 throws InvalidCodeException
+	 {
+			int index = indexOf( opType, opCode, sBit, condition, size );
+			if (index < 0) {
+				 return new Operation( opType, opCode, sBit, condition, size, tables );
+			}
+			Operation operation = OPERATIONS.get( index );
+			while (operation == null || operation.tables != tables) {
+				 // Racing threads build equal operations; the first one is kept
+				 Operation decoded = new Operation( opType, opCode, sBit, condition,
+							 size, tables );
+				 if (OPERATIONS.compareAndSet( index, operation, decoded )) {
+						return decoded;
+				 }
+				 operation = OPERATIONS.get( index );
+			}
+			return operation;
+	 }
+
+	 /**
+	  * Returns the canonical operation of its fields for the current tables.
 	  * 
-	  * @param Bits opType
-	  * @param Bits opCode
-	  * @throws InvalidCodeException
+	  * @param Bits      opType
+	  * @param Bits      opCode
+	  * @param Bits      sBit (null for none)
+	  * @param Condition condition (null for none)
+	  * @param Bits      size SH bits (null for other instructions)
+	  * @return Operation
+	  * @throws InvalidCodeException if the fields do not decode
+	  */
+	 public static Operation of( Bits opType, Bits opCode, Bits sBit,
+				 Condition condition, Bits size ) throws InvalidCodeException
+	 {
+			return of( opType, opCode, sBit, condition, size, TableSet.current() );
+	 }
+
+	 /**
+	  * Returns the canonical operation of its fields.
+	  * 
+	  * @param Bits      opType
+	  * @param Bits      opCode
+	  * @param Bits      sBit
+	  * @param Condition condition
+	  * @return Operation
+	  * @throws InvalidCodeException if the fields do not decode
 	  */
-	 public Operation( Bits opType, Bits opCode ) throws InvalidCodeException
+	 public static Operation of( Bits opType, Bits opCode, Bits sBit,
+				 Condition condition ) throws InvalidCodeException
 	 {
-			super();
-			this.opType = opType;
-			this.opCode = opCode;
-			this.decode();
+			return of( opType, opCode, sBit, condition, null );
 	 }
 
 	 /**
-	  * Standard constructor
+	  * Returns the canonical operation of its fields, with the S bit clear.
 	  * 
 	  * @param Bits      opType
 	  * @param Bits      opCode
 	  * @param Condition condition
+	  * @return Operation
+	  * @throws InvalidCodeException if the fields do not decode
 	  */
-	 public Operation( Bits opType, Bits opCode, Condition condition )
+	 public static Operation of( Bits opType, Bits opCode, Condition condition )
 				 throws InvalidCodeException
 	 {
-			super();
-			this.opType = opType;
-			this.opCode = opCode;
-			this.condition = condition;
-			this.sBit = new Bits( "0" );
-			this.decode();
+			return of( opType, opCode, new Bits( "0" ), condition, null );
 	 }
 
 	 /**
-	  * Overloaded constructor
+	  * Returns the canonical operation of its fields for a set of tables, with
+	  * the S bit clear.
 	  * 
 	  * @param Bits      opType
 	  * @param Bits      opCode
-	  * @param Bits      sBit
 	  * @param Condition condition
+	  * @param TableSet  tables
+	  * @return Operation
+	  * @throws InvalidCodeException if the fields do not decode
 	  */
-	 public Operation( Bits opType, Bits opCode, Bits sBit,
-				 Condition condition ) throws InvalidCodeException
+	 public static Operation of( Bits opType, Bits opCode, Condition condition,
+				 TableSet tables ) throws InvalidCodeException
+	 {
+			return of( opType, opCode, new Bits( "0" ), condition, null, tables );
+	 }
+
+	 /**
+	  * Returns the index of an operation in the canonical table, or -1 if its
+	  * fields do not fit it.
+	  */
+	 private static int indexOf( Bits opType, Bits opCode, Bits sBit,
+				 Condition condition, Bits size )
+	 {
+			if (opType.length() != 3 || opCode.length() != 4
+						|| ( sBit != null && sBit.length() != 1 )
+						|| ( size != null && size.length() != 2 )
+						|| ( condition != null && ( condition.getBits() == null
+									|| condition.getBits().length() != 4
+									|| condition.getsBit() == null
+									|| condition.getsBit().length() != 1 ) )) {
+				 return -1;
+			}
+			int index = opType.toInteger() * 16 + opCode.toInteger();
+			index = index * S_BITS + ( sBit == null ? 2 : sBit.toInteger() );
+			index = index * CONDITIONS + ( condition == null ? 32
+						: condition.getBits().toInteger() * 2
+									+ condition.getsBit().toInteger() );
+			return index * SIZES + ( size == null ? 0 : size.toInteger() + 1 );
+	 }
+
+	 /**
+	  * Variant constructor
+	  * 
+	  * @param Operation operation
+	  * @param String    instruction name
+	  */
+	 private Operation( Operation operation, String instruction )
 	 {
 			super();
+			this.tables = operation.tables;
+			this.opType = operation.opType;
+			this.opCode = operation.opCode;
+			this.opClass = operation.opClass;
+			this.sBit = operation.sBit;
+			this.condition = operation.condition;
+			this.codeType = operation.codeType;
+			this.instruction = instruction;
+			this.mnemonic = operation.mnemonic;
+			this.inType = operation.inType;
+			this.action = operation.action;
+			this.loadStoreOp = operation.loadStoreOp;
+			this.hasRd = operation.hasRd;
+			this.hasRn = operation.hasRn;
+			this.sImplied = operation.sImplied;
+			this.size = operation.size;
+	 }
+
+	 /**
+	  * Canonical constructor. Decodes the operation with a set of tables.
+	  * 
+	  * @param Bits      opType
+	  * @param Bits      opCode
+	  * @param Bits      sBit (null for none)
+	  * @param Condition condition (null for none)
+	  * @param Bits      size SH bits (null for other instructions)
+	  * @param TableSet  tables
+	  * @throws InvalidCodeException if the fields do not decode
+	  */
+	 private Operation( Bits opType, Bits opCode, Bits sBit, Condition condition,
+				 Bits size, TableSet tables ) throws InvalidCodeException
+	 {
+			super();
+			this.tables = tables;
 			this.opType = opType;
 			this.opCode = opCode;
-			this.condition = condition;
 			this.sBit = sBit;
-			this.decode();
+			this.condition = condition;
+			this.size = size;
+			int type = opType.toInteger();
+			int code = opCode.toInteger();
+			int s = sBit == null ? 0 : sBit.toInteger();
+			// LDRH/STRH/LDRSB/LDRSH share op type 000 with data processing;
+			// the SH bits select the instruction and the I bit the format
+			if (size != null) {
+				 this.opClass = "LS";
+				 this.codeType = ( code & 2 ) != 0 ? 0 : 1;
+			} else if (type < 2) {
+				 this.opClass = "DP";
+				 this.codeType = type == 0 ? 1 : 0;
+			} else if (type < 4) {
+				 this.opClass = "LS";
+				 this.codeType = type - 2;
+			} else {
+				 this.opClass = "BT";
+				 this.codeType = 0;
+			}
+			boolean data = opClass.equals( "DP" );
+			this.inType = codeType;
+			this.hasRd = !data || tables.hasRd( code );
+			this.hasRn = !data || tables.hasRn( code );
+			this.sImplied = data && tables.isSImplied( code );
+			int word = type << 25 | code << 21 | ( sImplied ? 1 : s ) << 20
+						| ( size == null ? 0 : 0x90 | size.toInteger() << 5 );
+			String instruction = tables.mnemonic( word );
+			if (instruction == null) {
+				 throw new InvalidCodeException();
+			} else if (sImplied && sBit != null && s == 0) {
+				 throw new InvalidCodeException( String.format(
+							 "%s requires the S bit to be set.", instruction ) );
+			}
+			this.loadStoreOp = data ? null : tables.getMode( word );
+			// LDM/STM carry the addressing mode (LDMIA, STMDB)
+			this.mnemonic = opClass.equals( "BT" ) ? instruction.substring( 0,
+						instruction.length() - loadStoreOp.length() ) : instruction;
+			this.instruction = mnemonic
+						+ ( opClass.equals( "BT" ) ? loadStoreOp : getSFlag() )
+						+ ( condition == null ? "" : condition.toString() );
+			if (data) {
+				 this.action = hasRn ? new String[] { "rn", "op2" }
+							 : new String[] { "op2" };
+			} else {
+				 this.action = new String[] { codeType == 0 && !opClass.equals( "BT" )
+							 ? "op2" : "rn" };
+			}
 	 }
 
 }
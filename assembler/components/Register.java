@@ -16,24 +16,56 @@ import assembler.types.Code;
 /**
  * Class representing a Register in ARM Instruction.
  *
+ * Registers are immutable. The sixteen registers and the absent register are
+ * canonical instances built with the class and served by the
+ * {@link #of(int)} factories, so they can be shared between instructions and
+ * threads.
  */
 public class Register implements Decodable, Parsable
 {
 
+	 /**
+	  * {@value #REGISTERS} Canonical registers by number
+	  */
+	 private static final Register[] REGISTERS = new Register[16];
+
+	 /**
+	  * {@link Register} Canonical absent register (no name, bits 0000)
+	  */
+	 public static final Register NONE;
+
+	 /**
+	  * {@link Pattern} Register name
+	  */
+	 private static final Pattern NAME = Pattern.compile(
+				 "((?:r[0-9]{1,2})|(?:sp)|(?:lr)|(?:pc))", Pattern.CASE_INSENSITIVE );
+
+	 static {
+			try {
+				 for (int number = 0; number < REGISTERS.length; number++) {
+						REGISTERS[number] = new Register( number );
+				 }
+				 NONE = new Register();
+			} catch (InvalidCodeException e) {
+				 // Register numbers always fit the field
+				 throw new ExceptionInInitializerError( e );
+			}
+	 }
+
 	 /**
 	  * {@value #code} Source code
 	  */
-	 private Code code;
+	 private final Code code;
 
 	 /**
 	  * {@value #bits} Register bits
 	  */
-	 private Bits bits;
+	 private final Bits bits;
 
 	 /**
 	  * {@value #name} Register name
 	  */
-	 private String name;
+	 private final String name;
 
 	 /**
 	  * @return Code source code
@@ -53,28 +85,6 @@ public class Register implements Decodable, Parsable
 			return bits;
 	 }
 
-	 /**
-	  * Sets Register bits
-	  * 
-	  * @param Bits bits
-	  */
-	 public void setBits( Bits bits )
-	 {
-			this.bits = bits;
-	 }
-
-	 /**
-	  * Sets Register bits
-	  * 
-	  * @param int number
-	  */
-	 public void setBits( int number ) throws InvalidCodeException
-	 {
-			this.bits = new Bits(
-						String.format( "%4s", Integer.toBinaryString( number ) )
-									.replace( " ", "0" ) );
-	 }
-
 	 /**
 	  * Gets Register name
 	  * 
@@ -86,91 +96,67 @@ public class Register implements Decodable, Parsable
 	 }
 
 	 /**
-	  * Sets Register bits
+	  * Returns the name of a register number.
 	  * 
-	  * @param String name
-	  */
-	 public void setName( String name )
-	 {
-			this.name = name.matches( "^(r|sp|lr|pc)(.*)" ) ? name : "r" + name;
-	 }
-
-	 /**
-	  * Sets Register name
-	  * 
-	  * @param int bits
+	  * @param int num
+	  * @return String name
 	  */
-	 public void setName( int num )
+	 private static String nameOf( int num )
 	 {
-			String name;
 			switch (num) {
 			case 13:
-				 name = "sp";
-				 break;
+				 return "sp";
 			case 14:
-				 name = "lr";
-				 break;
+				 return "lr";
 			case 15:
-				 name = "pc";
-				 break;
+				 return "pc";
 			default:
-				 name = "r" + String.valueOf( num );
-				 break;
+				 return "r" + String.valueOf( num );
 			}
-			this.name = name;
 	 }
 
+	 /**
+	  * Registers are decoded when built.
+	  */
 	 @Override
 	 public Boolean decode()
 	 {
-			if (bits != null) {
-				 this.setName( bits.toInteger() );
-			}
 			return true;
 	 }
 
+	 /**
+	  * Registers are parsed when built.
+	  */
 	 @Override
-	 public Boolean parse() throws InvalidCodeException
+	 public Boolean parse()
 	 {
-			if (code != null && !code.isBlank()) {
-				 String name;
-				 int num;
-				 String regex = "((?:r[0-9]{1,2})|(?:sp)|(?:lr)|(?:pc))";
-				 Pattern patt = Pattern.compile( regex, Pattern.CASE_INSENSITIVE );
-				 Matcher matcher = patt.matcher( code );
-				 Boolean found = matcher.find();
-				 if (found) {
-						name = matcher.group( 1 ).trim().toLowerCase();
-						switch (name) {
-						case "sp":
-							 num = 13;
-							 break;
-						case "lr":
-							 num = 14;
-							 break;
-						case "pc":
-							 num = 15;
-							 break;
-						default:
-							 regex = "r([0-9]{1,2})";
-							 patt = Pattern.compile( regex, Pattern.CASE_INSENSITIVE );
-							 matcher = patt.matcher( name );
-							 found = matcher.find();
-							 if (found) {
-									num = Integer.parseInt( matcher.group( 1 ).trim() );
-							 } else {
-									throw new InvalidCodeException();
-							 }
-							 break;
-						}
-						this.setBits( num );
-						this.setName( bits.toInteger() );
-						return true;
-				 } else {
-						throw new InvalidCodeException();
-				 }
+			return name != null;
+	 }
+
+	 /**
+	  * Returns the number of the register named by source code.
+	  * 
+	  * @param Code code
+	  * @return int
+	  * @throws InvalidCodeException if no register is named
+	  */
+	 private static int numberOf( Code code ) throws InvalidCodeException
+	 {
+			Matcher matcher = NAME.matcher( code );
+			if (!matcher.find()) {
+				 throw new InvalidCodeException();
+			}
+			String name = matcher.group( 1 ).trim().toLowerCase();
+			switch (name) {
+			case "sp":
+				 return 13;
+			case "lr":
+				 return 14;
+			case "pc":
+				 return 15;
+			default:
+				 return Integer.parseInt( name.substring( 1 ) );
 			}
-			return false;
 	 }
 
 	 @Override
@@ -182,45 +168,80 @@ public class Register implements Decodable, Parsable
 	 @Override
 	 public String toBinaryString()
 	 {
-			return bits == null ? Integer.toBinaryString( 0 )
-						: bits.toBinaryString();
+			return bits.toBinaryString();
 	 }
 
 	 /**
-	  * Simple constructor
+	  * Returns the canonical register of a number.
 	  * 
-	  * @throws InvalidCodeException
+	  * @param int number 0 to 15
+	  * @return Register
+	  * @throws InvalidCodeException if there is no such register
 	  */
-	 public Register() throws InvalidCodeException
+	 public static Register of( int number ) throws InvalidCodeException
 	 {
-			super();
-			this.code = new Code( "" );
-			this.bits = new Bits( "0000" );
+			if (number < 0 || number >= REGISTERS.length) {
+				 throw new InvalidCodeException(
+							 String.format( "Unknown register r%d.", number ) );
+			}
+			return REGISTERS[number];
 	 }
 
 	 /**
-	  * Standard constructor
+	  * Returns the canonical register of a register field.
 	  * 
-	  * @param code
+	  * @param Bits bits
+	  * @return Register
+	  * @throws InvalidCodeException if there is no such register
+	  */
+	 public static Register of( Bits bits ) throws InvalidCodeException
+	 {
+			return of( bits.toInteger() );
+	 }
+
+	 /**
+	  * Returns the canonical register named by source code (r0 to r15, sp, lr,
+	  * pc), or {@link #NONE} for no code.
+	  * 
+	  * @param Code code
+	  * @return Register
+	  * @throws InvalidCodeException if no register is named
+	  */
+	 public static Register of( Code code ) throws InvalidCodeException
+	 {
+			if (code == null || code.isBlank()) {
+				 return NONE;
+			}
+			return of( numberOf( code ) );
+	 }
+
+	 /**
+	  * Canonical register constructor
+	  * 
+	  * @param int number
 	  * @throws InvalidCodeException
 	  */
-	 public Register( Code code ) throws InvalidCodeException
+	 private Register( int number ) throws InvalidCodeException
 	 {
 			super();
-			this.code = code;
-			parse();
+			this.bits = new Bits(
+						String.format( "%4s", Integer.toBinaryString( number ) )
+									.replace( " ", "0" ) );
+			this.name = nameOf( number );
+			this.code = new Code( name );
 	 }
 
 	 /**
-	  * Standard constructor
+	  * Absent register constructor
 	  * 
-	  * @param Bits bits
+	  * @throws InvalidCodeException
 	  */
-	 public Register( Bits bits )
+	 private Register() throws InvalidCodeException
 	 {
 			super();
-			this.bits = bits;
-			this.decode();
+			this.code = new Code( "" );
+			this.bits = new Bits( "0000" );
+			this.name = null;
 	 }
 
 }
@@ -0,0 +1,423 @@
+/**
+ *
+ */
+package assembler.components.op2types;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import assembler.components.Condition;
+import assembler.components.Operation;
+import assembler.components.Register;
+import assembler.exceptions.InvalidCodeException;
+import assembler.interfaces.Decodable;
+import assembler.interfaces.Op2Type;
+import assembler.interfaces.Parsable;
+import assembler.io.Renderer;
+import assembler.io.TableSet;
+import assembler.types.Bits;
+import assembler.types.Code;
+import assembler.util.Binary;
+
+/**
+ * Block Transfer (LDM/STM, PUSH/POP) Register List Value
+ *
+ * The register list is held as a 16-bit mask, bit n for register n. Lists
+ * are written with ranges for runs of three or more registers, using a
+ * precomputed table of the runs in every byte value.
+ */
+public class BlockTransfer implements Op2Type, Decodable, Parsable
+{
+
+	 /**
+	  * {@value #STATEMENT} LDM/STM statement pattern: command, condition before
+	  * mode, mode, condition after mode, base, writeback, list
+	  */
+	 private static final Pattern STATEMENT = Pattern.compile(
+				 "^(LDM|STM)(?:([A-Z]{2})(IA|IB|DA|DB|FD|ED|FA|EA)|(IA|IB|DA|DB|FD|ED|FA|EA)?([A-Z]{2})?)"
+							 + "\\s+((?:R[0-9]{1,2})|SP|LR|PC)\\s*(!)?\\s*,\\s*\\{([^}]*)\\}$",
+				 Pattern.CASE_INSENSITIVE );
+
+	 /**
+	  * {@value #STACK} PUSH/POP statement pattern: command, condition, list
+	  */
+	 private static final Pattern STACK = Pattern.compile(
+				 "^(PUSH|POP)([A-Z]{2})?\\s+\\{([^}]*)\\}$", Pattern.CASE_INSENSITIVE );
+
+	 /**
+	  * {@value #RANGE} Register list entry pattern: first, last
+	  */
+	 private static final Pattern RANGE = Pattern.compile(
+				 "^\\s*((?:R[0-9]{1,2})|SP|LR|PC)\\s*(?:-\\s*((?:R[0-9]{1,2})|SP|LR|PC)\\s*)?$",
+				 Pattern.CASE_INSENSITIVE );
+
+	 /**
+	  * {@value #RUNS} Runs of set bits in every byte value, each packed as
+	  * (first << 4) | last [byte]
+	  */
+	 private static final int[][] RUNS = new int[256][];
+
+	 static {
+			int[] runs = new int[4];
+			for (int value = 0; value < RUNS.length; value++) {
+				 int count = 0;
+				 int bit = 0;
+				 while (bit < 8) {
+						if (( value & ( 1 << bit ) ) == 0) {
+							 bit++;
+							 continue;
+						}
+						int first = bit;
+						while (bit < 8 && ( value & ( 1 << bit ) ) != 0) {
+							 bit++;
+						}
+						runs[count++] = ( first << 4 ) | ( bit - 1 );
+				 }
+				 RUNS[value] = Arrays.copyOf( runs, count );
+			}
+	 }
+
+	 /**
+	  * {@value #code} Source code
+	  */
+	 private Code code;
+
+	 /**
+	  * {@value #op2Code} Register list bits
+	  */
+	 private Bits op2Code;
+
+	 /**
+	  * {@value #mask} Register list mask
+	  */
+	 private int mask;
+
+	 /**
+	  * {@link Register} Base register
+	  */
+	 private Register rn;
+
+	 /**
+	  * {@value #writeBack} Base register is updated
+	  */
+	 private Boolean writeBack;
+
+	 /**
+	  * {@link Operation} Operation
+	  */
+	 private Operation operation;
+
+	 /**
+	  * {@link TableSet} Tables the operand is parsed or decoded with
+	  */
+	 private final TableSet tables;
+
+	 /**
+	  * {@value #condition} Condition
+	  */
+	 private Condition condition;
+
+	 /**
+	  * @return Code source code
+	  */
+	 public Code getCode()
+	 {
+			return code;
+	 }
+
+	 /**
+	  * @return Bits op2Code (16-bit register list)
+	  */
+	 public Bits getOp2Code()
+	 {
+			return op2Code;
+	 }
+
+	 /**
+	  * @return int register list mask
+	  */
+	 public int getMask()
+	 {
+			return mask;
+	 }
+
+	 /**
+	  * @return Register rn base register (parsed statements only)
+	  */
+	 public Register getRn()
+	 {
+			return rn;
+	 }
+
+	 /**
+	  * @return Boolean writeBack (parsed statements only)
+	  */
+	 public Boolean isWriteBack()
+	 {
+			return writeBack;
+	 }
+
+	 /**
+	  * @return Operation operation
+	  */
+	 public Operation getOperation()
+	 {
+			return operation;
+	 }
+
+	 /**
+	  * @return Condition condition
+	  */
+	 public Condition getCondition()
+	 {
+			return condition;
+	 }
+
+	 /**
+	  * @return String composite value
+	  */
+	 public String getComposite()
+	 {
+			StringBuilder output = new StringBuilder( 32 );
+			try {
+				 appendList( mask, output );
+			} catch (IOException e) {
+				 // StringBuilder does not throw
+			}
+			return output.toString();
+	 }
+
+	 /**
+	  * Returns true if a statement is a block transfer.
+	  * 
+	  * @param Code code
+	  * @return Boolean
+	  */
+	 public static Boolean isBlockTransfer( Code code )
+	 {
+			return code != null && code.matches( "(?i)^(LDM|STM|PUSH|POP).*" );
+	 }
+
+	 /**
+	  * Appends a register list such as "{r0, r4-r11, lr}". Runs of three or
+	  * more registers are written as ranges.
+	  * 
+	  * @param int        mask register list mask
+	  * @param Appendable out
+	  * @throws IOException
+	  */
+	 public static void appendList( int mask, Appendable out ) throws IOException
+	 {
+			boolean first = true;
+			int start = -1;
+			int end = -1;
+			out.append( '{' );
+			for (int half = 0; half < 16; half += 8) {
+				 for (int run : RUNS[( mask >>> half ) & 0xff]) {
+						int low = half + ( run >>> 4 );
+						int high = half + ( run & 0xf );
+						if (low == end + 1 && start >= 0) {
+							 // Run continues across the byte boundary
+							 end = high;
+							 continue;
+						}
+						if (start >= 0) {
+							 first = appendRun( start, end, first, out );
+						}
+						start = low;
+						end = high;
+				 }
+			}
+			if (start >= 0) {
+				 appendRun( start, end, first, out );
+			}
+			out.append( '}' );
+	 }
+
+	 /**
+	  * Appends one run of registers.
+	  * 
+	  * @return boolean false
+	  * @throws IOException
+	  */
+	 private static boolean appendRun( int start, int end, boolean first,
+				 Appendable out ) throws IOException
+	 {
+			String[] names = Renderer.REGISTERS;
+			if (!first) {
+				 out.append( ", " );
+			}
+			if (end - start >= 2) {
+				 out.append( names[start] ).append( '-' ).append( names[end] );
+			} else {
+				 out.append( names[start] );
+				 if (end > start) {
+						out.append( ", " ).append( names[end] );
+				 }
+			}
+			return false;
+	 }
+
+	 /**
+	  * Parses a register list body such as "r0, r4-r11, lr" into a mask.
+	  * 
+	  * @param String list
+	  * @return int mask
+	  * @throws InvalidCodeException
+	  */
+	 public static int parseList( String list ) throws InvalidCodeException
+	 {
+			int mask = 0;
+			for (String entry : list.split( "," )) {
+				 Matcher matcher = RANGE.matcher( entry );
+				 if (!matcher.find()) {
+						throw new InvalidCodeException( String
+									.format( "Invalid register list entry '%s'.", entry.trim() ) );
+				 }
+				 int first = register( matcher.group( 1 ) );
+				 int last = matcher.group( 2 ) == null ? first
+							 : register( matcher.group( 2 ) );
+				 if (last < first) {
+						throw new InvalidCodeException( String.format(
+									"Invalid register range '%s'.", entry.trim() ) );
+				 }
+				 mask |= ( ( 2 << last ) - 1 ) & ~( ( 1 << first ) - 1 );
+			}
+			return mask;
+	 }
+
+	 /**
+	  * Returns a register number.
+	  * 
+	  * @param String name
+	  * @return int
+	  * @throws InvalidCodeException
+	  */
+	 private static int register( String name ) throws InvalidCodeException
+	 {
+			return Register.of( new Code( name ) ).getBits().toInteger();
+	 }
+
+	 @Override
+	 public Boolean decode() throws InvalidCodeException
+	 {
+			this.mask = op2Code.toInteger();
+			if (mask == 0) {
+				 throw new InvalidCodeException( "Empty register list." );
+			}
+			return true;
+	 }
+
+	 @Override
+	 public Boolean parse() throws InvalidCodeException
+	 {
+			String instr, mode, cond, base, list;
+			Matcher matcher = STATEMENT.matcher( code );
+			if (matcher.find()) {
+				 instr = matcher.group( 1 ).toUpperCase();
+				 cond = matcher.group( 2 ) != null ? matcher.group( 2 )
+							 : matcher.group( 5 );
+				 mode = matcher.group( 3 ) != null ? matcher.group( 3 )
+							 : matcher.group( 4 );
+				 base = matcher.group( 6 );
+				 this.writeBack = matcher.group( 7 ) != null;
+				 list = matcher.group( 8 );
+			} else {
+				 matcher = STACK.matcher( code );
+				 if (!matcher.find()) {
+						throw new InvalidCodeException( "Block transfer not recognized." );
+				 }
+				 // PUSH = STMFD sp!, POP = LDMFD sp!
+				 instr = matcher.group( 1 ).equalsIgnoreCase( "PUSH" ) ? "STM" : "LDM";
+				 cond = matcher.group( 2 );
+				 mode = "FD";
+				 base = "SP";
+				 this.writeBack = true;
+				 list = matcher.group( 3 );
+			}
+
+			this.condition = Condition.of(
+						cond == null ? null : new Code( cond.toUpperCase() ) );
+			if (condition.getBits() == null) {
+				 throw new InvalidCodeException(
+							 String.format( "Unknown condition '%s'.", cond ) );
+			}
+			this.rn = Register.of( new Code( base ) );
+			this.mask = parseList( list );
+			if (mask == 0) {
+				 throw new InvalidCodeException( "Empty register list." );
+			}
+			this.op2Code = new Bits(
+						String.format( "%16s", Integer.toBinaryString( mask ) )
+									.replace( ' ', '0' ) );
+
+			int word = tables.encodeBlock( instr, 0,
+						mode == null ? "IA" : mode.toUpperCase(), writeBack, 0, 0 );
+			Bits opCode = new Bits( Binary.toBinaryString( word >>> 21, 4 ) );
+			Bits opType = new Bits( Binary.toBinaryString( word >>> 25, 3 ) );
+			Bits sBit = new Bits( Binary.toBinaryString( word >>> 20, 1 ) );
+			this.condition = condition.withSBit( sBit );
+			this.operation = Operation.of( opType, opCode, sBit, condition,
+						null, tables );
+			return true;
+	 }
+
+	 @Override
+	 public String toString()
+	 {
+			return getComposite();
+	 }
+
+	 @Override
+	 public String toBinaryString()
+	 {
+			return op2Code.toBinaryString();
+	 }
+
+	 /**
+	  * Standard constructor. Parses with the current tables.
+	  * 
+	  * @param Code code
+	  * @throws InvalidCodeException
+	  */
+	 public BlockTransfer( Code code ) throws InvalidCodeException
+	 {
+			this( code, TableSet.current() );
+	 }
+
+	 /**
+	  * Pinned constructor. Parses with a set of tables.
+	  * 
+	  * @param Code     code
+	  * @param TableSet tables
+	  * @throws InvalidCodeException
+	  */
+	 public BlockTransfer( Code code, TableSet tables )
+				 throws InvalidCodeException
+	 {
+			super();
+			this.code = code;
+			this.tables = tables;
+			this.parse();
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param Bits      op2Code 16-bit register list
+	  * @param Operation operation
+	  * @throws InvalidCodeException
+	  */
+	 public BlockTransfer( Bits op2Code, Operation operation )
+				 throws InvalidCodeException
+	 {
+			super();
+			this.op2Code = op2Code;
+			this.operation = operation;
+			this.tables = operation.getTables();
+			this.decode();
+	 }
+
+}
@@ -3,10 +3,6 @@
  */
 package assembler.components.op2types;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -18,7 +14,7 @@ import assembler.exceptions.InvalidCodeException;
 import assembler.interfaces.Decodable;
 import assembler.interfaces.Op2Type;
 import assembler.interfaces.Parsable;
-import assembler.interfaces.Queryable;
+import assembler.io.TableSet;
 import assembler.types.Bits;
 import assembler.types.Code;
 import assembler.util.Binary;
@@ -27,7 +23,7 @@ import assembler.util.Binary;
  * Op2Type Type Class
  *
  */
-public class Immediate implements Op2Type, Queryable, Decodable, Parsable
+public class Immediate implements Op2Type, Decodable, Parsable
 {
 
 	 /**
@@ -60,6 +56,11 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 	  */
 	 private Operation operation;
 
+	 /**
+	  * {@link TableSet} Tables the operand is parsed or decoded with
+	  */
+	 private final TableSet tables;
+
 	 /**
 	  * {@link Condition} Condition
 	  */
@@ -126,7 +127,7 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 	  * 
 	  * @param String immediate
 	  */
-	 public void setImmediate( String immediate )
+	 private void setImmediate( String immediate )
 	 {
 			this.immediate = Integer.parseInt( immediate, 2 );
 	 }
@@ -136,7 +137,7 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 	  * 
 	  * @param int immediate
 	  */
-	 public void setImmediate( int immediate )
+	 private void setImmediate( int immediate )
 	 {
 			this.immediate = immediate;
 	 }
@@ -146,7 +147,7 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 	  * 
 	  * @param String shAmt
 	  */
-	 public void setShAmt( String shAmt )
+	 private void setShAmt( String shAmt )
 	 {
 			this.shAmt = Integer.parseInt( shAmt, 2 );
 	 }
@@ -156,7 +157,7 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 	  * 
 	  * @param int shAmt
 	  */
-	 public void setShAmt( int shAmt )
+	 private void setShAmt( int shAmt )
 	 {
 			this.shAmt = shAmt;
 	 }
@@ -166,12 +167,13 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 	  */
 	 public String getComposite()
 	 {
+			StringBuilder output = new StringBuilder( 12 ).append( '#' );
 			if (shAmt == 0) {
-				 return String.format( "#%d", immediate );
+				 output.append( immediate );
 			} else {
-				 return String.format( "#%d",
-							 Binary.rightRotate( immediate, shAmt ) );
+				 output.append( Binary.rightRotate( immediate, shAmt ) );
 			}
+			return output.toString();
 	 }
 
 	 /**
@@ -209,6 +211,24 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 			return fixup;
 	 }
 
+	 /**
+	  * Returns the 12-bit operand2 field (rotation, imm8) of a value that fits
+	  * an 8-bit immediate rotated right by an even amount, or -1.
+	  * 
+	  * @param int value
+	  * @return int operand2 field or -1
+	  */
+	 public static int encode( int value )
+	 {
+			for (int rotation = 0; rotation < 16; rotation++) {
+				 int imm = Integer.rotateLeft( value, rotation * 2 );
+				 if (( imm & ~0xff ) == 0) {
+						return ( rotation << 8 ) | imm;
+				 }
+			}
+			return -1;
+	 }
+
 	 /**
 	  * Get operation binary codes
 	  * 
@@ -220,7 +240,6 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 				 throws InvalidCodeException
 	 {
 			Bits opCode, opType;
-			Connection conn = db.getConn();
 			Map<String, Code> parts;
 			Map<String, Bits> opCodes = null;
 			Code command, sBit;
@@ -231,57 +250,26 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 				 command = parts.get( "command" );
 				 sBit = parts.get( "s_bit" );
 				 opType = new Bits( "001" );
+				 String instr = command.toString();
+				 int word;
 				 try {
-						String sql = "SELECT * FROM op_code " + "WHERE instr = ? "
-									+ "AND load_store = -1 " + "AND instr_type = 0";
-						PreparedStatement stmt = conn.prepareStatement( sql );
-						stmt.setString( 1, command.toString() );
-						ResultSet rs = stmt.executeQuery();
-
-						if (!rs.isBeforeFirst()) {
-							 rs.close();
-							 stmt.close();
-							 sql = "SELECT * FROM operand2 WHERE instr = ?";
-							 stmt = conn.prepareStatement( sql );
-							 stmt.setString( 1, command.toString() );
-							 rs = stmt.executeQuery();
-							 if (!rs.isBeforeFirst()) {
-									rs.close();
-									stmt.close();
-									throw new InvalidCodeException();
-							 } else {
-									opCode = new Bits( "1101" );
-									opCodes = new HashMap<String, Bits>()
-									{
-										 {
-												put( "op_code", opCode );
-												put( "op_type", opType );
-												put( "s_bit",
-															new Bits( sBit == null ? "0" : "1" ) );
-										 }
-									};
-							 }
-						} else {
-							 while (rs.next()) {
-									opCode = new Bits( rs.getString( "op_code" ) );
-									opCodes = new HashMap<String, Bits>()
-									{
-										 {
-												put( "op_code", opCode );
-												put( "op_type", opType );
-												put( "s_bit",
-															new Bits( sBit == null ? "0" : "1" ) );
-										 }
-									};
-									break;
-							 }
+						word = tables.encodeData( instr, 0, 0, 0, 0, 0, true );
+				 } catch (InvalidCodeException e) {
+						// Shifts (LSL, ASR, RRX, ...) are MOV with a shifted operand
+						if (tables.getShiftType( instr, 0 ) < 0
+									&& tables.getShiftType( instr, 1 ) < 0) {
+							 throw new InvalidCodeException();
 						}
-						rs.close();
-						stmt.close();
-						return opCodes;
-				 } catch (SQLException e) {
-						throw new InvalidCodeException(e.getMessage());
+						word = tables.encodeData( "MOV", 0, 0, 0, 0, 0, true );
 				 }
+				 opCode = new Bits( Binary.toBinaryString( word >>> 21, 4 ) );
+				 // TST, TEQ, CMP and CMN always set the S bit
+				 boolean s = sBit != null || ( word & 0x00100000 ) != 0;
+				 opCodes = new HashMap<String, Bits>();
+				 opCodes.put( "op_code", opCode );
+				 opCodes.put( "op_type", opType );
+				 opCodes.put( "s_bit", new Bits( s ? "1" : "0" ) );
+				 return opCodes;
 			}
 	 }
 
@@ -329,13 +317,23 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 						shAmt = Integer.parseInt( shCode.substring( 1 ) );
 				 } else {
 						if (immVal < 0) {
-							 if (opCode.matches( "1101|1111" )) {
+							 if (opCode.matches( "1101|1111" )) { // MOV, MVN
 									opCode = new Bits(
 												opCode.matches( "1111" ) ? "1101" : "1111" );
-							 } else if (opCode.matches( "0010|0100" )) {
+							 } else if (opCode.matches( "0000|1110" )) { // AND, BIC
+									opCode = new Bits(
+												opCode.matches( "1110" ) ? "0000" : "1110" );
+							 } else if (opCode.matches( "0101|0110" )) { // ADC, SBC
+									opCode = new Bits(
+												opCode.matches( "0110" ) ? "0101" : "0110" );
+							 } else if (opCode.matches( "0010|0100" )) { // SUB, ADD
+									immVal *= -1;
+									opCode = new Bits(
+												opCode.matches( "0010" ) ? "0100" : "0010" );
+							 } else if (opCode.matches( "1010|1011" )) { // CMP, CMN
 									immVal *= -1;
 									opCode = new Bits(
-												opCode.matches( "0010" ) ? "0100" : "0100" );
+												opCode.matches( "1010" ) ? "1011" : "1010" );
 							 }
 						}
 						int[] fixup = getFixup( immVal );
@@ -353,7 +351,8 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 							 .format( "%4s%8s", Integer.toBinaryString( shAmt ),
 										 Integer.toBinaryString( immVal ) )
 							 .replaceAll( " ", "0" ) );
-				 this.operation = new Operation( opType, opCode, sBit, condition );
+				 this.operation = Operation.of( opType, opCode, sBit, condition,
+							 null, tables );
 				 return true;
 			} else {
 				 throw new InvalidCodeException();
@@ -382,11 +381,12 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 			super();
 			this.op2Code = op2Code;
 			this.format = "Immediate";
+			this.tables = TableSet.current();
 			this.decode();
 	 }
 
 	 /**
-	  * Standard constructor
+	  * Standard constructor. Parses with the current tables.
 	  * 
 	  * @param Code      code
 	  * @param Condition condition
@@ -394,10 +394,25 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 	  */
 	 public Immediate( Code code, Condition condition )
 				 throws InvalidCodeException
+	 {
+			this( code, condition, TableSet.current() );
+	 }
+
+	 /**
+	  * Pinned constructor. Parses with a set of tables.
+	  * 
+	  * @param Code      code
+	  * @param Condition condition
+	  * @param TableSet  tables
+	  * @throws InvalidCodeException
+	  */
+	 public Immediate( Code code, Condition condition, TableSet tables )
+				 throws InvalidCodeException
 	 {
 			super();
 			this.code = code;
 			this.condition = condition;
+			this.tables = tables;
 			this.parse();
 	 }
 
@@ -413,6 +428,7 @@ public class Immediate implements Op2Type, Queryable, Decodable, Parsable
 			this.op2Code = op2Code;
 			this.format = "Immediate";
 			this.operation = operation;
+			this.tables = operation.getTables();
 			this.decode();
 	 }
 
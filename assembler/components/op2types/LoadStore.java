@@ -4,7 +4,6 @@
  */
 package assembler.components.op2types;
 
-import java.sql.*;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -17,7 +16,7 @@ import assembler.exceptions.InvalidCodeException;
 import assembler.interfaces.Decodable;
 import assembler.interfaces.Op2Type;
 import assembler.interfaces.Parsable;
-import assembler.interfaces.Queryable;
+import assembler.io.TableSet;
 import assembler.types.Bits;
 import assembler.types.Code;
 import assembler.util.Binary;
@@ -25,8 +24,13 @@ import assembler.util.Binary;
 /**
  * LoadStore Format Operand2 Value
  *
+ * Word and byte transfers (LDR, STR, LDRB, STRB) take a 12-bit immediate or a
+ * scaled register offset. Halfword and signed byte transfers (LDRH, STRH,
+ * LDRSB, LDRSH) are encoded in the data processing space with bits 7 and 4
+ * set; their 8-bit immediate is split around the SH bits and the register
+ * offset cannot be shifted.
  */
-public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
+public class LoadStore implements Op2Type, Decodable, Parsable
 {
 
 	 /**
@@ -84,11 +88,22 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  */
 	 private Operation operation;
 
+	 /**
+	  * {@link TableSet} Tables the operand is parsed or decoded with
+	  */
+	 private final TableSet tables;
+
 	 /**
 	  * {@value #condition} Condition
 	  */
 	 private Condition condition;
 
+	 /**
+	  * {@value #size} SH bits of a halfword/signed byte transfer (null for
+	  * word/byte)
+	  */
+	 private Bits size;
+
 	 /**
 	  * @return String format (Immediate or Register)
 	  */
@@ -177,6 +192,35 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 			return shiftType;
 	 }
 
+	 /**
+	  * @return Bits size (SH bits, null for word/byte transfers)
+	  */
+	 public Bits getSize()
+	 {
+			return size;
+	 }
+
+	 /**
+	  * Returns the SH bits if an instruction is a halfword/signed byte transfer:
+	  * op type 000 with bits 7 and 4 of operand2 set and SH not 00 (00 is the
+	  * multiply space).
+	  * 
+	  * @param Bits opType
+	  * @param Bits op2Code 12-bit operand2
+	  * @return Bits size, or null
+	  * @throws InvalidCodeException
+	  */
+	 public static Bits getSize( Bits opType, Bits op2Code )
+				 throws InvalidCodeException
+	 {
+			int value = op2Code.toInteger();
+			if (opType.toInteger() != 0 || ( value & 0x90 ) != 0x90
+						|| ( value & 0x60 ) == 0) {
+				 return null;
+			}
+			return new Bits( op2Code.substring( 5, 7 ) );
+	 }
+
 	 /**
 	  * Returns ShiftType from Shift Op (01 = LSR)
 	  * 
@@ -188,24 +232,11 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	 public int getShiftType( String shiftOp, int format )
 				 throws InvalidCodeException
 	 {
-			Connection conn = db.getConn();
-			try {
-				 String sql = "SELECT * FROM operand2 WHERE instr = ? AND instr_type = ?";
-				 PreparedStatement stmt = conn.prepareStatement( sql );
-				 stmt.setString( 1, shiftOp );
-				 stmt.setInt( 2, format );
-				 ResultSet rs = stmt.executeQuery();
-
-				 while (rs.next()) {
-						this.setShiftType( rs.getString( "shift_type" ) );
-						break;
-				 }
-				 rs.close();
-				 stmt.close();
-				 return shiftType;
-			} catch (SQLException e) {
-				 throw new InvalidCodeException( e.getMessage() );
+			int type = tables.getShiftType( shiftOp, format );
+			if (type >= 0) {
+				 this.setShiftType( type );
 			}
+			return shiftType;
 	 }
 
 	 /**
@@ -217,42 +248,32 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 			Register rm = getRm();
 			int shiftMode = getShiftMode();
 			String format = getFormat();
-			Bits opCode = operation.getOpCode();
 			String shiftOp = getShiftOp();
-			String output = "";
+			StringBuilder output = new StringBuilder( 16 );
 
-			if (format.matches( "Immediate" )) {
+			if (format.equals( "Immediate" )) {
+				 output.append( '#' );
 				 if (shAmt == 0) {
-						output = String.format( "#%d", immediate );
+						output.append( immediate );
 				 } else {
-						output = String.format( "#%d",
-									Binary.rightRotate( immediate, shAmt ) );
+						output.append( Binary.rightRotate( immediate, shAmt ) );
 				 }
-			} else { // Register Instruction
-				 if (shiftMode == 0) { // shAmt
-						if (shiftOp.matches( "RRX" )) {
-							 output = String.format( "%s, %s", rm, shiftOp );
-						} else if (opCode.matches( "1101" ) && shAmt != 0) {
-							 output = String.format( "%s, %s #%d", rm, shiftOp, shAmt );
-						} else if (shAmt == 0) {
-							 if (shiftOp.matches( "(.*)R$" )) {
-									shAmt = 32;
-									output = String.format( "%s, %s #%d", rm, shiftOp, shAmt );
-							 } else {
-									output = String.format( "%s", rm );
-							 }
-						} else {
-							 output = String.format( "%s, %s #%d", rm, shiftOp, shAmt );
-						}
+			} else if (shiftMode == 0) { // Register Instruction, shAmt
+				 output.append( rm );
+				 if (shiftOp.equals( "RRX" )) {
+						output.append( ", " ).append( shiftOp );
+				 } else if (shAmt != 0 || shiftOp.endsWith( "R" )) {
+						output.append( ", " ).append( shiftOp ).append( " #" )
+									.append( shAmt == 0 ? 32 : shAmt );
 				 }
 			}
-			return output;
+			return output.toString();
 	 }
 
 	 /**
 	  * @param String format (Immediate or Register)
 	  */
-	 public void setFormat( String format )
+	 private void setFormat( String format )
 	 {
 			this.format = format;
 	 }
@@ -262,7 +283,7 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param String shAmt
 	  */
-	 public void setShAmt( String shAmt )
+	 private void setShAmt( String shAmt )
 	 {
 			this.shAmt = Integer.parseInt( shAmt, 2 );
 	 }
@@ -272,7 +293,7 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param int shAmt
 	  */
-	 public void setShAmt( int shAmt )
+	 private void setShAmt( int shAmt )
 	 {
 			this.shAmt = shAmt;
 	 }
@@ -282,7 +303,7 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param String immediate
 	  */
-	 public void setImmediate( String immediate )
+	 private void setImmediate( String immediate )
 	 {
 			this.immediate = Integer.parseInt( immediate, 2 );
 	 }
@@ -292,7 +313,7 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param int immediate
 	  */
-	 public void setImmediate( int immediate )
+	 private void setImmediate( int immediate )
 	 {
 			this.immediate = immediate;
 	 }
@@ -302,7 +323,7 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param Operation operation
 	  */
-	 public void setOperation( Operation operation )
+	 private void setOperation( Operation operation )
 	 {
 			this.operation = operation;
 	 }
@@ -312,7 +333,7 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param int shiftMode (0 = ShAmt, 1 = Register)
 	  */
-	 public void setShiftMode( int shiftMode )
+	 private void setShiftMode( int shiftMode )
 	 {
 			this.shiftMode = shiftMode;
 	 }
@@ -322,7 +343,7 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param String shiftMode
 	  */
-	 public void setShiftMode( String shiftMode )
+	 private void setShiftMode( String shiftMode )
 	 {
 			this.shiftMode = Integer.parseInt( shiftMode, 2 );
 	 }
@@ -332,7 +353,7 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param String shiftType
 	  */
-	 public void setShiftType( String shiftType )
+	 private void setShiftType( String shiftType )
 	 {
 			this.shiftType = Integer.parseInt( shiftType, 2 );
 	 }
@@ -342,7 +363,7 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param int shiftType
 	  */
-	 public void setShiftType( int shiftType )
+	 private void setShiftType( int shiftType )
 	 {
 			this.shiftType = shiftType;
 	 }
@@ -353,9 +374,9 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  * @param String rm
 	  * @throws InvalidCodeException
 	  */
-	 public void setRm( String rm ) throws InvalidCodeException
+	 private void setRm( String rm ) throws InvalidCodeException
 	 {
-			this.rm = new Register( new Bits( rm ) );
+			this.rm = Register.of( Integer.parseInt( rm, 2 ) );
 	 }
 
 	 /**
@@ -364,9 +385,9 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  * @param int rm
 	  * @throws InvalidCodeException
 	  */
-	 public void setRm( int rm ) throws InvalidCodeException
+	 private void setRm( int rm ) throws InvalidCodeException
 	 {
-			this.rm = new Register( new Bits( String.valueOf( rm ), 10 ) );
+			this.rm = Register.of( rm );
 	 }
 
 	 /**
@@ -375,9 +396,9 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  * @param Code rm
 	  * @throws InvalidCodeException
 	  */
-	 public void setRm( Code rm ) throws InvalidCodeException
+	 private void setRm( Code rm ) throws InvalidCodeException
 	 {
-			this.rm = new Register( rm );
+			this.rm = Register.of( rm );
 	 }
 
 	 /**
@@ -385,19 +406,19 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param String shiftOp
 	  */
-	 public void setShiftOp( String shiftOp )
+	 private void setShiftOp( String shiftOp )
 	 {
 			this.shiftOp = shiftOp;
 	 }
 
 	 /**
-	  * Set shift type from database
+	  * Set shift op from the shift tables
 	  * 
 	  * @param String shiftCode
 	  * @param int    shiftMode
 	  * @throws InvalidCodeException
 	  */
-	 public void setShiftOp( String shiftCode, int format )
+	 private void setShiftOp( String shiftCode, int format )
 				 throws InvalidCodeException
 	 {
 			String instr;
@@ -405,33 +426,21 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 			int bits_4_11 = Integer.parseInt( op2Code.substring( 0, 7 ), 2 );
 			Boolean bits_rrx = bits_7_11 + shiftMode == 0;
 			Boolean bits_lsl = bits_4_11 != 0;
-			Connection conn = db.getConn();
-			try {
-				 String sql = "SELECT * FROM operand2 WHERE shift_type = ? AND instr_type = ?";
-				 PreparedStatement stmt = conn.prepareStatement( sql );
-				 stmt.setString( 1, shiftCode );
-				 stmt.setInt( 2, format );
-				 ResultSet rs = stmt.executeQuery();
-
-				 while (rs.next()) {
-						instr = rs.getString( "instr" );
-						if (instr.matches( "ROR" ) && bits_rrx) {
-							 instr = "RRX";
-						} else if (instr.matches( "MOV" ) && bits_lsl) {
-							 instr = "LSL";
-						}
-						this.setShiftOp( instr );
-						if (shAmt == 0) {
-							 if (shiftOp.matches( "(.*)R$" )) {
-									shAmt = 32;
-							 }
-						}
-						break;
+			instr = tables.getShift( format,
+						Integer.parseInt( shiftCode, 2 ) );
+			if (instr == null) {
+				 return;
+			}
+			if (instr.matches( "ROR" ) && bits_rrx) {
+				 instr = "RRX";
+			} else if (instr.matches( "MOV" ) && bits_lsl) {
+				 instr = "LSL";
+			}
+			this.setShiftOp( instr );
+			if (shAmt == 0) {
+				 if (shiftOp.matches( "(.*)R$" )) {
+						shAmt = 32;
 				 }
-				 rs.close();
-				 stmt.close();
-			} catch (SQLException e) {
-				 throw new InvalidCodeException( e.getMessage() );
 			}
 	 }
 
@@ -448,59 +457,39 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 				 String loadStoreOp ) throws InvalidCodeException
 	 {
 			Bits opCode, opType;
-			Connection conn = db.getConn();
 			int loadStore;
 			Map<String, Code> parts;
 			Map<String, Bits> opCodes = null;
 			Code command, sBit;
+			Bits size;
 			if (code.isBlank()) {
 				 throw new InvalidCodeException();
 			} else {
 				 parts = extract( code );
 				 command = parts.get( "command" );
-				 loadStore = command.matches( "LDR|STR" )
-							 ? command.matches( "LDR" ) ? 1 : 0
+				 loadStore = command.matches( "(LDR|STR)(SB|SH|B|H)?" )
+							 ? command.matches( "LDR.*" ) ? 1 : 0
 							 : -1;
 				 sBit = new Code( String.valueOf( loadStore == -1 ? 0 : loadStore ) );
 
-				 try {
-						String sql = "SELECT * FROM op_code " + "WHERE instr = ? "
-									+ "AND load_store = ? " + "AND load_store_instr = ? "
-									+ "AND instr_type = ?";
-						PreparedStatement stmt = conn.prepareStatement( sql );
-						stmt.setString( 1, command.toString() );
-						stmt.setInt( 2, loadStore );
-						stmt.setString( 3, loadStoreOp );
-						stmt.setInt( 4, inType );
-						ResultSet rs = stmt.executeQuery();
-
-						if (!rs.isBeforeFirst()) {
-							 rs.close();
-							 stmt.close();
-							 throw new InvalidCodeException();
-						} else {
-							 while (rs.next()) {
-									opCode = new Bits( rs.getString( "op_code" ) );
-									opType = new Bits( rs.getString( "op_type" ) );
-									opCodes = new HashMap<String, Bits>()
-									{
-										 {
-												put( "op_code", opCode );
-												put( "op_type", opType );
-												put( "s_bit", new Bits( sBit.toString() ) );
-												put( "load_store",
-															new Bits( String.valueOf( loadStore ) ) );
-										 }
-									};
-									break;
-							 }
-						}
-						rs.close();
-						stmt.close();
-						return opCodes;
-				 } catch (SQLException e) {
-						throw new InvalidCodeException( e.getMessage() );
+				 if (loadStore == -1) {
+						throw new InvalidCodeException();
 				 }
+				 int word = tables.encodeTransfer( command.toString(), 0,
+							 loadStoreOp, 0, 0, 0, inType == 0 );
+				 opCode = new Bits( Binary.toBinaryString( word >>> 21, 4 ) );
+				 opType = new Bits( Binary.toBinaryString( word >>> 25, 3 ) );
+				 // Halfword transfers carry their size in SH (bits 5-6)
+				 size = ( word >>> 25 & 7 ) == 0
+							 ? new Bits( Binary.toBinaryString( word >>> 5, 2 ) )
+							 : null;
+				 opCodes = new HashMap<String, Bits>();
+				 opCodes.put( "op_code", opCode );
+				 opCodes.put( "op_type", opType );
+				 opCodes.put( "s_bit", new Bits( sBit.toString() ) );
+				 opCodes.put( "load_store", new Bits( String.valueOf( loadStore ) ) );
+				 opCodes.put( "size", size );
+				 return opCodes;
 			}
 	 }
 
@@ -543,9 +532,40 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 			return true;
 	 }
 
+	 /**
+	  * Decode halfword/signed byte instruction
+	  * 
+	  * @return Boolean success
+	  * @throws InvalidCodeException
+	  */
+	 private Boolean decodeHalfword() throws InvalidCodeException
+	 {
+			int value = op2Code.toInteger();
+			this.shiftMode = 0;
+			if (operation.getCodeType() == 0) { // Immediate: imm4H SH imm4L
+				 this.format = "Immediate";
+				 int immVal = ( ( value >>> 4 ) & 0xf0 ) | ( value & 0xf );
+				 this.setImmediate( operation.getLoadStoreOp().matches( "SUB" )
+							 ? -immVal
+							 : immVal );
+			} else if (( value & 0xf00 ) == 0) { // Register, no shift
+				 this.format = "Register";
+				 this.setRm( value & 0xf );
+				 this.setShiftOp( "LSL" );
+			} else {
+				 throw new InvalidCodeException();
+			}
+			return true;
+	 }
+
 	 @Override
 	 public Boolean decode() throws InvalidCodeException
 	 {
+			this.size = operation.getSize();
+			if (size != null) {
+				 return decodeHalfword();
+			}
+
 			int codeType = operation.getCodeType();
 			int shiftMode = Integer.parseInt( op2Code.substring( 7, 8 ) );
 			this.setShiftMode( shiftMode );
@@ -563,6 +583,34 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 			return true;
 	 }
 
+	 /**
+	  * Returns the operand2 bits of a halfword/signed byte instruction: an 8-bit
+	  * immediate split around 1 SH 1, or an unshifted register.
+	  * 
+	  * @param Code command
+	  * @return Bits op2Code
+	  * @throws InvalidCodeException
+	  */
+	 private Bits encodeHalfword( Code command ) throws InvalidCodeException
+	 {
+			int value = 0x90 | ( size.toInteger() << 5 );
+			if (format.equals( "Immediate" )) {
+				 int immVal = Math.abs( immediate );
+				 if (immVal > 0xff) {
+						throw new InvalidCodeException( String.format(
+									"Offset #%d is out of range for %s.", immediate, command ) );
+				 }
+				 value |= ( ( immVal & 0xf0 ) << 4 ) | ( immVal & 0xf );
+			} else if (shiftOp != null) {
+				 throw new InvalidCodeException( String.format(
+							 "%s does not take a shifted register offset.", command ) );
+			} else {
+				 value |= rm.getBits().toInteger();
+			}
+			return new Bits( String.format( "%12s", Integer.toBinaryString( value ) )
+						.replace( ' ', '0' ) );
+	 }
+
 	 @Override
 	 public Boolean parse() throws InvalidCodeException
 	 {
@@ -599,9 +647,10 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 												immCode = matcher.group( 2 );
 												setImmediate(
 															Integer.parseInt( immCode.substring( 1 ) ) );
+												// The U bit carries the sign
 												this.op2Code = new Bits( String
-															.format( "%12s",
-																		Integer.toBinaryString( immediate ) )
+															.format( "%12s", Integer.toBinaryString(
+																		Math.abs( immediate ) ) )
 															.replace( " ", "0" ) );
 										 }
 										 this.setShiftMode( op2Code.substring( 7, 8 ) );
@@ -619,6 +668,10 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 												loadStoreOp = "PSI";
 												break;
 										 }
+										 if (immediate < 0 && !loadStoreOp.equals( "SUB" )) {
+												throw new InvalidCodeException(
+															"Negative offsets are only supported without writeback." );
+										 }
 										 break parseLoop;
 									case "register":
 										 this.format = "Register";
@@ -683,9 +736,16 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 						opType = opCodes.get( "op_type" );
 						sBit = opCodes.get( "s_bit" );
 						loadStore = opCodes.get( "load_store" );
-						condition.setSBit( sBit );
-						this.setOperation(
-									new Operation( opType, opCode, sBit, condition ) );
+						this.size = opCodes.get( "size" );
+						if (size != null) {
+							 this.op2Code = encodeHalfword( parts.get( "command" ) );
+						} else if (Math.abs( immediate ) > 0xfff) {
+							 throw new InvalidCodeException( String.format(
+										 "Offset #%d is out of range.", immediate ) );
+						}
+						this.condition = condition.withSBit( sBit );
+						this.setOperation( Operation.of( opType, opCode, sBit,
+									condition, size, tables ) );
 						this.loadStore = loadStore;
 				 } else {
 						throw new InvalidCodeException();
@@ -719,11 +779,12 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 			super();
 			this.op2Code = op2Code;
 			this.loadStore = loadStore;
+			this.tables = TableSet.current();
 			this.decode();
 	 }
 
 	 /**
-	  * Standard constructor
+	  * Standard constructor. Parses with the current tables.
 	  * 
 	  * @param Code      code
 	  * @param Condition condition
@@ -731,10 +792,25 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 	  */
 	 public LoadStore( Code code, Condition condition )
 				 throws InvalidCodeException
+	 {
+			this( code, condition, TableSet.current() );
+	 }
+
+	 /**
+	  * Pinned constructor. Parses with a set of tables.
+	  * 
+	  * @param Code      code
+	  * @param Condition condition
+	  * @param TableSet  tables
+	  * @throws InvalidCodeException
+	  */
+	 public LoadStore( Code code, Condition condition, TableSet tables )
+				 throws InvalidCodeException
 	 {
 			super();
 			this.code = code;
 			this.condition = condition;
+			this.tables = tables;
 			this.parse();
 	 }
 
@@ -753,6 +829,7 @@ public class LoadStore implements Op2Type, Decodable, Parsable, Queryable
 			this.op2Code = op2Code;
 			this.loadStore = loadStore;
 			this.operation = operation;
+			this.tables = operation.getTables();
 			this.decode();
 	 }
 
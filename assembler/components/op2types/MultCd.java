@@ -15,6 +15,7 @@ import assembler.exceptions.InvalidCodeException;
 import assembler.interfaces.Decodable;
 import assembler.interfaces.Op2Type;
 import assembler.interfaces.Parsable;
+import assembler.io.TableSet;
 import assembler.types.Bits;
 import assembler.types.Code;
 
@@ -50,6 +51,11 @@ public class MultCd implements Op2Type, Decodable, Parsable
 	  */
 	 private Operation operation;
 
+	 /**
+	  * {@link TableSet} Tables the operand is parsed or decoded with
+	  */
+	 private final TableSet tables;
+
 	 /**
 	  * {@value #condition} Condition
 	  */
@@ -113,10 +119,8 @@ public class MultCd implements Op2Type, Decodable, Parsable
 	  */
 	 public String getComposite()
 	 {
-			Register rm = getRm();
-			Register rs = getRs();
-			String output = String.format( "%s, %s", rm, rs );
-			return output;
+			return new StringBuilder( 8 ).append( getRm() ).append( ", " )
+						.append( getRs() ).toString();
 	 }
 
 	 /**
@@ -125,9 +129,9 @@ public class MultCd implements Op2Type, Decodable, Parsable
 	  * @param String rm
 	  * @throws InvalidCodeException
 	  */
-	 public void setRm( String rm ) throws InvalidCodeException
+	 private void setRm( String rm ) throws InvalidCodeException
 	 {
-			this.rm = new Register( new Bits( rm ) );
+			this.rm = Register.of( Integer.parseInt( rm, 2 ) );
 	 }
 
 	 /**
@@ -136,9 +140,9 @@ public class MultCd implements Op2Type, Decodable, Parsable
 	  * @param int rm
 	  * @throws InvalidCodeException
 	  */
-	 public void setRm( int rm ) throws InvalidCodeException
+	 private void setRm( int rm ) throws InvalidCodeException
 	 {
-			this.rm = new Register( new Bits( String.valueOf( rm ), 10 ) );
+			this.rm = Register.of( rm );
 	 }
 
 	 /**
@@ -147,9 +151,9 @@ public class MultCd implements Op2Type, Decodable, Parsable
 	  * @param Code rm
 	  * @throws InvalidCodeException
 	  */
-	 public void setRm( Code rm ) throws InvalidCodeException
+	 private void setRm( Code rm ) throws InvalidCodeException
 	 {
-			this.rm = new Register( rm );
+			this.rm = Register.of( rm );
 	 }
 
 	 /**
@@ -158,9 +162,9 @@ public class MultCd implements Op2Type, Decodable, Parsable
 	  * @param String rs
 	  * @throws InvalidCodeException
 	  */
-	 public void setRs( String rs ) throws InvalidCodeException
+	 private void setRs( String rs ) throws InvalidCodeException
 	 {
-			this.rs = new Register( new Bits( rs ) );
+			this.rs = Register.of( Integer.parseInt( rs, 2 ) );
 	 }
 
 	 /**
@@ -169,9 +173,9 @@ public class MultCd implements Op2Type, Decodable, Parsable
 	  * @param int rs
 	  * @throws InvalidCodeException
 	  */
-	 public void setRs( int rs ) throws InvalidCodeException
+	 private void setRs( int rs ) throws InvalidCodeException
 	 {
-			this.rs = new Register( new Bits( String.valueOf( rs ), 10 ) );
+			this.rs = Register.of( rs );
 	 }
 
 	 /**
@@ -180,9 +184,9 @@ public class MultCd implements Op2Type, Decodable, Parsable
 	  * @param Code rs
 	  * @throws InvalidCodeException
 	  */
-	 public void setRs( Code rs ) throws InvalidCodeException
+	 private void setRs( Code rs ) throws InvalidCodeException
 	 {
-			this.rs = new Register( rs );
+			this.rs = Register.of( rs );
 	 }
 
 	 /**
@@ -199,16 +203,17 @@ public class MultCd implements Op2Type, Decodable, Parsable
 	 }
 
 	 /**
-	  * Sets main Operation instruction.
+	  * Replaces the operation by its MUL variant.
 	  * 
 	  * @return void
 	  */
-	 public void setInstruction()
+	 private void setInstruction()
 	 {
 			Condition condition = operation.getCondition();
 			String sFlag = operation.getSFlag();
 			if (isMUL()) {
-				 operation.setInstruction( "MUL" + sFlag + condition );
+				 this.operation = operation
+							 .withInstruction( "MUL" + sFlag + condition );
 			}
 	 }
 
@@ -248,7 +253,7 @@ public class MultCd implements Op2Type, Decodable, Parsable
 						op2Code = new Bits(
 									String.format( "%s%s%s", this.rs.toBinaryString(),
 												MULTCDBITS, this.rm.toBinaryString() ) );
-						this.operation = new Operation( opType, opCode, condition );
+						this.operation = Operation.of( opType, opCode, condition, tables );
 						this.setInstruction();
 						return true;
 				 } else {
@@ -281,21 +286,37 @@ public class MultCd implements Op2Type, Decodable, Parsable
 	 {
 			super();
 			this.op2Code = op2Code;
+			this.tables = TableSet.current();
 			this.decode();
 	 }
 
 	 /**
-	  * Standard constructor
+	  * Standard constructor. Parses with the current tables.
 	  * 
 	  * @param Code      code
 	  * @param Condition condition
 	  * @throws InvalidCodeException
 	  */
 	 public MultCd( Code code, Condition condition ) throws InvalidCodeException
+	 {
+			this( code, condition, TableSet.current() );
+	 }
+
+	 /**
+	  * Pinned constructor. Parses with a set of tables.
+	  * 
+	  * @param Code      code
+	  * @param Condition condition
+	  * @param TableSet  tables
+	  * @throws InvalidCodeException
+	  */
+	 public MultCd( Code code, Condition condition, TableSet tables )
+				 throws InvalidCodeException
 	 {
 			super();
 			this.code = code;
 			this.condition = condition;
+			this.tables = tables;
 			this.parse();
 	 }
 
@@ -312,6 +333,7 @@ public class MultCd implements Op2Type, Decodable, Parsable
 			super();
 			this.op2Code = op2Code;
 			this.operation = operation;
+			this.tables = operation.getTables();
 			this.decode();
 	 }
 
@@ -4,7 +4,6 @@
  */
 package assembler.components.op2types;
 
-import java.sql.*;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -16,15 +15,16 @@ import assembler.exceptions.InvalidCodeException;
 import assembler.interfaces.Decodable;
 import assembler.interfaces.Op2Type;
 import assembler.interfaces.Parsable;
-import assembler.interfaces.Queryable;
+import assembler.io.TableSet;
 import assembler.types.Bits;
 import assembler.types.Code;
+import assembler.util.Binary;
 
 /**
  * Register Format Operand2 Value
  *
  */
-public class Register implements Op2Type, Decodable, Parsable, Queryable
+public class Register implements Op2Type, Decodable, Parsable
 {
 
 	 /**
@@ -80,6 +80,11 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  */
 	 private Operation operation;
 
+	 /**
+	  * {@link TableSet} Tables the operand is parsed or decoded with
+	  */
+	 private final TableSet tables;
+
 	 /**
 	  * {@value #condition} Condition
 	  */
@@ -208,24 +213,11 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	 public int getShiftType( String shiftOp, int shiftMode )
 				 throws InvalidCodeException
 	 {
-			Connection conn = db.getConn();
-			try {
-				 String sql = "SELECT * FROM operand2 WHERE instr = ? AND instr_type = ?";
-				 PreparedStatement stmt = conn.prepareStatement( sql );
-				 stmt.setString( 1, shiftOp );
-				 stmt.setInt( 2, shiftMode );
-				 ResultSet rs = stmt.executeQuery();
-
-				 while (rs.next()) {
-						this.setShiftType( rs.getString( "shift_type" ) );
-						break;
-				 }
-				 rs.close();
-				 stmt.close();
-				 return shiftType;
-			} catch (SQLException e) {
-				 throw new InvalidCodeException( e.getMessage() );
+			int type = tables.getShiftType( shiftOp, shiftMode );
+			if (type >= 0) {
+				 this.setShiftType( type );
 			}
+			return shiftType;
 	 }
 
 	 /**
@@ -238,25 +230,27 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 			int shAmt = getShAmt();
 			int shiftMode = getShiftMode();
 			String shiftOp = getShiftOp();
-			String output = "";
+			StringBuilder output = new StringBuilder( 16 ).append( rm );
 			if (shiftMode == 0) { // shAmt
 				 if (!operation.isShift() && isRRX()) {
-						output = String.format( "%s, %s", rm, shiftOp );
+						output.append( ", " ).append( shiftOp );
 				 } else if (shAmt == 0) {
-						output = String.format( "%s", rm );
+						// Plain register
 				 } else if (operation.isShift()) {
-						output = String.format( "%s, #%d", rm, shAmt );
+						output.append( ", #" ).append( shAmt );
 				 } else {
-						output = String.format( "%s, %s #%d", rm, shiftOp, shAmt );
+						output.append( ", " ).append( shiftOp ).append( " #" )
+									.append( shAmt );
 				 }
 			} else { // Register
 				 if (operation.isShift()) {
-						output = String.format( "%s, %s", rm, rs );
+						output.append( ", " ).append( rs );
 				 } else {
-						output = String.format( "%s, %s %s", rm, shiftOp, rs );
+						output.append( ", " ).append( shiftOp ).append( ' ' )
+									.append( rs );
 				 }
 			}
-			return output;
+			return output.toString();
 	 }
 
 	 /**
@@ -264,7 +258,7 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param int shiftMode (0 = ShAmt, 1 = Register)
 	  */
-	 public void setShiftMode( int shiftMode )
+	 private void setShiftMode( int shiftMode )
 	 {
 			this.shiftMode = shiftMode;
 	 }
@@ -274,7 +268,7 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param String shiftMode
 	  */
-	 public void setShiftMode( String shiftMode )
+	 private void setShiftMode( String shiftMode )
 	 {
 			this.shiftMode = Integer.parseInt( shiftMode, 2 );
 	 }
@@ -284,7 +278,7 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param String shAmt
 	  */
-	 public void setShAmt( String shAmt )
+	 private void setShAmt( String shAmt )
 	 {
 			this.shAmt = Integer.parseInt( shAmt, 2 );
 	 }
@@ -294,7 +288,7 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param int shAmt
 	  */
-	 public void setShAmt( int shAmt )
+	 private void setShAmt( int shAmt )
 	 {
 			this.shAmt = shAmt;
 	 }
@@ -304,7 +298,7 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param String shiftType
 	  */
-	 public void setShiftType( String shiftType )
+	 private void setShiftType( String shiftType )
 	 {
 			this.shiftType = Integer.parseInt( shiftType, 2 );
 	 }
@@ -314,7 +308,7 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param int shiftType
 	  */
-	 public void setShiftType( int shiftType )
+	 private void setShiftType( int shiftType )
 	 {
 			this.shiftType = shiftType;
 	 }
@@ -325,9 +319,9 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * @param String rm
 	  * @throws InvalidCodeException
 	  */
-	 public void setRm( String rm ) throws InvalidCodeException
+	 private void setRm( String rm ) throws InvalidCodeException
 	 {
-			this.rm = new assembler.components.Register( new Bits( rm ) );
+			this.rm = assembler.components.Register.of( Integer.parseInt( rm, 2 ) );
 	 }
 
 	 /**
@@ -336,10 +330,9 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * @param int rm
 	  * @throws InvalidCodeException
 	  */
-	 public void setRm( int rm ) throws InvalidCodeException
+	 private void setRm( int rm ) throws InvalidCodeException
 	 {
-			this.rm = new assembler.components.Register(
-						new Bits( String.valueOf( rm ), 10 ) );
+			this.rm = assembler.components.Register.of( rm );
 	 }
 
 	 /**
@@ -348,9 +341,9 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * @param Code rm
 	  * @throws InvalidCodeException
 	  */
-	 public void setRm( Code rm ) throws InvalidCodeException
+	 private void setRm( Code rm ) throws InvalidCodeException
 	 {
-			this.rm = new assembler.components.Register( rm );
+			this.rm = assembler.components.Register.of( rm );
 	 }
 
 	 /**
@@ -359,9 +352,9 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * @param String rs
 	  * @throws InvalidCodeException
 	  */
-	 public void setRs( String rs ) throws InvalidCodeException
+	 private void setRs( String rs ) throws InvalidCodeException
 	 {
-			this.rs = new assembler.components.Register( new Bits( rs ) );
+			this.rs = assembler.components.Register.of( Integer.parseInt( rs, 2 ) );
 	 }
 
 	 /**
@@ -370,10 +363,9 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * @param int rs
 	  * @throws InvalidCodeException
 	  */
-	 public void setRs( int rs ) throws InvalidCodeException
+	 private void setRs( int rs ) throws InvalidCodeException
 	 {
-			this.rs = new assembler.components.Register(
-						new Bits( String.valueOf( rs ), 10 ) );
+			this.rs = assembler.components.Register.of( rs );
 	 }
 
 	 /**
@@ -382,9 +374,9 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * @param Code rm
 	  * @throws InvalidCodeException
 	  */
-	 public void setRs( Code rs ) throws InvalidCodeException
+	 private void setRs( Code rs ) throws InvalidCodeException
 	 {
-			this.rs = new assembler.components.Register( rs );
+			this.rs = assembler.components.Register.of( rs );
 	 }
 
 	 /**
@@ -392,57 +384,39 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * 
 	  * @param String shiftOp
 	  */
-	 public void setShiftOp( String shiftOp )
+	 private void setShiftOp( String shiftOp )
 	 {
 			this.shiftOp = shiftOp;
 	 }
 
 	 /**
-	  * Set shift type from database
+	  * Set shift op from the shift tables
 	  * 
 	  * @param String shiftCode
 	  * @param int    shiftMode
 	  * @throws InvalidCodeException
 	  */
-	 public void setShiftOp( String shiftCode, int format )
+	 private void setShiftOp( String shiftCode, int format )
 				 throws InvalidCodeException
 	 {
 			String instr;
 			int bits_4_11 = Integer.parseInt( op2Code.substring( 0, 7 ), 2 );
 			Boolean bits_lsl = bits_4_11 != 0;
-			Connection conn = db.getConn();
-			try {
-				 String sql = "SELECT * FROM operand2 WHERE shift_type = ? AND instr_type = ?";
-				 PreparedStatement stmt = conn.prepareStatement( sql );
-				 stmt.setString( 1, shiftCode );
-				 stmt.setInt( 2, format );
-				 ResultSet rs = stmt.executeQuery();
-
-				 if (!rs.isBeforeFirst()) {
-						rs.close();
-						stmt.close();
-						throw new InvalidCodeException();
-				 } else {
-						while (rs.next()) {
-							 instr = rs.getString( "instr" );
-							 if (instr.matches( "ROR" ) && isRRX()) {
-									instr = "RRX";
-							 } else if (instr.matches( "MOV" ) && bits_lsl) {
-									instr = "LSL";
-							 }
-							 this.setShiftOp( instr );
-							 if (shAmt == 0) {
-									if (shiftOp.matches( "(.*)R$" )) {
-										 shAmt = 32;
-									}
-							 }
-							 break;
-						}
+			instr = tables.getShift( format,
+						Integer.parseInt( shiftCode, 2 ) );
+			if (instr == null) {
+				 throw new InvalidCodeException();
+			}
+			if (instr.matches( "ROR" ) && isRRX()) {
+				 instr = "RRX";
+			} else if (instr.matches( "MOV" ) && bits_lsl) {
+				 instr = "LSL";
+			}
+			this.setShiftOp( instr );
+			if (shAmt == 0) {
+				 if (shiftOp.matches( "(.*)R$" )) {
+						shAmt = 32;
 				 }
-				 rs.close();
-				 stmt.close();
-			} catch (SQLException e) {
-				 throw new InvalidCodeException( e.getMessage() );
 			}
 	 }
 
@@ -452,25 +426,27 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  * @param String  action
 	  * @param Boolean state
 	  */
-	 public void setAction( String action, Boolean state )
+	 private void setAction( String action, Boolean state )
 	 {
 			this.actions.put( action, state );
 	 }
 
 	 /**
-	  * Sets main Operation instruction using opCode and shift operation.
+	  * Replaces the operation by its variant named after the shift operation.
 	  * 
 	  * @return void
 	  */
-	 public void setInstruction()
+	 private void setInstruction()
 	 {
 			Condition condition = operation.getCondition();
 			String sFlag = operation.getSFlag();
 			if (operation.isShift()) {
 				 if (isMOV()) {
-						operation.setInstruction( "MOV" + sFlag + condition );
+						this.operation = operation
+									.withInstruction( "MOV" + sFlag + condition );
 				 } else {
-						operation.setInstruction( shiftOp + sFlag + condition );
+						this.operation = operation
+									.withInstruction( shiftOp + sFlag + condition );
 				 }
 			}
 	 }
@@ -532,7 +508,6 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 				 throws InvalidCodeException
 	 {
 			Bits opCode, opType;
-			Connection conn = db.getConn();
 			Map<String, Code> parts;
 			Map<String, Bits> opCodes = null;
 			Code command, sBit;
@@ -543,58 +518,26 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 				 command = parts.get( "command" );
 				 sBit = parts.get( "s_bit" );
 				 opType = new Bits( "000" );
-
+				 String instr = command.toString();
+				 int word;
 				 try {
-						String sql = "SELECT * FROM op_code " + "WHERE instr = ? "
-									+ "AND load_store = -1 " + "AND instr_type = 1";
-						PreparedStatement stmt = conn.prepareStatement( sql );
-						stmt.setString( 1, command.toString() );
-						ResultSet rs = stmt.executeQuery();
-
-						if (!rs.isBeforeFirst()) {
-							 rs.close();
-							 stmt.close();
-							 sql = "SELECT * FROM operand2 WHERE instr = ?";
-							 stmt = conn.prepareStatement( sql );
-							 stmt.setString( 1, command.toString() );
-							 rs = stmt.executeQuery();
-							 if (!rs.isBeforeFirst()) {
-									rs.close();
-									stmt.close();
-									throw new InvalidCodeException();
-							 } else {
-									opCode = new Bits( "1101" );
-									opCodes = new HashMap<String, Bits>()
-									{
-										 {
-												put( "op_code", opCode );
-												put( "op_type", opType );
-												put( "s_bit", new Bits( sBit == null ? "0" : "1" ) );
-										 }
-									};
-							 }
-						} else {
-							 while (rs.next()) {
-									opCode = new Bits( rs.getString( "op_code" ) );
-									opCodes = new HashMap<String, Bits>()
-									{
-										 {
-												put( "op_code", opCode );
-												put( "op_type", opType );
-												put( "s_bit", new Bits( sBit == null ? "0" : "1" ) );
-										 }
-									};
-									break;
-							 }
+						word = tables.encodeData( instr, 0, 0, 0, 0, 0, false );
+				 } catch (InvalidCodeException e) {
+						// Shifts (LSL, ASR, RRX, ...) are MOV with a shifted operand
+						if (tables.getShiftType( instr, 0 ) < 0
+									&& tables.getShiftType( instr, 1 ) < 0) {
+							 throw new InvalidCodeException();
 						}
-						rs.close();
-						stmt.close();
-						return opCodes;
-				 } catch (
-
-				 SQLException e) {
-						throw new InvalidCodeException( e.getMessage() );
+						word = tables.encodeData( "MOV", 0, 0, 0, 0, 0, false );
 				 }
+				 opCode = new Bits( Binary.toBinaryString( word >>> 21, 4 ) );
+				 // TST, TEQ, CMP and CMN always set the S bit
+				 boolean s = sBit != null || ( word & 0x00100000 ) != 0;
+				 opCodes = new HashMap<String, Bits>();
+				 opCodes.put( "op_code", opCode );
+				 opCodes.put( "op_type", opType );
+				 opCodes.put( "s_bit", new Bits( s ? "1" : "0" ) );
+				 return opCodes;
 			}
 	 }
 
@@ -661,6 +604,19 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 						switch (mode) {
 						case "register":
 							 rmCode = matcher.group( 1 );
+							 if (command.matches( "LSL|LSR|ASR|ROR" )) {
+									// Two operand shift (LSL rd, rs): rd is shifted by rs
+									setRm( parts.get( "rd" ) );
+									setRs( new Code( rmCode ) );
+									shiftMode = 1;
+									shiftType = getShiftType( command.toString(), shiftMode );
+									op2Code = new Bits(
+												String.format( "%4s0%2s%1s%4s", rs.toBinaryString(),
+															Integer.toBinaryString( shiftType ),
+															Integer.toBinaryString( shiftMode ),
+															rm.toBinaryString() ).replaceAll( " ", "0" ) );
+									break parseLoop;
+							 }
 							 setRm( new Code( rmCode ) );
 							 shOpCode = isMOV( command ) ? command.toString() : "LSL";
 							 shiftMode = 0;
@@ -816,7 +772,8 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 				 }
 			}
 			if (found) {
-				 this.operation = new Operation( opType, opCode, sBit, condition );
+				 this.operation = Operation.of( opType, opCode, sBit, condition,
+							 null, tables );
 				 this.setInstruction();
 				 return true;
 			} else {
@@ -846,11 +803,12 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 			super();
 			this.op2Code = op2Code;
 			this.format = "Register";
+			this.tables = TableSet.current();
 			this.decode();
 	 }
 
 	 /**
-	  * Standard constructor
+	  * Standard constructor. Parses with the current tables.
 	  * 
 	  * @param Code      code
 	  * @param Condition condition
@@ -858,10 +816,25 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 	  */
 	 public Register( Code code, Condition condition )
 				 throws InvalidCodeException
+	 {
+			this( code, condition, TableSet.current() );
+	 }
+
+	 /**
+	  * Pinned constructor. Parses with a set of tables.
+	  * 
+	  * @param Code      code
+	  * @param Condition condition
+	  * @param TableSet  tables
+	  * @throws InvalidCodeException
+	  */
+	 public Register( Code code, Condition condition, TableSet tables )
+				 throws InvalidCodeException
 	 {
 			super();
 			this.code = code;
 			this.condition = condition;
+			this.tables = tables;
 			this.parse();
 	 }
 
@@ -878,6 +851,7 @@ public class Register implements Op2Type, Decodable, Parsable, Queryable
 			this.op2Code = op2Code;
 			this.format = "Register";
 			this.operation = operation;
+			this.tables = operation.getTables();
 			this.decode();
 	 }
 
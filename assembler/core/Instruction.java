@@ -9,11 +9,16 @@ import assembler.components.Condition;
 import assembler.components.Operand2;
 import assembler.components.Operation;
 import assembler.components.Register;
+import assembler.components.op2types.BlockTransfer;
+import assembler.components.op2types.LoadStore;
 import assembler.exceptions.InvalidCodeException;
 import assembler.interfaces.Decodable;
 import assembler.interfaces.Parsable;
+import assembler.io.TableSet;
+import assembler.thumb.ThumbEncoder;
 import assembler.types.Bits;
 import assembler.types.Code;
+import assembler.util.Binary;
 
 /**
  * @author Akin Williams<aowilliams@jhu.edu>
@@ -57,6 +62,11 @@ public class Instruction implements Decodable, Parsable
 	  */
 	 private Operand2 operand2;
 
+	 /**
+	  * {@link TableSet} Tables the instruction is assembled or decoded with
+	  */
+	 private final TableSet tables;
+
 	 /**
 	  * @return Code instruction code
 	  */
@@ -118,77 +128,79 @@ public class Instruction implements Decodable, Parsable
 	  */
 	 public String getComposite()
 	 {
-			String output;
-			String operation = this.getOper().toString();
-			String rd = this.getRd().toString();
+			StringBuilder output = new StringBuilder( 32 );
 			String rn = this.getRn().toString();
 			String operand2 = this.getOperand2().toString();
 			String loadStoreOp;
 			Boolean isLoadStore = this.getOperand2().isLoadStore();
 			Boolean zeroOp2;
 
+			if (this.getOper().isBlockTransfer()) {
+				 return getBlockComposite( output );
+			}
+
+			output.append( this.getOper() ).append( ' ' );
+			if (this.getOper().hasRd()) {
+				 output.append( this.getRd() ).append( ", " );
+			}
 			if (isLoadStore) {
 				 loadStoreOp = this.getOper().getLoadStoreOp();
-				 zeroOp2 = operand2.matches( "#0" );
-
+				 zeroOp2 = operand2.equals( "#0" );
+				 output.append( '[' );
+				 if (rn.isEmpty()) {
+						output.append( operand2 );
+				 } else {
+						output.append( rn );
+						if (!zeroOp2) {
+							 output.append( loadStoreOp.equals( "PSI" ) ? "], " : ", " )
+										 .append( operand2 );
+						}
+				 }
 				 switch (loadStoreOp) {
 				 case "PRI":
-						if (rn.isEmpty()) {
-							 output = String.format( "%s %s, [%s]!", operation, rd,
-										 operand2 );
-						} else if (zeroOp2) {
-							 output = String.format( "%s %s, [%s]!", operation, rd, rn );
-						} else {
-							 output = String.format( "%s %s, [%s, %s]!", operation, rd, rn,
-										 operand2 );
-						}
+						output.append( "]!" );
 						break;
 				 case "PSI":
-						if (rn.isEmpty()) {
-							 output = String.format( "%s %s, [%s]", operation, rd,
-										 operand2 );
-						} else if (zeroOp2) {
-							 output = String.format( "%s %s, [%s]", operation, rd, rn );
-						} else {
-							 output = String.format( "%s %s, [%s], %s", operation, rd, rn,
-										 operand2 );
+						if (rn.isEmpty() || zeroOp2) {
+							 output.append( ']' );
 						}
 						break;
 				 default:
-						if (rn.isEmpty()) {
-							 output = String.format( "%s %s, [%s]", operation, rd,
-										 operand2 );
-						} else if (zeroOp2) {
-							 output = String.format( "%s %s, [%s]", operation, rd, rn );
-						} else {
-							 output = String.format( "%s %s, [%s, %s]", operation, rd, rn,
-										 operand2 );
-						}
+						output.append( ']' );
 						break;
 				 }
 			} else if (rn.isEmpty()) {
-				 output = String.format( "%s %s, %s", operation, rd, operand2 );
+				 output.append( operand2 );
 			} else {
-				 output = String.format( "%s %s, %s, %s", operation, rd, rn,
-							 operand2 );
+				 output.append( rn ).append( ", " ).append( operand2 );
 			}
-			return output;
+			return output.toString();
 	 }
 
 	 /**
-	  * @param Bits bits the instruction bits to set
-	  */
-	 public void setBits( Bits bits )
-	 {
-			this.bits = bits;
-	 }
-
-	 /**
-	  * @param Code code
+	  * Returns the composite value of an LDM/STM instruction. STMDB sp! and
+	  * LDMIA sp! are written as PUSH and POP.
+	  * 
+	  * @param StringBuilder output
+	  * @return String composite value
 	  */
-	 public void setCode( Code code )
+	 private String getBlockComposite( StringBuilder output )
 	 {
-			this.code = code;
+			Operation oper = this.getOper();
+			Boolean writeBack = oper.getOpCode().toBinaryString().endsWith( "1" );
+			Boolean load = oper.getSBit().toBinaryString().equals( "1" );
+			String mode = oper.getLoadStoreOp();
+			if (writeBack && this.getRn().toString().equals( "sp" )
+						&& mode.equals( load ? "IA" : "DB" )) {
+				 output.append( load ? "POP" : "PUSH" ).append( this.getCond() );
+			} else {
+				 output.append( oper ).append( ' ' ).append( this.getRn() );
+				 if (writeBack) {
+						output.append( '!' );
+				 }
+				 output.append( ',' );
+			}
+			return output.append( ' ' ).append( this.getOperand2() ).toString();
 	 }
 
 	 /**
@@ -235,26 +247,42 @@ public class Instruction implements Decodable, Parsable
 
 				 //this.debugD( bits, bitmap );
 
-				 this.cond = new Condition( bitmap.get( "cond_code" ),
+				 this.cond = Condition.of( bitmap.get( "cond_code" ),
 							 bitmap.get( "s_bit" ) );
-				 this.oper = new Operation( bitmap.get( "op_type" ),
-							 bitmap.get( "op_code" ), bitmap.get( "s_bit" ), this.cond );
+				 // LDRH/STRH/LDRSB/LDRSH: SH bits select the instruction
+				 Bits size = LoadStore.getSize( bitmap.get( "op_type" ),
+							 bitmap.get( "operand2" ) );
+				 this.oper = Operation.of( bitmap.get( "op_type" ),
+							 bitmap.get( "op_code" ), bitmap.get( "s_bit" ), this.cond,
+							 size, tables );
 
 				 // MOV/MVN
-				 if (this.oper.getOpCode().matches( "11[01]1" )
-							 && this.oper.getOpClass().matches( "DP" )) {
-						this.rn = new Register();
+				 if (!this.oper.hasRn()) {
+						this.rn = Register.NONE;
 				 } else {
-						this.rn = new Register( bitmap.get( "rn" ) );
+						this.rn = Register.of( bitmap.get( "rn" ) );
 				 }
 
-				 this.rd = new Register( bitmap.get( "rd" ) );
+				 // TST/TEQ/CMP/CMN
+				 if (!this.oper.hasRd()) {
+						this.rd = Register.NONE;
+				 } else {
+						this.rd = Register.of( bitmap.get( "rd" ) );
+				 }
+
+				 // LDM/STM: the register list takes the rd and operand2 fields
+				 if (this.oper.isBlockTransfer()) {
+						this.rd = Register.NONE;
+						this.operand2 = new Operand2( bits.slice( 16, 32 ), this.oper );
+						return true;
+				 }
 				 this.operand2 = new Operand2( bitmap.get( "operand2" ), this.oper );
+				 this.oper = operand2.getOp();
 
 				 // MUL
 				 if (operand2.isMultCd()) {
-						this.rd = new Register( bitmap.get( "rn" ) );
-						this.rn = new Register();
+						this.rd = Register.of( bitmap.get( "rn" ) );
+						this.rn = Register.NONE;
 				 }
 
 				 return true;
@@ -265,28 +293,57 @@ public class Instruction implements Decodable, Parsable
 
 	 public Boolean parse() throws InvalidCodeException
 	 {
+			// LDM/STM/PUSH/POP: base register and list are parsed by the operand
+			if (BlockTransfer.isBlockTransfer( code )) {
+				 this.operand2 = new Operand2( code, null, tables );
+				 BlockTransfer list = (BlockTransfer) operand2.getValue();
+				 this.oper = operand2.getOp();
+				 this.cond = list.getCondition();
+				 this.rn = list.getRn();
+				 this.rd = Register.NONE;
+				 this.bits = new Bits( toBinaryString() );
+				 return true;
+			}
+
 			Map<String, Code> parts = extract( code );
 
 			//this.debugA( code, parts );
 
-			this.cond = new Condition( parts.get( "condition" ),
+			this.cond = Condition.of( parts.get( "condition" ),
 						parts.get( "s_bit" ) );
-			this.operand2 = new Operand2( code, this.cond );
+			this.operand2 = new Operand2( code, this.cond, tables );
 			this.oper = operand2.getOp();
+			// LDR/STR: the condition carries the L bit
+			if (operand2.getValue() instanceof LoadStore) {
+				 this.cond = ( (LoadStore) operand2.getValue() ).getCondition();
+			}
 			// MOV/MVN
-			if (this.oper.getOpCode().matches( "11[01]1" )
-						&& this.oper.getOpClass().matches( "DP" )) {
-				 this.rn = new Register();
+			if (!this.oper.hasRn()) {
+				 this.rn = Register.NONE;
 			} else {
-				 this.rn = new Register( parts.get( "rn" ) );
+				 this.rn = Register.of( parts.get( "rn" ) );
 			}
 
-			this.rd = new Register( parts.get( "rd" ) );
+			this.rd = Register.of( parts.get( "rd" ) );
+
+			// Two operand form (ADD rd, op2): rd is also the first operand
+			Code op2 = parts.get( "operand2" );
+			if (this.oper.hasRn() && this.oper.getOpClass().equals( "DP" )
+						&& op2 != null && op2.toString().indexOf( ',' ) < 0) {
+				 this.rn = this.rd;
+			}
+
+			// TST/TEQ/CMP/CMN: the first register is rn and the S bit is implied
+			if (!this.oper.hasRd()) {
+				 this.rn = this.rd;
+				 this.rd = Register.NONE;
+				 this.cond = this.cond.withSBit( this.oper.getSBit() );
+			}
 
 			// MUL
 			if (operand2.isMultCd()) {
-				 this.rn = new Register( parts.get( "rd" ) );
-				 this.rd = new Register();
+				 this.rn = Register.of( parts.get( "rd" ) );
+				 this.rd = Register.NONE;
 			}
 
 			this.bits = new Bits( toBinaryString() );
@@ -355,20 +412,61 @@ public class Instruction implements Decodable, Parsable
 	 @Override
 	 public String toBinaryString() throws InvalidCodeException
 	 {
-			Bits condCode, opType, opCode, sBit, rnBits, rdBits, op2Code;
-			condCode = this.cond.getBits();
-			opType = this.oper.getOpType();
-			opCode = this.oper.getOpCode();
-			sBit = this.cond.getsBit();
-			rnBits = ( this.rn == null ) ? new Bits( "0000" ) : this.rn.getBits();
-			rdBits = ( this.rd == null ) ? new Bits( "0000" ) : this.rd.getBits();
-			op2Code = this.operand2.getOp2Code();
-			return String
-						.format( "%4s%3s%4s%1s%4s%4s%12s", condCode.toBinaryString(),
-									opType.toBinaryString(), opCode.toBinaryString(),
-									sBit.toBinaryString(), rnBits.toBinaryString(),
-									rdBits.toBinaryString(), op2Code.toBinaryString() )
-						.replaceAll( " ", "0" );
+			return Binary.toBinaryString( encode(), 32 );
+	 }
+
+	 /**
+	  * Encodes the instruction with the encoder of its mnemonic in the tables
+	  * it was assembled or decoded with.
+	  * 
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the encoder does not know the mnemonic
+	  *                              or addressing mode
+	  */
+	 public int encode() throws InvalidCodeException
+	 {
+			String instr = this.oper.getMnemonic();
+			int condCode = this.cond.getBits().toInteger();
+			int rnCode = ( this.rn == null ) ? 0 : this.rn.getBits().toInteger();
+			int rdCode = ( this.rd == null ) ? 0 : this.rd.getBits().toInteger();
+			int op2Code = this.operand2.getOp2Code().toInteger();
+			if (this.oper.isBlockTransfer()) {
+				 return tables.encodeBlock( instr, condCode, oper.getLoadStoreOp(),
+							 ( oper.getOpCode().toInteger() & 1 ) != 0, rnCode, op2Code );
+			} else if (this.oper.getOpClass().equals( "LS" )) {
+				 boolean immediate = oper.getCodeType() == 0;
+				 // LDRH/STRH/LDRSB/LDRSH: the encoder places the SH bits
+				 if (oper.getSize() != null) {
+						op2Code = immediate ? ( op2Code >>> 4 ) & 0xf0 | op2Code & 0xf
+									: op2Code & 0xf;
+				 }
+				 return tables.encodeTransfer( instr, condCode, oper.getLoadStoreOp(),
+							 rdCode, rnCode, op2Code, immediate );
+			}
+			// MUL: operand2 carries the multiply bits of the AND encoding
+			return tables.encodeData( instr, condCode,
+						this.cond.getsBit().toInteger(), rdCode, rnCode, op2Code,
+						oper.getOpType().toInteger() == 1 );
+	 }
+
+	 /**
+	  * Returns the smallest Thumb encoding of the instruction.
+	  * 
+	  * @return int halfword
+	  * @throws InvalidCodeException if the instruction has no Thumb form
+	  */
+	 public int toThumb() throws InvalidCodeException
+	 {
+			int word = bits.getDecimal().intValue();
+			int halfword = ThumbEncoder.encode( word );
+			if (halfword == ThumbEncoder.NONE) {
+				 Object source = code != null ? code : bits.toHexString();
+				 throw new InvalidCodeException( String.format(
+							 ( word >>> 28 ) != 0xe ? "%s: Thumb instructions cannot be conditional."
+										 : "%s has no Thumb encoding.",
+							 source ) );
+			}
+			return halfword;
 	 }
 
 	 @Override
@@ -398,28 +496,57 @@ public class Instruction implements Decodable, Parsable
 	 }
 
 	 /**
-	  * Standard Assembly Constructor
+	  * Standard Assembly Constructor. Assembles with the current tables.
 	  * 
 	  * @param Code code
 	  * @throws InvalidCodeException
 	  */
 	 public Instruction( Code code ) throws InvalidCodeException
+	 {
+			this( code, TableSet.current() );
+	 }
+
+	 /**
+	  * Pinned Assembly Constructor. Assembles with a set of tables, whatever
+	  * set is current.
+	  * 
+	  * @param Code     code
+	  * @param TableSet tables
+	  * @throws InvalidCodeException
+	  */
+	 public Instruction( Code code, TableSet tables )
+				 throws InvalidCodeException
 	 {
 			super();
 			this.code = code;
+			this.tables = tables;
 			this.parse();
 	 }
 
 	 /**
-	  * Standard Disassembly Constructor
+	  * Standard Disassembly Constructor. Decodes with the current tables.
 	  * 
 	  * @param Bits bits the instruction bits
 	  */
 	 public Instruction( Bits bits ) throws InvalidCodeException
+	 {
+			this( bits, TableSet.current() );
+	 }
+
+	 /**
+	  * Pinned Disassembly Constructor. Decodes with a set of tables, whatever
+	  * set is current.
+	  * 
+	  * @param Bits     bits the instruction bits
+	  * @param TableSet tables
+	  */
+	 public Instruction( Bits bits, TableSet tables )
+				 throws InvalidCodeException
 	 {
 			super();
 			// Set member variable
 			this.bits = bits;
+			this.tables = tables;
 			this.decode();
 	 }
 
@@ -0,0 +1,301 @@
+/**
+ *
+ */
+package assembler.core;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import assembler.components.Condition;
+import assembler.components.Register;
+import assembler.components.op2types.Immediate;
+import assembler.exceptions.InvalidCodeException;
+import assembler.types.Code;
+
+/**
+ * Literal pool for the LDR rd, =value pseudo-instruction.
+ *
+ * A value that fits a MOV or MVN immediate is loaded with that instruction.
+ * Any other value is placed in the pool and loaded PC-relative with LDR rd,
+ * [pc, #offset]. Equal values share one pool entry; entries are found through
+ * an open addressing hash set of primitive ints, so values are never boxed.
+ * The pool is written out at .ltorg, at the end of the source, or before the
+ * first pending load would fall out of the 4 KB reach of LDR. In that last
+ * case a branch over the pool is written first.
+ */
+public class LiteralPool
+{
+
+	 /**
+	  * {@value #STATEMENT} LDR rd, =value pattern: condition, rd, value
+	  */
+	 private static final Pattern STATEMENT = Pattern.compile(
+				 "^LDR(EQ|NE|CS|CC|MI|PL|VS|VC|HI|LS|GE|LT|GT|LE|AL)?\\s+((?:R[0-9]{1,2})|SP|LR|PC)\\s*,\\s*=\\s*(\\S+)$",
+				 Pattern.CASE_INSENSITIVE );
+
+	 /**
+	  * {@value #MAX_OFFSET} Largest LDR immediate offset
+	  */
+	 private static final int MAX_OFFSET = 4095;
+
+	 /**
+	  * {@value #MOV} MOV rd, #imm
+	  */
+	 private static final int MOV = 0x03a00000;
+
+	 /**
+	  * {@value #MVN} MVN rd, #imm
+	  */
+	 private static final int MVN = 0x03e00000;
+
+	 /**
+	  * {@value #LDR_PC} LDR rd, [pc, #offset]
+	  */
+	 private static final int LDR_PC = 0x059f0000;
+
+	 /**
+	  * {@value #UP} U bit: add the offset to pc
+	  */
+	 private static final int UP = 0x00800000;
+
+	 /**
+	  * {@value #BRANCH} B (always)
+	  */
+	 private static final int BRANCH = 0xea000000;
+
+	 /**
+	  * {@value #values} Pool entries in address order
+	  */
+	 private int[] values = new int[16];
+
+	 /**
+	  * {@value #count} Number of pool entries
+	  */
+	 private int count;
+
+	 /**
+	  * {@value #table} Hash set of entries, each slot holding entry index + 1
+	  * (0 = empty)
+	  */
+	 private int[] table = new int[32];
+
+	 /**
+	  * {@value #loads} Word index of every pending load
+	  */
+	 private int[] loads = new int[16];
+
+	 /**
+	  * {@value #targets} Pool entry of every pending load
+	  */
+	 private int[] targets = new int[16];
+
+	 /**
+	  * {@value #pending} Number of pending loads
+	  */
+	 private int pending;
+
+	 /**
+	  * Returns true if a statement is an LDR rd, =value pseudo-instruction.
+	  * 
+	  * @param Code code
+	  * @return Boolean
+	  */
+	 public static Boolean isLiteralLoad( Code code )
+	 {
+			return code != null && code.matches( "(?i)^LDR[A-Z]{0,2}\\s.*,\\s*=.*" );
+	 }
+
+	 /**
+	  * @return int number of pool entries
+	  */
+	 public int size()
+	 {
+			return count;
+	 }
+
+	 /**
+	  * @return Boolean true if no load is waiting for the pool
+	  */
+	 public Boolean isEmpty()
+	 {
+			return pending == 0;
+	 }
+
+	 /**
+	  * Assembles an LDR rd, =value statement placed at a word index. Loads from
+	  * the pool are returned with a zero offset, which is filled in by
+	  * {@link #flush(int[], int, Boolean)}.
+	  * 
+	  * @param Code code
+	  * @param int  at word index of the instruction
+	  * @return int instruction word
+	  * @throws InvalidCodeException
+	  */
+	 public int load( Code code, int at ) throws InvalidCodeException
+	 {
+			Matcher matcher = STATEMENT.matcher( code );
+			if (!matcher.find()) {
+				 throw new InvalidCodeException( "Invalid literal load." );
+			}
+			Condition condition = Condition.of( matcher.group( 1 ) == null ? null
+						: new Code( matcher.group( 1 ).toUpperCase() ) );
+			int rd = Register.of( new Code( matcher.group( 2 ) ) ).getBits()
+						.toInteger();
+			int value = parseValue( matcher.group( 3 ) );
+			int word = ( condition.getBits().toInteger() << 28 ) | ( rd << 12 );
+
+			int imm = Immediate.encode( value );
+			if (imm >= 0) {
+				 return word | MOV | imm;
+			}
+			imm = Immediate.encode( ~value );
+			if (imm >= 0) {
+				 return word | MVN | imm;
+			}
+
+			if (pending == loads.length) {
+				 loads = Arrays.copyOf( loads, pending * 2 );
+				 targets = Arrays.copyOf( targets, pending * 2 );
+			}
+			loads[pending] = at;
+			targets[pending++] = add( value );
+			return word | LDR_PC;
+	 }
+
+	 /**
+	  * Returns true if the pool must be written before the statement at a word
+	  * index: after that statement, a branch and one more entry the first
+	  * pending load would no longer reach the end of the pool.
+	  * 
+	  * @param int at word index of the next statement
+	  * @return Boolean
+	  */
+	 public Boolean isFull( int at )
+	 {
+			return pending > 0
+						&& ( at + 2 + count ) * 4 - ( loads[0] * 4 + 8 ) > MAX_OFFSET;
+	 }
+
+	 /**
+	  * Writes the pool at a word index and fills in the offsets of the pending
+	  * loads. The array must have room for the pool and the branch.
+	  * 
+	  * @param int[]   words
+	  * @param int     at word index
+	  * @param Boolean branch write a branch over the pool first
+	  * @return int word index after the pool
+	  */
+	 public int flush( int[] words, int at, Boolean branch )
+	 {
+			if (count == 0) {
+				 return at;
+			}
+			if (branch) {
+				 // Offset in words from pc (this instruction + 8)
+				 words[at] = BRANCH | ( ( count - 1 ) & 0xffffff );
+				 at++;
+			}
+			for (int i = 0; i < pending; i++) {
+				 int offset = ( at + targets[i] ) * 4 - ( loads[i] * 4 + 8 );
+				 if (offset < 0) {
+						// Entry right after the load: pc is past it, clear the U bit
+						words[loads[i]] = ( words[loads[i]] & ~UP ) | -offset;
+				 } else {
+						words[loads[i]] |= offset;
+				 }
+			}
+			System.arraycopy( values, 0, words, at, count );
+			at += count;
+
+			Arrays.fill( table, 0 );
+			count = 0;
+			pending = 0;
+			return at;
+	 }
+
+	 /**
+	  * Adds a value to the pool unless an equal entry exists.
+	  * 
+	  * @param int value
+	  * @return int entry index
+	  */
+	 private int add( int value )
+	 {
+			int mask = table.length - 1;
+			int slot = hash( value ) & mask;
+			while (table[slot] != 0) {
+				 if (values[table[slot] - 1] == value) {
+						return table[slot] - 1;
+				 }
+				 slot = ( slot + 1 ) & mask;
+			}
+			if (count == values.length) {
+				 values = Arrays.copyOf( values, count * 2 );
+			}
+			values[count++] = value;
+			table[slot] = count;
+			if (count * 2 > table.length) {
+				 rehash();
+			}
+			return count - 1;
+	 }
+
+	 /**
+	  * Doubles the hash set and reinserts every entry.
+	  */
+	 private void rehash()
+	 {
+			table = new int[table.length * 2];
+			int mask = table.length - 1;
+			for (int i = 0; i < count; i++) {
+				 int slot = hash( values[i] ) & mask;
+				 while (table[slot] != 0) {
+						slot = ( slot + 1 ) & mask;
+				 }
+				 table[slot] = i + 1;
+			}
+	 }
+
+	 /**
+	  * Spreads the bits of a value (Fibonacci hashing).
+	  * 
+	  * @param int value
+	  * @return int
+	  */
+	 private static int hash( int value )
+	 {
+			int h = value * 0x9e3779b9;
+			return h ^ ( h >>> 16 );
+	 }
+
+	 /**
+	  * Parses a decimal, hex (0x) or binary (0b) literal that fits in 32 bits,
+	  * signed or unsigned.
+	  * 
+	  * @param String text
+	  * @return int
+	  * @throws InvalidCodeException
+	  */
+	 private static int parseValue( String text ) throws InvalidCodeException
+	 {
+			try {
+				 long value;
+				 String digits = text.replaceFirst( "^-", "" );
+				 if (digits.matches( "(?i)0b[01]+" )) {
+						value = Long.parseLong( digits.substring( 2 ), 2 );
+						value = text.startsWith( "-" ) ? -value : value;
+				 } else {
+						value = Long.decode( text );
+				 }
+				 if (value < Integer.MIN_VALUE || value > 0xffffffffL) {
+						throw new NumberFormatException();
+				 }
+				 return (int) value;
+			} catch (NumberFormatException e) {
+				 throw new InvalidCodeException(
+							 String.format( "Invalid literal '%s'.", text ) );
+			}
+	 }
+
+}
@@ -0,0 +1,37 @@
+/**
+ *
+ */
+package assembler.interfaces;
+
+import java.util.List;
+
+import assembler.optimizer.Block;
+
+/**
+ * Public interface for optimization passes over a block of instructions
+ */
+public interface Optimizer
+{
+
+	 /**
+	  * Optimizes a block whose first instruction is at a word address.
+	  * 
+	  * @param Block block
+	  * @param int   address word address of the first instruction
+	  * @param int   liveOut registers (and {@link Block#FLAGS}) read after the
+	  *              block
+	  * @return int improvements made (rewrites applied or cycles saved)
+	  */
+	 public int optimize( Block block, int address, int liveOut );
+
+	 /**
+	  * @return List<String> changes made, one line each
+	  */
+	 public List<String> getReport();
+
+	 /**
+	  * @return String totals of the changes made
+	  */
+	 public String getSummary();
+
+}
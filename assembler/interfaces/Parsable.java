@@ -26,17 +26,22 @@ public interface Parsable
 			private static final long serialVersionUID = 1L;
 
 			{
-				 String command = "[A-Za-z]{3}";
+				 // LDRB, LDRSH, ... before the three letter commands; the longer
+				 // forms only match when followed by a condition or a space, so
+				 // LDRHI is still LDR with the HI condition
+				 String command = "(?:LDR|STR)(?:SB|SH|B|H)?|[A-Za-z]{3}";
 				 String s_bit = "S";
-				 String cond = "[A-Za-z]{2}";
+				 String cond = "EQ|NE|CS|CC|MI|PL|VS|VC|HI|LS|GE|LT|GT|LE|AL";
 				 String reg = "(?:r[0-9]{1,2})|(?:sp)|(?:lr)|(?:pc)";
 				 String space = "[\\s]";
 				 String b_open = "\\[";
 				 String b_close = "\\]";
 				 String pre_index = "!";
 
-				 put( "command", String.format( "^(%s)", command ) );
-				 put( "s_bit", String.format( "^%s(%s)", command, s_bit ) );
+				 put( "command", String.format( "^(%s)(?=(?:%s)?(?:%s)?%s)", command,
+							 s_bit, cond, space ) );
+				 put( "s_bit", String.format( "^(?:%s)(%s)(?:%s)?%s", command, s_bit,
+							 cond, space ) );
 				 put( "condition", String.format( "^(?:%s)(?:%s)?(%s)%s+", command,
 							 s_bit, cond, space ) );
 				 put( "rd", String.format( "^(?:%s)(?:%s)?(?:%s)?%s+(%s)%s*,",
@@ -9,21 +9,104 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.ref.Cleaner;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Assembler DB Class
  *
+ * The schema is imported once into a shared-cache in-memory database, whose
+ * import connection is kept open for the life of the process. Lookups go
+ * through one read-only connection per thread over the same cache, so
+ * threads never share a connection, and through prepared statements cached
+ * per connection, so each query is only compiled once per thread. A thread
+ * done with the database may {@link #release()} its connection; otherwise it
+ * is closed once the thread itself has been collected.
  */
 public class DB
 {
 
 	 /**
-	  * {@link DB} Singleton Instance
+	  * Holder of the singleton instance, built on first use. Class
+	  * initialization makes sure it is built once and seen fully initialized
+	  * by every thread.
 	  */
-	 private static DB instance = null;
+	 private static final class Holder
+	 {
+
+			/**
+			 * {@link DB} Singleton Instance
+			 */
+			static final DB INSTANCE = new DB();
+
+	 }
+
+	 /**
+	  * Read-only connection of one thread and its prepared statements, by SQL.
+	  * Closing it closes both; it is run at most once, by {@link #release()}
+	  * or by the cleaner once its thread is unreachable.
+	  */
+	 private static final class Session implements Runnable
+	 {
+
+			/**
+			 * {@link Connection} Read-only connection
+			 */
+			final Connection conn;
+
+			/**
+			 * {@link Map} Prepared statements, by SQL
+			 */
+			final Map<String, PreparedStatement> statements = new HashMap<>();
+
+			/**
+			 * {@link Cleaner.Cleanable} Registration of the owning thread
+			 */
+			Cleaner.Cleanable cleanable;
+
+			/**
+			 * Closes the statements and the connection, ignoring failures.
+			 */
+			@Override
+			public void run()
+			{
+				 for (PreparedStatement stmt : statements.values()) {
+						try {
+							 stmt.close();
+						} catch (SQLException e) {
+							 // closed with the connection all the same
+						}
+				 }
+				 try {
+						conn.close();
+				 } catch (SQLException e) {
+						// nothing left to release
+				 }
+			}
+
+			/**
+			 * Standard constructor
+			 * 
+			 * @param Connection conn
+			 */
+			Session( Connection conn )
+			{
+				 super();
+				 this.conn = conn;
+			}
+
+	 }
+
+	 /**
+	  * {@link Cleaner} Closes the sessions of collected threads
+	  */
+	 private static final Cleaner CLEANER = Cleaner.create();
 
 	 /**
 	  * {@link Importer} SQL Importer object
@@ -31,9 +114,14 @@ public class DB
 	 private Import importer = null;
 
 	 /**
-	  * {@link Connection} DB Connection
+	  * {@link Connection} Import connection, holding the in-memory database
+	  */
+	 private Connection conn = null;
+
+	 /**
+	  * {@link ThreadLocal} Session of every thread
 	  */
-	 public Connection conn = null;
+	 private final ThreadLocal<Session> sessions = new ThreadLocal<>();
 
 	 /**
 	  * {@value #sql} Path to imported SQL file
@@ -43,14 +131,78 @@ public class DB
 	 /**
 	  * {@value #url} DB path
 	  */
-	 private String url = "jdbc:sqlite::memory:";
+	 private String url = "jdbc:sqlite:file:assembler?mode=memory&cache=shared";
 
 	 /**
+	  * Returns the read-only connection of the calling thread, opened on first
+	  * use.
+	  * 
 	  * @return Connection conn
+	  * @throws SQLException
+	  */
+	 public Connection getConn() throws SQLException
+	 {
+			return session().conn;
+	 }
+
+	 /**
+	  * Returns a prepared statement of the calling thread's connection,
+	  * compiled on first use. The statement stays cached and must not be
+	  * closed; close its result sets instead.
+	  * 
+	  * @param String sql
+	  * @return PreparedStatement
+	  * @throws SQLException
+	  */
+	 public PreparedStatement prepare( String sql ) throws SQLException
+	 {
+			Session session = session();
+			PreparedStatement stmt = session.statements.get( sql );
+			if (stmt == null) {
+				 stmt = session.conn.prepareStatement( sql );
+				 session.statements.put( sql, stmt );
+			}
+			return stmt;
+	 }
+
+	 /**
+	  * Closes the calling thread's connection and its prepared statements, if
+	  * it has any. A later lookup on the thread opens a new one.
+	  */
+	 public void release()
+	 {
+			Session session = sessions.get();
+			if (session != null) {
+				 sessions.remove();
+				 session.cleanable.clean();
+			}
+	 }
+
+	 /**
+	  * Returns the session of the calling thread, opening its read-only
+	  * connection on first use and registering it to be closed once the
+	  * thread is collected.
+	  * 
+	  * @return Session session
+	  * @throws SQLException
 	  */
-	 public Connection getConn()
+	 private Session session() throws SQLException
 	 {
-			return this.conn;
+			Session session = sessions.get();
+			if (session == null) {
+				 Connection reader = DriverManager.getConnection( url );
+				 try (Statement stmt = reader.createStatement()) {
+						stmt.execute( "PRAGMA query_only = 1" );
+				 } catch (SQLException e) {
+						reader.close();
+						throw e;
+				 }
+				 session = new Session( reader );
+				 session.cleanable = CLEANER.register( Thread.currentThread(),
+							 session );
+				 sessions.set( session );
+			}
+			return session;
 	 }
 
 	 /**
@@ -115,11 +267,7 @@ public class DB
 	  */
 	 public static DB getInstance()
 	 {
-			if (instance == null) {
-				 instance = new DB();
-			}
-
-			return instance;
+			return Holder.INSTANCE;
 	 }
 
 }
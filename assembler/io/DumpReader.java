@@ -0,0 +1,283 @@
+/**
+ *
+ */
+package assembler.io;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import assembler.exceptions.InvalidCodeException;
+import assembler.types.Image;
+
+/**
+ * Streaming reader for hex or binary text dumps of instruction words.
+ *
+ * Every line holds whitespace or comma separated tokens, optionally preceded
+ * by an address. Word tokens are 1-8 hex digits or 32 binary digits, with an
+ * optional 0x/0b prefix. 0b only prefixes binary digits, and never an 8
+ * digit token, so hex words such as 0b000001 read as hex. In byte mode
+ * tokens are runs of hex byte pairs in memory order, as printed by xxd or
+ * objdump -s. A leading token ending in ':'
+ * is always taken as the byte address of the line, which also covers objdump
+ * -d listings. Once data has been read, a gap of two or more whitespace
+ * characters ends the line so that ASCII columns and mnemonics are ignored.
+ * Lines starting with '#', ';' or '//' are comments.
+ *
+ * Digits are decoded straight from the input buffer with the nibble table, no
+ * intermediate strings or BigIntegers are created.
+ */
+public class DumpReader extends RecordReader
+{
+
+	 /**
+	  * {@value #bytes} Tokens are bytes in memory order instead of words
+	  */
+	 private final Boolean bytes;
+
+	 /**
+	  * {@value #addressed} The first token of every line is an address
+	  */
+	 private final Boolean addressed;
+
+	 /**
+	  * {@value #next} Address following the last stored byte
+	  */
+	 private long next;
+
+	 @Override
+	 protected void record( byte[] line, int length )
+				 throws InvalidCodeException
+	 {
+			int pos = skip( line, 0, length );
+			if (isComment( line, pos, length )) {
+				 return;
+			}
+
+			long address = next;
+			int end = token( line, pos, length );
+			if (line[end - 1] == ':' || addressed) {
+				 int last = line[end - 1] == ':' ? end - 1 : end;
+				 if (last - pos > 16) {
+						throw error( "address too long at column " + ( pos + 1 ) );
+				 }
+				 address = 0;
+				 for (int i = pos; i < last; i++) {
+						address = ( address << 4 ) | nibble( line, i, 16 );
+				 }
+				 pos = skip( line, end, length );
+			}
+
+			int count = 0;
+			while (pos < length) {
+				 end = token( line, pos, length );
+				 if (bytes) {
+						count = parseBytes( line, pos, end, count );
+				 } else {
+						count = parseWord( line, pos, end, count );
+				 }
+				 if (count > data.length - 4) {
+						store( address, count );
+						address += count;
+						count = 0;
+				 }
+				 pos = skip( line, end, length );
+				 if (( pos - end >= 2 && line[end] != ',' )
+							 || isComment( line, pos, length )) {
+						break;
+				 }
+			}
+			if (count > 0) {
+				 store( address, count );
+			}
+			next = address + count;
+	 }
+
+	 /**
+	  * Decodes one word token into {@link #data} in little-endian order.
+	  * 
+	  * @param byte[] line
+	  * @param int    pos token start
+	  * @param int    end token end
+	  * @param int    count bytes already decoded
+	  * @return int bytes decoded
+	  * @throws InvalidCodeException
+	  */
+	 private int parseWord( byte[] line, int pos, int end, int count )
+				 throws InvalidCodeException
+	 {
+			int radix = 16;
+			int digits = 8;
+			if (end - pos > 2 && line[pos] == '0'
+						&& ( line[pos + 1] | 0x20 ) == 'x') {
+				 pos += 2;
+			} else if (end - pos > 2 && end - pos != 8 && line[pos] == '0'
+						&& ( line[pos + 1] | 0x20 ) == 'b'
+						&& isBinary( line, pos + 2, end )) {
+				 // An 8 digit token is a hex word even if it starts with 0b
+				 pos += 2;
+				 radix = 2;
+				 digits = 32;
+			} else if (end - pos == 32) {
+				 radix = 2;
+				 digits = 32;
+			}
+			if (end - pos > digits) {
+				 throw error( "word too long at column " + ( pos + 1 ) );
+			}
+			int shift = radix == 16 ? 4 : 1;
+			int word = 0;
+			for (int i = pos; i < end; i++) {
+				 word = ( word << shift ) | nibble( line, i, radix );
+			}
+			data[count++] = (byte) word;
+			data[count++] = (byte) ( word >>> 8 );
+			data[count++] = (byte) ( word >>> 16 );
+			data[count++] = (byte) ( word >>> 24 );
+			return count;
+	 }
+
+	 /**
+	  * Returns true if every digit of a token is 0 or 1.
+	  * 
+	  * @param byte[] line
+	  * @param int    pos first digit
+	  * @param int    end token end
+	  * @return boolean
+	  */
+	 private static boolean isBinary( byte[] line, int pos, int end )
+	 {
+			for (int i = pos; i < end; i++) {
+				 if (line[i] != '0' && line[i] != '1') {
+						return false;
+				 }
+			}
+			return true;
+	 }
+
+	 /**
+	  * Decodes one token of hex byte pairs into {@link #data}.
+	  * 
+	  * @param byte[] line
+	  * @param int    pos token start
+	  * @param int    end token end
+	  * @param int    count bytes already decoded
+	  * @return int bytes decoded
+	  * @throws InvalidCodeException
+	  */
+	 private int parseBytes( byte[] line, int pos, int end, int count )
+				 throws InvalidCodeException
+	 {
+			if (end - pos > 2 && line[pos] == '0'
+						&& ( line[pos + 1] | 0x20 ) == 'x') {
+				 pos += 2;
+			}
+			if (( ( end - pos ) & 1 ) != 0 || end - pos > 8) {
+				 throw error( "invalid byte group at column " + ( pos + 1 ) );
+			}
+			for (int i = pos; i < end; i += 2) {
+				 data[count++] = (byte) ( ( nibble( line, i, 16 ) << 4 )
+							 | nibble( line, i + 1, 16 ) );
+			}
+			return count;
+	 }
+
+	 /**
+	  * Decodes a single digit.
+	  * 
+	  * @param byte[] line
+	  * @param int    pos
+	  * @param int    radix 2 or 16
+	  * @return int digit value
+	  * @throws InvalidCodeException
+	  */
+	 private int nibble( byte[] line, int pos, int radix )
+				 throws InvalidCodeException
+	 {
+			int value = line[pos] < 0 ? -1 : NIBBLES[line[pos]];
+			if (value < 0 || value >= radix) {
+				 throw error( String.format( "invalid %s digit '%c' at column %d",
+							 radix == 16 ? "hex" : "binary", (char) line[pos], pos + 1 ) );
+			}
+			return value;
+	 }
+
+	 /**
+	  * Returns true if a comment starts at a position.
+	  * 
+	  * @param byte[] line
+	  * @param int    pos
+	  * @param int    length
+	  * @return boolean
+	  */
+	 private static boolean isComment( byte[] line, int pos, int length )
+	 {
+			return pos < length && ( line[pos] == '#' || line[pos] == ';'
+						|| ( line[pos] == '/' && pos + 1 < length && line[pos + 1] == '/' ) );
+	 }
+
+	 /**
+	  * Returns the end of the token starting at a position.
+	  * 
+	  * @param byte[] line
+	  * @param int    pos
+	  * @param int    length
+	  * @return int
+	  */
+	 private static int token( byte[] line, int pos, int length )
+	 {
+			while (pos < length && line[pos] != ' ' && line[pos] != '\t'
+						&& line[pos] != ',') {
+				 pos++;
+			}
+			return pos;
+	 }
+
+	 /**
+	  * Returns the position after any separators.
+	  * 
+	  * @param byte[] line
+	  * @param int    pos
+	  * @param int    length
+	  * @return int
+	  */
+	 private static int skip( byte[] line, int pos, int length )
+	 {
+			while (pos < length
+						&& ( line[pos] == ' ' || line[pos] == '\t' || line[pos] == ',' )) {
+				 pos++;
+			}
+			return pos;
+	 }
+
+	 /**
+	  * Parses a text dump held in memory.
+	  * 
+	  * @param ByteBuffer text
+	  * @param Boolean    bytes tokens are bytes in memory order
+	  * @param Boolean    addressed the first token of every line is an address
+	  * @return Image
+	  * @throws InvalidCodeException
+	  */
+	 public static Image parse( ByteBuffer text, Boolean bytes,
+				 Boolean addressed ) throws InvalidCodeException
+	 {
+			return new DumpReader( null, bytes, addressed ).read( text );
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param ReadableByteChannel channel
+	  * @param Boolean             bytes tokens are bytes in memory order
+	  * @param Boolean             addressed the first token of every line is an
+	  *                            address
+	  */
+	 public DumpReader( ReadableByteChannel channel, Boolean bytes,
+				 Boolean addressed )
+	 {
+			super( channel );
+			this.bytes = bytes;
+			this.addressed = addressed;
+	 }
+
+}
@@ -0,0 +1,105 @@
+/**
+ *
+ */
+package assembler.io;
+
+import java.nio.channels.ReadableByteChannel;
+
+import assembler.exceptions.InvalidCodeException;
+
+/**
+ * Streaming Intel HEX reader.
+ *
+ * Supports data (00), end of file (01), extended segment address (02), start
+ * segment address (03), extended linear address (04) and start linear address
+ * (05) records.
+ */
+public class IntelHexReader extends RecordReader
+{
+
+	 /**
+	  * {@value #DATA_SIZE} Byte count by record type (-1 for any)
+	  */
+	 private static final int[] DATA_SIZE = { -1, 0, 2, 4, 2, 4 };
+
+	 /**
+	  * {@value #upper} Address offset from the last extended address record
+	  */
+	 private long upper;
+
+	 @Override
+	 protected void record( byte[] line, int length )
+				 throws InvalidCodeException
+	 {
+			if (line[0] != ':') {
+				 throw error( "record does not start with ':'" );
+			}
+			checksum = 0;
+			int count = hex( line, 1, length );
+			int address = (int) hex( line, 3, length, 2 );
+			int type = hex( line, 7, length );
+			if (length != 11 + count * 2) {
+				 throw error( "record length does not match byte count" );
+			} else if (type >= DATA_SIZE.length) {
+				 throw error( "unknown record type " + type );
+			} else if (DATA_SIZE[type] >= 0 && count != DATA_SIZE[type]) {
+				 throw error( String.format( "record type %d needs %d data bytes",
+							 type, DATA_SIZE[type] ) );
+			}
+			hexData( line, 9, length, count );
+			hex( line, 9 + count * 2, length );
+			if (( checksum & 0xff ) != 0) {
+				 throw error( "checksum mismatch" );
+			}
+
+			switch (type) {
+			case 0x00:
+				 store( upper + address, count );
+				 break;
+			case 0x01:
+				 done = true;
+				 break;
+			case 0x02:
+				 upper = value( count ) << 4;
+				 break;
+			case 0x03:
+				 start = ( ( value( count ) >>> 16 ) << 4 )
+							 + ( value( count ) & 0xffff );
+				 break;
+			case 0x04:
+				 upper = value( count ) << 16;
+				 break;
+			case 0x05:
+				 start = value( count );
+				 break;
+			default:
+				 throw error( "unknown record type " + type );
+			}
+	 }
+
+	 /**
+	  * Returns the record data as a big-endian value.
+	  * 
+	  * @param int count
+	  * @return long
+	  */
+	 private long value( int count )
+	 {
+			long value = 0;
+			for (int i = 0; i < count; i++) {
+				 value = ( value << 8 ) | ( data[i] & 0xff );
+			}
+			return value;
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param ReadableByteChannel channel
+	  */
+	 public IntelHexReader( ReadableByteChannel channel )
+	 {
+			super( channel );
+	 }
+
+}
@@ -0,0 +1,98 @@
+/**
+ *
+ */
+package assembler.io;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streaming Intel HEX writer.
+ *
+ * Emits type 00 data records, a type 04 extended linear address record
+ * whenever the upper 16 address bits change, a type 05 start linear address
+ * record for the base address and the type 01 end of file record.
+ */
+public class IntelHexWriter extends RecordWriter
+{
+
+	 /**
+	  * {@value #upper} Upper 16 address bits of the last extended linear
+	  * address record
+	  */
+	 private long upper = -1;
+
+	 @Override
+	 protected Boolean isBoundary( long address )
+	 {
+			// Data records may not span a 64K segment
+			return ( address & 0xffff ) == 0;
+	 }
+
+	 @Override
+	 protected void dataRecord( long address, byte[] data, int length )
+				 throws IOException
+	 {
+			if (( address >>> 16 ) != upper) {
+				 upper = address >>> 16;
+				 record( 0x04, 2, 0 );
+				 hex( upper, 2 );
+				 end();
+			}
+			record( 0x00, length, address );
+			for (int i = 0; i < length; i++) {
+				 hex( data[i] );
+			}
+			end();
+	 }
+
+	 @Override
+	 protected void finish() throws IOException
+	 {
+			record( 0x05, 4, 0 );
+			hex( base, 4 );
+			end();
+			record( 0x01, 0, 0 );
+			end();
+	 }
+
+	 /**
+	  * Starts a record.
+	  * 
+	  * @param int  type
+	  * @param int  length
+	  * @param long address
+	  * @throws IOException
+	  */
+	 private void record( int type, int length, long address ) throws IOException
+	 {
+			checksum = 0;
+			ascii( ':' );
+			hex( length );
+			hex( address, 2 );
+			hex( type );
+	 }
+
+	 /**
+	  * Completes a record with its two's complement checksum.
+	  * 
+	  * @throws IOException
+	  */
+	 private void end() throws IOException
+	 {
+			hex( -checksum );
+			newline();
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param WritableByteChannel channel
+	  * @param int                 base address
+	  */
+	 public IntelHexWriter( WritableByteChannel channel, int base )
+	 {
+			super( channel, base, RECORD_SIZE );
+	 }
+
+}
@@ -0,0 +1,351 @@
+/**
+ *
+ */
+package assembler.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import assembler.exceptions.InvalidCodeException;
+import assembler.types.Image;
+
+/**
+ * Content addressed on-disk cache of disassembly listings.
+ *
+ * Images are listed in chunks of {@value #CHUNK} words. Each chunk is keyed
+ * by the SHA-256 hash of the {@link Renderer#VERSION listing version}, the
+ * {@link TableSet#getHash() hash of the tables} it is rendered with, its
+ * load address, which branch targets are rendered from, and its words, and
+ * its rendered lines (word and text, without addresses) are kept in a file
+ * named by the key, so a chunk is only rendered again if its words, its
+ * address, the renderer or its tables changed.
+ * Files are written to a temporary name and moved into place, so readers
+ * never see a partial entry, and the least recently used entries (by
+ * modification time, which is updated on every hit) are deleted once the
+ * directory holds more than a given number of bytes.
+ *
+ * Instances are not thread-safe.
+ */
+public class ListingCache
+{
+
+	 /**
+	  * {@value #CHUNK} Words per entry
+	  */
+	 public static final int CHUNK = 1 << 12;
+
+	 /**
+	  * {@value #MAX_BYTES} Default size bound
+	  */
+	 public static final long MAX_BYTES = 256L << 20;
+
+	 /**
+	  * {@value #SUFFIX} Entry file suffix
+	  */
+	 private static final String SUFFIX = ".lst";
+
+	 /**
+	  * {@value #HEX} Lower case hex digits
+	  */
+	 private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	 /**
+	  * {@link Path} Cache directory
+	  */
+	 private final Path directory;
+
+	 /**
+	  * {@value #maxBytes} Size bound
+	  */
+	 private final long maxBytes;
+
+	 /**
+	  * {@value #entries} Entry sizes by key, least recently used first
+	  */
+	 private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(
+				 16, 0.75f, true );
+
+	 /**
+	  * {@value #size} Bytes held
+	  */
+	 private long size;
+
+	 /**
+	  * {@value #hits} Chunks read from the cache
+	  */
+	 private int hits;
+
+	 /**
+	  * {@value #misses} Chunks rendered
+	  */
+	 private int misses;
+
+	 /**
+	  * @return Path cache directory
+	  */
+	 public Path getDirectory()
+	 {
+			return directory;
+	 }
+
+	 /**
+	  * @return long bytes held
+	  */
+	 public long getSize()
+	 {
+			return size;
+	 }
+
+	 /**
+	  * @return int number of entries
+	  */
+	 public int getCount()
+	 {
+			return entries.size();
+	 }
+
+	 /**
+	  * @return int chunks read from the cache
+	  */
+	 public int getHits()
+	 {
+			return hits;
+	 }
+
+	 /**
+	  * @return int chunks rendered
+	  */
+	 public int getMisses()
+	 {
+			return misses;
+	 }
+
+	 /**
+	  * Writes a listing of an image as
+	  * {@link assembler.Disassembler#disassemble(Image, Appendable)}, reading
+	  * every chunk from the cache or rendering and storing it.
+	  * 
+	  * @param Image      image
+	  * @param Appendable out
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public void list( Image image, Appendable out )
+				 throws IOException, InvalidCodeException
+	 {
+			TableSet tables = TableSet.current();
+			Renderer renderer = new Renderer( tables );
+			MessageDigest digest = digest();
+			ByteBuffer bytes = ByteBuffer.allocate( CHUNK * 4 + 12 )
+						.order( ByteOrder.LITTLE_ENDIAN );
+			StringBuilder text = new StringBuilder( CHUNK * 32 );
+			for (int from = 0; from < image.size(); from += CHUNK) {
+				 int to = Math.min( image.size(), from + CHUNK );
+				 bytes.clear();
+				 bytes.putInt( Renderer.VERSION );
+				 bytes.putInt( tables.getHash() );
+				 bytes.putInt( image.getAddress( from ) );
+				 for (int i = from; i < to; i++) {
+						bytes.putInt( image.get( i ) );
+				 }
+				 bytes.flip();
+				 digest.update( bytes );
+				 String key = hex( digest.digest() );
+
+				 String lines = read( key, to - from );
+				 if (lines == null) {
+						misses++;
+						text.setLength( 0 );
+						for (int i = from; i < to; i++) {
+							 int word = image.get( i );
+							 renderer.appendHex( word, 8, text );
+							 text.append( '\t' );
+							 if (Renderer.isValid( tables, word )) {
+									renderer.render( word, image.getAddress( i ), text );
+							 } else {
+									text.append( "<undefined>" );
+							 }
+							 text.append( '\n' );
+						}
+						lines = text.toString();
+						write( key, lines );
+				 } else {
+						hits++;
+				 }
+
+				 int start = 0;
+				 for (int i = from; i < to; i++) {
+						int end = lines.indexOf( '\n', start ) + 1;
+						renderer.appendHex( image.getAddress( i ), 8, out );
+						out.append( ":\t" ).append( lines, start, end );
+						start = end;
+				 }
+			}
+	 }
+
+	 /**
+	  * Returns the lines of an entry, or null if it is missing or does not
+	  * hold the expected number of lines.
+	  */
+	 private String read( String key, int count ) throws IOException
+	 {
+			if (!entries.containsKey( key )) {
+				 return null;
+			}
+			Path path = directory.resolve( key + SUFFIX );
+			String lines;
+			try {
+				 lines = new String( Files.readAllBytes( path ), StandardCharsets.UTF_8 );
+				 Files.setLastModifiedTime( path,
+							 FileTime.fromMillis( System.currentTimeMillis() ) );
+			} catch (IOException e) {
+				 // Removed by another process
+				 size -= entries.remove( key );
+				 return null;
+			}
+			int n = 0;
+			for (int i = lines.indexOf( '\n' ); i >= 0; i = lines.indexOf( '\n', i + 1 )) {
+				 n++;
+			}
+			if (n != count || !lines.endsWith( "\n" )) {
+				 size -= entries.remove( key );
+				 Files.deleteIfExists( path );
+				 return null;
+			}
+			entries.get( key );
+			return lines;
+	 }
+
+	 /**
+	  * Stores an entry and evicts the least recently used entries over the
+	  * size bound.
+	  */
+	 private void write( String key, String lines ) throws IOException
+	 {
+			byte[] data = lines.getBytes( StandardCharsets.UTF_8 );
+			Path temporary = Files.createTempFile( directory, key, ".tmp" );
+			try {
+				 Files.write( temporary, data );
+				 Files.move( temporary, directory.resolve( key + SUFFIX ),
+							 StandardCopyOption.ATOMIC_MOVE,
+							 StandardCopyOption.REPLACE_EXISTING );
+			} finally {
+				 Files.deleteIfExists( temporary );
+			}
+			Long previous = entries.put( key, (long) data.length );
+			size += data.length - ( previous == null ? 0 : previous );
+			evict();
+	 }
+
+	 /**
+	  * Deletes the least recently used entries until the size bound is met.
+	  */
+	 private void evict() throws IOException
+	 {
+			Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+			while (size > maxBytes && eldest.hasNext()) {
+				 Map.Entry<String, Long> entry = eldest.next();
+				 Files.deleteIfExists( directory.resolve( entry.getKey() + SUFFIX ) );
+				 size -= entry.getValue();
+				 eldest.remove();
+			}
+	 }
+
+	 /**
+	  * Deletes every entry.
+	  * 
+	  * @throws IOException
+	  */
+	 public void clear() throws IOException
+	 {
+			for (String key : entries.keySet()) {
+				 Files.deleteIfExists( directory.resolve( key + SUFFIX ) );
+			}
+			entries.clear();
+			size = 0;
+	 }
+
+	 /**
+	  * Returns a SHA-256 digest.
+	  */
+	 private static MessageDigest digest()
+	 {
+			try {
+				 return MessageDigest.getInstance( "SHA-256" );
+			} catch (NoSuchAlgorithmException e) {
+				 // Every Java platform provides SHA-256
+				 throw new IllegalStateException( e );
+			}
+	 }
+
+	 /**
+	  * Returns bytes as lower case hex.
+	  */
+	 private static String hex( byte[] bytes )
+	 {
+			char[] text = new char[bytes.length * 2];
+			for (int i = 0; i < bytes.length; i++) {
+				 text[2 * i] = HEX[( bytes[i] >>> 4 ) & 0xf];
+				 text[2 * i + 1] = HEX[bytes[i] & 0xf];
+			}
+			return new String( text );
+	 }
+
+	 /**
+	  * Standard constructor. Existing entries in the directory are loaded in
+	  * order of last use.
+	  * 
+	  * @param Path directory cache directory, created if missing
+	  * @param long maxBytes size bound
+	  * @throws IOException
+	  */
+	 public ListingCache( Path directory, long maxBytes ) throws IOException
+	 {
+			super();
+			this.directory = Files.createDirectories( directory );
+			this.maxBytes = maxBytes;
+			Map<Path, FileTime> times = new HashMap<Path, FileTime>();
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream( directory,
+						"*" + SUFFIX )) {
+				 for (Path path : stream) {
+						times.put( path, Files.getLastModifiedTime( path ) );
+				 }
+			}
+			List<Path> paths = new ArrayList<Path>( times.keySet() );
+			paths.sort( ( a, b ) -> times.get( a ).compareTo( times.get( b ) ) );
+			for (Path path : paths) {
+				 String name = path.getFileName().toString();
+				 long bytes = Files.size( path );
+				 entries.put( name.substring( 0, name.length() - SUFFIX.length() ), bytes );
+				 size += bytes;
+			}
+			evict();
+	 }
+
+	 /**
+	  * Standard constructor, bounded to {@value #MAX_BYTES} bytes.
+	  * 
+	  * @param Path directory cache directory, created if missing
+	  * @throws IOException
+	  */
+	 public ListingCache( Path directory ) throws IOException
+	 {
+			this( directory, MAX_BYTES );
+	 }
+
+}
@@ -0,0 +1,399 @@
+/**
+ *
+ */
+package assembler.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import assembler.exceptions.InvalidCodeException;
+import assembler.types.Image;
+
+/**
+ * Base class for streaming hex record (Intel HEX, S-record) readers.
+ *
+ * Records are read line by line from a buffered channel, decoded in place
+ * with a nibble lookup table and their checksums verified as the bytes are
+ * consumed. Data bytes are collected into one contiguous little-endian image
+ * which is returned as instruction words.
+ */
+public abstract class RecordReader implements Closeable
+{
+
+	 /**
+	  * {@value #NIBBLES} ASCII to nibble table (-1 for non hex characters)
+	  */
+	 protected static final byte[] NIBBLES = new byte[128];
+
+	 static {
+			Arrays.fill( NIBBLES, (byte) -1 );
+			for (int i = 0; i < 10; i++) {
+				 NIBBLES['0' + i] = (byte) i;
+			}
+			for (int i = 0; i < 6; i++) {
+				 NIBBLES['a' + i] = (byte) ( 10 + i );
+				 NIBBLES['A' + i] = (byte) ( 10 + i );
+			}
+	 }
+
+	 /**
+	  * {@value #MAX_SPAN} Largest distance in bytes between the lowest and the
+	  * highest address of an image
+	  */
+	 public static final int MAX_SPAN = 1 << 24;
+
+	 /**
+	  * {@link ReadableByteChannel} Input channel
+	  */
+	 private final ReadableByteChannel channel;
+
+	 /**
+	  * {@link ByteBuffer} Input buffer
+	  */
+	 private final ByteBuffer buffer = ByteBuffer.allocateDirect( 1 << 16 );
+
+	 /**
+	  * {@value #line} Current record text
+	  */
+	 private byte[] line = new byte[256];
+
+	 /**
+	  * {@value #pending} Length of the current line
+	  */
+	 private int pending;
+
+	 /**
+	  * {@value #lineNo} Current line number
+	  */
+	 private int lineNo;
+
+	 /**
+	  * {@value #image} Image bytes
+	  */
+	 private byte[] image = new byte[1 << 16];
+
+	 /**
+	  * {@value #origin} Address of the first image byte (-1 if empty)
+	  */
+	 private long origin = -1;
+
+	 /**
+	  * {@value #end} Address after the last image byte
+	  */
+	 private long end;
+
+	 /**
+	  * {@value #data} Decoded record data
+	  */
+	 protected final byte[] data = new byte[256];
+
+	 /**
+	  * {@value #checksum} Running checksum of the current record
+	  */
+	 protected int checksum;
+
+	 /**
+	  * {@value #start} Start address from the file (-1 if absent)
+	  */
+	 protected long start = -1;
+
+	 /**
+	  * {@value #done} Set when an end of file record has been read
+	  */
+	 protected Boolean done = false;
+
+	 /**
+	  * @return long start address (-1 if absent)
+	  */
+	 public long getStart()
+	 {
+			return start;
+	 }
+
+	 /**
+	  * Reads all records from the channel and returns the image.
+	  * 
+	  * @return Image
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public Image read() throws IOException, InvalidCodeException
+	 {
+			while (!done && channel.read( buffer ) != -1) {
+				 buffer.flip();
+				 consume( buffer );
+				 buffer.clear();
+			}
+			return finish();
+	 }
+
+	 /**
+	  * Reads all records from an in-memory text buffer and returns the image.
+	  * 
+	  * @param ByteBuffer text
+	  * @return Image
+	  * @throws InvalidCodeException
+	  */
+	 public Image read( ByteBuffer text ) throws InvalidCodeException
+	 {
+			consume( text );
+			return finish();
+	 }
+
+	 /**
+	  * Splits buffered text into lines and parses each complete line.
+	  * 
+	  * @param ByteBuffer text
+	  * @throws InvalidCodeException
+	  */
+	 private void consume( ByteBuffer text ) throws InvalidCodeException
+	 {
+			while (text.hasRemaining() && !done) {
+				 byte b = text.get();
+				 if (b == '\n') {
+						lineNo++;
+						parse( pending );
+						pending = 0;
+				 } else if (b != '\r') {
+						if (pending == line.length) {
+							 line = Arrays.copyOf( line, pending * 2 );
+						}
+						line[pending++] = b;
+				 }
+			}
+	 }
+
+	 /**
+	  * Parses a final unterminated line and returns the image.
+	  * 
+	  * @return Image
+	  * @throws InvalidCodeException
+	  */
+	 private Image finish() throws InvalidCodeException
+	 {
+			if (!done && pending > 0) {
+				 lineNo++;
+				 parse( pending );
+				 pending = 0;
+			}
+			return toImage();
+	 }
+
+	 /**
+	  * Parses a line, skipping blank lines.
+	  * 
+	  * @param int length
+	  * @throws InvalidCodeException
+	  */
+	 private void parse( int length ) throws InvalidCodeException
+	 {
+			while (length > 0
+						&& ( line[length - 1] == ' ' || line[length - 1] == '\t' )) {
+				 length--;
+			}
+			if (length > 0) {
+				 record( line, length );
+			}
+	 }
+
+	 /**
+	  * Parses a single record.
+	  * 
+	  * @param byte[] line record text
+	  * @param int    length
+	  * @throws InvalidCodeException
+	  */
+	 protected abstract void record( byte[] line, int length )
+				 throws InvalidCodeException;
+
+	 /**
+	  * Decodes two hex digits and adds the byte to the checksum.
+	  * 
+	  * @param byte[] line
+	  * @param int    pos
+	  * @param int    length
+	  * @return int byte value
+	  * @throws InvalidCodeException
+	  */
+	 protected int hex( byte[] line, int pos, int length )
+				 throws InvalidCodeException
+	 {
+			if (pos + 1 >= length) {
+				 throw error( "truncated record" );
+			}
+			int hi = line[pos] < 0 ? -1 : NIBBLES[line[pos]];
+			int lo = line[pos + 1] < 0 ? -1 : NIBBLES[line[pos + 1]];
+			if (( hi | lo ) < 0) {
+				 throw error( "invalid hex digit at column " + ( pos + 1 ) );
+			}
+			int value = ( hi << 4 ) | lo;
+			checksum += value;
+			return value;
+	 }
+
+	 /**
+	  * Decodes a big-endian value of several bytes.
+	  * 
+	  * @param byte[] line
+	  * @param int    pos
+	  * @param int    length
+	  * @param int    bytes
+	  * @return long value
+	  * @throws InvalidCodeException
+	  */
+	 protected long hex( byte[] line, int pos, int length, int bytes )
+				 throws InvalidCodeException
+	 {
+			long value = 0;
+			for (int i = 0; i < bytes; i++) {
+				 value = ( value << 8 ) | hex( line, pos + i * 2, length );
+			}
+			return value;
+	 }
+
+	 /**
+	  * Decodes record data into {@link #data}.
+	  * 
+	  * @param byte[] line
+	  * @param int    pos
+	  * @param int    length
+	  * @param int    count
+	  * @throws InvalidCodeException
+	  */
+	 protected void hexData( byte[] line, int pos, int length, int count )
+				 throws InvalidCodeException
+	 {
+			for (int i = 0; i < count; i++) {
+				 data[i] = (byte) hex( line, pos + i * 2, length );
+			}
+	 }
+
+	 /**
+	  * Creates an exception carrying the current line number.
+	  * 
+	  * @param String message
+	  * @return InvalidCodeException
+	  */
+	 protected InvalidCodeException error( String message )
+	 {
+			return new InvalidCodeException(
+						String.format( "Line %d: %s.", lineNo, message ) );
+	 }
+
+	 /**
+	  * Stores decoded data bytes at an address. The gaps between records are
+	  * filled with zeros, so records further apart than {@value #MAX_SPAN}
+	  * bytes are rejected rather than allocated.
+	  * 
+	  * @param long address
+	  * @param int  count
+	  * @throws InvalidCodeException
+	  */
+	 protected void store( long address, int count )
+				 throws InvalidCodeException
+	 {
+			if (origin >= 0 && Math.max( end, address + count )
+						- Math.min( origin, address ) > MAX_SPAN) {
+				 throw error( String.format(
+							 "record at %08x is more than %d bytes from the image at %08x",
+							 address, MAX_SPAN, origin ) );
+			}
+			if (origin < 0) {
+				 origin = address;
+				 end = address;
+			} else if (address < origin) {
+				 int delta = (int) ( origin - address );
+				 int used = (int) ( end - origin );
+				 byte[] grown = new byte[Math.max( image.length, used + delta )];
+				 System.arraycopy( image, 0, grown, delta, used );
+				 image = grown;
+				 origin = address;
+			}
+			int offset = (int) ( address - origin );
+			if (offset + count > image.length) {
+				 image = Arrays.copyOf( image, Math.max(
+							 Math.min( image.length * 2, MAX_SPAN ), offset + count ) );
+			}
+			System.arraycopy( data, 0, image, offset, count );
+			end = Math.max( end, address + count );
+	 }
+
+	 /**
+	  * Packs the collected bytes into little-endian words.
+	  * 
+	  * @return Image
+	  */
+	 private Image toImage()
+	 {
+			int size = origin < 0 ? 0 : (int) ( end - origin );
+			int[] words = new int[( size + 3 ) / 4];
+			for (int i = 0; i < size; i++) {
+				 words[i >> 2] |= ( image[i] & 0xff ) << ( ( i & 3 ) * 8 );
+			}
+			return new Image( origin < 0 ? 0 : (int) origin, words );
+	 }
+
+	 @Override
+	 public void close() throws IOException
+	 {
+			if (channel != null) {
+				 channel.close();
+			}
+	 }
+
+	 /**
+	  * Opens a reader for a file, choosing the format from the file extension
+	  * (.hex/.ihx for Intel HEX, .srec/.s19/.s28/.s37/.mot for S-record, any
+	  * other file is read as a text dump of instruction words).
+	  * 
+	  * @param Path path
+	  * @return RecordReader
+	  * @throws IOException
+	  */
+	 public static RecordReader open( Path path ) throws IOException
+	 {
+			return open( path, false, false );
+	 }
+
+	 /**
+	  * Overloaded open with the {@link DumpReader} options used for text dumps.
+	  * 
+	  * @param Path    path
+	  * @param Boolean bytes tokens are bytes in memory order
+	  * @param Boolean addressed the first token of every line is an address
+	  * @return RecordReader
+	  * @throws IOException
+	  */
+	 public static RecordReader open( Path path, Boolean bytes,
+				 Boolean addressed ) throws IOException
+	 {
+			String name = path.getFileName().toString().toLowerCase();
+			ReadableByteChannel channel = FileChannel.open( path,
+						StandardOpenOption.READ );
+			if (name.matches( "(.*)\\.(hex|ihx|ihex)$" )) {
+				 return new IntelHexReader( channel );
+			} else if (name.matches( "(.*)\\.(srec|s19|s28|s37|mot)$" )) {
+				 return new SRecordReader( channel );
+			} else {
+				 return new DumpReader( channel, bytes, addressed );
+			}
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param ReadableByteChannel channel (null when reading from memory)
+	  */
+	 protected RecordReader( ReadableByteChannel channel )
+	 {
+			super();
+			this.channel = channel;
+	 }
+
+}
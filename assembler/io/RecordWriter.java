@@ -0,0 +1,288 @@
+/**
+ *
+ */
+package assembler.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Base class for streaming hex record (Intel HEX, S-record) writers.
+ *
+ * Words are written little-endian at consecutive addresses starting from the
+ * base address. Pending data bytes are collected into fixed-size records whose
+ * checksum is accumulated as each field is emitted, and finished records are
+ * written through a buffered channel.
+ */
+public abstract class RecordWriter implements Closeable
+{
+
+	 /**
+	  * {@value #HEX} Upper case hex digits
+	  */
+	 protected static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6',
+				 '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+	 /**
+	  * {@value #RECORD_SIZE} Default number of data bytes per record
+	  */
+	 public static final int RECORD_SIZE = 16;
+
+	 /**
+	  * {@link WritableByteChannel} Output channel
+	  */
+	 private final WritableByteChannel channel;
+
+	 /**
+	  * {@link ByteBuffer} Output buffer
+	  */
+	 private final ByteBuffer buffer = ByteBuffer.allocateDirect( 1 << 16 );
+
+	 /**
+	  * {@value #data} Pending record data
+	  */
+	 private final byte[] data;
+
+	 /**
+	  * {@value #length} Number of pending data bytes
+	  */
+	 private int length;
+
+	 /**
+	  * {@value #address} Address of the next byte
+	  */
+	 private long address;
+
+	 /**
+	  * {@value #base} Base address
+	  */
+	 protected final long base;
+
+	 /**
+	  * {@value #checksum} Running checksum of the current record
+	  */
+	 protected int checksum;
+
+	 /**
+	  * {@value #records} Number of data records written
+	  */
+	 protected int records;
+
+	 /**
+	  * @return long address of the next byte
+	  */
+	 public long getAddress()
+	 {
+			return address;
+	 }
+
+	 /**
+	  * Writes a single instruction word.
+	  * 
+	  * @param int word
+	  * @throws IOException
+	  */
+	 public void write( int word ) throws IOException
+	 {
+			put( word );
+			put( word >>> 8 );
+			put( word >>> 16 );
+			put( word >>> 24 );
+	 }
+
+	 /**
+	  * Writes a range of instruction words.
+	  * 
+	  * @param int[] words
+	  * @param int   offset
+	  * @param int   count
+	  * @throws IOException
+	  */
+	 public void write( int[] words, int offset, int count ) throws IOException
+	 {
+			for (int i = offset; i < offset + count; i++) {
+				 write( words[i] );
+			}
+	 }
+
+	 /**
+	  * Queues a data byte, emitting the pending record when it is full.
+	  * 
+	  * @param int value
+	  * @throws IOException
+	  */
+	 protected void put( int value ) throws IOException
+	 {
+			data[length++] = (byte) value;
+			address++;
+			if (length == data.length || isBoundary( address )) {
+				 flushRecord();
+			}
+	 }
+
+	 /**
+	  * Emits the pending data record, if any.
+	  * 
+	  * @throws IOException
+	  */
+	 protected void flushRecord() throws IOException
+	 {
+			if (length > 0) {
+				 dataRecord( address - length, data, length );
+				 records++;
+				 length = 0;
+			}
+	 }
+
+	 /**
+	  * Returns true if a record must end before the given address.
+	  * 
+	  * @param long address
+	  * @return Boolean
+	  */
+	 protected Boolean isBoundary( long address )
+	 {
+			return false;
+	 }
+
+	 /**
+	  * Writes a data record.
+	  * 
+	  * @param long   address of the first byte
+	  * @param byte[] data
+	  * @param int    length
+	  * @throws IOException
+	  */
+	 protected abstract void dataRecord( long address, byte[] data, int length )
+				 throws IOException;
+
+	 /**
+	  * Writes the trailing records.
+	  * 
+	  * @throws IOException
+	  */
+	 protected abstract void finish() throws IOException;
+
+	 /**
+	  * Writes a raw ASCII byte.
+	  * 
+	  * @param int value
+	  * @throws IOException
+	  */
+	 protected void ascii( int value ) throws IOException
+	 {
+			if (!buffer.hasRemaining()) {
+				 flush();
+			}
+			buffer.put( (byte) value );
+	 }
+
+	 /**
+	  * Writes a byte as two hex digits and adds it to the checksum.
+	  * 
+	  * @param int value
+	  * @throws IOException
+	  */
+	 protected void hex( int value ) throws IOException
+	 {
+			checksum += value & 0xff;
+			ascii( HEX[( value >>> 4 ) & 0xf] );
+			ascii( HEX[value & 0xf] );
+	 }
+
+	 /**
+	  * Writes the low bytes of a value, most significant first.
+	  * 
+	  * @param long value
+	  * @param int  bytes
+	  * @throws IOException
+	  */
+	 protected void hex( long value, int bytes ) throws IOException
+	 {
+			for (int i = bytes - 1; i >= 0; i--) {
+				 hex( (int) ( value >>> ( i * 8 ) ) );
+			}
+	 }
+
+	 /**
+	  * Writes the record terminator.
+	  * 
+	  * @throws IOException
+	  */
+	 protected void newline() throws IOException
+	 {
+			ascii( '\r' );
+			ascii( '\n' );
+	 }
+
+	 /**
+	  * Drains the output buffer to the channel.
+	  * 
+	  * @throws IOException
+	  */
+	 public void flush() throws IOException
+	 {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				 channel.write( buffer );
+			}
+			buffer.clear();
+	 }
+
+	 @Override
+	 public void close() throws IOException
+	 {
+			flushRecord();
+			finish();
+			flush();
+			channel.close();
+	 }
+
+	 /**
+	  * Opens a writer for a file, choosing the format from the file extension
+	  * (.hex/.ihx for Intel HEX, .srec/.s19/.s28/.s37/.mot for S-record).
+	  * 
+	  * @param Path path
+	  * @param int  base address
+	  * @return RecordWriter
+	  * @throws IOException
+	  */
+	 public static RecordWriter open( Path path, int base ) throws IOException
+	 {
+			String name = path.getFileName().toString().toLowerCase();
+			WritableByteChannel channel = FileChannel.open( path,
+						StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING );
+			if (name.matches( "(.*)\\.(hex|ihx|ihex)$" )) {
+				 return new IntelHexWriter( channel, base );
+			} else if (name.matches( "(.*)\\.(srec|s19|s28|s37|mot)$" )) {
+				 return new SRecordWriter( channel, base );
+			} else {
+				 channel.close();
+				 throw new IOException( "Unknown record format: " + name );
+			}
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param WritableByteChannel channel
+	  * @param int                 base address
+	  * @param int                 recordSize data bytes per record
+	  */
+	 protected RecordWriter( WritableByteChannel channel, int base,
+				 int recordSize )
+	 {
+			super();
+			this.channel = channel;
+			this.base = Integer.toUnsignedLong( base );
+			this.address = this.base;
+			this.data = new byte[recordSize];
+	 }
+
+}
@@ -0,0 +1,820 @@
+/**
+ * 
+ */
+package assembler.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import assembler.analysis.DecodedImage;
+import assembler.components.op2types.BlockTransfer;
+import assembler.core.Instruction;
+import assembler.exceptions.InvalidCodeException;
+import assembler.interfaces.Decodable;
+import assembler.util.Binary;
+
+/**
+ * Text renderer for ARM instruction words.
+ * 
+ * Writes the same text as {@link Instruction#toString()} directly into a
+ * caller supplied {@link Appendable}, {@link StringBuilder} or ASCII
+ * {@link ByteBuffer}. B and BL are rendered with their absolute target
+ * address, given the address of the word, and BX and BLX with their
+ * register. Names are served from the {@link TableSet} generated
+ * from the instruction schema and integers are formatted into a scratch
+ * buffer, so a renderer does not allocate per line. Every call renders with
+ * the tables current when it starts, so a reload never shows half way
+ * through an instruction, unless the renderer is pinned to a set. Instances
+ * are not thread-safe; use one renderer per thread.
+ */
+public class Renderer
+{
+
+	 /**
+	  * {@value #REGISTERS} Register names indexed by register number
+	  */
+	 public static final String[] REGISTERS = { "r0", "r1", "r2", "r3", "r4",
+				 "r5", "r6", "r7", "r8", "r9", "r10", "r11", "r12", "sp", "lr", "pc" };
+
+	 /**
+	  * {@value #VERSION} Listing format version, part of the
+	  * {@link ListingCache} keys: raise it whenever rendering changes
+	  */
+	 public static final int VERSION = 3;
+
+	 /**
+	  * {@value #HEX} Lower case hex digits
+	  */
+	 private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	 /**
+	  * {@value #COND_CODE} Schema limits for the cond code field
+	  */
+	 private static final int[] COND_CODE = Decodable.dSchema.get( "cond_code" );
+
+	 /**
+	  * {@value #OP_TYPE} Schema limits for the op type field
+	  */
+	 private static final int[] OP_TYPE = Decodable.dSchema.get( "op_type" );
+
+	 /**
+	  * {@value #OP_CODE} Schema limits for the op code field
+	  */
+	 private static final int[] OP_CODE = Decodable.dSchema.get( "op_code" );
+
+	 /**
+	  * {@value #S_BIT} Schema limits for the s bit field
+	  */
+	 private static final int[] S_BIT = Decodable.dSchema.get( "s_bit" );
+
+	 /**
+	  * {@value #RN} Schema limits for the rn field
+	  */
+	 private static final int[] RN = Decodable.dSchema.get( "rn" );
+
+	 /**
+	  * {@value #RD} Schema limits for the rd field
+	  */
+	 private static final int[] RD = Decodable.dSchema.get( "rd" );
+
+	 /**
+	  * {@value #OPERAND2} Schema limits for the operand2 field
+	  */
+	 private static final int[] OPERAND2 = Decodable.dSchema.get( "operand2" );
+
+	 /**
+	  * {@link TableSet} Tables to render with, or null to use the current set
+	  */
+	 private final TableSet pinned;
+
+	 /**
+	  * {@link TableSet} Tables of the call in progress
+	  */
+	 private TableSet tables;
+
+	 /**
+	  * {@value #digits} Scratch buffer for integer formatting
+	  */
+	 private final char[] digits = new char[11];
+
+	 /**
+	  * {@link AsciiSink} Reusable adapter for ByteBuffer targets
+	  */
+	 private final AsciiSink sink = new AsciiSink();
+
+	 /**
+	  * Renders an instruction word into an Appendable. Branch targets are
+	  * rendered as if the word were at address 0.
+	  *
+	  * @param int        word instruction word
+	  * @param Appendable out
+	  * @return Appendable out
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public <T extends Appendable> T render( int word, T out )
+				 throws IOException, InvalidCodeException
+	 {
+			return render( word, 0, out );
+	 }
+
+	 /**
+	  * Renders an instruction word at an address into an Appendable.
+	  *
+	  * @param int        word    instruction word
+	  * @param int        address address of the word
+	  * @param Appendable out
+	  * @return Appendable out
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public <T extends Appendable> T render( int word, int address, T out )
+				 throws IOException, InvalidCodeException
+	 {
+			tables = getTables();
+			int cond = Binary.extract( word, COND_CODE );
+			int opType = Binary.extract( word, OP_TYPE );
+			int opCode = Binary.extract( word, OP_CODE );
+			int sBit = Binary.extract( word, S_BIT );
+			int rn = Binary.extract( word, RN );
+			int rd = Binary.extract( word, RD );
+			int op2 = Binary.extract( word, OPERAND2 );
+			String suffix = tables.conditions[cond];
+
+			if (suffix == null) {
+				 throw new InvalidCodeException();
+			} else if (isBranch( word )) {
+				 out.append( ( word & 0x1000000 ) != 0 ? "BL" : "B" ).append( suffix );
+				 appendTarget( address + 8 + ( ( word << 8 ) >> 6 ), out );
+			} else if (isExchange( word )) {
+				 out.append( ( word & 0x20 ) != 0 ? "BLX" : "BX" ).append( suffix )
+							 .append( ' ' ).append( REGISTERS[word & 0xf] );
+			} else if (isHalfword( opType, op2 )) {
+				 renderHalfword( opCode, sBit, suffix, rn, rd, op2, out );
+			} else if (opType < 2) {
+				 renderDataProcessing( opType, opCode, sBit, suffix, rn, rd, op2,
+							 out );
+			} else if (opType < 4) {
+				 renderLoadStore( opType - 2, opCode, sBit, suffix, rn, rd, op2,
+							 out );
+			} else if (opType == 4) {
+				 renderBlockTransfer( opCode, sBit, suffix, rn, word & 0xffff, out );
+			} else {
+				 throw new InvalidCodeException();
+			}
+			return out;
+	 }
+
+	 /**
+	  * Returns true if an instruction word can be rendered with the current
+	  * tables.
+	  * 
+	  * @param int word instruction word
+	  * @return boolean
+	  */
+	 public static boolean isValid( int word )
+	 {
+			return isValid( TableSet.current(), word );
+	 }
+
+	 /**
+	  * Returns true if an instruction word can be rendered with a set of
+	  * tables.
+	  * 
+	  * @param TableSet tables
+	  * @param int      word instruction word
+	  * @return boolean
+	  */
+	 public static boolean isValid( TableSet tables, int word )
+	 {
+			int opType = Binary.extract( word, OP_TYPE );
+			int opCode = Binary.extract( word, OP_CODE );
+			int sBit = Binary.extract( word, S_BIT );
+			int op2 = Binary.extract( word, OPERAND2 );
+			if (tables.conditions[Binary.extract( word, COND_CODE )] == null) {
+				 return false;
+			} else if (isBranch( word ) || isExchange( word )) {
+				 return true;
+			} else if (isHalfword( opType, op2 )) {
+				 return tables.halfword[opCode][sBit][( op2 >>> 5 ) & 3] != null
+							 && ( ( opCode & 2 ) != 0 || ( op2 & 0xf00 ) == 0 );
+			} else if (opType < 2) {
+				 return tables.operations[opType][opCode] != null
+							 && ( sBit == 1 || !tables.sImplied[opCode] );
+			} else if (opType < 4) {
+				 return tables.loadStore[opType - 2][opCode][sBit] != null
+							 && ( opType == 2 || ( op2 & 0x10 ) == 0 );
+			} else if (opType == 4) {
+				 return tables.blockTransfer[opCode][sBit] != null
+							 && ( word & 0xffff ) != 0;
+			}
+			return false;
+	 }
+
+	 /**
+	  * Renders an instruction word into a StringBuilder.
+	  *
+	  * @param int           word instruction word
+	  * @param StringBuilder out
+	  * @return StringBuilder out
+	  * @throws InvalidCodeException
+	  */
+	 public StringBuilder render( int word, StringBuilder out )
+				 throws InvalidCodeException
+	 {
+			try {
+				 render( word, (Appendable) out );
+			} catch (IOException e) {
+				 // StringBuilder does not throw
+				 throw new InvalidCodeException( e.getMessage(), e );
+			}
+			return out;
+	 }
+
+	 /**
+	  * Renders an instruction word at an address into a StringBuilder.
+	  *
+	  * @param int           word    instruction word
+	  * @param int           address address of the word
+	  * @param StringBuilder out
+	  * @return StringBuilder out
+	  * @throws InvalidCodeException
+	  */
+	 public StringBuilder render( int word, int address, StringBuilder out )
+				 throws InvalidCodeException
+	 {
+			try {
+				 render( word, address, (Appendable) out );
+			} catch (IOException e) {
+				 throw new InvalidCodeException( e.getMessage(), e );
+			}
+			return out;
+	 }
+
+	 /**
+	  * Renders an instruction word as ASCII into a ByteBuffer.
+	  *
+	  * @param int        word instruction word
+	  * @param ByteBuffer out
+	  * @return ByteBuffer out
+	  * @throws InvalidCodeException
+	  */
+	 public ByteBuffer render( int word, ByteBuffer out )
+				 throws InvalidCodeException
+	 {
+			try {
+				 render( word, ascii( out ) );
+			} catch (IOException e) {
+				 throw new InvalidCodeException( e.getMessage(), e );
+			} finally {
+				 sink.buffer = null;
+			}
+			return out;
+	 }
+
+	 /**
+	  * Renders an instruction into an Appendable.
+	  *
+	  * @param Instruction instruction
+	  * @param Appendable  out
+	  * @return Appendable out
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public <T extends Appendable> T render( Instruction instruction, T out )
+				 throws IOException, InvalidCodeException
+	 {
+			return render( instruction.getBits().getDecimal().intValue(), out );
+	 }
+
+	 /**
+	  * Renders an instruction of a decoded image from its columns, as
+	  * {@link #render(int, int, Appendable)} renders its word at its address.
+	  *
+	  * @param DecodedImage image
+	  * @param int          index instruction
+	  * @param Appendable   out
+	  * @return Appendable out
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public <T extends Appendable> T render( DecodedImage image, int index,
+				 T out ) throws IOException, InvalidCodeException
+	 {
+			tables = getTables();
+			int word = image.getWord( index );
+			String suffix = tables.conditions[image.getCondition( index )];
+			int opCode = image.getOpcode( index );
+			int sBit = ( word >>> 20 ) & 1;
+			int rd = image.getRd( index );
+			int rn = image.getRn( index );
+			int rm = image.getRm( index );
+			int rs = image.getRs( index );
+			int immediate = image.getImmediate( index );
+			switch (image.getKind( index )) {
+			case DecodedImage.DATA:
+				 renderData( ( word >>> 25 ) & 1, opCode, sBit, suffix, rd, rn, rm, rs,
+							 image.getShiftType( index ), image.getShiftAmount( index ),
+							 immediate, out );
+				 break;
+			case DecodedImage.MULTIPLY:
+				 out.append( "MUL" ).append( sBit == 1 ? "S" : "" ).append( suffix )
+							 .append( ' ' ).append( REGISTERS[rd] ).append( ", " )
+							 .append( REGISTERS[rm] ).append( ", " ).append( REGISTERS[rs] );
+				 break;
+			case DecodedImage.TRANSFER:
+			case DecodedImage.HALFWORD:
+				 String instr;
+				 String loadStoreOp;
+				 if (image.getKind( index ) == DecodedImage.HALFWORD) {
+						int sh = ( word >>> 5 ) & 3;
+						instr = tables.halfword[opCode][sBit][sh];
+						loadStoreOp = tables.halfwordOps[opCode][sBit][sh];
+				 } else {
+						int codeType = ( word >>> 25 ) & 1;
+						instr = tables.loadStore[codeType][opCode][sBit];
+						loadStoreOp = tables.loadStoreOps[codeType][opCode][sBit];
+				 }
+				 out.append( instr ).append( suffix ).append( ' ' );
+				 out.append( REGISTERS[rd] ).append( ", [" ).append( REGISTERS[rn] );
+				 if (rm == DecodedImage.NONE && immediate == 0) {
+						out.append( loadStoreOp.equals( "PRI" ) ? "]!" : "]" );
+						break;
+				 }
+				 out.append( loadStoreOp.equals( "PSI" ) ? "], " : ", " );
+				 if (rm == DecodedImage.NONE) {
+						out.append( '#' );
+						appendInt( immediate, out );
+				 } else {
+						out.append( REGISTERS[rm] );
+						int shiftType = image.getShiftType( index );
+						if (shiftType == DecodedImage.RRX) {
+							 out.append( ", RRX" );
+						} else if (image.getShiftAmount( index ) != 0) {
+							 out.append( ", " ).append( tables.shifts[0][shiftType] )
+										 .append( " #" );
+							 appendInt( image.getShiftAmount( index ), out );
+						}
+				 }
+				 if (loadStoreOp.equals( "PRI" )) {
+						out.append( "]!" );
+				 } else if (!loadStoreOp.equals( "PSI" )) {
+						out.append( ']' );
+				 }
+				 break;
+			case DecodedImage.BLOCK:
+				 renderBlockTransfer( opCode, sBit, suffix, rn, immediate, out );
+				 break;
+			case DecodedImage.BRANCH:
+				 out.append( ( word & 0x1000000 ) != 0 ? "BL" : "B" ).append( suffix );
+				 appendTarget( image.getImage().getAddress( index ) + 8 + immediate,
+							 out );
+				 break;
+			default:
+				 // BX/BLX, or a word that does not decode
+				 render( word, image.getImage().getAddress( index ), out );
+			}
+			return out;
+	 }
+
+	 /**
+	  * Renders a data processing instruction from decoded fields.
+	  *
+	  * @throws IOException
+	  */
+	 private void renderData( int opType, int opCode, int sBit, String suffix,
+				 int rd, int rn, int rm, int rs, int shiftType, int shAmt,
+				 int immediate, Appendable out ) throws IOException
+	 {
+			String sFlag = sBit == 1 && !tables.sImplied[opCode] ? "S" : "";
+			boolean isShift = opCode == 13;
+			boolean plain = rs == DecodedImage.NONE && shiftType == DecodedImage.LSL
+						&& shAmt == 0;
+			String shiftOp = shiftType == DecodedImage.RRX ? "RRX"
+						: opType == 0 ? tables.shifts[0][shiftType] : null;
+			out.append( isShift && opType == 0 && !plain ? shiftOp
+						: tables.operations[opType][opCode] );
+			out.append( sFlag ).append( suffix ).append( ' ' );
+			if (rd != DecodedImage.NONE) {
+				 out.append( REGISTERS[rd] ).append( ", " );
+			}
+			if (rn != DecodedImage.NONE) {
+				 out.append( REGISTERS[rn] ).append( ", " );
+			}
+			if (opType == 1) {
+				 out.append( '#' );
+				 appendInt( immediate, out );
+				 return;
+			}
+			out.append( REGISTERS[rm] );
+			if (rs != DecodedImage.NONE) {
+				 out.append( ", " );
+				 if (!isShift) {
+						out.append( shiftOp ).append( ' ' );
+				 }
+				 out.append( REGISTERS[rs] );
+			} else if (shiftType == DecodedImage.RRX) {
+				 if (!isShift) {
+						out.append( ", " ).append( shiftOp );
+				 }
+			} else if (shAmt != 0) {
+				 if (isShift) {
+						out.append( ", #" );
+				 } else {
+						out.append( ", " ).append( shiftOp ).append( " #" );
+				 }
+				 appendInt( shAmt, out );
+			}
+	 }
+
+	 /**
+	  * Renders a data processing or multiply instruction.
+	  *
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 private void renderDataProcessing( int opType, int opCode, int sBit,
+				 String suffix, int rn, int rd, int op2, Appendable out )
+				 throws IOException, InvalidCodeException
+	 {
+			String instr = tables.operations[opType][opCode];
+			String sFlag = sBit == 1 && !tables.sImplied[opCode] ? "S" : "";
+			boolean isShift = opCode == 13;
+			boolean isMOV = !tables.hasRn[opCode];
+
+			if (instr == null || ( sBit == 0 && tables.sImplied[opCode] )) {
+				 throw new InvalidCodeException();
+			}
+
+			if (opType == 0 && opCode == 0 && ( ( op2 >>> 4 ) & 0xf ) == 9) {
+				 // MUL rd, rm, rs (rd is held in the rn field)
+				 out.append( "MUL" ).append( sFlag ).append( suffix ).append( ' ' );
+				 out.append( REGISTERS[rn] ).append( ", " );
+				 out.append( REGISTERS[op2 & 0xf] ).append( ", " );
+				 out.append( REGISTERS[op2 >>> 8] );
+			} else if (opType == 1) { // Immediate
+				 out.append( instr ).append( sFlag ).append( suffix ).append( ' ' );
+				 if (tables.hasRd[opCode]) {
+						out.append( REGISTERS[rd] ).append( ", " );
+				 }
+				 if (!isMOV) {
+						out.append( REGISTERS[rn] ).append( ", " );
+				 }
+				 out.append( '#' );
+				 appendInt( Binary.rightRotate( op2 & 0xff, ( op2 >>> 8 ) * 2 ),
+							 out );
+			} else { // Register
+				 int rm = op2 & 0xf;
+				 int shiftMode = ( op2 >>> 4 ) & 1;
+				 int shiftType = ( op2 >>> 5 ) & 3;
+				 int shAmt = op2 >>> 7;
+				 String shiftOp = tables.shifts[shiftMode][shiftType];
+				 boolean isRRX = shiftMode == 0 && shiftType == 3 && shAmt == 0;
+
+				 if (isRRX) {
+						shiftOp = "RRX";
+				 } else if (shiftOp.equals( "MOV" )) {
+						shiftOp = "LSL";
+				 }
+				 if (shiftMode == 0 && shAmt == 0 && !isRRX
+							 && shiftOp.endsWith( "R" )) {
+						shAmt = 32;
+				 }
+
+				 if (isShift) {
+						out.append( ( op2 >>> 4 ) == 0 ? "MOV" : shiftOp );
+				 } else {
+						out.append( instr );
+				 }
+				 out.append( sFlag ).append( suffix ).append( ' ' );
+				 if (tables.hasRd[opCode]) {
+						out.append( REGISTERS[rd] ).append( ", " );
+				 }
+				 if (!isMOV) {
+						out.append( REGISTERS[rn] ).append( ", " );
+				 }
+				 out.append( REGISTERS[rm] );
+				 if (shiftMode == 0) { // shAmt
+						if (!isShift && isRRX) {
+							 out.append( ", " ).append( shiftOp );
+						} else if (shAmt == 0) {
+							 // plain register
+						} else if (isShift) {
+							 out.append( ", #" );
+							 appendInt( shAmt, out );
+						} else {
+							 out.append( ", " ).append( shiftOp ).append( " #" );
+							 appendInt( shAmt, out );
+						}
+				 } else { // Register
+						out.append( ", " );
+						if (!isShift) {
+							 out.append( shiftOp ).append( ' ' );
+						}
+						out.append( REGISTERS[op2 >>> 8] );
+				 }
+			}
+	 }
+
+	 /**
+	  * Renders an LDM/STM instruction. STMDB sp! and LDMIA sp! are written as
+	  * PUSH and POP.
+	  * 
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 private void renderBlockTransfer( int opCode, int load, String suffix,
+				 int rn, int list, Appendable out )
+				 throws IOException, InvalidCodeException
+	 {
+			String instr = tables.blockTransfer[opCode][load];
+			boolean writeBack = ( opCode & 1 ) != 0;
+			if (instr == null || list == 0) {
+				 throw new InvalidCodeException();
+			}
+			if (writeBack && rn == 13 && instr.endsWith( load == 1 ? "IA" : "DB" )) {
+				 out.append( load == 1 ? "POP" : "PUSH" ).append( suffix );
+			} else {
+				 out.append( instr ).append( suffix ).append( ' ' )
+							 .append( REGISTERS[rn] );
+				 if (writeBack) {
+						out.append( '!' );
+				 }
+				 out.append( ',' );
+			}
+			out.append( ' ' );
+			BlockTransfer.appendList( list, out );
+	 }
+
+	 /**
+	  * Returns true if a word in the data processing space is a halfword or
+	  * signed byte load/store: bits 7 and 4 set, SH not 00.
+	  * 
+	  * @param int opType
+	  * @param int op2
+	  * @return boolean
+	  */
+	 private static boolean isHalfword( int opType, int op2 )
+	 {
+			return opType == 0 && ( op2 & 0x90 ) == 0x90 && ( op2 & 0x60 ) != 0;
+	 }
+
+	 /**
+	  * Returns true if a word is a B or BL: bits 27-25 are 101.
+	  * 
+	  * @param int word
+	  * @return boolean
+	  */
+	 private static boolean isBranch( int word )
+	 {
+			return ( word & 0x0e000000 ) == 0x0a000000;
+	 }
+
+	 /**
+	  * Returns true if a word is a BX or BLX to a register.
+	  * 
+	  * @param int word
+	  * @return boolean
+	  */
+	 private static boolean isExchange( int word )
+	 {
+			return ( word & 0x0fffffd0 ) == 0x012fff10;
+	 }
+
+	 /**
+	  * Renders a halfword/signed byte load/store instruction. The immediate
+	  * offset is split into imm4H (bits 11-8) and imm4L (bits 3-0); the I bit
+	  * (bit 1 of the op code) selects it over an unshifted register.
+	  *
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 private void renderHalfword( int opCode, int loadStore, String suffix,
+				 int rn, int rd, int op2, Appendable out )
+				 throws IOException, InvalidCodeException
+	 {
+			int sh = ( op2 >>> 5 ) & 3;
+			int codeType = ( opCode & 2 ) != 0 ? 0 : 1;
+			String instr = tables.halfword[opCode][loadStore][sh];
+			if (instr == null || ( codeType == 1 && ( op2 & 0xf00 ) != 0 )) {
+				 throw new InvalidCodeException();
+			}
+			int offset = codeType == 0 ? ( ( op2 >>> 4 ) & 0xf0 ) | ( op2 & 0xf )
+						: op2 & 0xf;
+			renderTransfer( instr, tables.halfwordOps[opCode][loadStore][sh],
+						codeType, suffix, rn, rd, offset, out );
+	 }
+
+	 /**
+	  * Renders a single register load/store instruction.
+	  *
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 private void renderLoadStore( int codeType, int opCode, int loadStore,
+				 String suffix, int rn, int rd, int op2, Appendable out )
+				 throws IOException, InvalidCodeException
+	 {
+			String instr = tables.loadStore[codeType][opCode][loadStore];
+			if (instr == null || ( codeType == 1 && ( op2 & 0x10 ) != 0 )) {
+				 throw new InvalidCodeException();
+			}
+			renderTransfer( instr, tables.loadStoreOps[codeType][opCode][loadStore],
+						codeType, suffix, rn, rd, op2, out );
+	 }
+
+	 /**
+	  * Renders the mnemonic and addressing mode of a load/store instruction.
+	  *
+	  * @throws IOException
+	  */
+	 private void renderTransfer( String instr, String loadStoreOp, int codeType,
+				 String suffix, int rn, int rd, int op2, Appendable out )
+				 throws IOException
+	 {
+			boolean zeroOp2 = codeType == 0 && op2 == 0;
+
+			out.append( instr ).append( suffix ).append( ' ' );
+			out.append( REGISTERS[rd] ).append( ", [" ).append( REGISTERS[rn] );
+			if (zeroOp2) {
+				 out.append( loadStoreOp.equals( "PRI" ) ? "]!" : "]" );
+				 return;
+			}
+			switch (loadStoreOp) {
+			case "PSI":
+				 out.append( "], " );
+				 renderOffset( codeType, loadStoreOp, op2, out );
+				 break;
+			case "PRI":
+				 out.append( ", " );
+				 renderOffset( codeType, loadStoreOp, op2, out );
+				 out.append( "]!" );
+				 break;
+			default:
+				 out.append( ", " );
+				 renderOffset( codeType, loadStoreOp, op2, out );
+				 out.append( ']' );
+				 break;
+			}
+	 }
+
+	 /**
+	  * Renders a load/store offset (immediate or scaled register).
+	  *
+	  * @throws IOException
+	  */
+	 private void renderOffset( int codeType, String loadStoreOp, int op2,
+				 Appendable out ) throws IOException
+	 {
+			if (codeType == 0) { // Immediate
+				 out.append( loadStoreOp.equals( "SUB" ) ? "#-" : "#" );
+				 appendInt( op2, out );
+			} else { // Register
+				 int shiftType = ( op2 >>> 5 ) & 3;
+				 int shAmt = op2 >>> 7;
+				 String shiftOp = tables.shifts[0][shiftType];
+				 out.append( REGISTERS[op2 & 0xf] );
+				 if (shiftType == 3 && shAmt == 0) {
+						out.append( ", RRX" );
+				 } else if (shAmt != 0 || shiftOp.endsWith( "R" )) {
+						out.append( ", " ).append( shiftOp ).append( " #" );
+						appendInt( shAmt == 0 ? 32 : shAmt, out );
+				 }
+			}
+	 }
+
+	 /**
+	  * Appends a signed decimal integer without allocating.
+	  *
+	  * @param int        value
+	  * @param Appendable out
+	  * @throws IOException
+	  */
+	 public void appendInt( int value, Appendable out ) throws IOException
+	 {
+			int pos = digits.length;
+			// Work with negative values so that Integer.MIN_VALUE is representable
+			int n = value < 0 ? value : -value;
+			do {
+				 digits[--pos] = (char) ( '0' - ( n % 10 ) );
+				 n /= 10;
+			} while (n != 0);
+			if (value < 0) {
+				 out.append( '-' );
+			}
+			for (int i = pos; i < digits.length; i++) {
+				 out.append( digits[i] );
+			}
+	 }
+
+	 /**
+	  * Appends an unsigned lower case hex integer without allocating.
+	  * 
+	  * @param int        value
+	  * @param int        width number of digits
+	  * @param Appendable out
+	  * @throws IOException
+	  */
+	 public void appendHex( int value, int width, Appendable out )
+				 throws IOException
+	 {
+			for (int i = width - 1; i >= 0; i--) {
+				 out.append( HEX[( value >>> ( i * 4 ) ) & 0xf] );
+			}
+	 }
+
+	 /**
+	  * Appends a branch target as a space and 8 bare hex digits, for ARM and
+	  * Thumb branches alike.
+	  * 
+	  * @param int        address target address
+	  * @param Appendable out
+	  * @throws IOException
+	  */
+	 protected void appendTarget( int address, Appendable out )
+				 throws IOException
+	 {
+			out.append( ' ' );
+			appendHex( address, 8, out );
+	 }
+
+	 /**
+	  * Returns the tables to render with: the pinned set, or else the current
+	  * one.
+	  * 
+	  * @return TableSet
+	  */
+	 protected TableSet getTables()
+	 {
+			return pinned != null ? pinned : TableSet.current();
+	 }
+
+	 /**
+	  * Returns the reusable ASCII adapter targeting a ByteBuffer.
+	  * 
+	  * @param ByteBuffer out
+	  * @return Appendable
+	  */
+	 protected Appendable ascii( ByteBuffer out )
+	 {
+			sink.buffer = out;
+			return sink;
+	 }
+
+	 /**
+	  * Appendable adapter writing ASCII characters into a ByteBuffer.
+	  */
+	 private static class AsciiSink implements Appendable
+	 {
+
+			/**
+			 * {@link ByteBuffer} Target buffer
+			 */
+			private ByteBuffer buffer;
+
+			@Override
+			public Appendable append( CharSequence csq )
+			{
+				 return append( csq, 0, csq.length() );
+			}
+
+			@Override
+			public Appendable append( CharSequence csq, int start, int end )
+			{
+				 for (int i = start; i < end; i++) {
+						buffer.put( (byte) csq.charAt( i ) );
+				 }
+				 return this;
+			}
+
+			@Override
+			public Appendable append( char c )
+			{
+				 buffer.put( (byte) c );
+				 return this;
+			}
+
+	 }
+
+	 /**
+	  * Standard constructor. Renders every call with the tables current when
+	  * it starts.
+	  */
+	 public Renderer()
+	 {
+			this( null );
+	 }
+
+	 /**
+	  * Pinned constructor. Renders with a set of tables, whatever set is
+	  * current.
+	  * 
+	  * @param TableSet tables
+	  */
+	 public Renderer( TableSet tables )
+	 {
+			super();
+			this.pinned = tables;
+	 }
+
+}
@@ -0,0 +1,76 @@
+/**
+ *
+ */
+package assembler.io;
+
+import java.nio.channels.ReadableByteChannel;
+
+import assembler.exceptions.InvalidCodeException;
+
+/**
+ * Streaming Motorola S-record reader.
+ *
+ * Supports S1/S2/S3 data records, S7/S8/S9 termination records and skips the
+ * S0 header and S5/S6 count records.
+ */
+public class SRecordReader extends RecordReader
+{
+
+	 /**
+	  * {@value #ADDRESS_SIZE} Address size in bytes by record type (0 if
+	  * invalid)
+	  */
+	 private static final int[] ADDRESS_SIZE = { 2, 2, 3, 4, 0, 2, 3, 4, 3,
+				 2 };
+
+	 @Override
+	 protected void record( byte[] line, int length )
+				 throws InvalidCodeException
+	 {
+			if (line[0] != 'S' || length < 4 || line[1] < '0' || line[1] > '9'
+						|| ADDRESS_SIZE[line[1] - '0'] == 0) {
+				 throw error( "invalid S-record type" );
+			}
+			int type = line[1] - '0';
+			int size = ADDRESS_SIZE[type];
+			checksum = 0;
+			int count = hex( line, 2, length );
+			if (length != 4 + count * 2 || count < size + 1) {
+				 throw error( "record length does not match byte count" );
+			}
+			long address = hex( line, 4, length, size );
+			int dataCount = count - size - 1;
+			hexData( line, 4 + size * 2, length, dataCount );
+			hex( line, 4 + ( count - 1 ) * 2, length );
+			if (( checksum & 0xff ) != 0xff) {
+				 throw error( "checksum mismatch" );
+			}
+
+			switch (type) {
+			case 1:
+			case 2:
+			case 3:
+				 store( address, dataCount );
+				 break;
+			case 7:
+			case 8:
+			case 9:
+				 start = address;
+				 done = true;
+				 break;
+			default: // S0 header, S5/S6 record count
+				 break;
+			}
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param ReadableByteChannel channel
+	  */
+	 public SRecordReader( ReadableByteChannel channel )
+	 {
+			super( channel );
+	 }
+
+}
@@ -0,0 +1,108 @@
+/**
+ *
+ */
+package assembler.io;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streaming Motorola S-record writer.
+ *
+ * Emits an S0 header, S3 data records with 32-bit addresses, an S5 record
+ * count when it fits in 16 bits, else an S6 when it fits in 24 bits, and an
+ * S7 termination record holding the base address.
+ */
+public class SRecordWriter extends RecordWriter
+{
+
+	 /**
+	  * {@value #HEADER} S0 header text
+	  */
+	 private static final String HEADER = "armv6assembler";
+
+	 @Override
+	 protected void dataRecord( long address, byte[] data, int length )
+				 throws IOException
+	 {
+			record( '3', length + 5 );
+			hex( address, 4 );
+			for (int i = 0; i < length; i++) {
+				 hex( data[i] );
+			}
+			end();
+	 }
+
+	 @Override
+	 protected void finish() throws IOException
+	 {
+			if (records < 0x10000) {
+				 record( '5', 3 );
+				 hex( records, 2 );
+				 end();
+			} else if (records < 0x1000000) {
+				 record( '6', 4 );
+				 hex( records, 3 );
+				 end();
+			}
+			record( '7', 5 );
+			hex( base, 4 );
+			end();
+	 }
+
+	 /**
+	  * Writes the S0 header record.
+	  * 
+	  * @throws IOException
+	  */
+	 private void header() throws IOException
+	 {
+			record( '0', HEADER.length() + 3 );
+			hex( 0, 2 );
+			for (int i = 0; i < HEADER.length(); i++) {
+				 hex( HEADER.charAt( i ) );
+			}
+			end();
+	 }
+
+	 /**
+	  * Starts a record.
+	  * 
+	  * @param char type
+	  * @param int  count byte count (address, data and checksum)
+	  * @throws IOException
+	  */
+	 private void record( char type, int count ) throws IOException
+	 {
+			ascii( 'S' );
+			ascii( type );
+			checksum = 0;
+			hex( count );
+	 }
+
+	 /**
+	  * Completes a record with its one's complement checksum.
+	  * 
+	  * @throws IOException
+	  */
+	 private void end() throws IOException
+	 {
+			hex( ~checksum );
+			newline();
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param WritableByteChannel channel
+	  * @param int                 base address
+	  * @throws IOException
+	  */
+	 public SRecordWriter( WritableByteChannel channel, int base )
+				 throws IOException
+	 {
+			super( channel, base, RECORD_SIZE );
+			header();
+	 }
+
+}
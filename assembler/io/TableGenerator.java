@@ -0,0 +1,896 @@
+/**
+ *
+ */
+package assembler.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build time generator of {@link Tables} from the instruction schema.
+ *
+ * Runs schema.sql, followed by any files of extra instruction definitions,
+ * into a private in-memory database and reads the encodings from it once.
+ * The result is written as Java source: the name tables, read into the
+ * compiled {@link TableSet}, a decoder naming the instruction of a word with
+ * one switch on its op type, op code and L/S bits, and one encoder per
+ * mnemonic with its fixed bits folded into constants, which the JIT can
+ * inline. Assembly, decoding and listing go through these, so nothing is
+ * interpreted through SQL at run time and adding instructions stays a matter
+ * of adding rows. The same tables can be read into a {@link TableSet} and
+ * published while running, as a reload does; such a set decodes and encodes
+ * from its own tables.
+ *
+ * Definitions run after the schema, so new instructions go into op_code (and
+ * dp_instr, cond_code or operand2) as rows of their own.
+ *
+ * Usage: TableGenerator [-c] [-o Tables.java] [definitions.sql ...]. With
+ * -c the output file is only compared with the generated source, and the
+ * generator exits with status 1 if it is out of date.
+ */
+public class TableGenerator
+{
+
+	 /**
+	  * {@value #SCHEMA} Instruction schema resource
+	  */
+	 public static final String SCHEMA = "assembler/io/schema.sql";
+
+	 /**
+	  * {@value #OUTPUT} Default output file
+	  */
+	 public static final String OUTPUT = "assembler/io/Tables.java";
+
+	 /**
+	  * {@value #WIDTH} Line width of the generated source
+	  */
+	 private static final int WIDTH = 80;
+
+	 /**
+	  * {@value #conditions} Condition suffixes by cond code ("" for AL)
+	  */
+	 private final String[] conditions = new String[16];
+
+	 /**
+	  * {@value #operations} Data processing mnemonics [op_type][op_code]
+	  */
+	 private final String[][] operations = new String[2][16];
+
+	 /**
+	  * {@value #hasRd} Data processing instruction writes Rd [op_code]
+	  */
+	 private final boolean[] hasRd = new boolean[16];
+
+	 /**
+	  * {@value #hasRn} Data processing instruction reads Rn [op_code]
+	  */
+	 private final boolean[] hasRn = new boolean[16];
+
+	 /**
+	  * {@value #sImplied} Data processing S bit is implied [op_code]
+	  */
+	 private final boolean[] sImplied = new boolean[16];
+
+	 /**
+	  * {@value #loadStore} Load/Store mnemonics [op_type][op_code][load_store]
+	  */
+	 private final String[][][] loadStore = new String[2][16][2];
+
+	 /**
+	  * {@value #loadStoreOps} Load/Store operations
+	  * [op_type][op_code][load_store]
+	  */
+	 private final String[][][] loadStoreOps = new String[2][16][2];
+
+	 /**
+	  * {@value #halfword} Halfword load/store mnemonics [op_code][load_store][sh]
+	  */
+	 private final String[][][] halfword = new String[16][2][4];
+
+	 /**
+	  * {@value #halfwordOps} Halfword load/store operations
+	  * [op_code][load_store][sh]
+	  */
+	 private final String[][][] halfwordOps = new String[16][2][4];
+
+	 /**
+	  * {@value #blockInstr} LDM/STM mnemonics [op_code][load_store]
+	  */
+	 private final String[][] blockInstr = new String[16][2];
+
+	 /**
+	  * {@value #blockModes} LDM/STM addressing modes [op_code][load_store]
+	  */
+	 private final String[][] blockModes = new String[16][2];
+
+	 /**
+	  * {@value #blockAliases} LDM/STM stack addressing modes
+	  * [op_code][load_store]
+	  */
+	 private final String[][] blockAliases = new String[16][2];
+
+	 /**
+	  * {@value #shiftNames} Shift operations [shift mode][shift type], the
+	  * listed name first
+	  */
+	 private final String[][][] shiftNames = new String[2][4][0];
+
+	 /**
+	  * Reads the encodings from a database holding the schema.
+	  * 
+	  * @param Connection conn
+	  * @throws SQLException
+	  */
+	 private void load( Connection conn ) throws SQLException
+	 {
+			try (PreparedStatement stmt = conn
+						.prepareStatement( "SELECT code, suffix FROM cond_code" );
+						ResultSet rs = stmt.executeQuery()) {
+				 while (rs.next()) {
+						String suffix = rs.getString( "suffix" );
+						conditions[Integer.parseInt( rs.getString( "code" ), 2 )] = suffix
+									.equals( "AL" ) ? "" : suffix;
+				 }
+			}
+			try (PreparedStatement stmt = conn
+						.prepareStatement( "SELECT op_code.*, sh FROM op_code LEFT JOIN "
+									+ "ls_size ON ls_size.instr = op_code.instr ORDER BY op_code.id" );
+						ResultSet rs = stmt.executeQuery()) {
+				 while (rs.next()) {
+						int opType = Integer.parseInt( rs.getString( "op_type" ), 2 );
+						int opCode = Integer.parseInt( rs.getString( "op_code" ), 2 );
+						int ls = rs.getInt( "load_store" );
+						String instr = rs.getString( "instr" );
+						String mode = rs.getString( "load_store_instr" );
+						String sh = rs.getString( "sh" );
+						if (sh != null && opType == 0) {
+							 halfword[opCode][ls][Integer.parseInt( sh, 2 )] = instr;
+							 halfwordOps[opCode][ls][Integer.parseInt( sh, 2 )] = mode;
+						} else if (opType < 2 && ls == -1) {
+							 if (operations[opType][opCode] == null) {
+									operations[opType][opCode] = instr;
+							 }
+						} else if (opType == 4) {
+							 blockInstr[opCode][ls] = instr;
+							 blockModes[opCode][ls] = mode;
+						} else if (opType < 4 && ls >= 0) {
+							 if (loadStore[opType - 2][opCode][ls] == null) {
+									loadStore[opType - 2][opCode][ls] = instr;
+									loadStoreOps[opType - 2][opCode][ls] = mode;
+							 }
+						}
+				 }
+			}
+			try (PreparedStatement stmt = conn
+						.prepareStatement( "SELECT * FROM dp_instr" );
+						ResultSet rs = stmt.executeQuery()) {
+				 while (rs.next()) {
+						int opCode = Integer.parseInt( rs.getString( "op_code" ), 2 );
+						hasRd[opCode] = rs.getInt( "has_rd" ) == 1;
+						hasRn[opCode] = rs.getInt( "has_rn" ) == 1;
+						sImplied[opCode] = rs.getInt( "s_bit" ) == 1;
+				 }
+			}
+			try (PreparedStatement stmt = conn
+						.prepareStatement( "SELECT * FROM operand2 ORDER BY id" );
+						ResultSet rs = stmt.executeQuery()) {
+				 while (rs.next()) {
+						int shiftType = Integer.parseInt( rs.getString( "shift_type" ), 2 );
+						int shiftMode = rs.getInt( "instr_type" );
+						String[] names = shiftNames[shiftMode][shiftType];
+						names = Arrays.copyOf( names, names.length + 1 );
+						names[names.length - 1] = rs.getString( "instr" );
+						shiftNames[shiftMode][shiftType] = names;
+				 }
+			}
+			try (PreparedStatement stmt = conn
+						.prepareStatement( "SELECT * FROM block_mode" );
+						ResultSet rs = stmt.executeQuery()) {
+				 while (rs.next()) {
+						for (int opCode = 0; opCode < 16; opCode++) {
+							 for (int ls = 0; ls < 2; ls++) {
+									if (rs.getString( "mode" ).equals( blockModes[opCode][ls] )) {
+										 blockAliases[opCode][ls] = rs
+													 .getString( ls == 1 ? "load_alias" : "store_alias" );
+									}
+							 }
+						}
+				 }
+			}
+	 }
+
+	 /**
+	  * Returns the generated source of {@link Tables}.
+	  * 
+	  * @return String
+	  */
+	 public String generate()
+	 {
+			StringBuilder out = new StringBuilder( 1 << 16 );
+			out.append( "/**\n * Generated by {@link TableGenerator} from schema.sql. "
+						+ "Do not edit: change\n * the schema or the definitions and run "
+						+ "the generator again.\n */\npackage assembler.io;\n\n"
+						+ "import assembler.exceptions.InvalidCodeException;\n\n" );
+			out.append( "/**\n * Instruction tables, decoder and encoders generated "
+						+ "from the instruction\n * schema.\n *\n * The tables are private "
+						+ "and only read into the compiled\n * {@link TableSet}. The "
+						+ "decoder names the instruction of a word with one\n * switch on "
+						+ "its op type, op code and L/S bits, and every mnemonic has an\n * "
+						+ "encoder with its fixed bits folded into constants. Encoders "
+						+ "pack the\n * fields they are given as they are.\n */\n"
+						+ "public final class Tables\n{\n\n" );
+			table( out, "CONDITIONS",
+						"Condition suffixes indexed by cond code (\"\" for AL, null if "
+									+ "undefined)",
+						"String[]", conditions );
+			table( out, "OPERATIONS", "Data processing mnemonics [op_type][op_code]",
+						"String[][]", operations );
+			table( out, "HAS_RD", "Data processing instruction writes Rd [op_code]",
+						"boolean[]", hasRd );
+			table( out, "HAS_RN", "Data processing instruction reads Rn [op_code]",
+						"boolean[]", hasRn );
+			table( out, "S_IMPLIED",
+						"Data processing S bit is implied and must be set [op_code]",
+						"boolean[]", sImplied );
+			table( out, "LOAD_STORE",
+						"Load/Store mnemonics [op_type][op_code][load_store]",
+						"String[][][]", loadStore );
+			table( out, "LOAD_STORE_OPS",
+						"Load/Store operations (ADD, SUB, PRI, PSI) "
+									+ "[op_type][op_code][load_store]",
+						"String[][][]", loadStoreOps );
+			table( out, "HALFWORD",
+						"Halfword/signed byte load/store mnemonics "
+									+ "[op_code][load_store][sh]",
+						"String[][][]", halfword );
+			table( out, "HALFWORD_OPS",
+						"Halfword/signed byte load/store operations "
+									+ "[op_code][load_store][sh]",
+						"String[][][]", halfwordOps );
+			table( out, "BLOCK_TRANSFER",
+						"LDM/STM mnemonics with addressing mode [op_code][load_store]",
+						"String[][]", blockTransfer() );
+			table( out, "BLOCK_ALIASES",
+						"LDM/STM stack addressing modes [op_code][load_store]",
+						"String[][]", blockAliases );
+			table( out, "SHIFT_NAMES",
+						"Shift operations [shift mode][shift type], the listed name first",
+						"String[][][]", shiftNames );
+			comment( out, 1, "Returns a {@link TableSet} of the tables.", "",
+						"@return TableSet" );
+			line( out, 1, "static TableSet tables()" );
+			line( out, 1, "{" );
+			line( out, 2, "return new TableSet( CONDITIONS, OPERATIONS, HAS_RD, "
+						+ "HAS_RN, S_IMPLIED, LOAD_STORE, LOAD_STORE_OPS, HALFWORD, "
+						+ "HALFWORD_OPS, BLOCK_TRANSFER, BLOCK_ALIASES, SHIFT_NAMES );" );
+			line( out, 1, "}" );
+			out.append( '\n' );
+			decoder( out );
+			dataEncoders( out );
+			transferEncoders( out );
+			blockEncoders( out );
+			out.append( "}\n" );
+			return out.toString();
+	 }
+
+	 /**
+	  * Returns a {@link TableSet} of the tables read, as {@link #generate()}
+	  * writes them, for publishing at run time.
+	  * 
+	  * @return TableSet
+	  */
+	 public TableSet tables()
+	 {
+			return new TableSet( conditions, operations, hasRd, hasRn, sImplied,
+						loadStore, loadStoreOps, halfword, halfwordOps, blockTransfer(),
+						blockAliases, shiftNames );
+	 }
+
+	 /**
+	  * Returns the LDM/STM mnemonics joined with their addressing modes
+	  * [op_code][load_store].
+	  */
+	 private String[][] blockTransfer()
+	 {
+			String[][] blockTransfer = new String[16][2];
+			for (int opCode = 0; opCode < 16; opCode++) {
+				 for (int ls = 0; ls < 2; ls++) {
+						if (blockInstr[opCode][ls] != null) {
+							 blockTransfer[opCode][ls] = blockInstr[opCode][ls]
+										 + blockModes[opCode][ls];
+						}
+				 }
+			}
+			return blockTransfer;
+	 }
+
+	 /**
+	  * Writes a constant table.
+	  */
+	 private static void table( StringBuilder out, String name, String doc,
+				 String type, Object value )
+	 {
+			comment( out, 1, "{@value #" + name + "} " + doc );
+			literal( out, 1, "private static final " + type + " " + name + " = ",
+						value, ";" );
+			out.append( '\n' );
+	 }
+
+	 /**
+	  * Writes the literal of a table: on one line if it fits or holds no
+	  * arrays, else one element a line.
+	  */
+	 private static void literal( StringBuilder out, int level, String prefix,
+				 Object value, String suffix )
+	 {
+			String flat = prefix + literal( value ) + suffix;
+			if (!( value instanceof Object[] ) || level * 3 + flat.length() <= WIDTH
+						|| !( ( (Object[]) value )[0] instanceof Object[] )) {
+				 line( out, level, flat );
+				 return;
+			}
+			Object[] elements = (Object[]) value;
+			line( out, level, prefix + "{" );
+			for (int i = 0; i < elements.length; i++) {
+				 literal( out, level + 1, "", elements[i],
+							 i < elements.length - 1 ? "," : "" );
+			}
+			line( out, level, "}" + suffix );
+	 }
+
+	 /**
+	  * Returns the literal of a table.
+	  */
+	 private static String literal( Object value )
+	 {
+			if (value == null) {
+				 return "null";
+			} else if (value instanceof String) {
+				 return '"' + (String) value + '"';
+			} else if (value instanceof boolean[]) {
+				 StringBuilder literal = new StringBuilder( "{" );
+				 for (boolean element : (boolean[]) value) {
+						literal.append( literal.length() > 1 ? ", " : " " ).append( element );
+				 }
+				 return literal.append( " }" ).toString();
+			}
+			StringBuilder literal = new StringBuilder( "{" );
+			for (Object element : (Object[]) value) {
+				 literal.append( literal.length() > 1 ? ", " : " " )
+							 .append( literal( element ) );
+			}
+			return literal.append( " }" ).toString();
+	 }
+
+	 /**
+	  * Writes the decoder.
+	  */
+	 private void decoder( StringBuilder out )
+	 {
+			Map<String, List<Integer>> keys = new LinkedHashMap<>();
+			for (int key = 0; key < 256; key++) {
+				 String instr = mnemonicOf( key >>> 5, ( key >>> 1 ) & 0xf, key & 1 );
+				 if (instr != null) {
+						keys.computeIfAbsent( instr, k -> new ArrayList<>() ).add( key );
+				 }
+			}
+			comment( out, 1, "Returns the mnemonic of an instruction word, without "
+						+ "condition, S flag or addressing mode, or null if the schema "
+						+ "does not define it.", "", "@param int word",
+						"@return String" );
+			line( out, 1, "public static String mnemonic( int word )" );
+			line( out, 1, "{" );
+			line( out, 2, "if (( word & 0x0e000090 ) == 0x00000090 "
+						+ "&& ( word & 0x60 ) != 0) {" );
+			line( out, 3, "int sh = ( word >>> 5 ) & 3;" );
+			line( out, 3,
+						"return HALFWORD[( word >>> 21 ) & 0xf][( word >>> 20 ) & 1][sh];" );
+			line( out, 2, "} else if (( word & 0x0fe000f0 ) == 0x00000090) {" );
+			line( out, 3, "return \"MUL\";" );
+			line( out, 2, "}" );
+			line( out, 2, "// Op type, op code and L/S bit" );
+			line( out, 2, "switch (( word >>> 20 ) & 0xff) {" );
+			for (Map.Entry<String, List<Integer>> entry : keys.entrySet()) {
+				 StringBuilder labels = new StringBuilder();
+				 for (int key : entry.getValue()) {
+						if (labels.length() + 11 > WIDTH - 6) {
+							 line( out, 2, labels.toString() );
+							 labels.setLength( 0 );
+						}
+						labels.append( labels.length() > 0 ? " " : "" )
+									.append( String.format( "case 0x%02x:", key ) );
+				 }
+				 line( out, 2, labels.toString() );
+				 line( out, 3, "return \"" + entry.getKey() + "\";" );
+			}
+			line( out, 2, "default:" );
+			line( out, 3, "return null;" );
+			line( out, 2, "}" );
+			line( out, 1, "}" );
+			out.append( '\n' );
+	 }
+
+	 /**
+	  * Returns the mnemonic of an op type, op code and L/S bit, outside the
+	  * halfword and multiply spaces.
+	  */
+	 private String mnemonicOf( int opType, int opCode, int ls )
+	 {
+			if (opType < 2) {
+				 return sImplied[opCode] && ls == 0 ? null : operations[opType][opCode];
+			} else if (opType < 4) {
+				 return loadStore[opType - 2][opCode][ls];
+			} else if (opType == 4) {
+				 return blockInstr[opCode][ls] == null ? null
+							 : blockInstr[opCode][ls] + blockModes[opCode][ls];
+			}
+			return null;
+	 }
+
+	 /**
+	  * Writes the data processing encoders and their dispatcher.
+	  */
+	 private void dataEncoders( StringBuilder out )
+	 {
+			List<String> names = new ArrayList<>();
+			for (int opCode = 0; opCode < 16; opCode++) {
+				 String instr = operations[0][opCode] != null ? operations[0][opCode]
+							 : operations[1][opCode];
+				 if (instr == null) {
+						continue;
+				 }
+				 names.add( instr );
+				 comment( out, 1,
+							 String.format( "Encodes %s (op code %s%s).", instr,
+										 binary( opCode, 4 ), sImplied[opCode] ? ", S implied" : "" ),
+							 "", "@param int     cond condition code",
+							 "@param int     s S bit" + ( sImplied[opCode] ? " (ignored)" : "" ),
+							 "@param int     rd", "@param int     rn",
+							 "@param int     operand2 rotated immediate or shifted register",
+							 "@param boolean immediate operand2 is an immediate",
+							 "@return int instruction word" );
+				 line( out, 1, "public static int " + instr.toLowerCase()
+							 + "( int cond, int s, int rd, int rn, int operand2, "
+							 + "boolean immediate )" );
+				 line( out, 1, "{" );
+				 line( out, 2, String.format(
+							 "return cond << 28 | ( immediate ? 0x02000000 : 0 )%s%s"
+										 + " | rn << 16 | rd << 12 | operand2;",
+							 constant( opCode << 21 | ( sImplied[opCode] ? 1 << 20 : 0 ) ),
+							 sImplied[opCode] ? "" : " | s << 20" ) );
+				 line( out, 1, "}" );
+				 out.append( '\n' );
+			}
+			comment( out, 1, "Encodes a data processing instruction by mnemonic.",
+						"", "@param String  instr mnemonic",
+						"@param int     cond condition code", "@param int     s S bit",
+						"@param int     rd", "@param int     rn",
+						"@param int     operand2 rotated immediate or shifted register",
+						"@param boolean immediate operand2 is an immediate",
+						"@return int instruction word",
+						"@throws InvalidCodeException if the mnemonic is unknown" );
+			line( out, 1, "public static int encodeData( String instr, int cond, int s,"
+						+ " int rd, int rn, int operand2, boolean immediate )"
+						+ " throws InvalidCodeException" );
+			line( out, 1, "{" );
+			line( out, 2, "switch (instr) {" );
+			for (String name : names) {
+				 line( out, 2, "case \"" + name + "\":" );
+				 line( out, 3, "return " + name.toLowerCase()
+							 + "( cond, s, rd, rn, operand2, immediate );" );
+			}
+			line( out, 2, "default:" );
+			line( out, 3, "throw new InvalidCodeException( String.format( "
+						+ "\"Unknown data processing instruction %s.\", instr ) );" );
+			line( out, 2, "}" );
+			line( out, 1, "}" );
+			out.append( '\n' );
+	 }
+
+	 /**
+	  * Writes the single register load/store encoders and their dispatcher.
+	  * Every mnemonic maps its addressing modes, by offset form, to the first
+	  * op code the schema gives them.
+	  */
+	 private void transferEncoders( StringBuilder out )
+	 {
+			// mnemonic -> offset form (0 immediate, 1 register) -> mode -> bits
+			Map<String, List<Map<String, Integer>>> modes = new LinkedHashMap<>();
+			List<String> halfwords = new ArrayList<>();
+			for (int codeType = 0; codeType < 2; codeType++) {
+				 for (int opCode = 0; opCode < 16; opCode++) {
+						for (int ls = 0; ls < 2; ls++) {
+							 String instr = loadStore[codeType][opCode][ls];
+							 if (instr != null) {
+									forms( modes, instr ).get( codeType ).putIfAbsent(
+												loadStoreOps[codeType][opCode][ls],
+												( 2 + codeType ) << 25 | opCode << 21 | ls << 20 );
+							 }
+						}
+				 }
+			}
+			for (int opCode = 0; opCode < 16; opCode++) {
+				 for (int ls = 0; ls < 2; ls++) {
+						for (int sh = 0; sh < 4; sh++) {
+							 String instr = halfword[opCode][ls][sh];
+							 if (instr != null) {
+									if (!halfwords.contains( instr )) {
+										 halfwords.add( instr );
+									}
+									forms( modes, instr ).get( ( opCode & 2 ) != 0 ? 0 : 1 )
+												.putIfAbsent( halfwordOps[opCode][ls][sh],
+															opCode << 21 | ls << 20 | 0x90 | sh << 5 );
+							 }
+						}
+				 }
+			}
+			for (Map.Entry<String, List<Map<String, Integer>>> entry : modes
+						.entrySet()) {
+				 String instr = entry.getKey();
+				 boolean isHalfword = halfwords.contains( instr );
+				 comment( out, 1, String.format( "Encodes %s.", instr ), "",
+							 "@param int     cond condition code",
+							 "@param String  mode addressing mode (ADD, SUB, PRI or PSI)",
+							 "@param int     rd", "@param int     rn",
+							 isHalfword ? "@param int     offset 8 bit immediate or register"
+										 : "@param int     offset 12 bit immediate or shifted "
+													 + "register",
+							 "@param boolean immediate offset is an immediate",
+							 "@return int instruction word",
+							 "@throws InvalidCodeException if the mode is unknown" );
+				 line( out, 1, "public static int " + instr.toLowerCase()
+							 + "( int cond, String mode, int rd, int rn, int offset, "
+							 + "boolean immediate ) throws InvalidCodeException" );
+				 line( out, 1, "{" );
+				 boolean both = !entry.getValue().get( 0 ).isEmpty()
+							 && !entry.getValue().get( 1 ).isEmpty();
+				 for (int codeType = 0; codeType < 2; codeType++) {
+						Map<String, Integer> form = entry.getValue().get( codeType );
+						if (form.isEmpty()) {
+							 continue;
+						}
+						String offset = isHalfword
+									? codeType == 0 ? "( offset & 0xf0 ) << 4 | offset & 0xf"
+												: "offset & 0xf"
+									: "offset";
+						line( out, 2, codeType == 0 ? "if (immediate) {"
+									: both ? "} else {" : "if (!immediate) {" );
+						line( out, 3, "switch (mode) {" );
+						for (Map.Entry<String, Integer> mode : form.entrySet()) {
+							 line( out, 3, "case \"" + mode.getKey() + "\":" );
+							 line( out, 4, String.format( "return cond << 28 | 0x%08x | rn << 16"
+										 + " | rd << 12 | %s;", mode.getValue(), offset ) );
+						}
+						line( out, 3, "}" );
+						if (codeType == 1 || !both) {
+							 line( out, 2, "}" );
+						}
+				 }
+				 line( out, 2, "throw new InvalidCodeException( String.format( "
+							 + "\"Unknown " + instr + " mode %s.\", mode ) );" );
+				 line( out, 1, "}" );
+				 out.append( '\n' );
+			}
+			comment( out, 1, "Encodes a single register load/store by mnemonic.", "",
+						"@param String  instr mnemonic",
+						"@param int     cond condition code",
+						"@param String  mode addressing mode (ADD, SUB, PRI or PSI)",
+						"@param int     rd", "@param int     rn",
+						"@param int     offset immediate or register offset",
+						"@param boolean immediate offset is an immediate",
+						"@return int instruction word",
+						"@throws InvalidCodeException if the mnemonic or mode is unknown" );
+			line( out, 1, "public static int encodeTransfer( String instr, int cond, "
+						+ "String mode, int rd, int rn, int offset, boolean immediate )"
+						+ " throws InvalidCodeException" );
+			line( out, 1, "{" );
+			line( out, 2, "switch (instr) {" );
+			for (String name : modes.keySet()) {
+				 line( out, 2, "case \"" + name + "\":" );
+				 line( out, 3, "return " + name.toLowerCase()
+							 + "( cond, mode, rd, rn, offset, immediate );" );
+			}
+			line( out, 2, "default:" );
+			line( out, 3, "throw new InvalidCodeException( String.format( "
+						+ "\"Unknown load/store instruction %s.\", instr ) );" );
+			line( out, 2, "}" );
+			line( out, 1, "}" );
+			out.append( '\n' );
+	 }
+
+	 /**
+	  * Returns the offset forms of a load/store mnemonic, added if new.
+	  */
+	 private static List<Map<String, Integer>> forms(
+				 Map<String, List<Map<String, Integer>>> modes, String instr )
+	 {
+			return modes.computeIfAbsent( instr, k -> {
+				 List<Map<String, Integer>> forms = new ArrayList<>();
+				 forms.add( new LinkedHashMap<>() );
+				 forms.add( new LinkedHashMap<>() );
+				 return forms;
+			} );
+	 }
+
+	 /**
+	  * Writes the LDM/STM encoders and their dispatcher. The W bit is left to
+	  * the write back flag, and every addressing mode also answers to its
+	  * stack alias.
+	  */
+	 private void blockEncoders( StringBuilder out )
+	 {
+			Map<String, Map<String, Integer>> modes = new LinkedHashMap<>();
+			Map<String, String> aliases = new LinkedHashMap<>();
+			for (int opCode = 0; opCode < 16; opCode += 2) {
+				 for (int ls = 0; ls < 2; ls++) {
+						if (blockInstr[opCode][ls] != null) {
+							 modes.computeIfAbsent( blockInstr[opCode][ls],
+										 k -> new LinkedHashMap<>() ).putIfAbsent(
+													 blockModes[opCode][ls],
+													 4 << 25 | opCode << 21 | ls << 20 );
+							 aliases.putIfAbsent(
+										 blockInstr[opCode][ls] + blockModes[opCode][ls],
+										 blockAliases[opCode][ls] );
+						}
+				 }
+			}
+			for (Map.Entry<String, Map<String, Integer>> entry : modes.entrySet()) {
+				 String instr = entry.getKey();
+				 comment( out, 1, String.format( "Encodes %s.", instr ), "",
+							 "@param int     cond condition code",
+							 "@param String  mode addressing mode (IA, IB, DA, DB or a stack "
+										 + "alias)",
+							 "@param boolean writeBack", "@param int     rn",
+							 "@param int     list register list",
+							 "@return int instruction word",
+							 "@throws InvalidCodeException if the mode is unknown" );
+				 line( out, 1, "public static int " + instr.toLowerCase()
+							 + "( int cond, String mode, boolean writeBack, int rn, int list )"
+							 + " throws InvalidCodeException" );
+				 line( out, 1, "{" );
+				 line( out, 2, "int w = writeBack ? 0x00200000 : 0;" );
+				 line( out, 2, "switch (mode) {" );
+				 for (Map.Entry<String, Integer> mode : entry.getValue().entrySet()) {
+						line( out, 2, "case \"" + mode.getKey() + "\":" );
+						String alias = aliases.get( instr + mode.getKey() );
+						if (alias != null) {
+							 line( out, 2, "case \"" + alias + "\":" );
+						}
+						line( out, 3, String.format(
+									"return cond << 28 | 0x%08x | w | rn << 16 | list;",
+									mode.getValue() ) );
+				 }
+				 line( out, 2, "default:" );
+				 line( out, 3, "throw new InvalidCodeException( String.format( "
+							 + "\"Unknown " + instr + " mode %s.\", mode ) );" );
+				 line( out, 2, "}" );
+				 line( out, 1, "}" );
+				 out.append( '\n' );
+			}
+			comment( out, 1, "Encodes an LDM/STM by mnemonic.", "",
+						"@param String  instr mnemonic, without addressing mode",
+						"@param int     cond condition code",
+						"@param String  mode addressing mode (IA, IB, DA, DB or a stack "
+									+ "alias)",
+						"@param boolean writeBack", "@param int     rn",
+						"@param int     list register list", "@return int instruction word",
+						"@throws InvalidCodeException if the mnemonic or mode is unknown" );
+			line( out, 1, "public static int encodeBlock( String instr, int cond, "
+						+ "String mode, boolean writeBack, int rn, int list )"
+						+ " throws InvalidCodeException" );
+			line( out, 1, "{" );
+			line( out, 2, "switch (instr) {" );
+			for (String name : modes.keySet()) {
+				 line( out, 2, "case \"" + name + "\":" );
+				 line( out, 3, "return " + name.toLowerCase()
+							 + "( cond, mode, writeBack, rn, list );" );
+			}
+			line( out, 2, "default:" );
+			line( out, 3, "throw new InvalidCodeException( String.format( "
+						+ "\"Unknown block transfer instruction %s.\", instr ) );" );
+			line( out, 2, "}" );
+			line( out, 1, "}" );
+			out.append( '\n' );
+	 }
+
+	 /**
+	  * Returns the fixed bits of an encoder as a term to or in, if any.
+	  */
+	 private static String constant( int bits )
+	 {
+			return bits == 0 ? "" : String.format( " | 0x%08x", bits );
+	 }
+
+	 /**
+	  * Returns a field value as binary digits.
+	  */
+	 private static String binary( int value, int width )
+	 {
+			return String.format( "%" + width + "s", Integer.toBinaryString( value ) )
+						.replace( ' ', '0' );
+	 }
+
+
+	 /**
+	  * Returns the indentation of a level: three columns a level, with tabs
+	  * of two columns.
+	  */
+	 private static String indent( int level )
+	 {
+			int columns = level * 3;
+			StringBuilder indent = new StringBuilder();
+			for (int i = 0; i < columns / 2; i++) {
+				 indent.append( '\t' );
+			}
+			return columns % 2 == 0 ? indent.toString() : indent.append( ' ' )
+						.toString();
+	 }
+
+	 /**
+	  * Writes a line at a level, wrapped at spaces into continuation lines two
+	  * levels deeper.
+	  */
+	 private static void line( StringBuilder out, int level, String text )
+	 {
+			int width = WIDTH - level * 3;
+			boolean continued = false;
+			while (text.length() > width) {
+				 int at = breakAt( text, width );
+				 if (at <= 0) {
+						break;
+				 }
+				 out.append( indent( level ) ).append( text, 0, at ).append( '\n' );
+				 text = text.substring( at + 1 );
+				 if (!continued) {
+						continued = true;
+						level += 2;
+						width = WIDTH - level * 3;
+				 }
+			}
+			out.append( indent( level ) ).append( text ).append( '\n' );
+	 }
+
+	 /**
+	  * Returns the space to break a line at, within a width: after a comma
+	  * or before an operator if there is one, never inside a string literal.
+	  */
+	 private static int breakAt( String text, int width )
+	 {
+			int space = -1;
+			for (int at = Math.min( width, text.length() - 1 ); at > 0; at--) {
+				 if (text.charAt( at ) != ' ' || quotes( text, at ) % 2 != 0) {
+						continue;
+				 } else if (text.charAt( at - 1 ) == ','
+							 || "|+?:".indexOf( text.charAt( at + 1 ) ) >= 0) {
+						return at;
+				 } else if (space < 0) {
+						space = at;
+				 }
+			}
+			return space;
+	 }
+
+	 /**
+	  * Returns the number of double quotes before a position.
+	  */
+	 private static int quotes( String text, int end )
+	 {
+			int quotes = 0;
+			for (int i = 0; i < end; i++) {
+				 if (text.charAt( i ) == '"') {
+						quotes++;
+				 }
+			}
+			return quotes;
+	 }
+
+	 /**
+	  * Writes a doc comment at a level: the first paragraph wrapped, the rest
+	  * one line each.
+	  */
+	 private static void comment( StringBuilder out, int level, String text,
+				 String... lines )
+	 {
+			String prefix = indent( level ) + " * ";
+			int width = WIDTH - level * 3 - 3;
+			out.append( indent( level ) ).append( "/**\n" );
+			while (text.length() > width) {
+				 int at = text.lastIndexOf( ' ', width );
+				 out.append( prefix ).append( text, 0, at ).append( '\n' );
+				 text = text.substring( at + 1 );
+			}
+			out.append( prefix ).append( text ).append( '\n' );
+			for (String line : lines) {
+				 out.append( line.isEmpty() ? prefix : prefix + line ).append( '\n' );
+			}
+			out.append( indent( level ) ).append( " */\n" );
+	 }
+
+	 /**
+	  * Runs the schema and extra definitions into an in-memory database and
+	  * reads the encodings.
+	  * 
+	  * @param List definitions paths of extra SQL files
+	  * @throws IOException
+	  * @throws SQLException
+	  */
+	 public void load( List<Path> definitions ) throws IOException, SQLException
+	 {
+			try (Connection conn = DriverManager.getConnection( "jdbc:sqlite::memory:" )) {
+				 Import importer = new Import( conn, false, true );
+				 try (BufferedReader input = new BufferedReader( new InputStreamReader(
+							 getClass().getClassLoader().getResourceAsStream( SCHEMA ),
+							 StandardCharsets.UTF_8 ) )) {
+						importer.runScript( input );
+				 }
+				 for (Path path : definitions) {
+						try (BufferedReader input = Files.newBufferedReader( path )) {
+							 importer.runScript( input );
+						}
+				 }
+				 load( conn );
+			}
+	 }
+
+	 /**
+	  * Generates {@link Tables}, or checks that it is up to date.
+	  * 
+	  * @param String[] args [-c] [-o output] [definitions.sql ...]
+	  */
+	 public static void main( String[] args )
+	 {
+			Path output = Paths.get( OUTPUT );
+			boolean check = false;
+			List<Path> definitions = new ArrayList<>();
+			for (int i = 0; i < args.length; i++) {
+				 if (args[i].equals( "-c" )) {
+						check = true;
+				 } else if (args[i].equals( "-o" ) && i + 1 < args.length) {
+						output = Paths.get( args[++i] );
+				 } else {
+						definitions.add( Paths.get( args[i] ) );
+				 }
+			}
+			try {
+				 TableGenerator generator = new TableGenerator();
+				 generator.load( definitions );
+				 String source = generator.generate();
+				 if (check) {
+						boolean current = Files.exists( output ) && source.equals(
+									new String( Files.readAllBytes( output ), StandardCharsets.UTF_8 ) );
+						System.out.println( output + ( current ? " is up to date."
+									: " is out of date." ) );
+						System.exit( current ? 0 : 1 );
+				 }
+				 Files.write( output, source.getBytes( StandardCharsets.UTF_8 ) );
+				 System.out.println( "Wrote " + output + "." );
+			} catch (IOException | SQLException e) {
+				 e.printStackTrace( System.out );
+				 System.exit( 1 );
+			}
+	 }
+
+	 /**
+	  * Standard constructor
+	  */
+	 public TableGenerator()
+	 {
+			super();
+	 }
+
+}
@@ -0,0 +1,525 @@
+/**
+ *
+ */
+package assembler.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import assembler.exceptions.InvalidCodeException;
+
+/**
+ * Immutable set of the instruction tables, with the decoder and encoders
+ * that assembly and decoding go through.
+ *
+ * The set in use is published through one atomic reference, starting with
+ * the compiled {@link Tables}. A reload builds a new set off to the side,
+ * from the schema and extra definition files through a
+ * {@link TableGenerator}, and swaps it in without locking. Readers take the
+ * current set once per call and keep it to the end, so calls in flight finish
+ * on the tables they started with and no reader ever waits for a reload.
+ *
+ * Every set is stamped with a version, higher than that of any set built
+ * before it in the process, and a hash of its contents, which is the same
+ * for the same tables in any process. A set only replaces the current one if
+ * its version is higher, so concurrent reloads publish in order.
+ *
+ * The {@link Renderer}, the word classifier, the analyses and listings that
+ * render through them and {@link assembler.core.Instruction} all read the
+ * current set, so definitions loaded at run time change how words are
+ * assembled and decoded as well as how they are listed. The compiled set
+ * decodes and encodes with the generated methods of {@link Tables}; a
+ * reloaded set reads its own tables the same way. Only the condition
+ * suffixes of instructions stay those of the compiled set, which
+ * {@link assembler.components.Condition} builds its instances from.
+ *
+ * A set copies the arrays it is built from, so no caller can change it.
+ */
+public final class TableSet
+{
+
+	 /**
+	  * {@value #VERSIONS} Version of the next set built
+	  */
+	 private static final AtomicLong VERSIONS = new AtomicLong();
+
+	 /**
+	  * {@value #COMPILED} Set of the compiled tables
+	  */
+	 private static final TableSet COMPILED = Tables.tables();
+
+	 /**
+	  * {@value #CURRENT} Set in use
+	  */
+	 private static final AtomicReference<TableSet> CURRENT =
+				 new AtomicReference<>( COMPILED );
+
+	 /**
+	  * {@value #conditions} Condition suffixes indexed by cond code ("" for AL,
+	  * null if undefined)
+	  */
+	 final String[] conditions;
+
+	 /**
+	  * {@value #operations} Data processing mnemonics [op_type][op_code]
+	  */
+	 final String[][] operations;
+
+	 /**
+	  * {@value #hasRd} Data processing instruction writes Rd [op_code]
+	  */
+	 final boolean[] hasRd;
+
+	 /**
+	  * {@value #hasRn} Data processing instruction reads Rn [op_code]
+	  */
+	 final boolean[] hasRn;
+
+	 /**
+	  * {@value #sImplied} Data processing S bit is implied and must be set
+	  * [op_code]
+	  */
+	 final boolean[] sImplied;
+
+	 /**
+	  * {@value #loadStore} Load/Store mnemonics [op_type][op_code][load_store]
+	  */
+	 final String[][][] loadStore;
+
+	 /**
+	  * {@value #loadStoreOps} Load/Store operations (ADD, SUB, PRI, PSI)
+	  * [op_type][op_code][load_store]
+	  */
+	 final String[][][] loadStoreOps;
+
+	 /**
+	  * {@value #halfword} Halfword/signed byte load/store mnemonics
+	  * [op_code][load_store][sh]
+	  */
+	 final String[][][] halfword;
+
+	 /**
+	  * {@value #halfwordOps} Halfword/signed byte load/store operations
+	  * [op_code][load_store][sh]
+	  */
+	 final String[][][] halfwordOps;
+
+	 /**
+	  * {@value #blockTransfer} LDM/STM mnemonics with addressing mode
+	  * [op_code][load_store]
+	  */
+	 final String[][] blockTransfer;
+
+	 /**
+	  * {@value #blockAliases} LDM/STM stack addressing modes
+	  * [op_code][load_store]
+	  */
+	 final String[][] blockAliases;
+
+	 /**
+	  * {@value #shiftNames} Shift operations [shift mode][shift type], the
+	  * listed name first
+	  */
+	 final String[][][] shiftNames;
+
+	 /**
+	  * {@value #shifts} Listed shift operations [shift mode][shift type]
+	  */
+	 final String[][] shifts;
+
+	 /**
+	  * {@value #version} Version stamp, 0 for the compiled tables
+	  */
+	 private final long version;
+
+	 /**
+	  * {@value #hash} Hash of the contents
+	  */
+	 private final int hash;
+
+	 /**
+	  * @return TableSet set in use
+	  */
+	 public static TableSet current()
+	 {
+			return CURRENT.get();
+	 }
+
+	 /**
+	  * @return TableSet set of the compiled tables
+	  */
+	 public static TableSet compiled()
+	 {
+			return COMPILED;
+	 }
+
+	 /**
+	  * Publishes a set, unless a set with a higher version is already in use.
+	  * 
+	  * @param TableSet tables
+	  * @return TableSet set in use
+	  */
+	 public static TableSet publish( TableSet tables )
+	 {
+			return CURRENT.accumulateAndGet( tables,
+						( current, next ) -> next.version > current.version ? next
+									: current );
+	 }
+
+	 /**
+	  * Builds a set from the schema and extra definition files and publishes
+	  * it. If the definitions fail to load, the set in use is kept.
+	  * 
+	  * @param List definitions paths of extra SQL files
+	  * @return TableSet set in use
+	  * @throws IOException
+	  * @throws SQLException
+	  */
+	 public static TableSet reload( List<Path> definitions )
+				 throws IOException, SQLException
+	 {
+			TableGenerator generator = new TableGenerator();
+			generator.load( definitions );
+			return publish( generator.tables() );
+	 }
+
+	 /**
+	  * @return long version stamp
+	  */
+	 public long getVersion()
+	 {
+			return version;
+	 }
+
+	 /**
+	  * @return int hash of the contents
+	  */
+	 public int getHash()
+	 {
+			return hash;
+	 }
+
+	 /**
+	  * @param int code cond code
+	  * @return String condition suffix ("" for AL, null if undefined)
+	  */
+	 public String getCondition( int code )
+	 {
+			return conditions[code];
+	 }
+
+	 /**
+	  * @param int opCode data processing op code
+	  * @return boolean true if the instruction writes Rd
+	  */
+	 public boolean hasRd( int opCode )
+	 {
+			return hasRd[opCode];
+	 }
+
+	 /**
+	  * @param int opCode data processing op code
+	  * @return boolean true if the instruction reads Rn
+	  */
+	 public boolean hasRn( int opCode )
+	 {
+			return hasRn[opCode];
+	 }
+
+	 /**
+	  * @param int opCode data processing op code
+	  * @return boolean true if the S bit is implied and must be set
+	  */
+	 public boolean isSImplied( int opCode )
+	 {
+			return sImplied[opCode];
+	 }
+
+	 /**
+	  * Returns the addressing mode of a load/store or LDM/STM word: ADD, SUB,
+	  * PRI or PSI for single transfers, IA, IB, DA or DB for block transfers,
+	  * or null for other words.
+	  * 
+	  * @param int word
+	  * @return String mode
+	  */
+	 public String getMode( int word )
+	 {
+			int opType = ( word >>> 25 ) & 7;
+			int opCode = ( word >>> 21 ) & 0xf;
+			int ls = ( word >>> 20 ) & 1;
+			if (opType == 0 && ( word & 0x90 ) == 0x90 && ( word & 0x60 ) != 0) {
+				 return halfwordOps[opCode][ls][( word >>> 5 ) & 3];
+			} else if (opType == 2 || opType == 3) {
+				 return loadStoreOps[opType - 2][opCode][ls];
+			} else if (opType == 4 && blockTransfer[opCode][ls] != null) {
+				 String instr = blockTransfer[opCode][ls];
+				 return instr.substring( instr.length() - 2 );
+			}
+			return null;
+	 }
+
+	 /**
+	  * @param int shiftMode 0 for an amount, 1 for a register
+	  * @param int shiftType
+	  * @return String listed shift operation, or null if undefined
+	  */
+	 public String getShift( int shiftMode, int shiftType )
+	 {
+			return shifts[shiftMode][shiftType];
+	 }
+
+	 /**
+	  * Returns the shift type of a shift operation, under any of its names.
+	  * 
+	  * @param String instr shift operation (LSL, RRX, etc.)
+	  * @param int    shiftMode 0 for an amount, 1 for a register
+	  * @return int shift type, or -1 if the operation is unknown
+	  */
+	 public int getShiftType( String instr, int shiftMode )
+	 {
+			for (int shiftType = 0; shiftType < 4; shiftType++) {
+				 for (String name : shiftNames[shiftMode][shiftType]) {
+						if (name.equals( instr )) {
+							 return shiftType;
+						}
+				 }
+			}
+			return -1;
+	 }
+
+	 /**
+	  * Names the instruction of a word, as the generated
+	  * {@link Tables#mnemonic(int)} decoder does for the compiled tables.
+	  * 
+	  * @param int word
+	  * @return String mnemonic, or null if the word does not decode
+	  */
+	 public String mnemonic( int word )
+	 {
+			if (this == COMPILED) {
+				 return Tables.mnemonic( word );
+			}
+			int opType = ( word >>> 25 ) & 7;
+			int opCode = ( word >>> 21 ) & 0xf;
+			int ls = ( word >>> 20 ) & 1;
+			if (( word & 0x0e000090 ) == 0x00000090 && ( word & 0x60 ) != 0) {
+				 return halfword[opCode][ls][( word >>> 5 ) & 3];
+			} else if (( word & 0x0fe000f0 ) == 0x00000090) {
+				 return "MUL";
+			}
+			switch (opType) {
+			case 0:
+			case 1:
+				 return sImplied[opCode] && ls == 0 ? null
+							 : operations[opType][opCode];
+			case 2:
+			case 3:
+				 return loadStore[opType - 2][opCode][ls];
+			case 4:
+				 return blockTransfer[opCode][ls];
+			default:
+				 return null;
+			}
+	 }
+
+	 /**
+	  * Encodes a data processing instruction, as the generated
+	  * {@link Tables#encodeData} does for the compiled tables.
+	  * 
+	  * @param String  instr mnemonic (AND, MOV, etc.)
+	  * @param int     cond
+	  * @param int     s S bit (ignored if implied)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2
+	  * @param boolean immediate
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mnemonic is unknown
+	  */
+	 public int encodeData( String instr, int cond, int s, int rd, int rn,
+				 int operand2, boolean immediate ) throws InvalidCodeException
+	 {
+			if (this == COMPILED) {
+				 return Tables.encodeData( instr, cond, s, rd, rn, operand2,
+							 immediate );
+			}
+			int opType = immediate ? 1 : 0;
+			for (int opCode = 0; opCode < 16; opCode++) {
+				 if (instr.equals( operations[opType][opCode] )) {
+						return cond << 28 | opType << 25 | opCode << 21
+									| ( sImplied[opCode] ? 1 : s ) << 20 | rn << 16 | rd << 12
+									| operand2;
+				 }
+			}
+			throw new InvalidCodeException( String.format(
+						"Unknown data processing instruction %s.", instr ) );
+	 }
+
+	 /**
+	  * Encodes a load/store instruction, as the generated
+	  * {@link Tables#encodeTransfer} does for the compiled tables.
+	  * 
+	  * @param String  instr mnemonic (LDR, STRH, etc.)
+	  * @param int     cond
+	  * @param String  mode ADD, SUB, PRI or PSI
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     offset offset field, the halfword offset in 8 bits
+	  * @param boolean immediate
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mnemonic or mode is unknown
+	  */
+	 public int encodeTransfer( String instr, int cond, String mode, int rd,
+				 int rn, int offset, boolean immediate ) throws InvalidCodeException
+	 {
+			if (this == COMPILED) {
+				 return Tables.encodeTransfer( instr, cond, mode, rd, rn, offset,
+							 immediate );
+			}
+			boolean known = false;
+			for (int opCode = 0; opCode < 16; opCode++) {
+				 for (int ls = 0; ls < 2; ls++) {
+						for (int sh = 0; sh < 4; sh++) {
+							 if (instr.equals( halfword[opCode][ls][sh] )) {
+									known = true;
+									if (( ( opCode & 2 ) != 0 ) == immediate
+												&& mode.equals( halfwordOps[opCode][ls][sh] )) {
+										 return cond << 28 | opCode << 21 | ls << 20 | rn << 16
+													 | rd << 12 | 0x90 | sh << 5
+													 | ( immediate ? ( offset & 0xf0 ) << 4 : 0 )
+													 | offset & 0xf;
+									}
+							 }
+						}
+						int opType = immediate ? 0 : 1;
+						if (instr.equals( loadStore[opType][opCode][ls] )) {
+							 known = true;
+							 if (mode.equals( loadStoreOps[opType][opCode][ls] )) {
+									return cond << 28 | ( opType + 2 ) << 25 | opCode << 21
+												| ls << 20 | rn << 16 | rd << 12 | offset;
+							 }
+						}
+				 }
+			}
+			throw new InvalidCodeException( known
+						? String.format( "Unknown %s mode %s.", instr, mode )
+						: String.format( "Unknown load/store instruction %s.", instr ) );
+	 }
+
+	 /**
+	  * Encodes an LDM/STM instruction, as the generated
+	  * {@link Tables#encodeBlock} does for the compiled tables.
+	  * 
+	  * @param String  instr LDM or STM
+	  * @param int     cond
+	  * @param String  mode IA, IB, DA or DB, or a stack alias (FD, EA, etc.)
+	  * @param boolean writeBack
+	  * @param int     rn
+	  * @param int     list register list
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mnemonic or mode is unknown
+	  */
+	 public int encodeBlock( String instr, int cond, String mode,
+				 boolean writeBack, int rn, int list ) throws InvalidCodeException
+	 {
+			if (this == COMPILED) {
+				 return Tables.encodeBlock( instr, cond, mode, writeBack, rn, list );
+			}
+			boolean known = false;
+			for (int opCode = 0; opCode < 16; opCode += 2) {
+				 for (int ls = 0; ls < 2; ls++) {
+						String name = blockTransfer[opCode][ls];
+						if (name != null && name.startsWith( instr )
+									&& name.length() == instr.length() + 2) {
+							 known = true;
+							 if (name.endsWith( mode )
+										 || mode.equals( blockAliases[opCode][ls] )) {
+									return cond << 28 | 0x08000000 | opCode << 21
+												| ( writeBack ? 0x00200000 : 0 ) | ls << 20 | rn << 16
+												| list;
+							 }
+						}
+				 }
+			}
+			throw new InvalidCodeException( known
+						? String.format( "Unknown %s mode %s.", instr, mode )
+						: String.format( "Unknown block transfer instruction %s.",
+									instr ) );
+	 }
+
+	 @Override
+	 public String toString()
+	 {
+			return String.format( "TABLES version=%d, hash=%08x", version, hash );
+	 }
+
+	 /**
+	  * Returns a copy of a table, down to its elements.
+	  */
+	 private static String[][] copy( String[][] table )
+	 {
+			String[][] copy = new String[table.length][];
+			for (int i = 0; i < table.length; i++) {
+				 copy[i] = table[i].clone();
+			}
+			return copy;
+	 }
+
+	 /**
+	  * Returns a copy of a table, down to its elements.
+	  */
+	 private static String[][][] copy( String[][][] table )
+	 {
+			String[][][] copy = new String[table.length][][];
+			for (int i = 0; i < table.length; i++) {
+				 copy[i] = copy( table[i] );
+			}
+			return copy;
+	 }
+
+	 /**
+	  * Standard constructor. Copies the tables and stamps the set with the
+	  * next version.
+	  */
+	 TableSet( String[] conditions, String[][] operations, boolean[] hasRd,
+				 boolean[] hasRn, boolean[] sImplied, String[][][] loadStore,
+				 String[][][] loadStoreOps, String[][][] halfword,
+				 String[][][] halfwordOps, String[][] blockTransfer,
+				 String[][] blockAliases, String[][][] shiftNames )
+	 {
+			super();
+			this.conditions = conditions.clone();
+			this.operations = copy( operations );
+			this.hasRd = hasRd.clone();
+			this.hasRn = hasRn.clone();
+			this.sImplied = sImplied.clone();
+			this.loadStore = copy( loadStore );
+			this.loadStoreOps = copy( loadStoreOps );
+			this.halfword = copy( halfword );
+			this.halfwordOps = copy( halfwordOps );
+			this.blockTransfer = copy( blockTransfer );
+			this.blockAliases = copy( blockAliases );
+			this.shiftNames = copy( shiftNames );
+			this.shifts = new String[shiftNames.length][];
+			for (int mode = 0; mode < shifts.length; mode++) {
+				 shifts[mode] = new String[shiftNames[mode].length];
+				 for (int type = 0; type < shifts[mode].length; type++) {
+						shifts[mode][type] = shiftNames[mode][type].length == 0 ? null
+									: shiftNames[mode][type][0];
+				 }
+			}
+			this.version = VERSIONS.getAndIncrement();
+			this.hash = Arrays.deepHashCode( new Object[] { this.conditions,
+						this.operations, this.hasRd, this.hasRn, this.sImplied,
+						this.loadStore, this.loadStoreOps, this.halfword,
+						this.halfwordOps, this.blockTransfer, this.blockAliases,
+						this.shiftNames } );
+	 }
+
+}
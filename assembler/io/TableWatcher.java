@@ -0,0 +1,204 @@
+/**
+ *
+ */
+package assembler.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the instruction tables when a definition file changes.
+ *
+ * The directories of the definition files are watched from a daemon thread.
+ * Once a burst of changes to any of the files has settled for
+ * {@value #SETTLE} ms, the schema and all the definitions are loaded again
+ * and published as a new {@link TableSet}. If they fail to load, the tables
+ * in use are kept and the failure is counted, so a half written file never
+ * takes the tables down.
+ */
+public class TableWatcher implements Closeable
+{
+
+	 /**
+	  * {@value #SETTLE} Milliseconds without changes before reloading
+	  */
+	 public static final long SETTLE = 100;
+
+	 /**
+	  * {@value #definitions} Paths of the definition files
+	  */
+	 private final List<Path> definitions;
+
+	 /**
+	  * {@link WatchService} Watch on the directories of the definitions
+	  */
+	 private final WatchService watcher;
+
+	 /**
+	  * {@link Thread} Watching thread
+	  */
+	 private final Thread thread;
+
+	 /**
+	  * {@value #reloads} Tables published
+	  */
+	 private volatile int reloads;
+
+	 /**
+	  * {@value #failures} Reloads that failed
+	  */
+	 private volatile int failures;
+
+	 /**
+	  * {@value #error} Message of the last failure, or null
+	  */
+	 private volatile String error;
+
+	 /**
+	  * @return int tables published
+	  */
+	 public int getReloads()
+	 {
+			return reloads;
+	 }
+
+	 /**
+	  * @return int reloads that failed
+	  */
+	 public int getFailures()
+	 {
+			return failures;
+	 }
+
+	 /**
+	  * @return String message of the last failure, or null
+	  */
+	 public String getError()
+	 {
+			return error;
+	 }
+
+	 /**
+	  * Returns the version stamp and hash of the tables in use, with the
+	  * reloads and failures so far.
+	  * 
+	  * @return String
+	  */
+	 public String getSummary()
+	 {
+			return String.format( "%s, reloads=%d, failures=%d", TableSet.current(),
+						reloads, failures );
+	 }
+
+	 /**
+	  * Loads the definitions again and publishes the tables. Reloads are run
+	  * one at a time; readers of the tables are never held up.
+	  * 
+	  * @return TableSet set in use
+	  */
+	 public synchronized TableSet reload()
+	 {
+			try {
+				 TableSet tables = TableSet.reload( definitions );
+				 reloads++;
+				 return tables;
+			} catch (IOException | SQLException e) {
+				 failures++;
+				 error = e.getMessage();
+				 return TableSet.current();
+			}
+	 }
+
+	 /**
+	  * Waits for changes to the definitions and reloads, until closed.
+	  */
+	 private void watch()
+	 {
+			try {
+				 while (true) {
+						boolean changed = changed( watcher.take() );
+						WatchKey key;
+						while (( key = watcher.poll( SETTLE,
+										 TimeUnit.MILLISECONDS ) ) != null) {
+							 changed |= changed( key );
+						}
+						if (changed) {
+							 reload();
+						}
+				 }
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				 // closed
+			}
+	 }
+
+	 /**
+	  * Returns true if the events of a key touch a definition file, and resets
+	  * the key.
+	  * 
+	  * @param WatchKey key
+	  * @return boolean
+	  */
+	 private boolean changed( WatchKey key )
+	 {
+			boolean changed = false;
+			Path directory = (Path) key.watchable();
+			for (WatchEvent<?> event : key.pollEvents()) {
+				 if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						changed = true;
+				 } else {
+						changed |= definitions
+									.contains( directory.resolve( (Path) event.context() ) );
+				 }
+			}
+			key.reset();
+			return changed;
+	 }
+
+	 @Override
+	 public void close() throws IOException
+	 {
+			watcher.close();
+			thread.interrupt();
+	 }
+
+	 /**
+	  * Standard constructor. Starts watching the directories of the
+	  * definitions; the tables are not reloaded until one of them changes.
+	  * 
+	  * @param List definitions paths of extra SQL files
+	  * @throws IOException
+	  */
+	 public TableWatcher( List<Path> definitions ) throws IOException
+	 {
+			super();
+			this.definitions = new ArrayList<>();
+			Set<Path> directories = new LinkedHashSet<>();
+			for (Path path : definitions) {
+				 Path absolute = path.toAbsolutePath().normalize();
+				 this.definitions.add( absolute );
+				 directories.add( absolute.getParent() );
+			}
+			this.watcher = FileSystems.getDefault().newWatchService();
+			for (Path directory : directories) {
+				 directory.register( watcher, StandardWatchEventKinds.ENTRY_CREATE,
+							 StandardWatchEventKinds.ENTRY_MODIFY );
+			}
+			this.thread = new Thread( this::watch, "table-watcher" );
+			thread.setDaemon( true );
+			thread.start();
+	 }
+
+}
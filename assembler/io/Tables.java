@@ -0,0 +1,1152 @@
+/**
+ * Generated by {@link TableGenerator} from schema.sql. Do not edit: change
+ * the schema or the definitions and run the generator again.
+ */
+package assembler.io;
+
+import assembler.exceptions.InvalidCodeException;
+
+/**
+ * Instruction tables, decoder and encoders generated from the instruction
+ * schema.
+ *
+ * The tables are private and only read into the compiled
+ * {@link TableSet}. The decoder names the instruction of a word with one
+ * switch on its op type, op code and L/S bits, and every mnemonic has an
+ * encoder with its fixed bits folded into constants. Encoders pack the
+ * fields they are given as they are.
+ */
+public final class Tables
+{
+
+	 /**
+	  * {@value #CONDITIONS} Condition suffixes indexed by cond code ("" for AL,
+	  * null if undefined)
+	  */
+	 private static final String[] CONDITIONS = { "EQ", "NE", "CS", "CC", "MI",
+				 "PL", "VS", "VC", "HI", "LS", "GE", "LT", "GT", "LE", "", null };
+
+	 /**
+	  * {@value #OPERATIONS} Data processing mnemonics [op_type][op_code]
+	  */
+	 private static final String[][] OPERATIONS = {
+			{ "AND", "EOR", "SUB", "RSB", "ADD", "ADC", "SBC", "RSC", "TST", "TEQ",
+						"CMP", "CMN", "ORR", "MOV", "BIC", "MVN" },
+			{ "AND", "EOR", "SUB", "RSB", "ADD", "ADC", "SBC", "RSC", "TST", "TEQ",
+						"CMP", "CMN", "ORR", "MOV", "BIC", "MVN" }
+	 };
+
+	 /**
+	  * {@value #HAS_RD} Data processing instruction writes Rd [op_code]
+	  */
+	 private static final boolean[] HAS_RD = { true, true, true, true, true, true,
+				 true, true, false, false, false, false, true, true, true, true };
+
+	 /**
+	  * {@value #HAS_RN} Data processing instruction reads Rn [op_code]
+	  */
+	 private static final boolean[] HAS_RN = { true, true, true, true, true, true,
+				 true, true, true, true, true, true, true, false, true, false };
+
+	 /**
+	  * {@value #S_IMPLIED} Data processing S bit is implied and must be set
+	  * [op_code]
+	  */
+	 private static final boolean[] S_IMPLIED = { false, false, false, false,
+				 false, false, false, false, true, true, true, true, false, false,
+				 false, false };
+
+	 /**
+	  * {@value #LOAD_STORE} Load/Store mnemonics [op_type][op_code][load_store]
+	  */
+	 private static final String[][][] LOAD_STORE = {
+			{
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { "STR", "LDR" },
+				 { null, null },
+				 { "STRB", "LDRB" },
+				 { null, null },
+				 { "STR", "LDR" },
+				 { null, null },
+				 { "STRB", "LDRB" },
+				 { null, null },
+				 { "STR", "LDR" },
+				 { "STR", "LDR" },
+				 { "STRB", "LDRB" },
+				 { "STRB", "LDRB" }
+			},
+			{
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { "STR", "LDR" },
+				 { null, null },
+				 { "STRB", "LDRB" },
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { "STR", "LDR" },
+				 { "STR", "LDR" },
+				 { "STRB", "LDRB" },
+				 { "STRB", "LDRB" }
+			}
+	 };
+
+	 /**
+	  * {@value #LOAD_STORE_OPS} Load/Store operations (ADD, SUB, PRI, PSI)
+	  * [op_type][op_code][load_store]
+	  */
+	 private static final String[][][] LOAD_STORE_OPS = {
+			{
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { "PSI", "PSI" },
+				 { null, null },
+				 { "PSI", "PSI" },
+				 { null, null },
+				 { "SUB", "SUB" },
+				 { null, null },
+				 { "SUB", "SUB" },
+				 { null, null },
+				 { "ADD", "ADD" },
+				 { "PRI", "PRI" },
+				 { "ADD", "ADD" },
+				 { "PRI", "PRI" }
+			},
+			{
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { "PSI", "PSI" },
+				 { null, null },
+				 { "PSI", "PSI" },
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { null, null },
+				 { "ADD", "ADD" },
+				 { "PRI", "PRI" },
+				 { "ADD", "ADD" },
+				 { "PRI", "PRI" }
+			}
+	 };
+
+	 /**
+	  * {@value #HALFWORD} Halfword/signed byte load/store mnemonics
+	  * [op_code][load_store][sh]
+	  */
+	 private static final String[][][] HALFWORD = {
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, "STRH", null, null }, { null, "LDRH", "LDRSB", "LDRSH" } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, "STRH", null, null }, { null, "LDRH", "LDRSB", "LDRSH" } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, "STRH", null, null }, { null, "LDRH", "LDRSB", "LDRSH" } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, "STRH", null, null }, { null, "LDRH", "LDRSB", "LDRSH" } },
+			{ { null, "STRH", null, null }, { null, "LDRH", "LDRSB", "LDRSH" } },
+			{ { null, "STRH", null, null }, { null, "LDRH", "LDRSB", "LDRSH" } },
+			{ { null, "STRH", null, null }, { null, "LDRH", "LDRSB", "LDRSH" } }
+	 };
+
+	 /**
+	  * {@value #HALFWORD_OPS} Halfword/signed byte load/store operations
+	  * [op_code][load_store][sh]
+	  */
+	 private static final String[][][] HALFWORD_OPS = {
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, "PSI", null, null }, { null, "PSI", "PSI", "PSI" } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, "PSI", null, null }, { null, "PSI", "PSI", "PSI" } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, "SUB", null, null }, { null, "SUB", "SUB", "SUB" } },
+			{ { null, null, null, null }, { null, null, null, null } },
+			{ { null, "ADD", null, null }, { null, "ADD", "ADD", "ADD" } },
+			{ { null, "PRI", null, null }, { null, "PRI", "PRI", "PRI" } },
+			{ { null, "ADD", null, null }, { null, "ADD", "ADD", "ADD" } },
+			{ { null, "PRI", null, null }, { null, "PRI", "PRI", "PRI" } }
+	 };
+
+	 /**
+	  * {@value #BLOCK_TRANSFER} LDM/STM mnemonics with addressing mode
+	  * [op_code][load_store]
+	  */
+	 private static final String[][] BLOCK_TRANSFER = {
+			{ "STMDA", "LDMDA" },
+			{ "STMDA", "LDMDA" },
+			{ null, null },
+			{ null, null },
+			{ "STMIA", "LDMIA" },
+			{ "STMIA", "LDMIA" },
+			{ null, null },
+			{ null, null },
+			{ "STMDB", "LDMDB" },
+			{ "STMDB", "LDMDB" },
+			{ null, null },
+			{ null, null },
+			{ "STMIB", "LDMIB" },
+			{ "STMIB", "LDMIB" },
+			{ null, null },
+			{ null, null }
+	 };
+
+	 /**
+	  * {@value #BLOCK_ALIASES} LDM/STM stack addressing modes
+	  * [op_code][load_store]
+	  */
+	 private static final String[][] BLOCK_ALIASES = {
+			{ "ED", "FA" },
+			{ "ED", "FA" },
+			{ null, null },
+			{ null, null },
+			{ "EA", "FD" },
+			{ "EA", "FD" },
+			{ null, null },
+			{ null, null },
+			{ "FD", "EA" },
+			{ "FD", "EA" },
+			{ null, null },
+			{ null, null },
+			{ "FA", "ED" },
+			{ "FA", "ED" },
+			{ null, null },
+			{ null, null }
+	 };
+
+	 /**
+	  * {@value #SHIFT_NAMES} Shift operations [shift mode][shift type], the
+	  * listed name first
+	  */
+	 private static final String[][][] SHIFT_NAMES = {
+			{ { "LSL" }, { "LSR" }, { "ASR" }, { "ROR", "RRX" } },
+			{ { "MOV", "LSL" }, { "LSR" }, { "ASR" }, { "ROR" } }
+	 };
+
+	 /**
+	  * Returns a {@link TableSet} of the tables.
+	  * 
+	  * @return TableSet
+	  */
+	 static TableSet tables()
+	 {
+			return new TableSet( CONDITIONS, OPERATIONS, HAS_RD, HAS_RN, S_IMPLIED,
+						LOAD_STORE, LOAD_STORE_OPS, HALFWORD, HALFWORD_OPS, BLOCK_TRANSFER,
+						BLOCK_ALIASES, SHIFT_NAMES );
+	 }
+
+	 /**
+	  * Returns the mnemonic of an instruction word, without condition, S flag or
+	  * addressing mode, or null if the schema does not define it.
+	  * 
+	  * @param int word
+	  * @return String
+	  */
+	 public static String mnemonic( int word )
+	 {
+			if (( word & 0x0e000090 ) == 0x00000090 && ( word & 0x60 ) != 0) {
+				 int sh = ( word >>> 5 ) & 3;
+				 return HALFWORD[( word >>> 21 ) & 0xf][( word >>> 20 ) & 1][sh];
+			} else if (( word & 0x0fe000f0 ) == 0x00000090) {
+				 return "MUL";
+			}
+			// Op type, op code and L/S bit
+			switch (( word >>> 20 ) & 0xff) {
+			case 0x00: case 0x01: case 0x20: case 0x21:
+				 return "AND";
+			case 0x02: case 0x03: case 0x22: case 0x23:
+				 return "EOR";
+			case 0x04: case 0x05: case 0x24: case 0x25:
+				 return "SUB";
+			case 0x06: case 0x07: case 0x26: case 0x27:
+				 return "RSB";
+			case 0x08: case 0x09: case 0x28: case 0x29:
+				 return "ADD";
+			case 0x0a: case 0x0b: case 0x2a: case 0x2b:
+				 return "ADC";
+			case 0x0c: case 0x0d: case 0x2c: case 0x2d:
+				 return "SBC";
+			case 0x0e: case 0x0f: case 0x2e: case 0x2f:
+				 return "RSC";
+			case 0x11: case 0x31:
+				 return "TST";
+			case 0x13: case 0x33:
+				 return "TEQ";
+			case 0x15: case 0x35:
+				 return "CMP";
+			case 0x17: case 0x37:
+				 return "CMN";
+			case 0x18: case 0x19: case 0x38: case 0x39:
+				 return "ORR";
+			case 0x1a: case 0x1b: case 0x3a: case 0x3b:
+				 return "MOV";
+			case 0x1c: case 0x1d: case 0x3c: case 0x3d:
+				 return "BIC";
+			case 0x1e: case 0x1f: case 0x3e: case 0x3f:
+				 return "MVN";
+			case 0x48: case 0x50: case 0x58: case 0x5a: case 0x68: case 0x78:
+			case 0x7a:
+				 return "STR";
+			case 0x49: case 0x51: case 0x59: case 0x5b: case 0x69: case 0x79:
+			case 0x7b:
+				 return "LDR";
+			case 0x4c: case 0x54: case 0x5c: case 0x5e: case 0x6c: case 0x7c:
+			case 0x7e:
+				 return "STRB";
+			case 0x4d: case 0x55: case 0x5d: case 0x5f: case 0x6d: case 0x7d:
+			case 0x7f:
+				 return "LDRB";
+			case 0x80: case 0x82:
+				 return "STMDA";
+			case 0x81: case 0x83:
+				 return "LDMDA";
+			case 0x88: case 0x8a:
+				 return "STMIA";
+			case 0x89: case 0x8b:
+				 return "LDMIA";
+			case 0x90: case 0x92:
+				 return "STMDB";
+			case 0x91: case 0x93:
+				 return "LDMDB";
+			case 0x98: case 0x9a:
+				 return "STMIB";
+			case 0x99: case 0x9b:
+				 return "LDMIB";
+			default:
+				 return null;
+			}
+	 }
+
+	 /**
+	  * Encodes AND (op code 0000).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int and( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | s << 20 | rn << 16
+						| rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes EOR (op code 0001).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int eor( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x00200000 | s << 20
+						| rn << 16 | rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes SUB (op code 0010).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int sub( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x00400000 | s << 20
+						| rn << 16 | rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes RSB (op code 0011).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int rsb( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x00600000 | s << 20
+						| rn << 16 | rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes ADD (op code 0100).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int add( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x00800000 | s << 20
+						| rn << 16 | rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes ADC (op code 0101).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int adc( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x00a00000 | s << 20
+						| rn << 16 | rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes SBC (op code 0110).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int sbc( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x00c00000 | s << 20
+						| rn << 16 | rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes RSC (op code 0111).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int rsc( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x00e00000 | s << 20
+						| rn << 16 | rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes TST (op code 1000, S implied).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit (ignored)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int tst( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x01100000 | rn << 16
+						| rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes TEQ (op code 1001, S implied).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit (ignored)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int teq( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x01300000 | rn << 16
+						| rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes CMP (op code 1010, S implied).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit (ignored)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int cmp( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x01500000 | rn << 16
+						| rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes CMN (op code 1011, S implied).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit (ignored)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int cmn( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x01700000 | rn << 16
+						| rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes ORR (op code 1100).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int orr( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x01800000 | s << 20
+						| rn << 16 | rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes MOV (op code 1101).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int mov( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x01a00000 | s << 20
+						| rn << 16 | rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes BIC (op code 1110).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int bic( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x01c00000 | s << 20
+						| rn << 16 | rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes MVN (op code 1111).
+	  * 
+	  * @param int     cond condition code
+	  * @param int     s S bit
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  */
+	 public static int mvn( int cond, int s, int rd, int rn, int operand2,
+				 boolean immediate )
+	 {
+			return cond << 28 | ( immediate ? 0x02000000 : 0 ) | 0x01e00000 | s << 20
+						| rn << 16 | rd << 12 | operand2;
+	 }
+
+	 /**
+	  * Encodes a data processing instruction by mnemonic.
+	  * 
+	  * @param String  instr mnemonic
+	  * @param int     cond condition code
+	  * @param int     s S bit
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     operand2 rotated immediate or shifted register
+	  * @param boolean immediate operand2 is an immediate
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mnemonic is unknown
+	  */
+	 public static int encodeData( String instr, int cond, int s, int rd, int rn,
+				 int operand2, boolean immediate ) throws InvalidCodeException
+	 {
+			switch (instr) {
+			case "AND":
+				 return and( cond, s, rd, rn, operand2, immediate );
+			case "EOR":
+				 return eor( cond, s, rd, rn, operand2, immediate );
+			case "SUB":
+				 return sub( cond, s, rd, rn, operand2, immediate );
+			case "RSB":
+				 return rsb( cond, s, rd, rn, operand2, immediate );
+			case "ADD":
+				 return add( cond, s, rd, rn, operand2, immediate );
+			case "ADC":
+				 return adc( cond, s, rd, rn, operand2, immediate );
+			case "SBC":
+				 return sbc( cond, s, rd, rn, operand2, immediate );
+			case "RSC":
+				 return rsc( cond, s, rd, rn, operand2, immediate );
+			case "TST":
+				 return tst( cond, s, rd, rn, operand2, immediate );
+			case "TEQ":
+				 return teq( cond, s, rd, rn, operand2, immediate );
+			case "CMP":
+				 return cmp( cond, s, rd, rn, operand2, immediate );
+			case "CMN":
+				 return cmn( cond, s, rd, rn, operand2, immediate );
+			case "ORR":
+				 return orr( cond, s, rd, rn, operand2, immediate );
+			case "MOV":
+				 return mov( cond, s, rd, rn, operand2, immediate );
+			case "BIC":
+				 return bic( cond, s, rd, rn, operand2, immediate );
+			case "MVN":
+				 return mvn( cond, s, rd, rn, operand2, immediate );
+			default:
+				 throw new InvalidCodeException( String.format(
+							 "Unknown data processing instruction %s.", instr ) );
+			}
+	 }
+
+	 /**
+	  * Encodes STR.
+	  * 
+	  * @param int     cond condition code
+	  * @param String  mode addressing mode (ADD, SUB, PRI or PSI)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     offset 12 bit immediate or shifted register
+	  * @param boolean immediate offset is an immediate
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mode is unknown
+	  */
+	 public static int str( int cond, String mode, int rd, int rn, int offset,
+				 boolean immediate ) throws InvalidCodeException
+	 {
+			if (immediate) {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x04800000 | rn << 16 | rd << 12 | offset;
+				 case "SUB":
+						return cond << 28 | 0x05000000 | rn << 16 | rd << 12 | offset;
+				 case "ADD":
+						return cond << 28 | 0x05800000 | rn << 16 | rd << 12 | offset;
+				 case "PRI":
+						return cond << 28 | 0x05a00000 | rn << 16 | rd << 12 | offset;
+				 }
+			} else {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x06800000 | rn << 16 | rd << 12 | offset;
+				 case "ADD":
+						return cond << 28 | 0x07800000 | rn << 16 | rd << 12 | offset;
+				 case "PRI":
+						return cond << 28 | 0x07a00000 | rn << 16 | rd << 12 | offset;
+				 }
+			}
+			throw new InvalidCodeException( String.format( "Unknown STR mode %s.",
+						mode ) );
+	 }
+
+	 /**
+	  * Encodes LDR.
+	  * 
+	  * @param int     cond condition code
+	  * @param String  mode addressing mode (ADD, SUB, PRI or PSI)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     offset 12 bit immediate or shifted register
+	  * @param boolean immediate offset is an immediate
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mode is unknown
+	  */
+	 public static int ldr( int cond, String mode, int rd, int rn, int offset,
+				 boolean immediate ) throws InvalidCodeException
+	 {
+			if (immediate) {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x04900000 | rn << 16 | rd << 12 | offset;
+				 case "SUB":
+						return cond << 28 | 0x05100000 | rn << 16 | rd << 12 | offset;
+				 case "ADD":
+						return cond << 28 | 0x05900000 | rn << 16 | rd << 12 | offset;
+				 case "PRI":
+						return cond << 28 | 0x05b00000 | rn << 16 | rd << 12 | offset;
+				 }
+			} else {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x06900000 | rn << 16 | rd << 12 | offset;
+				 case "ADD":
+						return cond << 28 | 0x07900000 | rn << 16 | rd << 12 | offset;
+				 case "PRI":
+						return cond << 28 | 0x07b00000 | rn << 16 | rd << 12 | offset;
+				 }
+			}
+			throw new InvalidCodeException( String.format( "Unknown LDR mode %s.",
+						mode ) );
+	 }
+
+	 /**
+	  * Encodes STRB.
+	  * 
+	  * @param int     cond condition code
+	  * @param String  mode addressing mode (ADD, SUB, PRI or PSI)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     offset 12 bit immediate or shifted register
+	  * @param boolean immediate offset is an immediate
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mode is unknown
+	  */
+	 public static int strb( int cond, String mode, int rd, int rn, int offset,
+				 boolean immediate ) throws InvalidCodeException
+	 {
+			if (immediate) {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x04c00000 | rn << 16 | rd << 12 | offset;
+				 case "SUB":
+						return cond << 28 | 0x05400000 | rn << 16 | rd << 12 | offset;
+				 case "ADD":
+						return cond << 28 | 0x05c00000 | rn << 16 | rd << 12 | offset;
+				 case "PRI":
+						return cond << 28 | 0x05e00000 | rn << 16 | rd << 12 | offset;
+				 }
+			} else {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x06c00000 | rn << 16 | rd << 12 | offset;
+				 case "ADD":
+						return cond << 28 | 0x07c00000 | rn << 16 | rd << 12 | offset;
+				 case "PRI":
+						return cond << 28 | 0x07e00000 | rn << 16 | rd << 12 | offset;
+				 }
+			}
+			throw new InvalidCodeException( String.format( "Unknown STRB mode %s.",
+						mode ) );
+	 }
+
+	 /**
+	  * Encodes LDRB.
+	  * 
+	  * @param int     cond condition code
+	  * @param String  mode addressing mode (ADD, SUB, PRI or PSI)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     offset 12 bit immediate or shifted register
+	  * @param boolean immediate offset is an immediate
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mode is unknown
+	  */
+	 public static int ldrb( int cond, String mode, int rd, int rn, int offset,
+				 boolean immediate ) throws InvalidCodeException
+	 {
+			if (immediate) {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x04d00000 | rn << 16 | rd << 12 | offset;
+				 case "SUB":
+						return cond << 28 | 0x05500000 | rn << 16 | rd << 12 | offset;
+				 case "ADD":
+						return cond << 28 | 0x05d00000 | rn << 16 | rd << 12 | offset;
+				 case "PRI":
+						return cond << 28 | 0x05f00000 | rn << 16 | rd << 12 | offset;
+				 }
+			} else {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x06d00000 | rn << 16 | rd << 12 | offset;
+				 case "ADD":
+						return cond << 28 | 0x07d00000 | rn << 16 | rd << 12 | offset;
+				 case "PRI":
+						return cond << 28 | 0x07f00000 | rn << 16 | rd << 12 | offset;
+				 }
+			}
+			throw new InvalidCodeException( String.format( "Unknown LDRB mode %s.",
+						mode ) );
+	 }
+
+	 /**
+	  * Encodes STRH.
+	  * 
+	  * @param int     cond condition code
+	  * @param String  mode addressing mode (ADD, SUB, PRI or PSI)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     offset 8 bit immediate or register
+	  * @param boolean immediate offset is an immediate
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mode is unknown
+	  */
+	 public static int strh( int cond, String mode, int rd, int rn, int offset,
+				 boolean immediate ) throws InvalidCodeException
+	 {
+			if (immediate) {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x00c000b0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 case "SUB":
+						return cond << 28 | 0x014000b0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 case "ADD":
+						return cond << 28 | 0x01c000b0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 case "PRI":
+						return cond << 28 | 0x01e000b0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 }
+			} else {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x008000b0 | rn << 16 | rd << 12 | offset & 0xf;
+				 case "ADD":
+						return cond << 28 | 0x018000b0 | rn << 16 | rd << 12 | offset & 0xf;
+				 case "PRI":
+						return cond << 28 | 0x01a000b0 | rn << 16 | rd << 12 | offset & 0xf;
+				 }
+			}
+			throw new InvalidCodeException( String.format( "Unknown STRH mode %s.",
+						mode ) );
+	 }
+
+	 /**
+	  * Encodes LDRH.
+	  * 
+	  * @param int     cond condition code
+	  * @param String  mode addressing mode (ADD, SUB, PRI or PSI)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     offset 8 bit immediate or register
+	  * @param boolean immediate offset is an immediate
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mode is unknown
+	  */
+	 public static int ldrh( int cond, String mode, int rd, int rn, int offset,
+				 boolean immediate ) throws InvalidCodeException
+	 {
+			if (immediate) {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x00d000b0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 case "SUB":
+						return cond << 28 | 0x015000b0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 case "ADD":
+						return cond << 28 | 0x01d000b0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 case "PRI":
+						return cond << 28 | 0x01f000b0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 }
+			} else {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x009000b0 | rn << 16 | rd << 12 | offset & 0xf;
+				 case "ADD":
+						return cond << 28 | 0x019000b0 | rn << 16 | rd << 12 | offset & 0xf;
+				 case "PRI":
+						return cond << 28 | 0x01b000b0 | rn << 16 | rd << 12 | offset & 0xf;
+				 }
+			}
+			throw new InvalidCodeException( String.format( "Unknown LDRH mode %s.",
+						mode ) );
+	 }
+
+	 /**
+	  * Encodes LDRSB.
+	  * 
+	  * @param int     cond condition code
+	  * @param String  mode addressing mode (ADD, SUB, PRI or PSI)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     offset 8 bit immediate or register
+	  * @param boolean immediate offset is an immediate
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mode is unknown
+	  */
+	 public static int ldrsb( int cond, String mode, int rd, int rn, int offset,
+				 boolean immediate ) throws InvalidCodeException
+	 {
+			if (immediate) {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x00d000d0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 case "SUB":
+						return cond << 28 | 0x015000d0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 case "ADD":
+						return cond << 28 | 0x01d000d0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 case "PRI":
+						return cond << 28 | 0x01f000d0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 }
+			} else {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x009000d0 | rn << 16 | rd << 12 | offset & 0xf;
+				 case "ADD":
+						return cond << 28 | 0x019000d0 | rn << 16 | rd << 12 | offset & 0xf;
+				 case "PRI":
+						return cond << 28 | 0x01b000d0 | rn << 16 | rd << 12 | offset & 0xf;
+				 }
+			}
+			throw new InvalidCodeException( String.format( "Unknown LDRSB mode %s.",
+						mode ) );
+	 }
+
+	 /**
+	  * Encodes LDRSH.
+	  * 
+	  * @param int     cond condition code
+	  * @param String  mode addressing mode (ADD, SUB, PRI or PSI)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     offset 8 bit immediate or register
+	  * @param boolean immediate offset is an immediate
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mode is unknown
+	  */
+	 public static int ldrsh( int cond, String mode, int rd, int rn, int offset,
+				 boolean immediate ) throws InvalidCodeException
+	 {
+			if (immediate) {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x00d000f0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 case "SUB":
+						return cond << 28 | 0x015000f0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 case "ADD":
+						return cond << 28 | 0x01d000f0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 case "PRI":
+						return cond << 28 | 0x01f000f0 | rn << 16 | rd << 12
+									| ( offset & 0xf0 ) << 4 | offset & 0xf;
+				 }
+			} else {
+				 switch (mode) {
+				 case "PSI":
+						return cond << 28 | 0x009000f0 | rn << 16 | rd << 12 | offset & 0xf;
+				 case "ADD":
+						return cond << 28 | 0x019000f0 | rn << 16 | rd << 12 | offset & 0xf;
+				 case "PRI":
+						return cond << 28 | 0x01b000f0 | rn << 16 | rd << 12 | offset & 0xf;
+				 }
+			}
+			throw new InvalidCodeException( String.format( "Unknown LDRSH mode %s.",
+						mode ) );
+	 }
+
+	 /**
+	  * Encodes a single register load/store by mnemonic.
+	  * 
+	  * @param String  instr mnemonic
+	  * @param int     cond condition code
+	  * @param String  mode addressing mode (ADD, SUB, PRI or PSI)
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     offset immediate or register offset
+	  * @param boolean immediate offset is an immediate
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mnemonic or mode is unknown
+	  */
+	 public static int encodeTransfer( String instr, int cond, String mode,
+				 int rd, int rn, int offset,
+				 boolean immediate ) throws InvalidCodeException
+	 {
+			switch (instr) {
+			case "STR":
+				 return str( cond, mode, rd, rn, offset, immediate );
+			case "LDR":
+				 return ldr( cond, mode, rd, rn, offset, immediate );
+			case "STRB":
+				 return strb( cond, mode, rd, rn, offset, immediate );
+			case "LDRB":
+				 return ldrb( cond, mode, rd, rn, offset, immediate );
+			case "STRH":
+				 return strh( cond, mode, rd, rn, offset, immediate );
+			case "LDRH":
+				 return ldrh( cond, mode, rd, rn, offset, immediate );
+			case "LDRSB":
+				 return ldrsb( cond, mode, rd, rn, offset, immediate );
+			case "LDRSH":
+				 return ldrsh( cond, mode, rd, rn, offset, immediate );
+			default:
+				 throw new InvalidCodeException( String.format(
+							 "Unknown load/store instruction %s.", instr ) );
+			}
+	 }
+
+	 /**
+	  * Encodes STM.
+	  * 
+	  * @param int     cond condition code
+	  * @param String  mode addressing mode (IA, IB, DA, DB or a stack alias)
+	  * @param boolean writeBack
+	  * @param int     rn
+	  * @param int     list register list
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mode is unknown
+	  */
+	 public static int stm( int cond, String mode, boolean writeBack, int rn,
+				 int list ) throws InvalidCodeException
+	 {
+			int w = writeBack ? 0x00200000 : 0;
+			switch (mode) {
+			case "DA":
+			case "ED":
+				 return cond << 28 | 0x08000000 | w | rn << 16 | list;
+			case "IA":
+			case "EA":
+				 return cond << 28 | 0x08800000 | w | rn << 16 | list;
+			case "DB":
+			case "FD":
+				 return cond << 28 | 0x09000000 | w | rn << 16 | list;
+			case "IB":
+			case "FA":
+				 return cond << 28 | 0x09800000 | w | rn << 16 | list;
+			default:
+				 throw new InvalidCodeException( String.format( "Unknown STM mode %s.",
+							 mode ) );
+			}
+	 }
+
+	 /**
+	  * Encodes LDM.
+	  * 
+	  * @param int     cond condition code
+	  * @param String  mode addressing mode (IA, IB, DA, DB or a stack alias)
+	  * @param boolean writeBack
+	  * @param int     rn
+	  * @param int     list register list
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mode is unknown
+	  */
+	 public static int ldm( int cond, String mode, boolean writeBack, int rn,
+				 int list ) throws InvalidCodeException
+	 {
+			int w = writeBack ? 0x00200000 : 0;
+			switch (mode) {
+			case "DA":
+			case "FA":
+				 return cond << 28 | 0x08100000 | w | rn << 16 | list;
+			case "IA":
+			case "FD":
+				 return cond << 28 | 0x08900000 | w | rn << 16 | list;
+			case "DB":
+			case "EA":
+				 return cond << 28 | 0x09100000 | w | rn << 16 | list;
+			case "IB":
+			case "ED":
+				 return cond << 28 | 0x09900000 | w | rn << 16 | list;
+			default:
+				 throw new InvalidCodeException( String.format( "Unknown LDM mode %s.",
+							 mode ) );
+			}
+	 }
+
+	 /**
+	  * Encodes an LDM/STM by mnemonic.
+	  * 
+	  * @param String  instr mnemonic, without addressing mode
+	  * @param int     cond condition code
+	  * @param String  mode addressing mode (IA, IB, DA, DB or a stack alias)
+	  * @param boolean writeBack
+	  * @param int     rn
+	  * @param int     list register list
+	  * @return int instruction word
+	  * @throws InvalidCodeException if the mnemonic or mode is unknown
+	  */
+	 public static int encodeBlock( String instr, int cond, String mode,
+				 boolean writeBack, int rn, int list ) throws InvalidCodeException
+	 {
+			switch (instr) {
+			case "STM":
+				 return stm( cond, mode, writeBack, rn, list );
+			case "LDM":
+				 return ldm( cond, mode, writeBack, rn, list );
+			default:
+				 throw new InvalidCodeException( String.format(
+							 "Unknown block transfer instruction %s.", instr ) );
+			}
+	 }
+
+}
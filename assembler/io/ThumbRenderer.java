@@ -0,0 +1,344 @@
+/**
+ *
+ */
+package assembler.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import assembler.components.op2types.BlockTransfer;
+import assembler.exceptions.InvalidCodeException;
+import assembler.thumb.ThumbDecoder;
+
+/**
+ * Text renderer for 16-bit Thumb instructions.
+ *
+ * Halfwords are classified through the {@link ThumbDecoder} table and written
+ * in UAL syntax with the same register names, number formatting and output
+ * targets as the ARM {@link Renderer}, which it extends so that one renderer
+ * serves mixed ARM and Thumb images. BL/BLX prefix and suffix halfwords are
+ * rendered as a single instruction; branch targets are absolute addresses,
+ * written as ARM branch targets are.
+ */
+public class ThumbRenderer extends Renderer
+{
+
+	 /**
+	  * {@value #SHIFT_OPS} Shift by immediate mnemonics [op]
+	  */
+	 private static final String[] SHIFT_OPS = { "LSLS", "LSRS", "ASRS" };
+
+	 /**
+	  * {@value #IMM8_OPS} 8-bit immediate mnemonics [op]
+	  */
+	 private static final String[] IMM8_OPS = { "MOVS", "CMP", "ADDS", "SUBS" };
+
+	 /**
+	  * {@value #ALU_OPS} Register data processing mnemonics [op]
+	  */
+	 private static final String[] ALU_OPS = { "ANDS", "EORS", "LSLS", "LSRS",
+				 "ASRS", "ADCS", "SBCS", "RORS", "TST", "RSBS", "CMP", "CMN", "ORRS",
+				 "MULS", "BICS", "MVNS" };
+
+	 /**
+	  * {@value #HI_OPS} High register mnemonics [op]
+	  */
+	 private static final String[] HI_OPS = { "ADD", "CMP", "MOV" };
+
+	 /**
+	  * {@value #LS_REG_OPS} Register offset load/store mnemonics [op]
+	  */
+	 private static final String[] LS_REG_OPS = { "STR", "STRH", "STRB",
+				 "LDRSB", "LDR", "LDRH", "LDRB", "LDRSH" };
+
+	 /**
+	  * {@value #LS_IMM_OPS} Immediate offset load/store mnemonics [B][L]
+	  */
+	 private static final String[][] LS_IMM_OPS = { { "STR", "LDR" },
+				 { "STRB", "LDRB" } };
+
+	 /**
+	  * {@value #EXTEND_OPS} Extend mnemonics [op]
+	  */
+	 private static final String[] EXTEND_OPS = { "SXTH", "SXTB", "UXTH",
+				 "UXTB" };
+
+	 /**
+	  * {@value #REV_OPS} Byte reverse mnemonics [op]
+	  */
+	 private static final String[] REV_OPS = { "REV", "REV16", null, "REVSH" };
+
+	 /**
+	  * Renders a Thumb instruction into an Appendable.
+	  * 
+	  * @param int        hw halfword
+	  * @param int        next following halfword (used by BL/BLX pairs only)
+	  * @param int        address address of hw
+	  * @param Appendable out
+	  * @return Appendable out
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public <T extends Appendable> T render( int hw, int next, int address,
+				 T out ) throws IOException, InvalidCodeException
+	 {
+			int rd = hw & 7;
+			int rm = ( hw >>> 3 ) & 7;
+			switch (ThumbDecoder.format( hw )) {
+			case ThumbDecoder.SHIFT_IMM: {
+				 int op = ( hw >>> 11 ) & 3;
+				 int imm = ( hw >>> 6 ) & 0x1f;
+				 if (op == 0 && imm == 0) {
+						registers( out.append( "MOVS " ), rd, rm );
+				 } else {
+						registers( out.append( SHIFT_OPS[op] ).append( ' ' ), rd, rm );
+						immediate( imm == 0 ? 32 : imm, out );
+				 }
+				 break;
+			}
+			case ThumbDecoder.ADD_SUB_REG:
+				 registers( out.append( ( hw & 0x200 ) == 0 ? "ADDS " : "SUBS " ), rd,
+							 rm );
+				 out.append( ", " ).append( REGISTERS[( hw >>> 6 ) & 7] );
+				 break;
+			case ThumbDecoder.ADD_SUB_IMM3:
+				 registers( out.append( ( hw & 0x200 ) == 0 ? "ADDS " : "SUBS " ), rd,
+							 rm );
+				 immediate( ( hw >>> 6 ) & 7, out );
+				 break;
+			case ThumbDecoder.IMM8:
+				 out.append( IMM8_OPS[( hw >>> 11 ) & 3] ).append( ' ' )
+							 .append( REGISTERS[( hw >>> 8 ) & 7] );
+				 immediate( hw & 0xff, out );
+				 break;
+			case ThumbDecoder.ALU: {
+				 int op = ( hw >>> 6 ) & 0xf;
+				 registers( out.append( ALU_OPS[op] ).append( ' ' ), rd, rm );
+				 if (op == 9) { // RSBS Rd, Rm, #0
+						out.append( ", #0" );
+				 } else if (op == 13) { // MULS Rd, Rm, Rd
+						out.append( ", " ).append( REGISTERS[rd] );
+				 }
+				 break;
+			}
+			case ThumbDecoder.HI_REG:
+				 registers( out.append( HI_OPS[( hw >>> 8 ) & 3] ).append( ' ' ),
+							 rd | ( ( hw >>> 4 ) & 8 ), ( hw >>> 3 ) & 0xf );
+				 break;
+			case ThumbDecoder.BX:
+				 out.append( ( hw & 0x80 ) == 0 ? "BX " : "BLX " )
+							 .append( REGISTERS[( hw >>> 3 ) & 0xf] );
+				 break;
+			case ThumbDecoder.LDR_PC:
+				 out.append( "LDR " ).append( REGISTERS[( hw >>> 8 ) & 7] );
+				 offset( 15, ( hw & 0xff ) << 2, out );
+				 break;
+			case ThumbDecoder.LS_REG:
+				 out.append( LS_REG_OPS[( hw >>> 9 ) & 7] ).append( ' ' )
+							 .append( REGISTERS[rd] ).append( ", [" ).append( REGISTERS[rm] )
+							 .append( ", " ).append( REGISTERS[( hw >>> 6 ) & 7] )
+							 .append( ']' );
+				 break;
+			case ThumbDecoder.LS_IMM: {
+				 int b = ( hw >>> 12 ) & 1;
+				 out.append( LS_IMM_OPS[b][( hw >>> 11 ) & 1] ).append( ' ' )
+							 .append( REGISTERS[rd] );
+				 offset( rm, ( ( hw >>> 6 ) & 0x1f ) << ( b == 0 ? 2 : 0 ), out );
+				 break;
+			}
+			case ThumbDecoder.LS_HALF:
+				 out.append( ( hw & 0x800 ) == 0 ? "STRH " : "LDRH " )
+							 .append( REGISTERS[rd] );
+				 offset( rm, ( ( hw >>> 6 ) & 0x1f ) << 1, out );
+				 break;
+			case ThumbDecoder.LS_SP:
+				 out.append( ( hw & 0x800 ) == 0 ? "STR " : "LDR " )
+							 .append( REGISTERS[( hw >>> 8 ) & 7] );
+				 offset( 13, ( hw & 0xff ) << 2, out );
+				 break;
+			case ThumbDecoder.ADD_PC_SP:
+				 out.append( "ADD " ).append( REGISTERS[( hw >>> 8 ) & 7] )
+							 .append( ( hw & 0x800 ) == 0 ? ", pc" : ", sp" );
+				 immediate( ( hw & 0xff ) << 2, out );
+				 break;
+			case ThumbDecoder.ADJUST_SP:
+				 out.append( ( hw & 0x80 ) == 0 ? "ADD sp, sp" : "SUB sp, sp" );
+				 immediate( ( hw & 0x7f ) << 2, out );
+				 break;
+			case ThumbDecoder.EXTEND:
+				 registers( out.append( EXTEND_OPS[( hw >>> 6 ) & 3] ).append( ' ' ),
+							 rd, rm );
+				 break;
+			case ThumbDecoder.PUSH_POP:
+				 if (( hw & 0x800 ) == 0) {
+						out.append( "PUSH " );
+						BlockTransfer.appendList( ( hw & 0xff ) | ( hw & 0x100 ) << 6, out );
+				 } else {
+						out.append( "POP " );
+						BlockTransfer.appendList( ( hw & 0xff ) | ( hw & 0x100 ) << 7, out );
+				 }
+				 break;
+			case ThumbDecoder.SETEND:
+				 out.append( ( hw & 8 ) == 0 ? "SETEND LE" : "SETEND BE" );
+				 break;
+			case ThumbDecoder.CPS:
+				 out.append( ( hw & 0x10 ) == 0 ? "CPSIE " : "CPSID " );
+				 if (( hw & 4 ) != 0) {
+						out.append( 'a' );
+				 }
+				 if (( hw & 2 ) != 0) {
+						out.append( 'i' );
+				 }
+				 if (( hw & 1 ) != 0) {
+						out.append( 'f' );
+				 }
+				 break;
+			case ThumbDecoder.REV:
+				 registers( out.append( REV_OPS[( hw >>> 6 ) & 3] ).append( ' ' ), rd,
+							 rm );
+				 break;
+			case ThumbDecoder.BKPT:
+				 out.append( "BKPT #" );
+				 appendInt( hw & 0xff, out );
+				 break;
+			case ThumbDecoder.LDM_STM: {
+				 int rn = ( hw >>> 8 ) & 7;
+				 boolean load = ( hw & 0x800 ) != 0;
+				 out.append( load ? "LDMIA " : "STMIA " ).append( REGISTERS[rn] );
+				 // LDM writes back only when the base is not loaded
+				 if (!load || ( hw & ( 1 << rn ) ) == 0) {
+						out.append( '!' );
+				 }
+				 out.append( ", " );
+				 BlockTransfer.appendList( hw & 0xff, out );
+				 break;
+			}
+			case ThumbDecoder.B_COND:
+				 out.append( 'B' )
+							 .append( getTables().getCondition( ( hw >>> 8 ) & 0xf ) );
+				 appendTarget( ThumbDecoder.target( hw, next, address ), out );
+				 break;
+			case ThumbDecoder.SVC:
+				 out.append( "SVC #" );
+				 appendInt( hw & 0xff, out );
+				 break;
+			case ThumbDecoder.B:
+				 out.append( 'B' );
+				 appendTarget( ThumbDecoder.target( hw, next, address ), out );
+				 break;
+			case ThumbDecoder.BL_PREFIX:
+				 if (!ThumbDecoder.isPair( hw, next )) {
+						throw new InvalidCodeException( "BL prefix without suffix." );
+				 }
+				 out.append( ThumbDecoder.format( next ) == ThumbDecoder.BL_SUFFIX ? "BL"
+							 : "BLX" );
+				 appendTarget( ThumbDecoder.target( hw, next, address ), out );
+				 break;
+			default:
+				 throw new InvalidCodeException();
+			}
+			return out;
+	 }
+
+	 /**
+	  * Renders a Thumb instruction into a StringBuilder.
+	  * 
+	  * @param int           hw halfword
+	  * @param int           next following halfword
+	  * @param int           address address of hw
+	  * @param StringBuilder out
+	  * @return StringBuilder out
+	  * @throws InvalidCodeException
+	  */
+	 public StringBuilder render( int hw, int next, int address,
+				 StringBuilder out ) throws InvalidCodeException
+	 {
+			try {
+				 render( hw, next, address, (Appendable) out );
+			} catch (IOException e) {
+				 // StringBuilder does not throw
+				 throw new InvalidCodeException( e.getMessage(), e );
+			}
+			return out;
+	 }
+
+	 /**
+	  * Renders a Thumb instruction as ASCII into a ByteBuffer.
+	  * 
+	  * @param int        hw halfword
+	  * @param int        next following halfword
+	  * @param int        address address of hw
+	  * @param ByteBuffer out
+	  * @return ByteBuffer out
+	  * @throws InvalidCodeException
+	  */
+	 public ByteBuffer render( int hw, int next, int address, ByteBuffer out )
+				 throws InvalidCodeException
+	 {
+			try {
+				 render( hw, next, address, ascii( out ) );
+			} catch (IOException e) {
+				 throw new InvalidCodeException( e.getMessage(), e );
+			}
+			return out;
+	 }
+
+	 /**
+	  * Renders the instruction at an index of a halfword stream.
+	  * 
+	  * @param ShortBuffer code
+	  * @param int         index halfword index
+	  * @param int         address address of the halfword
+	  * @param Appendable  out
+	  * @return int number of halfwords consumed (1, or 2 for BL/BLX)
+	  * @throws IOException
+	  * @throws InvalidCodeException
+	  */
+	 public int render( ShortBuffer code, int index, int address,
+				 Appendable out ) throws IOException, InvalidCodeException
+	 {
+			int hw = code.get( index ) & 0xffff;
+			int next = index + 1 < code.limit() ? code.get( index + 1 ) & 0xffff : 0;
+			render( hw, next, address, out );
+			return ThumbDecoder.length( hw, next );
+	 }
+
+	 /**
+	  * Appends "Rd, Rm".
+	  * 
+	  * @throws IOException
+	  */
+	 private static void registers( Appendable out, int rd, int rm )
+				 throws IOException
+	 {
+			out.append( REGISTERS[rd] ).append( ", " ).append( REGISTERS[rm] );
+	 }
+
+	 /**
+	  * Appends ", #imm".
+	  * 
+	  * @throws IOException
+	  */
+	 private void immediate( int value, Appendable out ) throws IOException
+	 {
+			out.append( ", #" );
+			appendInt( value, out );
+	 }
+
+	 /**
+	  * Appends ", [Rn, #imm]" or ", [Rn]" for a zero offset.
+	  * 
+	  * @throws IOException
+	  */
+	 private void offset( int rn, int value, Appendable out ) throws IOException
+	 {
+			out.append( ", [" ).append( REGISTERS[rn] );
+			if (value != 0) {
+				 out.append( ", #" );
+				 appendInt( value, out );
+			}
+			out.append( ']' );
+	 }
+
+}
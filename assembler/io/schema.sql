@@ -25,7 +25,7 @@ INSERT INTO cond_code VALUES(15,'1110','AL',NULL,NULL,NULL,NULL);
 CREATE TABLE `op_code` (
   `id` integer NOT NULL PRIMARY KEY AUTOINCREMENT,
   `op_code` char(4) NOT NULL,
-  `instr` char(3) NOT NULL DEFAULT '',
+  `instr` char(5) NOT NULL DEFAULT '',
   `instr_type` integer NOT NULL,
   `op_type` char(3) DEFAULT NULL,
   `load_store` integer DEFAULT NULL,
@@ -33,16 +33,10 @@ CREATE TABLE `op_code` (
   `rn` integer NOT NULL,
   `op2` integer NOT NULL
 );
-INSERT INTO op_code VALUES(3,'0000','AND',1,'000',-1,NULL,1,0);
-INSERT INTO op_code VALUES(4,'0000','AND',0,'001',-1,NULL,0,1);
-INSERT INTO op_code VALUES(5,'0001','EOR',1,'000',-1,NULL,1,0);
-INSERT INTO op_code VALUES(6,'0001','EOR',0,'001',-1,NULL,0,1);
-INSERT INTO op_code VALUES(7,'0010','SUB',1,'000',-1,NULL,1,0);
-INSERT INTO op_code VALUES(8,'0010','SUB',0,'001',-1,NULL,0,1);
-INSERT INTO op_code VALUES(9,'0011','RSB',1,'000',-1,NULL,1,0);
-INSERT INTO op_code VALUES(10,'0011','RSB',0,'001',-1,NULL,0,1);
-INSERT INTO op_code VALUES(11,'0100','ADD',1,'000',-1,NULL,1,0);
-INSERT INTO op_code VALUES(12,'0100','ADD',0,'001',-1,NULL,0,1);
+CREATE INDEX op_code_lookup ON op_code (op_code, op_type, load_store, instr,
+  instr_type, load_store_instr, rn, op2);
+CREATE INDEX op_code_instr ON op_code (instr, instr_type, load_store,
+  load_store_instr, op_type, op_code);
 INSERT INTO op_code VALUES(13,'0100','LDR',0,'010',1,'PSI',0,1);
 INSERT INTO op_code VALUES(14,'0100','LDR',1,'011',1,'PSI',1,0);
 INSERT INTO op_code VALUES(15,'0100','STR',0,'010',0,'PSI',0,1);
@@ -53,13 +47,6 @@ INSERT INTO op_code VALUES(21,'1100','LDR',0,'010',1,'ADD',0,1);
 INSERT INTO op_code VALUES(22,'1100','LDR',1,'011',1,'ADD',1,0);
 INSERT INTO op_code VALUES(23,'1100','STR',0,'010',0,'ADD',0,1);
 INSERT INTO op_code VALUES(24,'1100','STR',1,'011',0,'ADD',1,0);
-INSERT INTO op_code VALUES(25,'1100','ORR',1,'000',-1,NULL,1,0);
-INSERT INTO op_code VALUES(26,'1100','ORR',1,'001',-1,NULL,1,0);
-INSERT INTO op_code VALUES(27,'1100','ORR',0,'001',-1,NULL,1,0);
-INSERT INTO op_code VALUES(28,'1101','MOV',1,'000',-1,NULL,0,1);
-INSERT INTO op_code VALUES(29,'1101','MOV',0,'000',-1,NULL,0,1);
-INSERT INTO op_code VALUES(30,'1101','MOV',1,'001',-1,NULL,0,1);
-INSERT INTO op_code VALUES(31,'1101','MOV',0,'001',-1,NULL,0,1);
 INSERT INTO op_code VALUES(32,'1101','LDR',0,'010',1,'PRI',0,1);
 INSERT INTO op_code VALUES(33,'1101','LDR',0,'010',1,'PRI',0,1);
 INSERT INTO op_code VALUES(34,'1101','LDR',1,'011',1,'PRI',1,0);
@@ -68,10 +55,6 @@ INSERT INTO op_code VALUES(36,'1101','STR',0,'010',0,'PRI',0,1);
 INSERT INTO op_code VALUES(37,'1101','STR',0,'010',0,'PRI',0,1);
 INSERT INTO op_code VALUES(38,'1101','STR',1,'011',0,'PRI',1,0);
 INSERT INTO op_code VALUES(39,'1101','STR',1,'011',0,'PRI',1,0);
-INSERT INTO op_code VALUES(40,'1111','MVN',1,'000',-1,NULL,1,0);
-INSERT INTO op_code VALUES(41,'1111','MVN',0,'000',-1,NULL,1,0);
-INSERT INTO op_code VALUES(42,'1111','MVN',1,'001',-1,NULL,0,1);
-INSERT INTO op_code VALUES(43,'1111','MVN',0,'001',-1,NULL,0,1);
 CREATE TABLE `op_type` (
   `id` integer  NOT NULL PRIMARY KEY AUTOINCREMENT
 ,  `op_type` char(3) NOT NULL
@@ -82,6 +65,88 @@ INSERT INTO op_type VALUES(1,'000','DP',1);
 INSERT INTO op_type VALUES(2,'001','DP',0);
 INSERT INTO op_type VALUES(3,'010','LS',0);
 INSERT INTO op_type VALUES(4,'011','LS',1);
+INSERT INTO op_type VALUES(5,'100','BT',0);
+CREATE TABLE `dp_instr` (
+  `op_code` char(4) NOT NULL PRIMARY KEY,
+  `instr` char(3) NOT NULL,
+  `has_rd` integer NOT NULL DEFAULT 1,
+  `has_rn` integer NOT NULL DEFAULT 1,
+  `s_bit` integer NOT NULL DEFAULT 0
+);
+INSERT INTO dp_instr VALUES('0000','AND',1,1,0);
+INSERT INTO dp_instr VALUES('0001','EOR',1,1,0);
+INSERT INTO dp_instr VALUES('0010','SUB',1,1,0);
+INSERT INTO dp_instr VALUES('0011','RSB',1,1,0);
+INSERT INTO dp_instr VALUES('0100','ADD',1,1,0);
+INSERT INTO dp_instr VALUES('0101','ADC',1,1,0);
+INSERT INTO dp_instr VALUES('0110','SBC',1,1,0);
+INSERT INTO dp_instr VALUES('0111','RSC',1,1,0);
+INSERT INTO dp_instr VALUES('1000','TST',0,1,1);
+INSERT INTO dp_instr VALUES('1001','TEQ',0,1,1);
+INSERT INTO dp_instr VALUES('1010','CMP',0,1,1);
+INSERT INTO dp_instr VALUES('1011','CMN',0,1,1);
+INSERT INTO dp_instr VALUES('1100','ORR',1,1,0);
+INSERT INTO dp_instr VALUES('1101','MOV',1,0,0);
+INSERT INTO dp_instr VALUES('1110','BIC',1,1,0);
+INSERT INTO dp_instr VALUES('1111','MVN',1,0,0);
+INSERT INTO op_code (op_code, instr, instr_type, op_type, load_store,
+  load_store_instr, rn, op2)
+  SELECT dp_instr.op_code, dp_instr.instr, op_type.data_type, op_type.op_type,
+    -1, NULL, dp_instr.has_rn, 1
+  FROM dp_instr JOIN op_type ON op_type.op_class = 'DP'
+  ORDER BY op_type.op_type, dp_instr.op_code;
+CREATE TABLE `block_mode` (
+  `mode` char(2) NOT NULL PRIMARY KEY,
+  `pu` char(2) NOT NULL,
+  `load_alias` char(2) NOT NULL,
+  `store_alias` char(2) NOT NULL
+);
+INSERT INTO block_mode VALUES('DA','00','FA','ED');
+INSERT INTO block_mode VALUES('IA','01','FD','EA');
+INSERT INTO block_mode VALUES('DB','10','EA','FD');
+INSERT INTO block_mode VALUES('IB','11','ED','FA');
+INSERT INTO op_code (op_code, instr, instr_type, op_type, load_store,
+  load_store_instr, rn, op2)
+  SELECT block_mode.pu || '0' || w.bit, l.instr, 0, '100', l.bit,
+    block_mode.mode, 1, 0
+  FROM block_mode
+  CROSS JOIN (SELECT '0' AS bit UNION ALL SELECT '1') AS w
+  CROSS JOIN (SELECT 'STM' AS instr, 0 AS bit
+    UNION ALL SELECT 'LDM', 1) AS l
+  ORDER BY block_mode.pu, w.bit, l.bit;
+CREATE TABLE `ls_size` (
+  `instr` char(5) NOT NULL PRIMARY KEY,
+  `base` char(3) NOT NULL,
+  `b_bit` char(1) DEFAULT NULL,
+  `sh` char(2) DEFAULT NULL
+);
+INSERT INTO ls_size VALUES('LDR','LDR','0',NULL);
+INSERT INTO ls_size VALUES('STR','STR','0',NULL);
+INSERT INTO ls_size VALUES('LDRB','LDR','1',NULL);
+INSERT INTO ls_size VALUES('STRB','STR','1',NULL);
+INSERT INTO ls_size VALUES('LDRH','LDR',NULL,'01');
+INSERT INTO ls_size VALUES('STRH','STR',NULL,'01');
+INSERT INTO ls_size VALUES('LDRSB','LDR',NULL,'10');
+INSERT INTO ls_size VALUES('LDRSH','LDR',NULL,'11');
+INSERT INTO op_code (op_code, instr, instr_type, op_type, load_store,
+  load_store_instr, rn, op2)
+  SELECT DISTINCT substr(op_code.op_code, 1, 2) || ls_size.b_bit
+    || substr(op_code.op_code, 4, 1), ls_size.instr, op_code.instr_type,
+    op_code.op_type, op_code.load_store, op_code.load_store_instr,
+    op_code.rn, op_code.op2
+  FROM op_code JOIN ls_size ON ls_size.base = op_code.instr
+  WHERE ls_size.b_bit = '1' AND op_code.op_type IN ('010', '011')
+  ORDER BY op_code.id;
+INSERT INTO op_code (op_code, instr, instr_type, op_type, load_store,
+  load_store_instr, rn, op2)
+  SELECT DISTINCT substr(op_code.op_code, 1, 2)
+    || CASE op_code.instr_type WHEN 0 THEN '1' ELSE '0' END
+    || substr(op_code.op_code, 4, 1), ls_size.instr, op_code.instr_type,
+    '000', op_code.load_store, op_code.load_store_instr,
+    op_code.rn, op_code.op2
+  FROM op_code JOIN ls_size ON ls_size.base = op_code.instr
+  WHERE ls_size.sh IS NOT NULL AND op_code.op_type IN ('010', '011')
+  ORDER BY op_code.id;
 CREATE TABLE `operand2` (
   `id` integer  NOT NULL PRIMARY KEY AUTOINCREMENT
 ,  `shift_type` char(2) NOT NULL
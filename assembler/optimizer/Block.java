@@ -0,0 +1,471 @@
+/**
+ *
+ */
+package assembler.optimizer;
+
+import java.util.Arrays;
+
+import assembler.core.Instruction;
+
+/**
+ * Compact IR of a straight-line sequence of ARM instructions.
+ *
+ * Every instruction is held as its encoded word together with its kind and
+ * the registers it defines and uses, in parallel primitive arrays. The
+ * encoded word carries the same op type, op code, register and operand2
+ * fields as the parsed {@link Instruction}, so passes rewrite words with
+ * masks and the kind and def/use masks are derived again without reparsing.
+ *
+ * Def/use masks have bit n set for register n and {@link #FLAGS} for the
+ * condition flags. Conditional instructions use the flags and, since they may
+ * not execute, also use every register they define. Writes to the PC use
+ * every register, as do instructions of kind {@link #OTHER}.
+ */
+public class Block
+{
+
+	 /**
+	  * {@value #DATA} Data processing
+	  */
+	 public static final byte DATA = 0;
+
+	 /**
+	  * {@value #MULTIPLY} MUL/MLA
+	  */
+	 public static final byte MULTIPLY = 1;
+
+	 /**
+	  * {@value #LOAD} Single register load
+	  */
+	 public static final byte LOAD = 2;
+
+	 /**
+	  * {@value #STORE} Single register store
+	  */
+	 public static final byte STORE = 3;
+
+	 /**
+	  * {@value #LOAD_MULTIPLE} LDM
+	  */
+	 public static final byte LOAD_MULTIPLE = 4;
+
+	 /**
+	  * {@value #STORE_MULTIPLE} STM
+	  */
+	 public static final byte STORE_MULTIPLE = 5;
+
+	 /**
+	  * {@value #OTHER} Any other instruction (treated as a barrier)
+	  */
+	 public static final byte OTHER = 6;
+
+	 /**
+	  * {@value #PC} Program counter bit
+	  */
+	 public static final int PC = 1 << 15;
+
+	 /**
+	  * {@value #FLAGS} Condition flags bit
+	  */
+	 public static final int FLAGS = 1 << 16;
+
+	 /**
+	  * {@value #ALL} Every register and the flags
+	  */
+	 public static final int ALL = 0x1ffff;
+
+	 /**
+	  * {@value #LOGICAL} Data processing opcodes whose S form leaves V (and C
+	  * for unshifted operands) unchanged [op_code]
+	  */
+	 private static final boolean[] LOGICAL = { true, true, false, false, false,
+				 false, false, false, true, true, false, false, true, true, true, true };
+
+	 /**
+	  * {@value #words} Instruction words
+	  */
+	 private int[] words;
+
+	 /**
+	  * {@value #kinds} Instruction kinds
+	  */
+	 private byte[] kinds;
+
+	 /**
+	  * {@value #defs} Registers defined
+	  */
+	 private int[] defs;
+
+	 /**
+	  * {@value #uses} Registers used
+	  */
+	 private int[] uses;
+
+	 /**
+	  * {@value #size} Number of instructions
+	  */
+	 private int size;
+
+	 /**
+	  * @return int number of instructions
+	  */
+	 public int size()
+	 {
+			return size;
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int instruction word
+	  */
+	 public int word( int index )
+	 {
+			return words[index];
+	 }
+
+	 /**
+	  * @param int index
+	  * @return byte kind
+	  */
+	 public byte kind( int index )
+	 {
+			return kinds[index];
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int registers defined
+	  */
+	 public int defs( int index )
+	 {
+			return defs[index];
+	 }
+
+	 /**
+	  * @param int index
+	  * @return int registers used
+	  */
+	 public int uses( int index )
+	 {
+			return uses[index];
+	 }
+
+	 /**
+	  * @return int[] instruction words
+	  */
+	 public int[] toArray()
+	 {
+			return Arrays.copyOf( words, size );
+	 }
+
+	 /**
+	  * Appends a parsed or decoded instruction.
+	  * 
+	  * @param Instruction instruction
+	  */
+	 public void add( Instruction instruction )
+	 {
+			add( instruction.getBits().getDecimal().intValue() );
+	 }
+
+	 /**
+	  * Appends an instruction word.
+	  * 
+	  * @param int word
+	  */
+	 public void add( int word )
+	 {
+			if (size == words.length) {
+				 int capacity = Math.max( 16, size * 2 );
+				 words = Arrays.copyOf( words, capacity );
+				 kinds = Arrays.copyOf( kinds, capacity );
+				 defs = Arrays.copyOf( defs, capacity );
+				 uses = Arrays.copyOf( uses, capacity );
+			}
+			set( size++, word );
+	 }
+
+	 /**
+	  * Replaces an instruction word.
+	  * 
+	  * @param int index
+	  * @param int word
+	  */
+	 public void set( int index, int word )
+	 {
+			words[index] = word;
+			kinds[index] = kindOf( word );
+			defs[index] = defsOf( word );
+			uses[index] = usesOf( word );
+	 }
+
+	 /**
+	  * Removes an instruction.
+	  * 
+	  * @param int index
+	  */
+	 public void remove( int index )
+	 {
+			int tail = size - index - 1;
+			System.arraycopy( words, index + 1, words, index, tail );
+			System.arraycopy( kinds, index + 1, kinds, index, tail );
+			System.arraycopy( defs, index + 1, defs, index, tail );
+			System.arraycopy( uses, index + 1, uses, index, tail );
+			size--;
+	 }
+
+	 /**
+	  * Removes every instruction.
+	  */
+	 public void clear()
+	 {
+			size = 0;
+	 }
+
+	 /**
+	  * Reorders the instructions.
+	  * 
+	  * @param int[] order old index of every new position
+	  */
+	 public void permute( int[] order )
+	 {
+			int[] old = Arrays.copyOf( words, size );
+			for (int i = 0; i < size; i++) {
+				 set( i, old[order[i]] );
+			}
+	 }
+
+	 /**
+	  * Returns true if an instruction always executes.
+	  * 
+	  * @param int word
+	  * @return boolean
+	  */
+	 public static boolean isAlways( int word )
+	 {
+			return ( word >>> 28 ) == 0xe;
+	 }
+
+	 /**
+	  * Returns the kind of an instruction word.
+	  * 
+	  * @param int word
+	  * @return byte kind
+	  */
+	 public static byte kindOf( int word )
+	 {
+			boolean load = ( word & 0x100000 ) != 0;
+			if (( word >>> 28 ) == 0xf) {
+				 return OTHER;
+			}
+			switch (( word >>> 25 ) & 7) {
+			case 0:
+				 if (( word & 0x0fc000f0 ) == 0x00000090) {
+						return MULTIPLY;
+				 } else if (( word & 0x90 ) == 0x90) {
+						// Halfword/signed byte transfers; SWP and the rest are not modelled
+						return ( word & 0x60 ) == 0 ? OTHER : load ? LOAD : STORE;
+				 } else if (( word & 0x01900000 ) == 0x01000000) {
+						// TST/TEQ/CMP/CMN without S: status register and misc space
+						return OTHER;
+				 }
+				 return DATA;
+			case 1:
+				 return ( word & 0x01900000 ) == 0x01000000 ? OTHER : DATA;
+			case 2:
+				 return load ? LOAD : STORE;
+			case 3:
+				 return ( word & 0x10 ) != 0 ? OTHER : load ? LOAD : STORE;
+			case 4:
+				 return ( word & 0x400000 ) != 0 ? OTHER
+							 : load ? LOAD_MULTIPLE : STORE_MULTIPLE;
+			default:
+				 return OTHER;
+			}
+	 }
+
+	 /**
+	  * Returns the registers an instruction word defines.
+	  * 
+	  * @param int word
+	  * @return int mask
+	  */
+	 public static int defsOf( int word )
+	 {
+			int rn = 1 << ( ( word >>> 16 ) & 0xf );
+			int rd = 1 << ( ( word >>> 12 ) & 0xf );
+			int flags = ( word & 0x100000 ) != 0 ? FLAGS : 0;
+			switch (kindOf( word )) {
+			case DATA:
+				 int op = ( word >>> 21 ) & 0xf;
+				 return ( op >= 8 && op < 12 ? 0 : rd ) | flags;
+			case MULTIPLY:
+				 return rn | flags;
+			case LOAD:
+				 return rd | ( isWriteBack( word ) ? rn : 0 );
+			case STORE:
+				 return isWriteBack( word ) ? rn : 0;
+			case LOAD_MULTIPLE:
+				 return ( word & 0xffff ) | ( ( word & 0x200000 ) != 0 ? rn : 0 );
+			case STORE_MULTIPLE:
+				 return ( word & 0x200000 ) != 0 ? rn : 0;
+			default:
+				 return ALL;
+			}
+	 }
+
+	 /**
+	  * Returns the registers an instruction word uses: its operands, and
+	  * everything if it writes the PC. Conditional instructions also use the
+	  * registers they define.
+	  * 
+	  * @param int word
+	  * @return int mask
+	  */
+	 public static int usesOf( int word )
+	 {
+			int uses = operandsOf( word );
+			if (( defsOf( word ) & PC ) != 0) {
+				 return ALL; // branch: everything may be used at the target
+			} else if (!isAlways( word )) {
+				 uses |= FLAGS | defsOf( word );
+			}
+			return uses;
+	 }
+
+	 /**
+	  * Returns the registers an instruction word reads as operands.
+	  * 
+	  * @param int word
+	  * @return int mask
+	  */
+	 public static int operandsOf( int word )
+	 {
+			int rn = 1 << ( ( word >>> 16 ) & 0xf );
+			int rd = 1 << ( ( word >>> 12 ) & 0xf );
+			int rs = 1 << ( ( word >>> 8 ) & 0xf );
+			int rm = 1 << ( word & 0xf );
+			int uses;
+			switch (kindOf( word )) {
+			case DATA:
+				 int op = ( word >>> 21 ) & 0xf;
+				 uses = op == 13 || op == 15 ? 0 : rn;
+				 if (( word & 0x2000000 ) == 0) {
+						uses |= rm;
+						if (( word & 0x10 ) != 0) {
+							 uses |= rs;
+						} else if (( word & 0xfe0 ) == 0x060) {
+							 uses |= FLAGS; // RRX
+						}
+				 }
+				 if (( op >= 5 && op <= 7 )
+							 || ( ( word & 0x100000 ) != 0 && LOGICAL[op] )) {
+						uses |= FLAGS; // carry in, or flags partly preserved
+				 }
+				 break;
+			case MULTIPLY:
+				 uses = rm | rs | ( ( word & 0x200000 ) != 0 ? rd : 0 )
+							 | ( ( word & 0x100000 ) != 0 ? FLAGS : 0 );
+				 break;
+			case LOAD:
+			case STORE:
+				 uses = rn | ( hasOffsetRegister( word ) ? rm : 0 )
+							 | ( kindOf( word ) == STORE ? rd : 0 );
+				 break;
+			case LOAD_MULTIPLE:
+				 uses = rn;
+				 break;
+			case STORE_MULTIPLE:
+				 uses = rn | ( word & 0xffff );
+				 break;
+			default:
+				 return ALL;
+			}
+			return uses;
+	 }
+
+	 /**
+	  * Returns true if an instruction word is a B or BL.
+	  * 
+	  * @param int word
+	  * @return boolean
+	  */
+	 public static boolean isBranch( int word )
+	 {
+			return ( ( word >>> 25 ) & 7 ) == 5 && ( word >>> 28 ) != 0xf;
+	 }
+
+	 /**
+	  * Returns true if an instruction word is a BX or BLX to a register.
+	  * 
+	  * @param int word
+	  * @return boolean
+	  */
+	 public static boolean isExchange( int word )
+	 {
+			return ( word & 0x0fffffd0 ) == 0x012fff10 && ( word >>> 28 ) != 0xf;
+	 }
+
+	 /**
+	  * Returns the target of a B or BL at an address.
+	  * 
+	  * @param int word
+	  * @param int address
+	  * @return int target address
+	  */
+	 public static int target( int word, int address )
+	 {
+			return address + 8 + ( ( word << 8 ) >> 6 );
+	 }
+
+	 /**
+	  * Returns true if a load/store updates its base register.
+	  * 
+	  * @param int word
+	  * @return boolean
+	  */
+	 public static boolean isWriteBack( int word )
+	 {
+			return ( word & 0x1000000 ) == 0 || ( word & 0x200000 ) != 0;
+	 }
+
+	 /**
+	  * Returns true if a load/store takes a register offset.
+	  * 
+	  * @param int word
+	  * @return boolean
+	  */
+	 public static boolean hasOffsetRegister( int word )
+	 {
+			if (( ( word >>> 25 ) & 7 ) == 0) {
+				 return ( word & 0x400000 ) == 0; // halfword: I bit clear
+			}
+			return ( word & 0x2000000 ) != 0;
+	 }
+
+	 /**
+	  * Standard constructor
+	  */
+	 public Block()
+	 {
+			super();
+			this.words = new int[16];
+			this.kinds = new byte[16];
+			this.defs = new int[16];
+			this.uses = new int[16];
+	 }
+
+	 /**
+	  * Creates a block of instruction words.
+	  * 
+	  * @param int[] words
+	  */
+	 public Block( int[] words )
+	 {
+			this();
+			for (int word : words) {
+				 add( word );
+			}
+	 }
+
+}
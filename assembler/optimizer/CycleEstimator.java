@@ -0,0 +1,531 @@
+/**
+ *
+ */
+package assembler.optimizer;
+
+import java.io.IOException;
+import java.util.List;
+
+import assembler.analysis.ControlFlowGraph;
+import assembler.core.Instruction;
+import assembler.exceptions.InvalidCodeException;
+import assembler.io.Renderer;
+import assembler.io.TableSet;
+import assembler.types.Image;
+
+/**
+ * Static cycle count estimate of ARM code on an ARM11 (ARM1176) pipeline.
+ *
+ * Every instruction is given the cycles it takes to issue and the cycles
+ * until its result can be used without an interlock:
+ * <ul>
+ * <li>data processing issues in one cycle, two with a register specified
+ * shift;</li>
+ * <li>MUL/MLA terminate early on small multipliers, one cycle for each
+ * significant byte of rs when a MOV/MVN in the same block sets it, four
+ * otherwise; the result is ready two cycles after issue;</li>
+ * <li>word loads interlock a use in the next two cycles, byte and halfword
+ * loads in the next three; LDM/STM issue two registers a cycle;</li>
+ * <li>writes to the PC other than B/BL refill the pipeline.</li>
+ * </ul>
+ * An instruction issues when the previous one has and all its operands are
+ * ready; the difference is the stall. The basic blocks of the
+ * {@link ControlFlowGraph} are estimated separately with all registers ready;
+ * functions start at its entry blocks. Block and function totals count each
+ * block once.
+ */
+public class CycleEstimator
+{
+
+	 /**
+	  * {@value #LOAD_LATENCY} Cycles from a word load to the use of its result
+	  */
+	 public static final int LOAD_LATENCY = 3;
+
+	 /**
+	  * {@value #SUBWORD_LATENCY} Cycles from a byte or halfword load to the
+	  * use of its result
+	  */
+	 public static final int SUBWORD_LATENCY = 4;
+
+	 /**
+	  * {@value #MULTIPLY_LATENCY} Cycles from the last issue cycle of a
+	  * multiply to the use of its result
+	  */
+	 public static final int MULTIPLY_LATENCY = 2;
+
+	 /**
+	  * {@value #MULTIPLY_CYCLES} Issue cycles of a multiply by an unknown value
+	  */
+	 public static final int MULTIPLY_CYCLES = 4;
+
+	 /**
+	  * {@value #REFILL} Cycles to refill the pipeline after a PC write
+	  */
+	 public static final int REFILL = 4;
+
+	 /**
+	  * {@link Image} Code
+	  */
+	 private final Image image;
+
+	 /**
+	  * {@value #issue} Issue cycles of every instruction
+	  */
+	 private final int[] issue;
+
+	 /**
+	  * {@value #latency} Result latency of every instruction
+	  */
+	 private final int[] latency;
+
+	 /**
+	  * {@value #stall} Interlock cycles before every instruction
+	  */
+	 private final int[] stall;
+
+	 /**
+	  * {@link ControlFlowGraph} Basic blocks
+	  */
+	 private final ControlFlowGraph cfg;
+
+	 /**
+	  * {@value #blockCycles} Cycles of every basic block
+	  */
+	 private int[] blockCycles;
+
+	 /**
+	  * {@value #functions} First basic block of every function, in order
+	  */
+	 private final int[] functions;
+
+	 /**
+	  * {@value #functionCycles} Cycles of every function
+	  */
+	 private int[] functionCycles;
+
+	 /**
+	  * {@value #total} Cycles of every block
+	  */
+	 private int total;
+
+	 /**
+	  * @return Image code
+	  */
+	 public Image getImage()
+	 {
+			return image;
+	 }
+
+	 /**
+	  * @param int index instruction
+	  * @return int issue cycles
+	  */
+	 public int getIssue( int index )
+	 {
+			return issue[index];
+	 }
+
+	 /**
+	  * @param int index instruction
+	  * @return int cycles until the result can be used
+	  */
+	 public int getLatency( int index )
+	 {
+			return latency[index];
+	 }
+
+	 /**
+	  * @param int index instruction
+	  * @return int interlock cycles before the instruction issues
+	  */
+	 public int getStall( int index )
+	 {
+			return stall[index];
+	 }
+
+	 /**
+	  * @return int number of basic blocks
+	  */
+	 public int getBlockCount()
+	 {
+			return cfg.getBlockCount();
+	 }
+
+	 /**
+	  * @param int block
+	  * @return int first instruction of a basic block
+	  */
+	 public int getBlockStart( int block )
+	 {
+			return cfg.getStart( block );
+	 }
+
+	 /**
+	  * @param int block
+	  * @return int instruction after the last of a basic block
+	  */
+	 public int getBlockEnd( int block )
+	 {
+			return cfg.getEnd( block );
+	 }
+
+	 /**
+	  * @param int block
+	  * @return int cycles of a basic block
+	  */
+	 public int getBlockCycles( int block )
+	 {
+			return blockCycles[block];
+	 }
+
+	 /**
+	  * @return int number of functions
+	  */
+	 public int getFunctionCount()
+	 {
+			return functions.length;
+	 }
+
+	 /**
+	  * @param int function
+	  * @return int first basic block of a function
+	  */
+	 public int getFunctionStart( int function )
+	 {
+			return functions[function];
+	 }
+
+	 /**
+	  * @param int function
+	  * @return int basic block after the last of a function
+	  */
+	 public int getFunctionEnd( int function )
+	 {
+			return function + 1 < functions.length ? functions[function + 1]
+						: cfg.getBlockCount();
+	 }
+
+	 /**
+	  * @param int function
+	  * @return int cycles of a function
+	  */
+	 public int getFunctionCycles( int function )
+	 {
+			return functionCycles[function];
+	 }
+
+	 /**
+	  * @return int cycles of every block
+	  */
+	 public int getTotal()
+	 {
+			return total;
+	 }
+
+	 /**
+	  * Returns the cycles taken to issue an instruction word, multiplying by
+	  * an unknown value.
+	  * 
+	  * @param int word
+	  * @return int
+	  */
+	 public static int issue( int word )
+	 {
+			return issue( word, MULTIPLY_CYCLES );
+	 }
+
+	 /**
+	  * Returns the cycles taken to issue an instruction word.
+	  * 
+	  * @param int word
+	  * @param int multiply issue cycles of a multiply
+	  * @return int
+	  */
+	 private static int issue( int word, int multiply )
+	 {
+			int cycles;
+			switch (Block.kindOf( word )) {
+			case Block.DATA:
+				 // Register specified shifts read a third register
+				 cycles = ( word & 0x2000090 ) == 0x10 ? 2 : 1;
+				 break;
+			case Block.MULTIPLY:
+				 cycles = multiply + ( ( word & 0x200000 ) != 0 ? 1 : 0 );
+				 break;
+			case Block.LOAD:
+			case Block.STORE:
+				 // Scaled register offsets take an extra cycle
+				 cycles = ( ( word >>> 25 ) & 7 ) == 3 && ( word & 0xff0 ) != 0 ? 2
+							 : 1;
+				 break;
+			case Block.LOAD_MULTIPLE:
+			case Block.STORE_MULTIPLE:
+				 cycles = Math.max( 1, ( Integer.bitCount( word & 0xffff ) + 1 ) >> 1 );
+				 break;
+			default:
+				 return 1;
+			}
+			return ( Block.defsOf( word ) & Block.PC ) != 0 ? cycles + REFILL
+						: cycles;
+	 }
+
+	 /**
+	  * Returns the cycles from the issue of an instruction word to the issue of
+	  * an instruction using its result without an interlock, multiplying by an
+	  * unknown value.
+	  * 
+	  * @param int word
+	  * @return int
+	  */
+	 public static int latency( int word )
+	 {
+			return latency( word, issue( word ) );
+	 }
+
+	 /**
+	  * Returns the result latency of an instruction word.
+	  * 
+	  * @param int word
+	  * @param int issue issue cycles
+	  * @return int
+	  */
+	 private static int latency( int word, int issue )
+	 {
+			switch (Block.kindOf( word )) {
+			case Block.MULTIPLY:
+				 return issue + MULTIPLY_LATENCY;
+			case Block.LOAD:
+				 boolean word32 = ( ( word >>> 25 ) & 6 ) == 2
+							 && ( word & 0x400000 ) == 0;
+				 return issue - 1 + ( word32 ? LOAD_LATENCY : SUBWORD_LATENCY );
+			case Block.LOAD_MULTIPLE:
+				 return issue - 1 + LOAD_LATENCY;
+			default:
+				 return issue;
+			}
+	 }
+
+	 /**
+	  * Returns the issue cycles of a multiply by a value: one for each
+	  * significant byte, as the multiplier stops once the remaining bits are
+	  * all zeros or all ones.
+	  * 
+	  * @param int value multiplier (rs)
+	  * @return int
+	  */
+	 public static int multiplyCycles( int value )
+	 {
+			int cycles = 1;
+			while (cycles < MULTIPLY_CYCLES && ( value >> ( 8 * cycles ) ) != 0
+						&& ( value >> ( 8 * cycles ) ) != -1) {
+				 cycles++;
+			}
+			return cycles;
+	 }
+
+	 /**
+	  * Returns the value a MOV/MVN immediate sets, or null for any other
+	  * instruction.
+	  * 
+	  * @param int word
+	  * @return Integer
+	  */
+	 private static Integer constant( int word )
+	 {
+			if (( word & 0x0fa00000 ) != 0x03a00000 || !Block.isAlways( word )) {
+				 return null;
+			}
+			int rotation = ( ( word >>> 8 ) & 0xf ) * 2;
+			int value = Integer.rotateRight( word & 0xff, rotation );
+			return ( word & 0x400000 ) != 0 ? ~value : value;
+	 }
+
+	 /**
+	  * Estimates every block and totals the functions.
+	  */
+	 private void estimate()
+	 {
+			this.blockCycles = new int[cfg.getBlockCount()];
+			this.functionCycles = new int[functions.length];
+			int function = -1;
+			for (int b = 0; b < blockCycles.length; b++) {
+				 blockCycles[b] = estimate( cfg.getStart( b ), cfg.getEnd( b ) );
+				 if (function + 1 < functions.length && functions[function + 1] == b) {
+						function++;
+				 }
+				 functionCycles[function] += blockCycles[b];
+				 total += blockCycles[b];
+			}
+	 }
+
+	 /**
+	  * Estimates the instructions of a basic block, starting with every
+	  * register ready and no value known.
+	  * 
+	  * @param int from first instruction
+	  * @param int to instruction after the last
+	  * @return int cycles until the last result is ready
+	  */
+	 private int estimate( int from, int to )
+	 {
+			int[] ready = new int[17];
+			int[] values = new int[16];
+			int known = 0;
+			int cycle = 0;
+			int finish = 0;
+			for (int i = from; i < to; i++) {
+				 int word = image.get( i );
+				 int uses = Block.usesOf( word );
+				 int defs = Block.defsOf( word );
+				 int multiply = MULTIPLY_CYCLES;
+				 int rs = ( word >>> 8 ) & 0xf;
+				 if (Block.kindOf( word ) == Block.MULTIPLY
+							 && ( known & ( 1 << rs ) ) != 0) {
+						multiply = multiplyCycles( values[rs] );
+				 }
+				 issue[i] = issue( word, multiply );
+				 latency[i] = latency( word, issue[i] );
+
+				 int start = cycle;
+				 for (int r = 0; r < ready.length; r++) {
+						if (( uses & ( 1 << r ) ) != 0) {
+							 start = Math.max( start, ready[r] );
+						}
+				 }
+				 stall[i] = start - cycle;
+				 cycle = start + issue[i];
+				 finish = Math.max( finish, start + latency[i] );
+				 for (int r = 0; r < ready.length; r++) {
+						if (( defs & ( 1 << r ) ) != 0) {
+							 ready[r] = start + latency[i];
+						}
+				 }
+
+				 known &= ~defs;
+				 Integer value = constant( word );
+				 if (value != null) {
+						int rd = ( word >>> 12 ) & 0xf;
+						values[rd] = value;
+						known |= 1 << rd;
+				 }
+			}
+			return Math.max( cycle, finish );
+	 }
+
+	 /**
+	  * Writes a listing annotated with the issue cycles, result latency and
+	  * interlock stalls of every instruction, followed by the cycles of every
+	  * basic block and function and the total.
+	  * 
+	  * @param Appendable out
+	  * @throws IOException
+	  */
+	 public void annotate( Appendable out ) throws IOException
+	 {
+			TableSet tables = TableSet.current();
+			Renderer renderer = new Renderer( tables );
+			StringBuilder text = new StringBuilder( 48 );
+			int function = 0;
+			for (int b = 0; b < cfg.getBlockCount(); b++) {
+				 for (int i = cfg.getStart( b ); i < cfg.getEnd( b ); i++) {
+						int word = image.get( i );
+						text.setLength( 0 );
+						if (Renderer.isValid( tables, word )) {
+							 try {
+									renderer.render( word, image.getAddress( i ), text );
+							 } catch (InvalidCodeException e) {
+									text.setLength( 0 );
+							 }
+						}
+						if (text.length() == 0) {
+							 text.append( "<undefined>" );
+						}
+						renderer.appendHex( image.getAddress( i ), 8, out );
+						out.append( ":\t" );
+						renderer.appendHex( word, 8, out );
+						out.append( '\t' ).append( text );
+						for (int pad = text.length(); pad < 32; pad++) {
+							 out.append( ' ' );
+						}
+						out.append( "; issue " ).append( Integer.toString( issue[i] ) )
+									.append( ", result " )
+									.append( Integer.toString( latency[i] ) );
+						if (stall[i] > 0) {
+							 out.append( ", stall " ).append( Integer.toString( stall[i] ) );
+						}
+						out.append( '\n' );
+				 }
+				 out.append( "; block " );
+				 renderer.appendHex( image.getAddress( cfg.getStart( b ) ), 8, out );
+				 out.append( ": " ).append( Integer.toString( blockCycles[b] ) )
+							 .append( " cycles\n" );
+				 if (function < functions.length && getFunctionEnd( function ) == b + 1) {
+						out.append( "; function " );
+						renderer.appendHex(
+									image.getAddress( cfg.getStart( functions[function] ) ), 8, out );
+						out.append( ": " )
+									.append( Integer.toString( getFunctionEnd( function )
+												- functions[function] ) )
+									.append( " blocks, " )
+									.append( Integer.toString( functionCycles[function] ) )
+									.append( " cycles\n" );
+						function++;
+				 }
+			}
+			out.append( "; total: " ).append( Integer.toString( total ) )
+						.append( " cycles\n" );
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param Image image code
+	  */
+	 public CycleEstimator( Image image )
+	 {
+			super();
+			this.image = image;
+			this.cfg = new ControlFlowGraph( image );
+			this.functions = cfg.getEntries();
+			this.issue = new int[image.size()];
+			this.latency = new int[image.size()];
+			this.stall = new int[image.size()];
+			this.estimate();
+	 }
+
+	 /**
+	  * Creates an estimate of assembler output.
+	  * 
+	  * @param int   base address of the first word
+	  * @param int[] words
+	  */
+	 public CycleEstimator( int base, int[] words )
+	 {
+			this( new Image( base, words ) );
+	 }
+
+	 /**
+	  * Creates an estimate of parsed or decoded instructions.
+	  * 
+	  * @param int               base address of the first instruction
+	  * @param List<Instruction> instructions
+	  */
+	 public CycleEstimator( int base, List<Instruction> instructions )
+	 {
+			this( base, words( instructions ) );
+	 }
+
+	 /**
+	  * Returns the words of instructions.
+	  */
+	 private static int[] words( List<Instruction> instructions )
+	 {
+			int[] words = new int[instructions.size()];
+			for (int i = 0; i < words.length; i++) {
+				 words[i] = instructions.get( i ).getBits().getDecimal().intValue();
+			}
+			return words;
+	 }
+
+}
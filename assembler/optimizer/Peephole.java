@@ -0,0 +1,435 @@
+/**
+ *
+ */
+package assembler.optimizer;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import assembler.exceptions.InvalidCodeException;
+import assembler.interfaces.Optimizer;
+import assembler.io.Renderer;
+
+/**
+ * Peephole optimizer over a {@link Block} of encoded instructions.
+ *
+ * Each enabled {@link Rule} is tried at every instruction and the block is
+ * swept again until no rule applies. Rewrites keep the result of the block
+ * unchanged for the registers in the live-out mask; memory is assumed not to
+ * be aliased by anything but an access through the same base and offset.
+ * Every rewrite is recorded in the report.
+ */
+public class Peephole implements Optimizer
+{
+
+	 /**
+	  * Rewrite rules
+	  */
+	 public enum Rule
+	 {
+			/**
+			 * MOV rX, rY, shift; OP rd, rn, rX => OP rd, rn, rY, shift
+			 */
+			FOLD_SHIFT,
+
+			/**
+			 * MOV rX, rX and ADD/SUB/ORR/EOR/BIC rX, rX, #0 are removed
+			 */
+			REMOVE_NOP,
+
+			/**
+			 * STR rA, [rB, off]; LDR rC, [rB, off] => STR ...; MOV rC, rA
+			 */
+			FORWARD_STORE,
+
+			/**
+			 * Data processing results that are overwritten before use are removed
+			 */
+			REMOVE_DEAD
+	 }
+
+	 /**
+	  * {@value #MOV} MOV rd, rm
+	  */
+	 private static final int MOV = 0xe1a00000;
+
+	 /**
+	  * {@value #IDENTITY} Data processing opcodes for which rn op #0 == rn
+	  * [op_code]
+	  */
+	 private static final boolean[] IDENTITY = { false, true, true, false,
+				 true, false, false, false, false, false, false, false, true, false,
+				 true, false };
+
+	 /**
+	  * {@value #rules} Enabled rules
+	  */
+	 private final EnumSet<Rule> rules;
+
+	 /**
+	  * {@value #counts} Rewrites applied per rule
+	  */
+	 private final int[] counts = new int[Rule.values().length];
+
+	 /**
+	  * {@value #report} Rewrites applied, one line each
+	  */
+	 private final List<String> report = new ArrayList<String>();
+
+	 /**
+	  * {@link Renderer} Renderer for the report
+	  */
+	 private final Renderer renderer = new Renderer();
+
+	 /**
+	  * {@value #offset} Address (in words) of the current block, for the report
+	  */
+	 private int offset;
+
+	 /**
+	  * @return EnumSet<Rule> enabled rules
+	  */
+	 public EnumSet<Rule> getRules()
+	 {
+			return EnumSet.copyOf( rules );
+	 }
+
+	 @Override
+	 public List<String> getReport()
+	 {
+			return report;
+	 }
+
+	 /**
+	  * @param Rule rule
+	  * @return int rewrites applied by a rule
+	  */
+	 public int getCount( Rule rule )
+	 {
+			return counts[rule.ordinal()];
+	 }
+
+	 @Override
+	 public String getSummary()
+	 {
+			StringBuilder summary = new StringBuilder();
+			for (Rule rule : rules) {
+				 if (summary.length() > 0) {
+						summary.append( ", " );
+				 }
+				 summary.append( rule ).append( '=' ).append( getCount( rule ) );
+			}
+			return summary.toString();
+	 }
+
+	 /**
+	  * Parses a comma separated list of rule names, such as
+	  * "fold_shift,remove_nop". An empty list enables every rule.
+	  * 
+	  * @param String names
+	  * @return EnumSet<Rule>
+	  * @throws InvalidCodeException
+	  */
+	 public static EnumSet<Rule> parseRules( String names )
+				 throws InvalidCodeException
+	 {
+			if (names == null || names.trim().isEmpty()) {
+				 return EnumSet.allOf( Rule.class );
+			}
+			EnumSet<Rule> rules = EnumSet.noneOf( Rule.class );
+			for (String name : names.split( "," )) {
+				 try {
+						rules.add( Rule.valueOf( name.trim().toUpperCase() ) );
+				 } catch (IllegalArgumentException e) {
+						throw new InvalidCodeException(
+									String.format( "Unknown optimizer rule '%s'.", name.trim() ) );
+				 }
+			}
+			return rules;
+	 }
+
+	 @Override
+	 public int optimize( Block block, int address, int liveOut )
+	 {
+			this.offset = address;
+			int applied = 0;
+			boolean changed = true;
+			while (changed) {
+				 changed = false;
+				 for (Rule rule : rules) {
+						for (int i = 0; i < block.size(); i++) {
+							 if (apply( rule, block, i, liveOut )) {
+									counts[rule.ordinal()]++;
+									applied++;
+									changed = true;
+							 }
+						}
+				 }
+			}
+			return applied;
+	 }
+
+	 /**
+	  * Optimizes a block with every register live out.
+	  * 
+	  * @param Block block
+	  * @return int rewrites applied
+	  */
+	 public int optimize( Block block )
+	 {
+			return optimize( block, 0, Block.ALL );
+	 }
+
+	 /**
+	  * Applies a rule at an instruction.
+	  * 
+	  * @return boolean true if the block was rewritten
+	  */
+	 private boolean apply( Rule rule, Block block, int i, int liveOut )
+	 {
+			switch (rule) {
+			case FOLD_SHIFT:
+				 return foldShift( block, i, liveOut );
+			case REMOVE_NOP:
+				 return removeNop( block, i );
+			case FORWARD_STORE:
+				 return forwardStore( block, i );
+			case REMOVE_DEAD:
+				 return removeDead( block, i, liveOut );
+			default:
+				 return false;
+			}
+	 }
+
+	 /**
+	  * MOV rX, rY{, shift} followed by the only use of rX as the unshifted
+	  * operand2 register of a data processing instruction, or as the unshifted
+	  * offset register of a word load/store: the shift is moved into the
+	  * consumer and the MOV removed.
+	  */
+	 private boolean foldShift( Block block, int i, int liveOut )
+	 {
+			int mov = block.word( i );
+			if (( mov & 0xfff00000 ) != 0xe1a00000) {
+				 return false; // not MOV (register operand2, AL, no S)
+			}
+			int rx = ( mov >>> 12 ) & 0xf;
+			int bit = 1 << rx;
+			boolean byRegister = ( mov & 0x10 ) != 0;
+			if (rx == 15) {
+				 return false;
+			}
+			int j = i + 1;
+			while (j < block.size() && ( block.uses( j ) & bit ) == 0) {
+				 if (( block.defs( j ) & ( block.uses( i ) | bit ) ) != 0) {
+						return false; // source or rX redefined before the use
+				 }
+				 j++;
+			}
+			if (j == block.size()) {
+				 return false;
+			}
+			int consumer = block.word( j );
+			int after = Block.isAlways( consumer ) ? bit & ~block.defs( j ) : bit;
+			if (!isDead( block, j, after, liveOut )) {
+				 return false; // rX is read again
+			}
+			if (( consumer & 0xff0 ) != 0 || ( consumer & 0xf ) != rx) {
+				 return false; // rX is not the unshifted operand2 register
+			}
+			int rn = ( consumer >>> 16 ) & 0xf;
+			int rd = ( consumer >>> 12 ) & 0xf;
+			int op = ( consumer >>> 21 ) & 0xf;
+			switch (block.kind( j )) {
+			case Block.DATA:
+				 boolean usesRn = op != 13 && op != 15;
+				 boolean logical = op < 2 || ( op > 7 && op != 10 && op != 11 );
+				 if (( consumer & 0x2000000 ) != 0 || ( usesRn && rn == rx )
+							 || ( byRegister && ( rd == 15 || ( usesRn && rn == 15 ) ) )
+							 || ( ( consumer & 0x100000 ) != 0 && logical )) {
+						return false; // immediate, rX read twice, or carry out changes
+				 }
+				 break;
+			case Block.LOAD:
+			case Block.STORE:
+				 if (( ( consumer >>> 25 ) & 7 ) != 3 || byRegister
+							 || ( mov & 0xff0 ) == 0x060 || rn == rx
+							 || ( block.kind( j ) == Block.STORE && rd == rx )
+							 || ( Block.isWriteBack( consumer ) && rn == ( mov & 0xf ) )) {
+						return false; // not a word register offset, or not encodable
+				 }
+				 break;
+			default:
+				 return false;
+			}
+			int folded = ( consumer & ~0xfff ) | ( mov & 0xfff );
+			record( Rule.FOLD_SHIFT, i, mov, consumer, folded );
+			block.set( j, folded );
+			block.remove( i );
+			return true;
+	 }
+
+	 /**
+	  * MOV rX, rX and ADD/SUB/ORR/EOR/BIC rX, rX, #0 without S are removed.
+	  */
+	 private boolean removeNop( Block block, int i )
+	 {
+			int word = block.word( i );
+			int rd = ( word >>> 12 ) & 0xf;
+			if (block.kind( i ) != Block.DATA || rd == 15
+						|| ( word & 0x100000 ) != 0) {
+				 return false;
+			}
+			boolean move = ( word & 0x0fe00ff0 ) == 0x01a00000
+						&& ( word & 0xf ) == rd;
+			boolean identity = ( word & 0x0e0000ff ) == 0x02000000
+						&& IDENTITY[( word >>> 21 ) & 0xf]
+						&& ( ( word >>> 16 ) & 0xf ) == rd;
+			if (!move && !identity) {
+				 return false;
+			}
+			record( Rule.REMOVE_NOP, i, word, word, 0 );
+			block.remove( i );
+			return true;
+	 }
+
+	 /**
+	  * STR rA, [rB, off] followed by LDR rC, [rB, off] with no store or
+	  * change of rA, rB or the offset register in between: the load is
+	  * replaced by MOV rC, rA, or removed if rC is rA.
+	  */
+	 private boolean forwardStore( Block block, int i )
+	 {
+			int store = block.word( i );
+			int type = ( store >>> 25 ) & 7;
+			int ra = ( store >>> 12 ) & 0xf;
+			int rb = ( store >>> 16 ) & 0xf;
+			if (block.kind( i ) != Block.STORE || ( type != 2 && type != 3 )
+						|| !Block.isAlways( store ) || Block.isWriteBack( store )
+						|| ( store & 0x400000 ) != 0 || ra == 15 || rb == 15) {
+				 return false; // not a word store with an offset address
+			}
+			int sources = block.uses( i );
+			for (int j = i + 1; j < block.size(); j++) {
+				 int load = block.word( j );
+				 if (( ( load ^ store ) & ~0xf000 ) == 0x100000) {
+						int rc = ( load >>> 12 ) & 0xf;
+						if (rc == 15) {
+							 return false;
+						} else if (rc == ra) {
+							 record( Rule.FORWARD_STORE, j, load, load, 0 );
+							 block.remove( j );
+						} else {
+							 int mov = MOV | ( rc << 12 ) | ra;
+							 record( Rule.FORWARD_STORE, j, load, load, mov );
+							 block.set( j, mov );
+						}
+						return true;
+				 }
+				 byte kind = block.kind( j );
+				 if (kind == Block.STORE || kind == Block.STORE_MULTIPLE
+							 || kind == Block.OTHER || ( block.defs( j ) & sources ) != 0) {
+						return false;
+				 }
+			}
+			return false;
+	 }
+
+	 /**
+	  * Unconditional data processing and multiply instructions whose results
+	  * are all overwritten before they are read, or not live out, are removed.
+	  */
+	 private boolean removeDead( Block block, int i, int liveOut )
+	 {
+			byte kind = block.kind( i );
+			int defs = block.defs( i );
+			if (( kind != Block.DATA && kind != Block.MULTIPLY )
+						|| !Block.isAlways( block.word( i ) ) || defs == 0
+						|| ( defs & Block.PC ) != 0 || !isDead( block, i, defs, liveOut )) {
+				 return false;
+			}
+			record( Rule.REMOVE_DEAD, i, block.word( i ), block.word( i ), 0 );
+			block.remove( i );
+			return true;
+	 }
+
+	 /**
+	  * Returns true if none of the registers in a mask are read after an
+	  * instruction before they are unconditionally redefined.
+	  * 
+	  * @param Block block
+	  * @param int   i instruction
+	  * @param int   mask registers
+	  * @param int   liveOut registers read after the block
+	  * @return boolean
+	  */
+	 private static boolean isDead( Block block, int i, int mask, int liveOut )
+	 {
+			int live = mask;
+			for (int j = i + 1; j < block.size() && live != 0; j++) {
+				 if (( block.uses( j ) & live ) != 0) {
+						return false;
+				 } else if (Block.isAlways( block.word( j ) )) {
+						live &= ~block.defs( j );
+				 }
+			}
+			return ( live & liveOut ) == 0;
+	 }
+
+	 /**
+	  * Records a rewrite: "RULE address: before -> after" for a rewritten
+	  * instruction, "RULE address: removed" for a removed one. The address is
+	  * the word address in the output as rewritten so far.
+	  */
+	 private void record( Rule rule, int i, int removed, int before, int after )
+	 {
+			StringBuilder line = new StringBuilder( 64 );
+			line.append( rule ).append( ' ' ).append( offset + i ).append( ": " );
+			if (after == 0) {
+				 render( removed, line ).append( " removed" );
+			} else {
+				 if (removed != before) {
+						render( removed, line ).append( "; " );
+				 }
+				 render( before, line ).append( " -> " );
+				 render( after, line );
+			}
+			report.add( line.toString() );
+	 }
+
+	 /**
+	  * Renders a word for the report, as hex if it cannot be rendered.
+	  */
+	 private StringBuilder render( int word, StringBuilder out )
+	 {
+			if (Renderer.isValid( word )) {
+				 try {
+						return renderer.render( word, out );
+				 } catch (InvalidCodeException e) {
+						// Fall through to hex
+				 }
+			}
+			return out.append( String.format( "%08X", word ) );
+	 }
+
+	 /**
+	  * Standard constructor, every rule enabled
+	  */
+	 public Peephole()
+	 {
+			this( EnumSet.allOf( Rule.class ) );
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param EnumSet<Rule> rules enabled rules
+	  */
+	 public Peephole( EnumSet<Rule> rules )
+	 {
+			super();
+			this.rules = EnumSet.copyOf( rules );
+	 }
+
+}
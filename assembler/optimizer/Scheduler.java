@@ -0,0 +1,276 @@
+/**
+ *
+ */
+package assembler.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import assembler.interfaces.Optimizer;
+
+/**
+ * List scheduler for straight-line blocks on an in-order, single issue
+ * ARM11 (ARM1176) pipeline, with the timings of {@link CycleEstimator}.
+ *
+ * A dependency DAG is built from the register and flag def/use masks of the
+ * {@link Block}: read after write edges carry the result latency of the
+ * producer, write after read and write after write edges keep the order.
+ * Stores are ordered with every other memory access, loads only with stores.
+ * Instructions that read or write the PC keep their place relative to every
+ * other instruction. Instructions are then issued by longest latency path,
+ * so independent work fills the cycles a load or multiply result would
+ * stall, and the new order is kept only if it is estimated to be faster.
+ *
+ * The DAG is held as one 64-bit predecessor mask per instruction, so long
+ * blocks are scheduled in windows of {@value #WINDOW} instructions.
+ */
+public class Scheduler implements Optimizer
+{
+
+	 /**
+	  * {@value #WINDOW} Instructions scheduled together
+	  */
+	 public static final int WINDOW = 64;
+
+	 /**
+	  * {@value #report} Blocks scheduled, one line each
+	  */
+	 private final List<String> report = new ArrayList<String>();
+
+	 /**
+	  * {@value #blocks} Blocks reordered
+	  */
+	 private int blocks;
+
+	 /**
+	  * {@value #saved} Estimated cycles saved
+	  */
+	 private int saved;
+
+	 @Override
+	 public List<String> getReport()
+	 {
+			return report;
+	 }
+
+	 @Override
+	 public String getSummary()
+	 {
+			return String.format( "SCHEDULE blocks=%d, cycles saved=%d", blocks,
+						saved );
+	 }
+
+	 /**
+	  * @return int estimated cycles saved in every block
+	  */
+	 public int getSaved()
+	 {
+			return saved;
+	 }
+
+	 /**
+	  * Returns the estimated cycles to execute instructions in order.
+	  * 
+	  * @param Block block
+	  * @param int   from first instruction
+	  * @param int   to instruction after the last
+	  * @return int
+	  */
+	 public static int cycles( Block block, int from, int to )
+	 {
+			int[] order = new int[to - from];
+			for (int i = 0; i < order.length; i++) {
+				 order[i] = from + i;
+			}
+			return cycles( block, order );
+	 }
+
+	 /**
+	  * Returns the estimated cycles to execute instructions in a given order:
+	  * each issues once the previous one has and its operands are ready.
+	  * 
+	  * @param Block block
+	  * @param int[] order instructions in issue order
+	  * @return int
+	  */
+	 private static int cycles( Block block, int[] order )
+	 {
+			int[] ready = new int[17];
+			int cycle = 0;
+			int finish = 0;
+			for (int i : order) {
+				 int word = block.word( i );
+				 int uses = block.uses( i );
+				 int start = cycle;
+				 for (int r = 0; r < ready.length; r++) {
+						if (( uses & ( 1 << r ) ) != 0) {
+							 start = Math.max( start, ready[r] );
+						}
+				 }
+				 cycle = start + CycleEstimator.issue( word );
+				 int defs = block.defs( i );
+				 for (int r = 0; r < ready.length; r++) {
+						if (( defs & ( 1 << r ) ) != 0) {
+							 ready[r] = start + CycleEstimator.latency( word );
+						}
+				 }
+				 finish = Math.max( finish, start + CycleEstimator.latency( word ) );
+			}
+			return Math.max( cycle, finish );
+	 }
+
+	 @Override
+	 public int optimize( Block block, int address, int liveOut )
+	 {
+			int before = 0;
+			int after = 0;
+			for (int from = 0; from < block.size(); from += WINDOW) {
+				 int to = Math.min( block.size(), from + WINDOW );
+				 int[] order = schedule( block, from, to );
+				 int original = cycles( block, from, to );
+				 int scheduled = cycles( block, order );
+				 before += original;
+				 if (scheduled < original) {
+						int[] permutation = new int[block.size()];
+						for (int i = 0; i < permutation.length; i++) {
+							 permutation[i] = i < from || i >= to ? i : order[i - from];
+						}
+						block.permute( permutation );
+						after += scheduled;
+				 } else {
+						after += original;
+				 }
+			}
+			if (after < before) {
+				 blocks++;
+				 saved += before - after;
+				 report.add( String.format(
+							 "SCHEDULE %d: %d instructions, %d cycles -> %d cycles (saved %d)",
+							 address, block.size(), before, after, before - after ) );
+			}
+			return before - after;
+	 }
+
+	 /**
+	  * Returns true if an instruction must stay after an earlier one.
+	  */
+	 private static boolean depends( Block block, int earlier, int later )
+	 {
+			int defs = block.defs( earlier );
+			int uses = block.uses( earlier );
+			if (( ( defs | uses | block.defs( later ) | block.uses( later ) )
+						& Block.PC ) != 0) {
+				 return true;
+			} else if (( defs & ( block.uses( later ) | block.defs( later ) ) ) != 0
+						|| ( uses & block.defs( later ) ) != 0) {
+				 return true;
+			}
+			byte first = block.kind( earlier );
+			byte second = block.kind( later );
+			boolean firstStores = first == Block.STORE
+						|| first == Block.STORE_MULTIPLE;
+			boolean secondStores = second == Block.STORE
+						|| second == Block.STORE_MULTIPLE;
+			return ( firstStores && isMemory( second ) )
+						|| ( secondStores && isMemory( first ) );
+	 }
+
+	 /**
+	  * Returns true if an instruction kind accesses memory.
+	  */
+	 private static boolean isMemory( byte kind )
+	 {
+			return kind >= Block.LOAD && kind <= Block.STORE_MULTIPLE;
+	 }
+
+	 /**
+	  * Returns the cycles an instruction must wait after an earlier one it
+	  * depends on.
+	  */
+	 private static int delay( Block block, int earlier, int later )
+	 {
+			int word = block.word( earlier );
+			if (( block.defs( earlier ) & block.uses( later ) ) != 0) {
+				 return CycleEstimator.latency( word );
+			}
+			return CycleEstimator.issue( word );
+	 }
+
+	 /**
+	  * Schedules a window of instructions.
+	  * 
+	  * @param Block block
+	  * @param int   from first instruction
+	  * @param int   to instruction after the last
+	  * @return int[] instructions in issue order
+	  */
+	 private static int[] schedule( Block block, int from, int to )
+	 {
+			int n = to - from;
+			long[] preds = new long[n];
+			int[] height = new int[n];
+			for (int j = 0; j < n; j++) {
+				 for (int i = 0; i < j; i++) {
+						if (depends( block, from + i, from + j )) {
+							 preds[j] |= 1L << i;
+						}
+				 }
+			}
+			// Longest latency path from each instruction to the end of the window
+			for (int i = n - 1; i >= 0; i--) {
+				 height[i] = CycleEstimator.latency( block.word( from + i ) );
+				 for (int j = i + 1; j < n; j++) {
+						if (( preds[j] & ( 1L << i ) ) != 0) {
+							 height[i] = Math.max( height[i],
+										 delay( block, from + i, from + j ) + height[j] );
+						}
+				 }
+			}
+
+			int[] order = new int[n];
+			int[] start = new int[n];
+			long done = 0;
+			int cycle = 0;
+			for (int k = 0; k < n; k++) {
+				 int best = -1;
+				 int bestReady = 0;
+				 for (int j = 0; j < n; j++) {
+						if (( done & ( 1L << j ) ) != 0 || ( preds[j] & ~done ) != 0) {
+							 continue;
+						}
+						int ready = cycle;
+						for (int i = 0; i < j; i++) {
+							 if (( preds[j] & ( 1L << i ) ) != 0) {
+									ready = Math.max( ready,
+												start[i] + delay( block, from + i, from + j ) );
+							 }
+						}
+						// Prefer instructions that issue without a stall, then the
+						// longest path, then the original order
+						if (best < 0
+									|| ( ready <= cycle && bestReady > cycle )
+									|| ( ( ready <= cycle ) == ( bestReady <= cycle )
+												&& ( height[j] > height[best]
+															|| ( height[j] == height[best]
+																		&& ready < bestReady ) ) )) {
+							 best = j;
+							 bestReady = ready;
+						}
+				 }
+				 start[best] = bestReady;
+				 cycle = bestReady + CycleEstimator.issue( block.word( from + best ) );
+				 done |= 1L << best;
+				 order[k] = from + best;
+			}
+			return order;
+	 }
+
+	 /**
+	  * Standard constructor
+	  */
+	 public Scheduler()
+	 {
+			super();
+	 }
+
+}
@@ -5,12 +5,48 @@
 package assembler.tests;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import assembler.Assembler;
+import assembler.Disassembler;
+import assembler.analysis.ControlFlowGraph;
+import assembler.analysis.DecodedImage;
+import assembler.analysis.DefUseIndex;
+import assembler.analysis.ImageDiff;
+import assembler.analysis.PatternSearch;
+import assembler.analysis.WordClassifier;
 import assembler.core.Instruction;
 import assembler.exceptions.InvalidCodeException;
+import assembler.interfaces.Optimizer;
+import assembler.io.DumpReader;
+import assembler.io.IntelHexReader;
+import assembler.io.IntelHexWriter;
+import assembler.io.ListingCache;
+import assembler.io.RecordReader;
+import assembler.io.RecordWriter;
+import assembler.io.Renderer;
+import assembler.io.SRecordReader;
+import assembler.io.SRecordWriter;
+import assembler.io.TableGenerator;
+import assembler.io.TableSet;
+import assembler.io.Tables;
+import assembler.io.TableWatcher;
+import assembler.io.ThumbRenderer;
+import assembler.optimizer.CycleEstimator;
+import assembler.optimizer.Peephole;
+import assembler.optimizer.Scheduler;
 import assembler.types.Bits;
 import assembler.types.Code;
+import assembler.types.Image;
 
 /**
  * Assembler Test Class
@@ -21,25 +57,164 @@ public class Tester
 
 	 static final String TAB_DELIMITER = "\t";
 
+	 /**
+	  * {@value #WARM_UP} Benchmark rounds run before timing
+	  */
+	 static final int WARM_UP = 3;
+
+	 /**
+	  * {@value #ROUNDS} Benchmark rounds timed by default
+	  */
+	 static final int ROUNDS = 20;
+
 	 /**
 	  * {@value #file} Test data file path
 	  */
 	 static String file = "assembler/io/tests.csv";
 
+	 /**
+	  * {@value #thumbFile} Thumb test data file path
+	  */
+	 static String thumbFile = "assembler/io/thumb_tests.csv";
+
+	 /**
+	  * {@value #LITERAL_SOURCE} Literal pool test program
+	  */
+	 static final String[] LITERAL_SOURCE = { "ldr r0, =0x12345678",
+				 "ldr r1, =255", "ldr r2, =-1", "ldr r3, =0xff000000",
+				 "ldreq r4, =0x12345678", "ldr r5, =0xdeadbeef", "add r0, r0, r1",
+				 ".ltorg", "ldr r6, =0xdeadbeef" };
+
+	 /**
+	  * {@value #LITERAL_WORDS} Expected words of the literal pool test program
+	  */
+	 static final int[] LITERAL_WORDS = { 0xe59f0014, 0xe3a010ff, 0xe3e02000,
+				 0xe3a034ff, 0x059f4004, 0xe59f5004, 0xe0800001, 0x12345678,
+				 0xdeadbeef, 0xe51f6004, 0xdeadbeef };
+
+	 /**
+	  * {@value #PEEPHOLE_SOURCE} Peephole optimizer test program
+	  */
+	 static final String[] PEEPHOLE_SOURCE = { "mov r1, r2, lsl #2",
+				 "add r0, r0, r1", "mov r3, r3", "add r4, r4, #0", "str r5, [sp, #8]",
+				 "ldr r6, [sp, #8]", "mov r8, #1", "mov r8, #2", "mov r1, r2, asr #1",
+				 "ands r0, r0, r1" };
+
+	 /**
+	  * {@value #PEEPHOLE_WORDS} Expected words of the optimized peephole test
+	  * program
+	  */
+	 static final int[] PEEPHOLE_WORDS = { 0xe0800102, 0xe58d5008, 0xe1a06005,
+				 0xe3a08002, 0xe1a010c2, 0xe0100001 };
+
+	 /**
+	  * {@value #SCHEDULE_SOURCE} Scheduler test program
+	  */
+	 static final String[] SCHEDULE_SOURCE = { "ldr r0, [r1]", "add r2, r0, #1",
+				 "mov r3, #5", "mul r5, r3, r4", "add r6, r5, r2", "mov r7, #1",
+				 "str r6, [r1, #4]", "ldr r8, [r1, #8]", "add r9, r8, r8",
+				 "mov r10, #3" };
+
+	 /**
+	  * {@value #SCHEDULE_WORDS} Expected words of the scheduled test program
+	  */
+	 static final int[] SCHEDULE_WORDS = { 0xe3a03005, 0xe0050493, 0xe5910000,
+				 0xe3a07001, 0xe3a0a003, 0xe2802001, 0xe0856002, 0xe5816004,
+				 0xe5918008, 0xe0889008 };
+
+	 /**
+	  * {@value #CYCLE_SOURCE} Cycle estimator test program
+	  */
+	 static final String[] CYCLE_SOURCE = { "mov r4, #5", "mul r5, r3, r4",
+				 "ldr r0, [r1]", "add r2, r0, r5", "mov r6, r2, lsl r4" };
+
+	 /**
+	  * {@value #CYCLE_TIMES} Expected issue cycles, result latency and stall
+	  * of every instruction of the cycle estimator test program, and the total
+	  */
+	 static final String[] CYCLE_TIMES = { "1/1/0", "1/3/0", "1/3/0", "1/1/2",
+				 "2/2/0", "8" };
+
+	 /**
+	  * {@value #CFG_WORDS} Control flow graph test image: conditional runs, a
+	  * loop, a call and returns
+	  */
+	 static final int[] CFG_WORDS = { 0xe3500000, 0x03a01001, 0x03a02002,
+				 0x13a01003, 0xe2811001, 0x1afffffa, 0xeb000001, 0xe1a0f00e,
+				 0xe3a00000, 0xe12fff1e };
+
+	 /**
+	  * {@value #CFG_BLOCKS} Expected blocks of the control flow graph test
+	  * image: first word, then the successor blocks with the edge kind
+	  * (fallthrough, branch, call)
+	  */
+	 static final String[] CFG_BLOCKS = { "0:1f", "1:2f", "3:3f", "4:4f",
+				 "5:1b5f", "6:8c6f", "7:", "8:8f", "9:" };
+
+	 /**
+	  * {@value #DEFUSE_QUERIES} Def/use index queries on the control flow graph
+	  * test image, with the expected answers
+	  */
+	 static final String[][] DEFUSE_QUERIES = {
+				 { "previous r1 4", "3" }, { "previous r0 0", "-1" },
+				 { "next r1 1", "3" }, { "next r2 2", "-1" },
+				 { "definitions r1 0 10", "1,3,4" }, { "uses r14 0 10", "7,9" },
+				 { "uses r1 0 4", "" }, { "touching 5 0 10", "0,2,8" },
+				 { "touching c000 5 8", "5,6,7" } };
+
+	 /**
+	  * {@value #PATTERN_QUERIES} Instruction templates searched for in the
+	  * control flow graph test image, with the expected matches
+	  */
+	 static final String[][] PATTERN_QUERIES = { { "mov ?, #?", "8" },
+				 { "mov? ?, #?", "1,2,3,8" }, { "mov? r1, #?", "1,3" },
+				 { "moveq ?, #?; movne ?, ?", "2" }, { "add ?, ?, #?", "4" },
+				 { "mov ?, ?", "7,8" }, { "cmp r0, #?", "0" },
+				 { "add r1, r1, #1; mov r0, #0", "" } };
+
 	 /**
 	  * {@value #records} Test Data
 	  */
 	 static List<Map<String, String>> records;
 
 	 /**
+	  * {@value #thumbRecords} Thumb Test Data
+	  */
+	 static List<Map<String, String>> thumbRecords;
+
+	 /**
+	  * Runs every test, or with -b [rounds] times assembly instead.
+	  * 
 	  * @param args
 	  */
 	 public static void main( String[] args )
 	 {
 			if (init()) {
+				 if (args.length > 0 && args[0].equals( "-b" )) {
+						benchmark( args.length > 1 ? Integer.parseInt( args[1] ) : ROUNDS );
+						return;
+				 }
 				 try {
 						assembly();
 						disassembly();
+						rendering();
+						decoded();
+						ingestion();
+						hexRecords();
+						thumb();
+						thumbAssembly();
+						literalPool();
+						peephole();
+						scheduler();
+						cycles();
+						controlFlow();
+						defUse();
+						patternSearch();
+						listingCache();
+						imageDiff();
+						classifier();
+						generatedTables();
+						tableReload();
 				 } catch (Exception e) {
 						e.printStackTrace( System.out );
 				 }
@@ -47,16 +222,81 @@ public class Tester
 
 	 }
 
+	 /**
+	  * Times assembling the command of every test record, sequentially and in
+	  * parallel, over a number of rounds after {@value #WARM_UP} rounds of
+	  * warm-up. Records that do not assemble are timed all the same.
+	  * 
+	  * @param int rounds
+	  */
+	 public static void benchmark( int rounds )
+	 {
+			List<String> commands = new ArrayList<>();
+			for (Map<String, String> test : records) {
+				 commands.add( test.get( "command" ).toUpperCase() );
+			}
+			System.out.println( "Start Assembly Benchmark" );
+			for (boolean parallel : new boolean[] { false, true }) {
+				 for (int round = 0; round < WARM_UP; round++) {
+						assemble( commands, parallel );
+				 }
+				 long start = System.nanoTime();
+				 for (int round = 0; round < rounds; round++) {
+						assemble( commands, parallel );
+				 }
+				 System.out.println( String.format( "%-10s %d commands: %.1f ms/round",
+							 parallel ? "parallel" : "sequential", commands.size(),
+							 ( System.nanoTime() - start ) / 1e6 / rounds ) );
+			}
+	 }
+
+	 /**
+	  * Assembles commands, on the calling thread or in parallel.
+	  */
+	 private static void assemble( List<String> commands, boolean parallel )
+	 {
+			( parallel ? commands.parallelStream() : commands.stream() )
+						.forEach( command -> {
+							 try {
+									new Instruction( new Code( command ) ).toHexString();
+							 } catch (Exception e) {
+									// timed all the same
+							 }
+						} );
+	 }
+
 	 /**
 	  * Test Initialization
 	  * 
 	  * @return Boolean success
 	  */
 	 public static Boolean init()
+	 {
+			try {
+				 records = load( file );
+				 thumbRecords = load( thumbFile );
+			} catch (FileNotFoundException e) {
+				 System.out.println( e );
+				 return false;
+			} catch (IOException e) {
+				 System.out.println( e );
+				 return false;
+			}
+			return true;
+	 }
+
+	 /**
+	  * Loads a tab delimited test data file
+	  * 
+	  * @param String path
+	  * @return List records
+	  * @throws IOException
+	  */
+	 static List<Map<String, String>> load( String path ) throws IOException
 	 {
 			InputStream in = Tester.class.getClassLoader()
-						.getResourceAsStream( file );
-			records = new ArrayList<>();
+						.getResourceAsStream( path );
+			List<Map<String, String>> entries = new ArrayList<>();
 			try (BufferedReader br = new BufferedReader(
 						new InputStreamReader( in ) )) {
 				 int i = 0;
@@ -72,18 +312,12 @@ public class Tester
 									entry.put( headings[j],
 												values[j].replaceAll( "\"", "" ).trim() );
 							 }
-							 records.add( entry );
+							 entries.add( entry );
 						}
 						i++;
 				 }
-			} catch (FileNotFoundException e) {
-				 System.out.println( e );
-				 return false;
-			} catch (IOException e) {
-				 System.out.println( e );
-				 return false;
 			}
-			return true;
+			return entries;
 	 }
 
 	 /**
@@ -127,7 +361,10 @@ public class Tester
 	 }
 
 	 /**
-	  * Runs disassembly tests
+	  * Runs disassembly tests. A negative data processing immediate has no
+	  * encoding of its own and is assembled as the complementary instruction
+	  * (CMP/CMN, ADC/SBC, AND/BIC, ...), so such a record passes if its word
+	  * disassembles to text that assembles back to the same word.
 	  * 
 	  * @return Boolean success
 	  * @throws InvalidCodeException
@@ -145,7 +382,10 @@ public class Tester
 				 try {
 						Instruction instr = new Instruction( input );
 						String result = instr.toString();
-						Boolean success = result.equalsIgnoreCase( command );
+						Boolean success = result.equalsIgnoreCase( command )
+									|| command.matches( "[A-Z]+ [^\\[]*#-.*" )
+												&& new Instruction( new Code( result ) ).toHexString()
+															.equalsIgnoreCase( code );
 						System.out.println( String.format(
 									"\ninput: %-20s output: %-30s expected: %-30s result: %s\n",
 									code, result, '"' + command + '"',
@@ -166,4 +406,1208 @@ public class Tester
 			return fail == 0;
 	 }
 
+	 /**
+	  * Runs renderer tests against the disassembled instruction text, then
+	  * lists and decodes branches, whose targets are rendered from their
+	  * addresses.
+	  * 
+	  * @return Boolean success
+	  * @throws InvalidCodeException
+	  */
+	 public static Boolean rendering() throws InvalidCodeException
+	 {
+			int total = 0;
+			int fail = 0;
+			Renderer renderer = new Renderer();
+			StringBuilder output = new StringBuilder( 64 );
+			ByteBuffer buffer = ByteBuffer.allocate( 64 );
+			System.out.println( "Start Rendering Test" );
+			for (Map<String, String> test : records) {
+				 String code = test.get( "hex" ).toUpperCase();
+				 total++;
+				 Bits input = new Bits( code, 16 );
+				 try {
+						String expected = new Instruction( input ).toString();
+						int word = input.getDecimal().intValue();
+						output.setLength( 0 );
+						buffer.clear();
+						renderer.render( word, output );
+						renderer.render( word, buffer ).flip();
+						String ascii = StandardCharsets.US_ASCII.decode( buffer )
+									.toString();
+						Boolean success = expected.contentEquals( output )
+									&& expected.equals( ascii );
+						System.out.println( String.format(
+									"\ninput: %-20s output: %-30s expected: %-30s result: %s\n",
+									code, output, '"' + expected + '"',
+									success ? "pass" : "fail" ) );
+						if (!success) {
+							 fail++;
+						}
+				 } catch (Exception e) {
+						System.out.println( String.format(
+									"\ninput: %-20s output: %-30s expected: %-30s result: fail\n",
+									code, "n/a", "n/a" ) );
+						fail++;
+						continue;
+				 }
+			}
+			int[] branches = { 0xea000002, 0xeb000000, 0x0afffffe, 0xe12fff1e,
+						0xe12fff33 };
+			String[] targets = { "B 00008010", "BL 0000800c", "BEQ 00008008",
+						"BX lr", "BLX r3" };
+			Image image = new Image( 0x8000, branches );
+			DecodedImage decoded = new DecodedImage( image );
+			StringBuilder listing = new StringBuilder();
+			try {
+				 Disassembler.disassemble( image, listing );
+			} catch (IOException e) {
+				 listing.append( e.getMessage() );
+			}
+			String[] lines = listing.toString().split( "\n" );
+			for (int i = 0; i < branches.length; i++) {
+				 total++;
+				 output.setLength( 0 );
+				 try {
+						renderer.render( decoded, i, output );
+				 } catch (IOException e) {
+						output.append( e.getMessage() );
+				 }
+				 String listed = lines[i].substring( lines[i].lastIndexOf( '\t' ) + 1 );
+				 Boolean success = targets[i].equals( listed )
+							 && targets[i].contentEquals( output );
+				 System.out.println( String.format(
+							 "\ninput: %-20s output: %-30s expected: %-30s result: %s\n",
+							 Integer.toHexString( branches[i] ), listed,
+							 '"' + targets[i] + '"', success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			System.out.println( String
+						.format( "Rendering Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Decodes the words of every test record into one columnar image, in
+	  * direct buffers and in a mapped file, and renders each from its columns.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean decoded() throws IOException
+	 {
+			int total = 0;
+			int fail = 0;
+			Renderer renderer = new Renderer();
+			StringBuilder output = new StringBuilder( 64 );
+			System.out.println( "Start Decoded Image Test" );
+			int[] words = new int[records.size()];
+			for (int i = 0; i < words.length; i++) {
+				 words[i] = Integer.parseUnsignedInt( records.get( i ).get( "hex" ), 16 );
+			}
+			DecodedImage image = new DecodedImage( new Image( 0, words ) );
+			DecodedImage mapped = new DecodedImage( new Image( 0, words ), null );
+			for (int i = 0; i < words.length; i++) {
+				 String code = records.get( i ).get( "hex" ).toUpperCase();
+				 String expected;
+				 total++;
+				 try {
+						expected = new Instruction( new Bits( code, 16 ) ).toString();
+						output.setLength( 0 );
+						renderer.render( image, i, output );
+						if (!renderer.render( mapped, i, new StringBuilder() ).toString()
+									.contentEquals( output )) {
+							 output.append( " (mapped differs)" );
+						}
+				 } catch (Exception e) {
+						expected = "n/a";
+						output.setLength( 0 );
+				 }
+				 Boolean success = expected.contentEquals( output );
+				 System.out.println( String.format(
+							 "\ninput: %-20s output: %-30s expected: %-30s result: %s\n",
+							 code, output, '"' + expected + '"', success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			System.out.println( String.format(
+						"Decoded Image Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Runs text dump ingestion tests. Every word is written once as a 0x
+	  * prefixed hex token, once as a binary token and once as little-endian
+	  * bytes behind an address, and the parsed images are compared with the
+	  * expected words. Hex words starting with 0b must not read as binary.
+	  * 
+	  * @return Boolean success
+	  * @throws InvalidCodeException
+	  */
+	 public static Boolean ingestion() throws InvalidCodeException
+	 {
+			int total = 0;
+			int fail = 0;
+			StringBuilder words = new StringBuilder();
+			StringBuilder bytes = new StringBuilder();
+			System.out.println( "Start Ingestion Test" );
+			for (Map<String, String> test : records) {
+				 Bits input = new Bits( test.get( "hex" ).toUpperCase(), 16 );
+				 int word = input.getDecimal().intValue();
+				 words.append( "0x" ).append( input.toHexString() ).append( ", " )
+							 .append( input.toBinaryString() ).append( "\n" );
+				 bytes.append( String.format( "%08x: ", total * 4 ) );
+				 for (int i = 0; i < 4; i++) {
+						bytes.append( String.format( "%02x", ( word >>> ( i * 8 ) ) & 0xff ) );
+				 }
+				 bytes.append( "  ....\n" );
+				 total++;
+			}
+			Image wordImage = DumpReader.parse( ByteBuffer.wrap(
+						words.toString().getBytes( StandardCharsets.US_ASCII ) ), false,
+						false );
+			Image byteImage = DumpReader.parse( ByteBuffer.wrap(
+						bytes.toString().getBytes( StandardCharsets.US_ASCII ) ), true,
+						false );
+			for (int i = 0; i < total; i++) {
+				 String code = records.get( i ).get( "hex" ).toUpperCase();
+				 int expected = new Bits( code, 16 ).getDecimal().intValue();
+				 Boolean success = wordImage.size() == total * 2
+							 && byteImage.size() == total
+							 && wordImage.get( i * 2 ) == expected
+							 && wordImage.get( i * 2 + 1 ) == expected
+							 && byteImage.get( i ) == expected;
+				 System.out.println( String.format(
+							 "\ninput: %-20s result: %s\n", code,
+							 success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			String[] tokens = { "0b000001", "0bfffffe", "0b101" };
+			int[] values = { 0x0b000001, 0x0bfffffe, 5 };
+			for (int k = 0; k < tokens.length; k++) {
+				 String result;
+				 try {
+						Image image = DumpReader.parse( ByteBuffer.wrap(
+									tokens[k].getBytes( StandardCharsets.US_ASCII ) ), false,
+									false );
+						result = String.format( "%08x", image.get( 0 ) );
+				 } catch (InvalidCodeException e) {
+						result = e.getMessage();
+				 }
+				 Boolean success = result.equals( String.format( "%08x", values[k] ) );
+				 total++;
+				 System.out.println( String.format(
+							 "\ninput: %-20s output: %-30s result: %s\n", tokens[k], result,
+							 success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			System.out.println( String
+						.format( "Ingestion Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Runs hex record tests. The words of every test record are written as
+	  * Intel HEX and as S-records and read back, then single records check the
+	  * checksums, the extended linear address records around a 64 KiB boundary,
+	  * the S6 count of 64K records, the three S-record address widths and the
+	  * records that must be rejected.
+	  * 
+	  * @return Boolean success
+	  * @throws InvalidCodeException
+	  */
+	 public static Boolean hexRecords() throws InvalidCodeException
+	 {
+			int total = 0;
+			int fail = 0;
+			System.out.println( "Start Hex Record Test" );
+			int[] words = new int[records.size()];
+			for (int i = 0; i < words.length; i++) {
+				 words[i] = new Bits( records.get( i ).get( "hex" ).toUpperCase(), 16 )
+							 .getDecimal().intValue();
+			}
+			int[] one = { 0xe3a00001 };
+			String[] names = { "Intel HEX round trip", "S-record round trip",
+						"Intel HEX checksum", "S-record checksum", "64 KiB boundary",
+						"S6 record count", "S1 address", "S2 address", "S3 address",
+						"bad checksum", "unknown Intel HEX type", "unknown S-record type",
+						"sparse image", "short extended address" };
+			String[] input = { null, null, null, null, null, null,
+						"S10710000100A0E364", "S2081000000100A0E363",
+						"S309100000000100A0E362", ":040000000100A0E379", ":00000006FA",
+						"S4030000FC", ":040000000100A0E378\n:020000040800F2\n"
+									+ ":040000000100A0E378", ":0100000402F9" };
+			String[] expected = { words.length + " words at 00008000",
+						words.length + " words at 00008000", ":040000000100A0E378",
+						"S309000000000100A0E372",
+						":020000040000FA :020000040001F9 8 words at 0000fff0",
+						"S604010000FA 65536 records", "e3a00001 at 00001000",
+						"e3a00001 at 00100000",
+						"e3a00001 at 10000000", "Line 1: checksum mismatch.",
+						"Line 1: unknown record type 6.", "Line 1: invalid S-record type.",
+						"Line 3: record at 08000000 is more than 16777216 bytes from the "
+									+ "image at 00000000.",
+						"Line 1: record type 4 needs 2 data bytes." };
+			for (int k = 0; k < names.length; k++) {
+				 String result;
+				 try {
+						switch (k) {
+						case 0:
+						case 1:
+							 Image image = readRecords( k == 0,
+										 writeRecords( k == 0, 0x8000, words ) );
+							 result = Arrays.equals( image.getWords().array(), words )
+										 ? String.format( "%d words at %08x", image.size(),
+													 image.getBase() )
+										 : "words differ";
+							 break;
+						case 2:
+						case 3:
+							 result = writeRecords( k == 2, 0, one ).split( "\r?\n" )[1];
+							 break;
+						case 4:
+							 int[] boundary = Arrays.copyOf( words, 8 );
+							 String text = writeRecords( true, 0xfff0, boundary );
+							 StringBuilder extended = new StringBuilder();
+							 for (String line : text.split( "\r?\n" )) {
+									if (line.startsWith( ":02000004" )) {
+										 extended.append( line ).append( " " );
+									}
+							 }
+							 image = readRecords( true, text );
+							 result = extended + ( Arrays.equals( image.getWords().array(),
+										 boundary ) ? String.format( "%d words at %08x",
+													 image.size(), image.getBase() ) : "words differ" );
+							 break;
+						case 5:
+							 // One record of 16 bytes for every 4 words
+							 int[] many = new int[0x10000 * 4];
+							 String[] lines = writeRecords( false, 0, many ).split( "\r?\n" );
+							 image = readRecords( false, String.join( "\n", lines ) );
+							 result = lines[lines.length - 2] + " "
+										 + image.size() / 4 + " records";
+							 break;
+						default:
+							 image = readRecords( input[k].startsWith( ":" ), input[k] );
+							 result = String.format( "%08x at %08x", image.get( 0 ),
+										 image.getBase() );
+						}
+				 } catch (IOException | InvalidCodeException e) {
+						result = e.getMessage();
+				 }
+				 Boolean success = result.equals( expected[k] );
+				 total++;
+				 System.out.println( String.format(
+							 "\ninput: %-50s output: %-30s expected: %-20s result: %s\n",
+							 names[k], result, '"' + expected[k] + '"',
+							 success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			System.out.println( String.format(
+						"Hex Record Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Writes words at a base address as Intel HEX or S-record text.
+	  */
+	 private static String writeRecords( Boolean intel, int base, int[] words )
+				 throws IOException
+	 {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			WritableByteChannel channel = Channels.newChannel( bytes );
+			try (RecordWriter writer = intel ? new IntelHexWriter( channel, base )
+						: new SRecordWriter( channel, base )) {
+				 writer.write( words, 0, words.length );
+			}
+			return new String( bytes.toByteArray(), StandardCharsets.US_ASCII );
+	 }
+
+	 /**
+	  * Reads Intel HEX or S-record text into an image.
+	  */
+	 private static Image readRecords( Boolean intel, String text )
+				 throws IOException, InvalidCodeException
+	 {
+			try (RecordReader reader = intel ? new IntelHexReader( null )
+						: new SRecordReader( null )) {
+				 return reader.read(
+							 ByteBuffer.wrap( text.getBytes( StandardCharsets.US_ASCII ) ) );
+			}
+	 }
+
+	 /**
+	  * Runs Thumb renderer tests. Every entry is one halfword, or a BL/BLX
+	  * pair, located at address 0; entries with no Thumb form are skipped.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean thumb()
+	 {
+			int total = 0;
+			int fail = 0;
+			ThumbRenderer renderer = new ThumbRenderer();
+			StringBuilder output = new StringBuilder( 64 );
+			System.out.println( "Start Thumb Test" );
+			for (Map<String, String> test : thumbRecords) {
+				 String code = test.get( "hex" );
+				 String expected = test.get( "command" );
+				 if (code.equals( "none" )) {
+						continue;
+				 }
+				 total++;
+				 int hw = Integer.parseInt( code.substring( 0, 4 ), 16 );
+				 int next = code.length() > 4
+							 ? Integer.parseInt( code.substring( 4 ), 16 )
+							 : 0;
+				 output.setLength( 0 );
+				 try {
+						renderer.render( hw, next, 0, output );
+				 } catch (InvalidCodeException e) {
+						output.append( "n/a" );
+				 }
+				 Boolean success = expected.contentEquals( output );
+				 System.out.println( String.format(
+							 "\ninput: %-20s output: %-30s expected: %-30s result: %s\n",
+							 code, output, '"' + expected + '"',
+							 success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			System.out.println( String
+						.format( "Thumb Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Runs Thumb assembly tests on the entries the shared parser front end
+	  * accepts. Entries with no Thumb form expect "none".
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean thumbAssembly()
+	 {
+			int total = 0;
+			int fail = 0;
+			System.out.println( "Start Thumb Assembly Test" );
+			for (Map<String, String> test : thumbRecords) {
+				 if (!test.get( "assembly" ).equals( "1" )) {
+						continue;
+				 }
+				 String command = test.get( "command" ).toUpperCase();
+				 String code = test.get( "hex" );
+				 String result = "n/a";
+				 total++;
+				 try {
+						Instruction instr = new Instruction( new Code( command ) );
+						result = String.format( "%04x", instr.toThumb() );
+				 } catch (InvalidCodeException e) {
+						// No Thumb form, expected as "none"
+						result = "none";
+				 } catch (Exception e) {
+						// Reported as a failure below
+				 }
+				 Boolean success = result.equals( code );
+				 System.out.println( String.format(
+							 "\ninput: %-50s output: %-30s expected: %-20s result: %s\n",
+							 command, result, '"' + code + '"',
+							 success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			System.out.println( String.format(
+						"Thumb Assembly Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Assembles the literal pool test program: MOV/MVN for encodable values,
+	  * shared pool entries and a pool flushed at .ltorg.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean literalPool()
+	 {
+			System.out.println( "Start Literal Pool Test" );
+			return program( "Literal Pool", LITERAL_SOURCE, null, LITERAL_WORDS );
+	 }
+
+	 /**
+	  * Assembles the peephole test program with every rule enabled: a folded
+	  * shift, removed no-ops, a forwarded store, a dead move and a shift that
+	  * must stay because ANDS sets the carry from it.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean peephole()
+	 {
+			System.out.println( "Start Peephole Test" );
+			return program( "Peephole", PEEPHOLE_SOURCE,
+						Arrays.<Optimizer> asList( new Peephole() ), PEEPHOLE_WORDS );
+	 }
+
+	 /**
+	  * Assembles the scheduler test program: independent instructions are
+	  * moved between a load or multiply and the use of its result, the load
+	  * after the store keeps its place.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean scheduler()
+	 {
+			System.out.println( "Start Scheduler Test" );
+			return program( "Scheduler", SCHEDULE_SOURCE,
+						Arrays.<Optimizer> asList( new Scheduler() ), SCHEDULE_WORDS );
+	 }
+
+	 /**
+	  * Estimates the cycle estimator test program: a multiply terminated
+	  * early by a known multiplier, a load-use interlock and a register
+	  * specified shift.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean cycles()
+	 {
+			int total = 0;
+			int fail = 0;
+			String[] results = new String[CYCLE_TIMES.length];
+			System.out.println( "Start Cycle Estimator Test" );
+			try {
+				 CycleEstimator estimator = new CycleEstimator( 0,
+							 Assembler.assemble( new BufferedReader( new StringReader(
+										 String.join( "\n", CYCLE_SOURCE ) ) ) ) );
+				 for (int i = 0; i < CYCLE_SOURCE.length; i++) {
+						results[i] = String.format( "%d/%d/%d", estimator.getIssue( i ),
+									estimator.getLatency( i ), estimator.getStall( i ) );
+				 }
+				 results[CYCLE_SOURCE.length] = Integer
+							 .toString( estimator.getTotal() );
+			} catch (Exception e) {
+				 System.out.println( e );
+			}
+			for (int i = 0; i < CYCLE_TIMES.length; i++) {
+				 String input = i < CYCLE_SOURCE.length ? CYCLE_SOURCE[i] : "total";
+				 Boolean success = CYCLE_TIMES[i].equals( results[i] );
+				 total++;
+				 System.out.println( String.format(
+							 "\ninput: %-50s output: %-30s expected: %-20s result: %s\n",
+							 input, results[i], '"' + CYCLE_TIMES[i] + '"',
+							 success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			System.out.println( String.format(
+						"Cycle Estimator Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Builds the control flow graph of the test image and compares its blocks
+	  * and edges.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean controlFlow()
+	 {
+			int total = 0;
+			int fail = 0;
+			System.out.println( "Start Control Flow Test" );
+			ControlFlowGraph cfg = new ControlFlowGraph( new Image( 0, CFG_WORDS ) );
+			for (int b = 0; b < Math.max( cfg.getBlockCount(), CFG_BLOCKS.length ); b++) {
+				 StringBuilder result = new StringBuilder();
+				 if (b < cfg.getBlockCount()) {
+						result.append( cfg.getStart( b ) ).append( ':' );
+						for (int e = cfg.getEdgeStart( b ); e < cfg.getEdgeEnd( b ); e++) {
+							 result.append( cfg.getTarget( e ) ).append(
+										 ControlFlowGraph.kindName( cfg.getKind( e ) ).charAt( 0 ) );
+						}
+				 }
+				 String code = b < CFG_BLOCKS.length ? CFG_BLOCKS[b] : "n/a";
+				 Boolean success = result.toString().equals( code );
+				 total++;
+				 System.out.println( String.format(
+							 "\ninput: %-50s output: %-30s expected: %-20s result: %s\n",
+							 "block " + b, result, '"' + code + '"',
+							 success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			System.out.println( String.format(
+						"Control Flow Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Indexes the control flow graph test image and compares the answers of
+	  * def/use queries.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean defUse()
+	 {
+			int total = 0;
+			int fail = 0;
+			System.out.println( "Start Def/Use Test" );
+			DefUseIndex index = new DefUseIndex( new Image( 0, CFG_WORDS ) );
+			for (String[] query : DEFUSE_QUERIES) {
+				 String[] args = query[0].split( " " );
+				 int register = args[1].startsWith( "r" )
+							 ? Integer.parseInt( args[1].substring( 1 ) )
+							 : Integer.parseInt( args[1], 16 );
+				 int from = Integer.parseInt( args[2] );
+				 int to = args.length > 3 ? Integer.parseInt( args[3] ) : 0;
+				 String result;
+				 switch (args[0]) {
+				 case "previous":
+						result = Integer.toString( index.previousDefinition( register, from ) );
+						break;
+				 case "next":
+						result = Integer.toString( index.nextDefinition( register, from ) );
+						break;
+				 case "definitions":
+						result = join( index.definitions( register, from, to ) );
+						break;
+				 case "uses":
+						result = join( index.uses( register, from, to ) );
+						break;
+				 default:
+						result = join( index.touching( register, from, to ) );
+				 }
+				 Boolean success = result.equals( query[1] );
+				 total++;
+				 System.out.println( String.format(
+							 "\ninput: %-50s output: %-30s expected: %-20s result: %s\n",
+							 query[0], result, '"' + query[1] + '"',
+							 success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			System.out.println( String.format( "Def/Use Test: Total(%d)\tFail(%d)",
+						total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Compiles instruction templates and compares their matches in the
+	  * control flow graph test image.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean patternSearch()
+	 {
+			int total = 0;
+			int fail = 0;
+			System.out.println( "Start Pattern Search Test" );
+			Image image = new Image( 0, CFG_WORDS );
+			for (String[] query : PATTERN_QUERIES) {
+				 String result;
+				 try {
+						result = join( new PatternSearch( query[0] ).find( image ) );
+				 } catch (InvalidCodeException e) {
+						result = e.getMessage();
+				 }
+				 Boolean success = result.equals( query[1] );
+				 total++;
+				 System.out.println( String.format(
+							 "\ninput: %-50s output: %-30s expected: %-20s result: %s\n",
+							 query[0], result, '"' + query[1] + '"',
+							 success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			System.out.println( String.format(
+						"Pattern Search Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Lists an image through a listing cache in a temporary directory, again
+	  * from a second cache on the same directory, after changing one word and
+	  * with no room for entries, and compares the cache hits and misses and
+	  * the listings with the uncached listing.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean listingCache()
+	 {
+			int total = 0;
+			int fail = 0;
+			System.out.println( "Start Listing Cache Test" );
+			int[] words = new int[ListingCache.CHUNK * 2 + 10];
+			for (int i = 0; i < words.length; i++) {
+				 words[i] = CFG_WORDS[i % CFG_WORDS.length];
+			}
+			String[] expected = { "0/3", "3/0", "2/1", "0/3" };
+			String[] names = { "first run", "second run", "one word changed",
+						"bounded to nothing" };
+			try {
+				 Path directory = Files.createTempDirectory( "listing" );
+				 ListingCache cache = null;
+				 for (int run = 0; run < expected.length; run++) {
+						if (run == 2) {
+							 words[ListingCache.CHUNK + 5] = 0xe3a00000;
+						}
+						Image image = new Image( 0x8000, words );
+						if (run < 3) {
+							 cache = new ListingCache( directory );
+						} else {
+							 cache = new ListingCache( directory, 0 );
+						}
+						StringBuilder cached = new StringBuilder();
+						StringBuilder listing = new StringBuilder();
+						cache.list( image, cached );
+						Disassembler.disassemble( image, listing );
+						String result = cache.getHits() + "/" + cache.getMisses();
+						if (!cached.toString().equals( listing.toString() )) {
+							 result += " (listing differs)";
+						} else if (run == 3 && cache.getCount() > 0) {
+							 result += " (" + cache.getCount() + " entries)";
+						}
+						Boolean success = result.equals( expected[run] );
+						total++;
+						System.out.println( String.format(
+									"\ninput: %-50s output: %-30s expected: %-20s result: %s\n",
+									names[run], result, '"' + expected[run] + '"',
+									success ? "pass" : "fail" ) );
+						if (!success) {
+							 fail++;
+						}
+				 }
+				 cache.clear();
+				 Files.delete( directory );
+			} catch (IOException | InvalidCodeException e) {
+				 e.printStackTrace( System.out );
+				 fail++;
+			}
+			System.out.println( String.format(
+						"Listing Cache Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Diffs a pseudo-random image against copies with words changed, inserted
+	  * and deleted, and compares the run headers.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean imageDiff()
+	 {
+			int total = 0;
+			int fail = 0;
+			System.out.println( "Start Image Diff Test" );
+			int[] words = new int[200];
+			int seed = 1;
+			for (int i = 0; i < words.length; i++) {
+				 seed = seed * 1103515245 + 12345;
+				 words[i] = 0xe0000000 | ( seed >>> 4 );
+			}
+			int[] changed = words.clone();
+			changed[50] = 0xe3a00000;
+			int[] twice = splice( changed, 10, 1, 1 );
+			String[] names = { "identical", "one word changed", "3 words inserted",
+						"2 words deleted", "2 words replaced by 3",
+						"changed, inserted and deleted" };
+			int[][] after = { words, changed, splice( words, 100, 0, 3 ),
+						splice( words, 30, 2, 0 ), splice( words, 120, 2, 3 ),
+						splice( splice( twice, 60, 0, 5 ), 155, 4, 0 ) };
+			String[] expected = { "", "@@ -000080c8,1 +000080c8,1 @@ changed",
+						"@@ -00008190,0 +00008190,3 @@ inserted",
+						"@@ -00008078,2 +00008078,0 @@ deleted",
+						"@@ -000081e0,2 +000081e0,2 @@ changed "
+									+ "@@ -000081e8,0 +000081e8,1 @@ inserted",
+						"@@ -00008028,1 +00008028,1 @@ changed "
+									+ "@@ -000080c8,1 +000080c8,1 @@ changed "
+									+ "@@ -000080f0,0 +000080f0,5 @@ inserted "
+									+ "@@ -00008258,4 +0000826c,0 @@ deleted" };
+			for (int k = 0; k < after.length; k++) {
+				 String result;
+				 try {
+						StringBuilder text = new StringBuilder();
+						new ImageDiff( new Image( 0x8000, words ),
+									new Image( 0x8000, after[k] ) ).diff( text );
+						StringBuilder headers = new StringBuilder();
+						for (String line : text.toString().split( "\n" )) {
+							 if (line.startsWith( "@@" )) {
+									headers.append( headers.length() > 0 ? " " : "" ).append( line );
+							 }
+						}
+						result = headers.toString();
+				 } catch (IOException | InvalidCodeException e) {
+						result = e.getMessage();
+				 }
+				 Boolean success = result.equals( expected[k] );
+				 total++;
+				 System.out.println( String.format(
+							 "\ninput: %-50s output: %-30s expected: %-20s result: %s\n",
+							 names[k], result, '"' + expected[k] + '"',
+							 success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			System.out.println( String.format(
+						"Image Diff Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Classifies one word of every family, then the words of every test
+	  * record in parallel and by range, which must bucket them alike.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean classifier()
+	 {
+			int total = 0;
+			int fail = 0;
+			System.out.println( "Start Classifier Test" );
+			String[] names = { "ADD r0, r1, #1", "ADD r0, r1, r2", "MUL r0, r1, r2",
+						"LDR r0, [r1, #4]", "LDRH r0, [r1, #4]", "LDMIA sp!, {pc}", "B .",
+						"undefined", "test records" };
+			int[] words = { 0xe2810001, 0xe0810002, 0xe0000291, 0xe5910004,
+						0xe1d100b4, 0xe8bd8000, 0xeafffffe, 0xe7f000f0 };
+			int[] records = new int[Tester.records.size()];
+			for (int i = 0; i < records.length; i++) {
+				 records[i] = Integer
+							 .parseUnsignedInt( Tester.records.get( i ).get( "hex" ), 16 );
+			}
+			for (int k = 0; k < names.length; k++) {
+				 String result;
+				 String expected;
+				 if (k < words.length) {
+						result = String.valueOf( WordClassifier.classify( words[k] ) );
+						expected = String.valueOf( k );
+				 } else {
+						Image image = new Image( 0, records );
+						WordClassifier parallel = new WordClassifier( image );
+						WordClassifier range = new WordClassifier( image, 0, records.length );
+						int previous = -1;
+						int matched = 0;
+						for (byte f = 0; f < WordClassifier.FAMILIES; f++) {
+							 for (int p = parallel.start( f ); p < parallel.end( f ); p++) {
+									int index = parallel.get( p );
+									if (index == range.get( p ) && index > previous
+												&& WordClassifier.classify( records[index] ) == f) {
+										 matched++;
+									}
+									previous = index;
+							 }
+							 previous = -1;
+						}
+						result = String.valueOf( matched );
+						expected = String.valueOf( records.length );
+				 }
+				 Boolean success = result.equals( expected );
+				 total++;
+				 System.out.println( String.format(
+							 "\ninput: %-50s output: %-30s expected: %-20s result: %s\n",
+							 names[k], result, '"' + expected + '"',
+							 success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			System.out.println( String.format(
+						"Classifier Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Checks every valid test word against the generated tables: the
+	  * generated decoder must name the mnemonic of its command, the generated
+	  * encoder of that mnemonic must encode it back from its fields, and the
+	  * compiled tables must decode, encode and render it like the tables the
+	  * generator reads from the schema.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean generatedTables()
+	 {
+			int total = 0;
+			int fail = 0;
+			System.out.println( "Start Generated Tables Test" );
+			String[] complements = { "ADD", "SUB", "ADC", "SBC", "AND", "BIC",
+						"MOV", "MVN", "CMP", "CMN" };
+			TableSet tables = TableSet.compiled();
+			TableSet schema;
+			try {
+				 TableGenerator generator = new TableGenerator();
+				 generator.load( Collections.emptyList() );
+				 schema = generator.tables();
+			} catch (IOException | SQLException e) {
+				 e.printStackTrace( System.out );
+				 return false;
+			}
+			Renderer compiled = new Renderer( tables );
+			Renderer generated = new Renderer( schema );
+			StringBuilder expected = new StringBuilder( 64 );
+			StringBuilder output = new StringBuilder( 64 );
+			for (Map<String, String> test : records) {
+				 int word = Integer.parseUnsignedInt( test.get( "hex" ), 16 );
+				 if (!Renderer.isValid( tables, word )) {
+						continue;
+				 }
+				 // PUSH and POP are STMDB and LDMIA, shifts are MOV
+				 String name = test.get( "command" ).trim().split( "\\s+" )[0]
+							 .toUpperCase().replaceFirst( "^PUSH", "STMDB" )
+							 .replaceFirst( "^POP", "LDMIA" )
+							 .replaceFirst( "^(LSL|LSR|ASR|ROR|RRX)", "MOV" );
+				 // Negative immediates are assembled with the complementary operation
+				 if (test.get( "command" ).contains( "#-" )) {
+						for (int k = 0; k < complements.length; k++) {
+							 if (name.startsWith( complements[k] )) {
+									name = complements[k ^ 1] + name.substring( 3 );
+									break;
+							 }
+						}
+				 }
+				 String instr = Tables.mnemonic( word );
+				 boolean decoded = instr != null
+							 && instr.equals( schema.mnemonic( word ) )
+							 && name.startsWith( instr )
+							 && name.substring( instr.length() ).matches(
+										 "S?(EQ|NE|CS|CC|MI|PL|VS|VC|HI|LS|GE|LT|GT|LE)?" );
+				 int encoded = encode( tables, instr, word );
+				 boolean reencoded = encode( schema, instr, word ) == encoded;
+				 expected.setLength( 0 );
+				 output.setLength( 0 );
+				 try {
+						compiled.render( word, expected );
+				 } catch (InvalidCodeException e) {
+						expected.setLength( 0 );
+						expected.append( "<undefined>" );
+				 }
+				 try {
+						generated.render( word, output );
+				 } catch (InvalidCodeException e) {
+						output.setLength( 0 );
+						output.append( "<undefined>" );
+				 }
+				 Boolean success = decoded && encoded == word && reencoded
+							 && expected.toString().contentEquals( output );
+				 total++;
+				 System.out.println( String.format(
+							 "\ninput: %-20s output: %-30s expected: %-30s result: %s\n",
+							 test.get( "hex" ),
+							 instr + String.format( " %08x ", encoded ) + output,
+							 '"' + name + String.format( " %08x ", word ) + expected + '"',
+							 success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			// Every op type, op code, L/S bit and bits 4 to 7 decode alike
+			int differ = 0;
+			for (int fields = 0; fields < 0x1000; fields++) {
+				 int word = 0xe0000000 | ( fields >>> 4 ) << 20 | ( fields & 0xf ) << 4;
+				 if (!Objects.equals( Tables.mnemonic( word ),
+							 schema.mnemonic( word ) )) {
+						differ++;
+				 }
+			}
+			total++;
+			System.out.println( String.format(
+						"\ninput: %-20s output: %-30s expected: %-30s result: %s\n",
+						"all op fields", differ + " differ", "\"0 differ\"",
+						differ == 0 ? "pass" : "fail" ) );
+			if (differ != 0) {
+				 fail++;
+			}
+			System.out.println( String.format(
+						"Generated Tables Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Encodes a word back from its fields with the encoder of its mnemonic in
+	  * a set of tables.
+	  * 
+	  * @param TableSet tables
+	  * @param String   instr mnemonic of the word
+	  * @param int      word
+	  * @return int encoded word, the complement of the word if it does not
+	  *         encode
+	  */
+	 private static int encode( TableSet tables, String instr, int word )
+	 {
+			int cond = word >>> 28;
+			int opCode = ( word >>> 21 ) & 0xf;
+			int ls = ( word >>> 20 ) & 1;
+			int rn = ( word >>> 16 ) & 0xf;
+			int rd = ( word >>> 12 ) & 0xf;
+			try {
+				 if (instr == null) {
+						throw new InvalidCodeException();
+				 }
+				 switch (WordClassifier.classify( tables, word )) {
+				 case WordClassifier.DATA_IMMEDIATE:
+				 case WordClassifier.DATA_REGISTER:
+						return tables.encodeData( instr, cond, ls, rd, rn, word & 0xfff,
+									( word & 0x02000000 ) != 0 );
+				 case WordClassifier.TRANSFER:
+						return tables.encodeTransfer( instr, cond, tables.getMode( word ),
+									rd, rn, word & 0xfff, ( word & 0x02000000 ) == 0 );
+				 case WordClassifier.HALFWORD:
+						boolean immediate = ( opCode & 2 ) != 0;
+						return tables.encodeTransfer( instr, cond, tables.getMode( word ),
+									rd, rn, immediate ? ( ( word >>> 4 ) & 0xf0 ) | ( word & 0xf )
+												: word & 0xf,
+									immediate );
+				 case WordClassifier.BLOCK:
+						return tables.encodeBlock( instr.substring( 0, 3 ), cond,
+									instr.substring( 3 ), ( opCode & 1 ) != 0, rn,
+									word & 0xffff );
+				 default:
+						return "MUL".equals( instr ) ? word : ~word;
+				 }
+			} catch (InvalidCodeException e) {
+				 return ~word;
+			}
+	 }
+
+	 /**
+	  * Reloads the tables from the schema alone and with definitions renaming
+	  * ADD, through the API, under concurrent rendering and through a watcher
+	  * on the definitions file, and checks what a word renders as, what
+	  * instructions assemble and decode to with the current and with pinned
+	  * tables, that the tables in use are only replaced by newer sets and that
+	  * definitions that fail to load leave them in place. The tables of the
+	  * schema are published again at the end.
+	  * 
+	  * @return Boolean success
+	  */
+	 public static Boolean tableReload()
+	 {
+			int total = 0;
+			int fail = 0;
+			System.out.println( "Start Table Reload Test" );
+			int word = 0xe2810001;
+			String[] names = { "schema only", "definitions", "pinned renderer",
+						"older set", "concurrent readers", "file change", "failed load",
+						"assemble", "decode", "pinned instruction" };
+			String[] expected = { "same tables", "PLUS r0, r1, #1", "ADD r0, r1, #1",
+						"kept", "0 torn", "SUM r0, r1, #1", "tables kept", "e2810001",
+						"SUM r0, r1, #1 / ADD r0, r1, #1 / SUM r0, r1, #1", "e2810001" };
+			TableSet compiled = TableSet.current();
+			try {
+				 Path directory = Files.createTempDirectory( "tables" );
+				 Path definitions = directory.resolve( "rename.sql" );
+				 Files.write( definitions, ( "UPDATE op_code SET instr = 'PLUS' "
+							 + "WHERE instr = 'ADD' AND load_store = -1;\n" )
+										 .getBytes( StandardCharsets.UTF_8 ) );
+				 TableWatcher watcher = new TableWatcher(
+							 Collections.singletonList( definitions ) );
+				 for (int k = 0; k < names.length; k++) {
+						String result;
+						switch (k) {
+						case 0:
+							 TableSet schema = TableSet.reload( Collections.emptyList() );
+							 result = schema.getHash() == compiled.getHash()
+										 && schema.getVersion() > compiled.getVersion()
+													 ? "same tables" : schema.toString();
+							 break;
+						case 1:
+							 watcher.reload();
+							 result = new Renderer().render( word, new StringBuilder() )
+										 .toString();
+							 break;
+						case 2:
+							 result = new Renderer( compiled )
+										 .render( word, new StringBuilder() ).toString();
+							 break;
+						case 3:
+							 TableSet current = TableSet.current();
+							 result = TableSet.publish( compiled ) == current ? "kept"
+										 : "replaced";
+							 break;
+						case 4:
+							 AtomicBoolean done = new AtomicBoolean();
+							 AtomicInteger torn = new AtomicInteger();
+							 Thread[] readers = new Thread[4];
+							 for (int t = 0; t < readers.length; t++) {
+									readers[t] = new Thread( () -> {
+										 Renderer renderer = new Renderer();
+										 StringBuilder text = new StringBuilder();
+										 while (!done.get()) {
+												text.setLength( 0 );
+												try {
+													 renderer.render( word, text );
+												} catch (InvalidCodeException e) {
+													 text.append( e );
+												}
+												if (!text.toString().equals( "ADD r0, r1, #1" )
+															&& !text.toString().equals( "PLUS r0, r1, #1" )) {
+													 torn.incrementAndGet();
+												}
+										 }
+									} );
+									readers[t].start();
+							 }
+							 for (int r = 0; r < 10; r++) {
+									if (r % 2 == 0) {
+										 TableSet.reload( Collections.emptyList() );
+									} else {
+										 watcher.reload();
+									}
+							 }
+							 done.set( true );
+							 for (Thread reader : readers) {
+									reader.join();
+							 }
+							 result = torn.get() + " torn";
+							 break;
+						case 5:
+							 Files.write( definitions, ( "UPDATE op_code SET instr = 'SUM' "
+										 + "WHERE instr = 'ADD' AND load_store = -1;\n" )
+													 .getBytes( StandardCharsets.UTF_8 ) );
+							 result = null;
+							 for (int wait = 0; wait < 100; wait++) {
+									result = new Renderer()
+												.render( word, new StringBuilder() ).toString();
+									if (result.equals( expected[k] )) {
+										 break;
+									}
+									Thread.sleep( 100 );
+							 }
+							 break;
+						case 6:
+							 TableSet before = TableSet.current();
+							 Files.write( definitions, "UPDATE op_code SET;\n"
+										 .getBytes( StandardCharsets.UTF_8 ) );
+							 watcher.reload();
+							 result = TableSet.current().getHash() == before.getHash()
+										 && watcher.getFailures() > 0 ? "tables kept"
+													 : watcher.getSummary();
+							 break;
+						case 7:
+							 result = new Instruction( new Code( "SUM R0, R1, #1" ) )
+										 .toHexString();
+							 break;
+						case 8:
+							 // The cached operation is decoded again for every other set
+							 Bits bits = new Bits( Integer.toHexString( word ), 16 );
+							 result = new Instruction( bits ) + " / "
+										 + new Instruction( bits, compiled ) + " / "
+										 + new Instruction( bits );
+							 break;
+						default:
+							 try {
+									new Instruction( new Code( "SUM R0, R1, #1" ), compiled );
+									result = "SUM accepted";
+							 } catch (InvalidCodeException e) {
+									result = new Instruction( new Code( "ADD R0, R1, #1" ),
+												compiled ).toHexString();
+							 }
+						}
+						Boolean success = result.equals( expected[k] );
+						total++;
+						System.out.println( String.format(
+									"\ninput: %-50s output: %-30s expected: %-20s result: %s\n",
+									names[k], result, '"' + expected[k] + '"',
+									success ? "pass" : "fail" ) );
+						if (!success) {
+							 fail++;
+						}
+				 }
+				 System.out.println( watcher.getSummary() );
+				 watcher.close();
+				 Files.delete( definitions );
+				 Files.delete( directory );
+				 TableSet.reload( Collections.emptyList() );
+			} catch (Exception e) {
+				 e.printStackTrace( System.out );
+				 fail++;
+			}
+			System.out.println( String.format(
+						"Table Reload Test: Total(%d)\tFail(%d)", total, fail ) );
+			return fail == 0;
+	 }
+
+	 /**
+	  * Returns a copy of words with some removed at an index and as many
+	  * others, different from every test word, inserted in their place.
+	  */
+	 private static int[] splice( int[] words, int at, int removed, int inserted )
+	 {
+			int[] result = new int[words.length - removed + inserted];
+			System.arraycopy( words, 0, result, 0, at );
+			for (int k = 0; k < inserted; k++) {
+				 result[at + k] = 0xe2800000 | ( at + k );
+			}
+			System.arraycopy( words, at + removed, result, at + inserted,
+						words.length - at - removed );
+			return result;
+	 }
+
+	 /**
+	  * Joins instruction indices with commas.
+	  */
+	 private static String join( int[] indices )
+	 {
+			StringBuilder text = new StringBuilder();
+			for (int i : indices) {
+				 text.append( text.length() > 0 ? "," : "" ).append( i );
+			}
+			return text.toString();
+	 }
+
+	 /**
+	  * Assembles a test program and compares the words with those expected.
+	  * 
+	  * @param String          name test name
+	  * @param String[]        source lines
+	  * @param List<Optimizer> passes (null to assemble as written)
+	  * @param int[]           expected words
+	  * @return Boolean success
+	  */
+	 private static Boolean program( String name, String[] source,
+				 List<Optimizer> passes, int[] expected )
+	 {
+			int total = 0;
+			int fail = 0;
+			int[] words = new int[0];
+			try {
+				 words = Assembler.assemble( new BufferedReader(
+							 new StringReader( String.join( "\n", source ) ) ),
+							 passes );
+			} catch (Exception e) {
+				 System.out.println( e );
+			}
+			for (int i = 0; i < expected.length; i++) {
+				 String code = String.format( "%08x", expected[i] );
+				 String result = i < words.length ? String.format( "%08x", words[i] )
+							 : "n/a";
+				 Boolean success = result.equals( code );
+				 total++;
+				 System.out.println( String.format(
+							 "\ninput: %-50s output: %-30s expected: %-20s result: %s\n",
+							 "word " + i, result, '"' + code + '"',
+							 success ? "pass" : "fail" ) );
+				 if (!success) {
+						fail++;
+				 }
+			}
+			if (words.length != expected.length) {
+				 fail++;
+			}
+			System.out.println( String.format( "%s Test: Total(%d)\tFail(%d)",
+						name, total, fail ) );
+			return fail == 0;
+	 }
+
 }
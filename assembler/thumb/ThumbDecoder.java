@@ -0,0 +1,313 @@
+/**
+ *
+ */
+package assembler.thumb;
+
+/**
+ * Table driven decoder for 16-bit Thumb (ARMv6) instructions.
+ *
+ * Every halfword is classified once, when the class is loaded, into a format
+ * by matching the mask/value {@link #PATTERNS} in order. Decoding a halfword
+ * afterwards is a single lookup in the 64K entry {@link #FORMATS} table; the
+ * operand fields of each format are extracted with shifts and masks.
+ */
+public final class ThumbDecoder
+{
+
+	 /**
+	  * Undefined or unpredictable encoding
+	  */
+	 public static final byte UNDEFINED = 0;
+
+	 /**
+	  * LSL/LSR/ASR Rd, Rm, #imm5
+	  */
+	 public static final byte SHIFT_IMM = 1;
+
+	 /**
+	  * ADD/SUB Rd, Rn, Rm
+	  */
+	 public static final byte ADD_SUB_REG = 2;
+
+	 /**
+	  * ADD/SUB Rd, Rn, #imm3
+	  */
+	 public static final byte ADD_SUB_IMM3 = 3;
+
+	 /**
+	  * MOV/CMP/ADD/SUB Rd, #imm8
+	  */
+	 public static final byte IMM8 = 4;
+
+	 /**
+	  * Data processing Rd, Rm
+	  */
+	 public static final byte ALU = 5;
+
+	 /**
+	  * ADD/CMP/MOV with high registers
+	  */
+	 public static final byte HI_REG = 6;
+
+	 /**
+	  * BX/BLX Rm
+	  */
+	 public static final byte BX = 7;
+
+	 /**
+	  * LDR Rd, [pc, #imm8 * 4]
+	  */
+	 public static final byte LDR_PC = 8;
+
+	 /**
+	  * Load/store Rd, [Rn, Rm]
+	  */
+	 public static final byte LS_REG = 9;
+
+	 /**
+	  * LDR/STR/LDRB/STRB Rd, [Rn, #imm5]
+	  */
+	 public static final byte LS_IMM = 10;
+
+	 /**
+	  * LDRH/STRH Rd, [Rn, #imm5 * 2]
+	  */
+	 public static final byte LS_HALF = 11;
+
+	 /**
+	  * LDR/STR Rd, [sp, #imm8 * 4]
+	  */
+	 public static final byte LS_SP = 12;
+
+	 /**
+	  * ADD Rd, pc/sp, #imm8 * 4
+	  */
+	 public static final byte ADD_PC_SP = 13;
+
+	 /**
+	  * ADD/SUB sp, sp, #imm7 * 4
+	  */
+	 public static final byte ADJUST_SP = 14;
+
+	 /**
+	  * SXTH/SXTB/UXTH/UXTB Rd, Rm
+	  */
+	 public static final byte EXTEND = 15;
+
+	 /**
+	  * PUSH/POP {list}
+	  */
+	 public static final byte PUSH_POP = 16;
+
+	 /**
+	  * SETEND LE/BE
+	  */
+	 public static final byte SETEND = 17;
+
+	 /**
+	  * CPSIE/CPSID flags
+	  */
+	 public static final byte CPS = 18;
+
+	 /**
+	  * REV/REV16/REVSH Rd, Rm
+	  */
+	 public static final byte REV = 19;
+
+	 /**
+	  * BKPT #imm8
+	  */
+	 public static final byte BKPT = 20;
+
+	 /**
+	  * LDMIA/STMIA Rn!, {list}
+	  */
+	 public static final byte LDM_STM = 21;
+
+	 /**
+	  * B{cond} label
+	  */
+	 public static final byte B_COND = 22;
+
+	 /**
+	  * SVC #imm8
+	  */
+	 public static final byte SVC = 23;
+
+	 /**
+	  * B label
+	  */
+	 public static final byte B = 24;
+
+	 /**
+	  * First half of a BL/BLX pair (upper offset)
+	  */
+	 public static final byte BL_PREFIX = 25;
+
+	 /**
+	  * Second half of a BL pair
+	  */
+	 public static final byte BL_SUFFIX = 26;
+
+	 /**
+	  * Second half of a BLX pair
+	  */
+	 public static final byte BLX_SUFFIX = 27;
+
+	 /**
+	  * {@value #PATTERNS} Decode specification {mask, value, format}, first match
+	  * wins
+	  */
+	 private static final int[][] PATTERNS = {
+				 { 0xfc00, 0x1800, ADD_SUB_REG },
+				 { 0xfc00, 0x1c00, ADD_SUB_IMM3 },
+				 { 0xe000, 0x0000, SHIFT_IMM },
+				 { 0xe000, 0x2000, IMM8 },
+				 { 0xfc00, 0x4000, ALU },
+				 { 0xff00, 0x4700, BX },
+				 { 0xfc00, 0x4400, HI_REG },
+				 { 0xf800, 0x4800, LDR_PC },
+				 { 0xf000, 0x5000, LS_REG },
+				 { 0xe000, 0x6000, LS_IMM },
+				 { 0xf000, 0x8000, LS_HALF },
+				 { 0xf000, 0x9000, LS_SP },
+				 { 0xf000, 0xa000, ADD_PC_SP },
+				 { 0xff00, 0xb000, ADJUST_SP },
+				 { 0xff00, 0xb200, EXTEND },
+				 { 0xf600, 0xb400, PUSH_POP },
+				 { 0xfff7, 0xb650, SETEND },
+				 { 0xffe8, 0xb660, CPS },
+				 { 0xffc0, 0xba80, UNDEFINED },
+				 { 0xff00, 0xba00, REV },
+				 { 0xff00, 0xbe00, BKPT },
+				 { 0xf000, 0xc000, LDM_STM },
+				 { 0xff00, 0xde00, UNDEFINED },
+				 { 0xff00, 0xdf00, SVC },
+				 { 0xf000, 0xd000, B_COND },
+				 { 0xf800, 0xe000, B },
+				 { 0xf801, 0xe800, BLX_SUFFIX },
+				 { 0xf800, 0xf000, BL_PREFIX },
+				 { 0xf800, 0xf800, BL_SUFFIX } };
+
+	 /**
+	  * {@value #FORMATS} Format of every halfword
+	  */
+	 private static final byte[] FORMATS = new byte[1 << 16];
+
+	 static {
+			for (int hw = 0; hw < FORMATS.length; hw++) {
+				 FORMATS[hw] = classify( hw );
+			}
+	 }
+
+	 /**
+	  * Classifies a halfword by the decode specification.
+	  * 
+	  * @param int hw halfword
+	  * @return byte format
+	  */
+	 private static byte classify( int hw )
+	 {
+			for (int[] pattern : PATTERNS) {
+				 if (( hw & pattern[0] ) == pattern[1]) {
+						byte format = (byte) pattern[2];
+						switch (format) {
+						case PUSH_POP:
+							 // At least one register must be transferred
+							 return ( hw & 0x1ff ) == 0 ? UNDEFINED : format;
+						case LDM_STM:
+							 return ( hw & 0xff ) == 0 ? UNDEFINED : format;
+						case CPS:
+							 return ( hw & 0x7 ) == 0 ? UNDEFINED : format;
+						default:
+							 return format;
+						}
+				 }
+			}
+			return UNDEFINED;
+	 }
+
+	 /**
+	  * Returns the format of a halfword.
+	  * 
+	  * @param int hw halfword
+	  * @return byte format
+	  */
+	 public static byte format( int hw )
+	 {
+			return FORMATS[hw & 0xffff];
+	 }
+
+	 /**
+	  * Returns true if a halfword decodes on its own or starts a BL/BLX pair.
+	  * 
+	  * @param int hw halfword
+	  * @return boolean
+	  */
+	 public static boolean isValid( int hw )
+	 {
+			byte format = FORMATS[hw & 0xffff];
+			return format != UNDEFINED && format != BL_SUFFIX
+						&& format != BLX_SUFFIX;
+	 }
+
+	 /**
+	  * Returns the number of halfwords taken by the instruction starting with
+	  * hw: 2 for a complete BL/BLX pair, 1 otherwise.
+	  * 
+	  * @param int hw   halfword
+	  * @param int next following halfword (ignored unless hw is a BL prefix)
+	  * @return int
+	  */
+	 public static int length( int hw, int next )
+	 {
+			return isPair( hw, next ) ? 2 : 1;
+	 }
+
+	 /**
+	  * Returns true if two halfwords form a BL/BLX pair.
+	  * 
+	  * @param int hw   halfword
+	  * @param int next following halfword
+	  * @return boolean
+	  */
+	 public static boolean isPair( int hw, int next )
+	 {
+			byte second = FORMATS[next & 0xffff];
+			return FORMATS[hw & 0xffff] == BL_PREFIX
+						&& ( second == BL_SUFFIX || second == BLX_SUFFIX );
+	 }
+
+	 /**
+	  * Returns the target of a B{cond}, B or BL/BLX pair.
+	  * 
+	  * @param int hw      halfword
+	  * @param int next    following halfword (BL/BLX pairs only)
+	  * @param int address address of hw
+	  * @return int target address
+	  */
+	 public static int target( int hw, int next, int address )
+	 {
+			int pc = address + 4;
+			switch (FORMATS[hw & 0xffff]) {
+			case B_COND:
+				 return pc + ( (byte) hw << 1 );
+			case B:
+				 return pc + ( ( hw << 21 ) >> 20 );
+			case BL_PREFIX:
+				 int target = pc + ( ( hw << 21 ) >> 9 ) + ( ( next & 0x7ff ) << 1 );
+				 return FORMATS[next & 0xffff] == BLX_SUFFIX ? target & ~3 : target;
+			default:
+				 return address;
+			}
+	 }
+
+	 /**
+	  * Private constructor, static members only
+	  */
+	 private ThumbDecoder()
+	 {
+			super();
+	 }
+
+}
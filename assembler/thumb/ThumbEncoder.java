@@ -0,0 +1,427 @@
+/**
+ *
+ */
+package assembler.thumb;
+
+/**
+ * Thumb (ARMv6) encoding backend.
+ *
+ * Source statements go through the same parser front end as ARM code; the
+ * resulting ARM instruction word is then mapped onto the smallest Thumb
+ * encoding with the same effect. Candidate forms are tried in order, low
+ * register and short immediate forms first. Thumb data processing
+ * instructions on low registers always set the flags, so flag setting must be
+ * explicit in the source (MOVS, ADDS, ...); only the high register ADD, MOV
+ * and CMP forms and the SP adjustments leave the flags untouched. Two operand
+ * instructions accept either operand order when the operation commutes.
+ */
+public final class ThumbEncoder
+{
+
+	 /**
+	  * {@value #NONE} Returned when no Thumb form exists
+	  */
+	 public static final int NONE = -1;
+
+	 /**
+	  * {@value #AL} Always condition code
+	  */
+	 private static final int AL = 0xe;
+
+	 /**
+	  * {@value #ALU} Register data processing opcodes with a two operand Thumb
+	  * form, indexed by ARM opcode (-1 if none). The Thumb opcodes are equal
+	  * to the ARM ones.
+	  */
+	 private static final int[] ALU = { 0x0, 0x1, -1, -1, -1, 0x5, 0x6, -1, 0x8,
+				 -1, 0xa, 0xb, 0xc, -1, 0xe, 0xf };
+
+	 /**
+	  * {@value #COMMUTES} Opcodes whose operands may be swapped [op]
+	  */
+	 private static final boolean[] COMMUTES = { true, true, false, false, true,
+				 true, false, false, false, false, false, false, true, false, false,
+				 false };
+
+	 /**
+	  * {@value #MULS} Thumb MULS rd, rm
+	  */
+	 private static final int MULS = 0x4340;
+
+	 /**
+	  * {@value #SHIFT_ALU} Thumb opcodes for shifts by register [shift type]
+	  */
+	 private static final int[] SHIFT_ALU = { 0x2, 0x3, 0x4, 0x7 };
+
+	 /**
+	  * {@value #HALFWORD_REG} Thumb register offset opcodes of the halfword and
+	  * signed byte transfers [load_store * 4 + sh] (-1 if none)
+	  */
+	 private static final int[] HALFWORD_REG = { -1, 0x1, -1, -1, -1, 0x5, 0x3,
+				 0x7 };
+
+	 /**
+	  * Encodes an ARM instruction word as a Thumb halfword.
+	  * 
+	  * @param int word ARM instruction word
+	  * @return int halfword, or {@link #NONE} if no Thumb form exists
+	  */
+	 public static int encode( int word )
+	 {
+			if (( word >>> 28 ) != AL) {
+				 return NONE;
+			}
+			if (( word & 0x0fc000f0 ) == 0x00000090) {
+				 return multiply( word );
+			}
+			if (( word & 0x0e000090 ) == 0x00000090 && ( word & 0x60 ) != 0) {
+				 return halfword( word );
+			}
+			switch (( word >>> 25 ) & 7) {
+			case 0:
+			case 1:
+				 return dataProcessing( word );
+			case 2:
+			case 3:
+				 return loadStore( word );
+			case 4:
+				 return blockTransfer( word );
+			default:
+				 return NONE;
+			}
+	 }
+
+	 /**
+	  * Returns true if an ARM instruction word has a Thumb form.
+	  * 
+	  * @param int word ARM instruction word
+	  * @return boolean
+	  */
+	 public static boolean isEncodable( int word )
+	 {
+			return encode( word ) != NONE;
+	 }
+
+	 /**
+	  * Encodes a data processing instruction.
+	  * 
+	  * @param int word
+	  * @return int halfword or {@link #NONE}
+	  */
+	 private static int dataProcessing( int word )
+	 {
+			int op = ( word >>> 21 ) & 0xf;
+			boolean s = ( word & 0x100000 ) != 0;
+			int rn = ( word >>> 16 ) & 0xf;
+			int rd = ( word >>> 12 ) & 0xf;
+			if (op >= 8 && op < 12 && !s) {
+				 // Miscellaneous instructions share the compare encodings
+				 return NONE;
+			}
+
+			if (( word & 0x2000000 ) != 0) {
+				 int rot = ( ( word >>> 8 ) & 0xf ) << 1;
+				 int imm = Integer.rotateRight( word & 0xff, rot );
+				 return immediate( op, s, rd, rn, imm );
+			}
+
+			int rm = word & 0xf;
+			int type = ( word >>> 5 ) & 3;
+			if (( word & 0x90 ) == 0x90) {
+				 // Multiplies and extra load/store instructions
+				 return NONE;
+			} else if (( word & 0x10 ) != 0) {
+				 // Shift by register: MOVS rd, rd, <shift> rs
+				 int rs = ( word >>> 8 ) & 0xf;
+				 if (op == 13 && s && rd == rm && isLow( rd, rs )) {
+						return 0x4000 | ( SHIFT_ALU[type] << 6 ) | ( rs << 3 ) | rd;
+				 }
+				 return NONE;
+			}
+
+			int amount = ( word >>> 7 ) & 0x1f;
+			if (op == 13 && s && type != 3 && isLow( rd, rm )) {
+				 // MOVS, LSLS, LSRS, ASRS by immediate
+				 return ( type << 11 ) | ( amount << 6 ) | ( rm << 3 ) | rd;
+			}
+			if (type != 0 || amount != 0) {
+				 return NONE;
+			}
+			return register( op, s, rd, rn, rm );
+	 }
+
+	 /**
+	  * Encodes a data processing instruction with an immediate operand.
+	  * 
+	  * @param int     op ARM opcode
+	  * @param boolean s sets flags
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     imm
+	  * @return int halfword or {@link #NONE}
+	  */
+	 private static int immediate( int op, boolean s, int rd, int rn, int imm )
+	 {
+			switch (op) {
+			case 2: // SUB
+			case 4: // ADD
+				 int sub = op == 2 ? 1 : 0;
+				 if (s && isLow( rd, rn )) {
+						if (rd == rn && imm >= 0 && imm < 256) {
+							 return 0x3000 | ( sub << 11 ) | ( rd << 8 ) | imm;
+						} else if (imm >= 0 && imm < 8) {
+							 return 0x1c00 | ( sub << 9 ) | ( imm << 6 ) | ( rn << 3 ) | rd;
+						}
+				 } else if (!s && rd == 13 && rn == 13 && isScaled( imm, 508 )) {
+						return 0xb000 | ( sub << 7 ) | ( imm >> 2 );
+				 } else if (!s && sub == 0 && ( rn == 13 || rn == 15 ) && rd < 8
+							 && isScaled( imm, 1020 )) {
+						return ( rn == 13 ? 0xa800 : 0xa000 ) | ( rd << 8 ) | ( imm >> 2 );
+				 }
+				 return NONE;
+			case 3: // RSBS rd, rn, #0
+				 return s && imm == 0 && isLow( rd, rn ) ? 0x4240 | ( rn << 3 ) | rd
+							 : NONE;
+			case 10: // CMP
+				 return rn < 8 && imm >= 0 && imm < 256 ? 0x2800 | ( rn << 8 ) | imm
+							 : NONE;
+			case 13: // MOVS
+				 return s && rd < 8 && imm >= 0 && imm < 256 ? 0x2000 | ( rd << 8 ) | imm
+							 : NONE;
+			default:
+				 return NONE;
+			}
+	 }
+
+	 /**
+	  * Encodes a data processing instruction with a plain register operand.
+	  * 
+	  * @param int     op ARM opcode
+	  * @param boolean s sets flags
+	  * @param int     rd
+	  * @param int     rn
+	  * @param int     rm
+	  * @return int halfword or {@link #NONE}
+	  */
+	 private static int register( int op, boolean s, int rd, int rn, int rm )
+	 {
+			if (!s) {
+				 // High register forms leave the flags untouched
+				 switch (op) {
+				 case 4: // ADD, unpredictable with two low registers before ARMv6T2
+						if (( rd == rn || rd == rm ) && !isLow( rd, rd == rn ? rm : rn )) {
+							 return hiRegister( 0x4400, rd, rd == rn ? rm : rn );
+						}
+						return NONE;
+				 case 13: // MOV
+						return hiRegister( 0x4600, rd, rm );
+				 default:
+						return NONE;
+				 }
+			}
+			switch (op) {
+			case 2: // SUBS
+			case 4: // ADDS
+				 if (isLow( rd, rn ) && rm < 8) {
+						return ( op == 2 ? 0x1a00 : 0x1800 ) | ( rm << 6 ) | ( rn << 3 ) | rd;
+				 }
+				 return NONE;
+			case 10: // CMP
+				 if (isLow( rn, rm )) {
+						return 0x4280 | ( rm << 3 ) | rn;
+				 }
+				 return hiRegister( 0x4500, rn, rm );
+			case 8: // TST
+			case 11: // CMN
+				 return isLow( rn, rm ) ? alu( op, rn, rm ) : NONE;
+			case 15: // MVNS
+				 return isLow( rd, rm ) ? alu( op, rd, rm ) : NONE;
+			default:
+				 if (ALU[op] < 0 || !isLow( rd, rn ) || rm >= 8) {
+						return NONE;
+				 } else if (rd == rn) {
+						return alu( op, rd, rm );
+				 } else if (rd == rm && COMMUTES[op]) {
+						return alu( op, rd, rn );
+				 }
+				 return NONE;
+			}
+	 }
+
+	 /**
+	  * Encodes MULS rd, rm, rs as MULS rd, rm when rd is one of the operands.
+	  * 
+	  * @param int word
+	  * @return int halfword or {@link #NONE}
+	  */
+	 private static int multiply( int word )
+	 {
+			int rd = ( word >>> 16 ) & 0xf;
+			int rs = ( word >>> 8 ) & 0xf;
+			int rm = word & 0xf;
+			if (( word & 0x300000 ) != 0x100000 || !isLow( rd, rs ) || rm >= 8) {
+				 return NONE;
+			} else if (rd == rs) {
+				 return MULS | ( rm << 3 ) | rd;
+			} else if (rd == rm) {
+				 return MULS | ( rs << 3 ) | rd;
+			}
+			return NONE;
+	 }
+
+	 /**
+	  * Encodes a single register load/store with offset addressing.
+	  * 
+	  * @param int word
+	  * @return int halfword or {@link #NONE}
+	  */
+	 private static int loadStore( int word )
+	 {
+			boolean pre = ( word & 0x1000000 ) != 0;
+			boolean up = ( word & 0x800000 ) != 0;
+			boolean b = ( word & 0x400000 ) != 0;
+			boolean writeBack = ( word & 0x200000 ) != 0;
+			int l = ( word >>> 20 ) & 1;
+			int rn = ( word >>> 16 ) & 0xf;
+			int rd = ( word >>> 12 ) & 0xf;
+			if (!pre || writeBack || rd >= 8) {
+				 return NONE;
+			}
+
+			if (( word & 0x2000000 ) != 0) {
+				 // Register offset, no shift
+				 int rm = word & 0xf;
+				 if (!up || ( word & 0xff0 ) != 0 || !isLow( rn, rm )) {
+						return NONE;
+				 }
+				 int op = ( b ? 2 : 0 ) | ( l << 2 );
+				 return 0x5000 | ( op << 9 ) | ( rm << 6 ) | ( rn << 3 ) | rd;
+			}
+
+			int imm = word & 0xfff;
+			if (!up && imm != 0) {
+				 return NONE;
+			} else if (b) {
+				 return rn < 8 && imm < 32
+							 ? 0x7000 | ( l << 11 ) | ( imm << 6 ) | ( rn << 3 ) | rd
+							 : NONE;
+			} else if (rn < 8 && isScaled( imm, 124 )) {
+				 return 0x6000 | ( l << 11 ) | ( ( imm >> 2 ) << 6 ) | ( rn << 3 ) | rd;
+			} else if (rn == 13 && isScaled( imm, 1020 )) {
+				 return 0x9000 | ( l << 11 ) | ( rd << 8 ) | ( imm >> 2 );
+			} else if (rn == 15 && l == 1 && isScaled( imm, 1020 )) {
+				 return 0x4800 | ( rd << 8 ) | ( imm >> 2 );
+			}
+			return NONE;
+	 }
+
+	 /**
+	  * Encodes LDRH/STRH/LDRSB/LDRSH. Only LDRH and STRH have an immediate
+	  * offset form.
+	  * 
+	  * @param int word
+	  * @return int halfword or {@link #NONE}
+	  */
+	 private static int halfword( int word )
+	 {
+			boolean pre = ( word & 0x1000000 ) != 0;
+			boolean up = ( word & 0x800000 ) != 0;
+			boolean writeBack = ( word & 0x200000 ) != 0;
+			int l = ( word >>> 20 ) & 1;
+			int sh = ( word >>> 5 ) & 3;
+			int rn = ( word >>> 16 ) & 0xf;
+			int rd = ( word >>> 12 ) & 0xf;
+			if (!pre || writeBack || !isLow( rd, rn )) {
+				 return NONE;
+			}
+
+			if (( word & 0x400000 ) == 0) {
+				 // Register offset
+				 int rm = word & 0xf;
+				 int op = HALFWORD_REG[l * 4 + sh];
+				 if (!up || op < 0 || ( word & 0xf00 ) != 0 || rm >= 8) {
+						return NONE;
+				 }
+				 return 0x5000 | ( op << 9 ) | ( rm << 6 ) | ( rn << 3 ) | rd;
+			}
+
+			int imm = ( ( word >>> 4 ) & 0xf0 ) | ( word & 0xf );
+			if (sh != 1 || ( !up && imm != 0 ) || imm > 62 || ( imm & 1 ) != 0) {
+				 return NONE;
+			}
+			return 0x8000 | ( l << 11 ) | ( ( imm >> 1 ) << 6 ) | ( rn << 3 ) | rd;
+	 }
+
+	 /**
+	  * Encodes LDM/STM as PUSH, POP, LDMIA or STMIA.
+	  * 
+	  * @param int word
+	  * @return int halfword or {@link #NONE}
+	  */
+	 private static int blockTransfer( int word )
+	 {
+			int mode = ( word >>> 21 ) & 0xf; // P U S W
+			boolean load = ( word & 0x100000 ) != 0;
+			int rn = ( word >>> 16 ) & 0xf;
+			int list = word & 0xffff;
+			if (rn == 13 && mode == ( load ? 0x5 : 0x9 )) {
+				 // POP may also load pc, PUSH may also store lr
+				 int extra = load ? 0x8000 : 0x4000;
+				 if (( list & ~( 0xff | extra ) ) != 0) {
+						return NONE;
+				 }
+				 return ( load ? 0xbc00 : 0xb400 ) | ( ( list & extra ) != 0 ? 0x100 : 0 )
+							 | ( list & 0xff );
+			}
+			if (rn >= 8 || ( list & ~0xff ) != 0) {
+				 return NONE;
+			}
+			// Thumb LDMIA writes back unless the base is loaded, STMIA always does
+			boolean writeBack = load ? ( list & ( 1 << rn ) ) == 0 : true;
+			if (mode != ( writeBack ? 0x5 : 0x4 )) {
+				 return NONE;
+			}
+			return ( load ? 0xc800 : 0xc000 ) | ( rn << 8 ) | list;
+	 }
+
+	 /**
+	  * Returns the two operand ALU form op rd, rm.
+	  */
+	 private static int alu( int op, int rd, int rm )
+	 {
+			return 0x4000 | ( ALU[op] << 6 ) | ( rm << 3 ) | rd;
+	 }
+
+	 /**
+	  * Returns the high register form op rd, rm.
+	  */
+	 private static int hiRegister( int base, int rd, int rm )
+	 {
+			return base | ( ( rd & 8 ) << 4 ) | ( rm << 3 ) | ( rd & 7 );
+	 }
+
+	 /**
+	  * Returns true if both registers are r0-r7.
+	  */
+	 private static boolean isLow( int r1, int r2 )
+	 {
+			return ( r1 | r2 ) < 8;
+	 }
+
+	 /**
+	  * Returns true if an offset is a non-negative multiple of 4 up to max.
+	  */
+	 private static boolean isScaled( int imm, int max )
+	 {
+			return imm >= 0 && imm <= max && ( imm & 3 ) == 0;
+	 }
+
+	 /**
+	  * Private constructor, static members only
+	  */
+	 private ThumbEncoder()
+	 {
+			super();
+	 }
+
+}
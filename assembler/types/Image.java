@@ -0,0 +1,142 @@
+/**
+ * 
+ */
+package assembler.types;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Type class for presenting a contiguous image of ARM instruction words
+ * loaded at a base address.
+ * 
+ */
+public class Image
+{
+
+	 /**
+	  * {@value #base} Load address of the first word
+	  */
+	 private final int base;
+
+	 /**
+	  * {@link IntBuffer} Instruction words
+	  */
+	 private final IntBuffer words;
+
+	 /**
+	  * {@link ByteBuffer} Raw little-endian bytes (null if backed by words)
+	  */
+	 private final ByteBuffer bytes;
+
+	 /**
+	  * @return int base address
+	  */
+	 public int getBase()
+	 {
+			return base;
+	 }
+
+	 /**
+	  * Returns an independent view of the instruction words.
+	  * 
+	  * @return IntBuffer words
+	  */
+	 public IntBuffer getWords()
+	 {
+			return words.duplicate();
+	 }
+
+	 /**
+	  * Returns the image as a stream of Thumb halfwords in memory order. Byte
+	  * backed images are viewed in place, word backed images are copied.
+	  * 
+	  * @return ShortBuffer halfwords
+	  */
+	 public ShortBuffer getHalfwords()
+	 {
+			if (bytes != null) {
+				 return bytes.duplicate().order( ByteOrder.LITTLE_ENDIAN )
+							 .asShortBuffer();
+			}
+			ShortBuffer halfwords = ShortBuffer.allocate( words.limit() << 1 );
+			for (int i = 0; i < words.limit(); i++) {
+				 int word = words.get( i );
+				 halfwords.put( (short) word ).put( (short) ( word >>> 16 ) );
+			}
+			return halfwords.flip();
+	 }
+
+	 /**
+	  * @return int number of words
+	  */
+	 public int size()
+	 {
+			return words.limit();
+	 }
+
+	 /**
+	  * Returns the word at an index.
+	  * 
+	  * @param int index
+	  * @return int word
+	  */
+	 public int get( int index )
+	 {
+			return words.get( index );
+	 }
+
+	 /**
+	  * Returns the load address of the word at an index.
+	  * 
+	  * @param int index
+	  * @return int address
+	  */
+	 public int getAddress( int index )
+	 {
+			return base + ( index << 2 );
+	 }
+
+	 /**
+	  * Standard constructor
+	  * 
+	  * @param int       base
+	  * @param IntBuffer words
+	  */
+	 public Image( int base, IntBuffer words )
+	 {
+			super();
+			this.base = base;
+			this.words = words.slice();
+			this.bytes = null;
+	 }
+
+	 /**
+	  * Overloaded constructor for raw little-endian bytes, such as a mapped
+	  * binary file. The bytes are not copied.
+	  * 
+	  * @param int        base
+	  * @param ByteBuffer bytes
+	  */
+	 public Image( int base, ByteBuffer bytes )
+	 {
+			super();
+			this.base = base;
+			this.bytes = bytes.slice().order( ByteOrder.LITTLE_ENDIAN );
+			this.words = this.bytes.asIntBuffer();
+	 }
+
+	 /**
+	  * Overloaded constructor
+	  * 
+	  * @param int   base
+	  * @param int[] words
+	  */
+	 public Image( int base, int[] words )
+	 {
+			this( base, IntBuffer.wrap( words ) );
+	 }
+
+}
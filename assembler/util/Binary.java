@@ -55,4 +55,35 @@ public class Binary
 			return (int) ( Math.log( N ) / Math.log( 2 ) );
 	 }
 
+	 /**
+	  * Function to write the low bits of a value as a zero padded binary
+	  * string of a width
+	  * 
+	  * @param int value
+	  * @param int width bits
+	  * @return String
+	  */
+	 public static String toBinaryString( int value, int width )
+	 {
+			String bin = Integer.toBinaryString( width < INT_BITS
+						? value & ( ( 1 << width ) - 1 )
+						: value );
+			return "0".repeat( width - bin.length() ) + bin;
+	 }
+
+	 /**
+	  * Function to extract a bit field from a 32-bit instruction word using a
+	  * {start, length} pair from an instruction schema. Bit positions are
+	  * counted from the most significant bit, as in the binary strings.
+	  * 
+	  * @param int   word   instruction word
+	  * @param int[] limits {start, length}
+	  * @return int
+	  */
+	 public static int extract( int word, int[] limits )
+	 {
+			int shift = INT_BITS - limits[0] - limits[1];
+			return ( word >>> shift ) & ( ( 1 << limits[1] ) - 1 );
+	 }
+
 }